@@ -0,0 +1,120 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Bytes allocated per operation by every thread of the benchmark JVM,
+ * including threads that start and end within an iteration. Before JDK 21
+ * gc.alloc.rate.norm only sums the threads alive at both ends of an
+ * iteration, which misses the provisioning pool of every call.
+ * A thread's counter is gone once it ends, so the counters are sampled
+ * every {@link #SAMPLE_MILLIS} ms and the last sample of an ended thread
+ * is kept: what a thread allocates after its last sample is missed.
+ * Threads of the benchmark harness and of in-process stub servers are
+ * counted too.
+ * Run with {@code -prof benchmarks.AllThreadsAllocationProfiler}.
+ */
+public class AllThreadsAllocationProfiler implements InternalProfiler {
+
+    /**
+     * Milliseconds between two samples of the thread counters.
+     */
+    private static final long SAMPLE_MILLIS = 5;
+
+    /**
+     * Thread counters.
+     */
+    private final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Bytes of each thread when the iteration started.
+     */
+    private final Map<Long, Long> start = new HashMap<>();
+
+    /**
+     * Last sampled bytes of each thread seen during the iteration.
+     */
+    private final Map<Long, Long> last = new HashMap<>();
+
+    /**
+     * Sampling thread of the current iteration.
+     */
+    private Thread sampler;
+
+    /**
+     * Sample every live thread.
+     * @param into bytes by thread ID
+     */
+    private synchronized void sample(final Map<Long, Long> into) {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                into.put(ids[i], bytes[i]);
+            }
+        }
+    }
+
+    @Override
+    public void beforeIteration(final BenchmarkParams benchmarkParams, final IterationParams iterationParams) {
+        start.clear();
+        last.clear();
+        sample(start);
+        sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                sample(last);
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "allocation-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(final BenchmarkParams benchmarkParams,
+                                                       final IterationParams iterationParams,
+                                                       final IterationResult result) {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sample(last);
+        long allocated = 0;
+        for (Map.Entry<Long, Long> thread : last.entrySet()) {
+            if (thread.getKey() != sampler.getId()) {
+                allocated += thread.getValue() - start.getOrDefault(thread.getKey(), 0L);
+            }
+        }
+        long ops = result.getMetadata().getAllOps();
+        if (ops <= 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(new ScalarResult("alloc.all.norm", (double) allocated / ops,
+                "B/op", AggregationPolicy.AVG));
+    }
+
+    @Override
+    public String getDescription() {
+        return "Bytes allocated per operation by all threads";
+    }
+}
@@ -0,0 +1,128 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ini4j.Ini;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import autoscaling.Api;
+import autoscaling.LogTailer;
+import utilities.HttpResponse;
+
+/**
+ * Test ID extraction and log parsing as done on every Load Generator
+ * response and log poll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiBenchmark {
+
+    /**
+     * Minutes in the log, a warmup and a full test.
+     */
+    @Param({"5", "48"})
+    private int minutes;
+
+    /**
+     * Response of /autoscaling.
+     */
+    private String testResponse;
+
+    /**
+     * Test log as served by the Load Generator.
+     */
+    private String log;
+
+    /**
+     * Test log bytes.
+     */
+    private byte[] logBytes;
+
+    /**
+     * Build a log in the Load Generator format.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        testResponse = "<html><body>Test started, see <a href='/log?name=test.1585263118453.log'>"
+                + "Test</a> for the progress.</body></html>";
+        StringBuilder builder = new StringBuilder("[Test]\ntype=autoscaling\ntestId=1585263118453\n\n");
+        for (int minute = 1; minute <= minutes; minute++) {
+            builder.append("[Minute ").append(minute).append("]\n");
+            for (int instance = 1; instance <= 6; instance++) {
+                builder.append("ec2-54-80-0-").append(instance).append(".compute-1.amazonaws.com=")
+                        .append(minute * 11.25 + instance).append('\n');
+            }
+            builder.append("latency=").append(minute * 1.5).append('\n')
+                    .append("rps=").append(minute * 101.75).append("\n\n");
+        }
+        builder.append("[Test finished]\n");
+        log = builder.toString();
+        logBytes = log.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Current implementation, precompiled pattern.
+     * @return test ID
+     */
+    @Benchmark
+    public String getTestId() {
+        return Api.getTestId(testResponse);
+    }
+
+    /**
+     * Previous implementation, pattern compiled on every call.
+     * @return test ID
+     */
+    @Benchmark
+    public String getTestIdCompileEachCall() {
+        Pattern pattern = Pattern.compile("test\\.([0-9]*)\\.log");
+        Matcher matcher = pattern.matcher(testResponse);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        return null;
+    }
+
+    /**
+     * Previous implementation of getIniUpdate, the whole log through ini4j.
+     * @return parsed log
+     * @throws IOException on a malformed log
+     */
+    @Benchmark
+    public Ini iniFullParse() throws IOException {
+        return new Ini(new StringReader(log));
+    }
+
+    /**
+     * Current implementation on a first poll, the whole log through the
+     * line parser of the tailer.
+     * @return parsed log
+     * @throws IOException on a malformed log
+     */
+    @Benchmark
+    public Ini tailerFullParse() throws IOException {
+        LogTailer tailer = new LogTailer("http://localhost/log?name=test.1585263118453.log", null);
+        return tailer.accept(new HttpResponse(200, Collections.emptyMap(), logBytes));
+    }
+}
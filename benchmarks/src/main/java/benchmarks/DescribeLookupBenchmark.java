@@ -0,0 +1,164 @@
+package benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsRequest;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.SecurityGroup;
+
+import autoscaling.InstanceStateService;
+import autoscaling.SecurityGroupRegistry;
+
+/**
+ * Instance and security group lookups over large describe responses:
+ * the previous unfiltered describe plus linear scan against the filtered,
+ * cached lookups of {@link InstanceStateService} and
+ * {@link SecurityGroupRegistry}. The wanted resource is the last one of
+ * the account, the worst case of a scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescribeLookupBenchmark {
+
+    /**
+     * Instances and security groups in the account.
+     */
+    @Param({"100", "1000", "10000"})
+    private int size;
+
+    /**
+     * EC2 client.
+     */
+    private AmazonEC2 ec2;
+
+    /**
+     * Instance state service with entries that never expire.
+     */
+    private InstanceStateService cachedStates;
+
+    /**
+     * Instance state service without caching.
+     */
+    private InstanceStateService uncachedStates;
+
+    /**
+     * Registry that has seen the group.
+     */
+    private SecurityGroupRegistry registry;
+
+    /**
+     * Wanted instance.
+     */
+    private String instanceId;
+
+    /**
+     * Wanted group.
+     */
+    private String groupName;
+
+    /**
+     * Build the account.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        ec2 = new SyntheticEc2(size);
+        instanceId = SyntheticEc2.instanceId(size - 1);
+        groupName = SyntheticEc2.groupName(size - 1);
+        cachedStates = new InstanceStateService(ec2, Long.MAX_VALUE);
+        cachedStates.get(instanceId);
+        uncachedStates = new InstanceStateService(ec2, 0);
+        registry = new SecurityGroupRegistry(ec2);
+        registry.getId(groupName);
+    }
+
+    /**
+     * Previous Ec2.getInstance.
+     * @return instance
+     */
+    @Benchmark
+    public Instance legacyGetInstance() {
+        DescribeInstancesResult response = ec2.describeInstances(new DescribeInstancesRequest());
+        for (Reservation reservation : response.getReservations()) {
+            for (Instance instance : reservation.getInstances()) {
+                if (instance.getInstanceId().equals(instanceId)) {
+                    return instance;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Current Ec2.getInstance within the TTL.
+     * @return instance
+     */
+    @Benchmark
+    public Instance cachedGetInstance() {
+        return cachedStates.get(instanceId);
+    }
+
+    /**
+     * Current Ec2.getInstance once the TTL expired, a filtered describe.
+     * @return instance
+     */
+    @Benchmark
+    public Instance refreshGetInstance() {
+        return uncachedStates.refresh(Collections.singleton(instanceId)).get(instanceId);
+    }
+
+    /**
+     * Previous Ec2.getSecurityGroupId.
+     * @return group ID
+     */
+    @Benchmark
+    public String legacyGetSecurityGroupId() {
+        DescribeSecurityGroupsResult response = ec2.describeSecurityGroups(new DescribeSecurityGroupsRequest());
+        for (SecurityGroup securityGroup : response.getSecurityGroups()) {
+            if (securityGroup.getGroupName().equals(groupName)) {
+                return securityGroup.getGroupId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Current Ec2.getSecurityGroupId for a registered group.
+     * @return group ID
+     */
+    @Benchmark
+    public String cachedGetSecurityGroupId() {
+        return registry.getId(groupName);
+    }
+
+    /**
+     * Current Ec2.getSecurityGroupId for an unknown group, a filtered describe.
+     * @return group ID
+     */
+    @Benchmark
+    public String lookupGetSecurityGroupId() {
+        return new SecurityGroupRegistry(ec2).getId(groupName);
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utilities.HttpRequest;
+
+/**
+ * Requests per second and allocation per call of the pooled client
+ * against the previous HttpURLConnection implementation.
+ * Run with {@code -prof benchmarks.AllThreadsAllocationProfiler} to see
+ * alloc.all.norm, which includes the client's own threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpClientBenchmark {
+
+    /**
+     * Response body size, roughly a short and a long test log.
+     */
+    @Param({"4096", "262144"})
+    private int bodySize;
+
+    /**
+     * Stub server.
+     */
+    private StubServer server;
+
+    /**
+     * Request URL.
+     */
+    private String url;
+
+    /**
+     * Start the stub server with a log-like body.
+     * @throws IOException when the server cannot bind
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder body = new StringBuilder(bodySize);
+        for (int minute = 1; body.length() < bodySize; minute++) {
+            body.append("[Minute ").append(minute).append("]\n")
+                    .append("rps=").append(minute * 17.5).append('\n');
+        }
+        body.setLength(bodySize - 1);
+        body.append('\n');
+        server = new StubServer(body.toString().getBytes(StandardCharsets.UTF_8));
+        url = server.url() + "/log?name=test.1.log";
+    }
+
+    /**
+     * Stop the stub server.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Current implementation.
+     * @return body
+     * @throws IOException on network failure
+     */
+    @Benchmark
+    public String pooledClient() throws IOException {
+        return HttpRequest.sendGet(url);
+    }
+
+    /**
+     * Previous implementation of HttpRequest.sendGet.
+     * @return body
+     * @throws IOException on network failure
+     */
+    @Benchmark
+    public String legacyUrlConnection() throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setRequestMethod("GET");
+        con.getResponseCode();
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(con.getInputStream()));
+        String inputLine;
+        StringBuilder response = new StringBuilder();
+        while ((inputLine = in.readLine()) != null) {
+            response.append(inputLine);
+            response.append("\n");
+        }
+        in.close();
+        return response.toString();
+    }
+}
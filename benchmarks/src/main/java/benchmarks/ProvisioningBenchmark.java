@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import autoscaling.AutoScale;
+import autoscaling.ResourceConfig;
+import simulator.LatencyModel;
+import simulator.SimulatedAws;
+import simulator.SimulationSettings;
+
+/**
+ * Wall clock of a full provisioning and teardown against the simulator.
+ * Resource state machines run a thousand times faster than real time, so
+ * the result is dominated by call latency, polling and the critical path
+ * of the provisioning graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProvisioningBenchmark {
+
+    /**
+     * Median API call latency in milliseconds.
+     */
+    @Param({"0", "50"})
+    private int latencyMillis;
+
+    /**
+     * Fresh account for every iteration.
+     */
+    private SimulatedAws aws;
+
+    /**
+     * Create the account.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        LatencyModel latency = latencyMillis == 0 ? LatencyModel.none()
+                : LatencyModel.logNormal(latencyMillis, 0.5);
+        aws = new SimulatedAws(new SimulationSettings()
+                .withSpeedup(1000)
+                .withApiLatency(latency));
+    }
+
+    /**
+     * initializeResources followed by destroy.
+     * @return provisioned resources
+     * @throws InterruptedException when interrupted
+     * @throws ExecutionException when a step fails
+     */
+    @Benchmark
+    public ResourceConfig provisionAndDestroy() throws InterruptedException, ExecutionException {
+        ResourceConfig resourceConfig = AutoScale.initializeResources(aws.getEc2(), aws.getElb(),
+                aws.getAutoScaling(), aws.getCloudWatch());
+        AutoScale.destroy(aws.getAutoScaling(), aws.getEc2(), aws.getElb(),
+                aws.getCloudWatch(), resourceConfig);
+        return resourceConfig;
+    }
+}
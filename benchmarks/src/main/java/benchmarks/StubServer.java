@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local keep-alive HTTP server answering every request with a fixed body.
+ * The whole response is written at once with TCP_NODELAY so that server
+ * side Nagle delays do not dominate the client numbers.
+ */
+public final class StubServer {
+
+    /**
+     * Listening socket.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Serialized response.
+     */
+    private final byte[] response;
+
+    /**
+     * Start a server on a free port.
+     * @param body response body
+     * @throws IOException when the server cannot bind
+     */
+    public StubServer(final byte[] body) throws IOException {
+        byte[] head = ("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        response = new byte[head.length + body.length];
+        System.arraycopy(head, 0, response, 0, head.length);
+        System.arraycopy(body, 0, response, head.length, body.length);
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "stub-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Base URL of the server.
+     * @return base URL
+     */
+    public String url() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop the server.
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            //ignore errors
+        }
+    }
+
+    /**
+     * Accept connections until stopped.
+     */
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread worker = new Thread(() -> serve(socket), "stub-connection");
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answer requests on one connection until the client closes it.
+     * @param socket client connection
+     */
+    private void serve(final Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            while (readRequest(in)) {
+                out.write(response);
+                out.flush();
+            }
+        } catch (IOException e) {
+            //client went away
+        }
+    }
+
+    /**
+     * Skip one request head.
+     * @param in connection input
+     * @return false when the client closed the connection
+     * @throws IOException on network failure
+     */
+    private static boolean readRequest(final InputStream in) throws IOException {
+        int matched = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\r' && (matched == 0 || matched == 2)) {
+                matched++;
+            } else if (c == '\n' && (matched == 1 || matched == 3)) {
+                matched++;
+                if (matched == 4) {
+                    return true;
+                }
+            } else {
+                matched = 0;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,146 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.ec2.AbstractAmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsRequest;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.SecurityGroup;
+
+/**
+ * EC2 client answering describe calls from a fixed, prebuilt account so
+ * that lookups can be measured without network or simulator overhead.
+ * Unfiltered calls return everything in one response, filtered calls only
+ * the matches.
+ */
+final class SyntheticEc2 extends AbstractAmazonEC2 {
+
+    /**
+     * Instances keyed by ID.
+     */
+    private final Map<String, Instance> instances = new LinkedHashMap<>();
+
+    /**
+     * Security groups keyed by name.
+     */
+    private final Map<String, SecurityGroup> securityGroups = new LinkedHashMap<>();
+
+    /**
+     * Response to an unfiltered DescribeInstances.
+     */
+    private final DescribeInstancesResult allInstances = new DescribeInstancesResult();
+
+    /**
+     * Response to an unfiltered DescribeSecurityGroups.
+     */
+    private final DescribeSecurityGroupsResult allSecurityGroups = new DescribeSecurityGroupsResult();
+
+    /**
+     * Create an account.
+     * @param size number of instances and of security groups
+     */
+    SyntheticEc2(final int size) {
+        for (int i = 0; i < size; i++) {
+            Instance instance = new Instance()
+                    .withInstanceId(instanceId(i))
+                    .withInstanceType("m5.large")
+                    .withState(new InstanceState().withName("running").withCode(16))
+                    .withPublicDnsName("ec2-54-80-" + (i / 250) + "-" + (i % 250) + ".compute-1.amazonaws.com");
+            instances.put(instance.getInstanceId(), instance);
+            allInstances.getReservations().add(new Reservation()
+                    .withReservationId("r-" + i)
+                    .withInstances(instance));
+            SecurityGroup group = new SecurityGroup()
+                    .withGroupId(String.format("sg-%017x", i))
+                    .withGroupName(groupName(i));
+            securityGroups.put(group.getGroupName(), group);
+            allSecurityGroups.getSecurityGroups().add(group);
+        }
+    }
+
+    /**
+     * ID of the i-th instance.
+     * @param i index
+     * @return instance ID
+     */
+    static String instanceId(final int i) {
+        return String.format("i-%017x", i);
+    }
+
+    /**
+     * Name of the i-th security group.
+     * @param i index
+     * @return group name
+     */
+    static String groupName(final int i) {
+        return "group-" + i;
+    }
+
+    @Override
+    public DescribeInstancesResult describeInstances() {
+        return allInstances;
+    }
+
+    @Override
+    public DescribeInstancesResult describeInstances(final DescribeInstancesRequest request) {
+        List<String> ids = values(request.getFilters(), "instance-id");
+        if (ids == null) {
+            return allInstances;
+        }
+        DescribeInstancesResult result = new DescribeInstancesResult();
+        Reservation reservation = new Reservation().withReservationId("r-filtered");
+        for (String id : ids) {
+            Instance instance = instances.get(id);
+            if (instance != null) {
+                reservation.getInstances().add(instance);
+            }
+        }
+        result.getReservations().add(reservation);
+        return result;
+    }
+
+    @Override
+    public DescribeSecurityGroupsResult describeSecurityGroups() {
+        return allSecurityGroups;
+    }
+
+    @Override
+    public DescribeSecurityGroupsResult describeSecurityGroups(final DescribeSecurityGroupsRequest request) {
+        List<String> names = values(request.getFilters(), "group-name");
+        if (names == null) {
+            return allSecurityGroups;
+        }
+        List<SecurityGroup> found = new ArrayList<>();
+        for (String name : names) {
+            SecurityGroup group = securityGroups.get(name);
+            if (group != null) {
+                found.add(group);
+            }
+        }
+        return new DescribeSecurityGroupsResult().withSecurityGroups(found);
+    }
+
+    /**
+     * Values of a filter.
+     * @param filters request filters
+     * @param name filter name
+     * @return values or null when the filter is absent
+     */
+    private static List<String> values(final List<Filter> filters, final String name) {
+        for (Filter filter : filters) {
+            if (name.equals(filter.getName())) {
+                return filter.getValues();
+            }
+        }
+        return null;
+    }
+}
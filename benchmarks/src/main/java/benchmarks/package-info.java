@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks.
+ */
+package benchmarks;
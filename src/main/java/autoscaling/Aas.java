@@ -3,12 +3,12 @@ package autoscaling;
 import com.amazonaws.services.autoscaling.AmazonAutoScaling;
 import com.amazonaws.services.autoscaling.model.Tag;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.PutMetricAlarmRequest;
 import java.lang.InterruptedException;
 import java.util.Arrays;
 import java.util.List;
 
 import static autoscaling.AutoScale.PROJECT_VALUE;
-import static autoscaling.AutoScale.configuration;
 // import static autoscaling.AutoScale;
 import com.amazonaws.services.autoscaling.model.InstanceMonitoring;
 import com.amazonaws.services.autoscaling.model.CreateLaunchConfigurationRequest;
@@ -16,67 +16,22 @@ import com.amazonaws.services.autoscaling.model.CreateLaunchConfigurationResult;
 import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupRequest;
 import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupResult;
 import com.amazonaws.services.autoscaling.model.DeleteAutoScalingGroupRequest;
-import com.amazonaws.services.autoscaling.model.DeleteAutoScalingGroupResult;
+import com.amazonaws.services.autoscaling.model.DeleteWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.DescribeWarmPoolRequest;
 import com.amazonaws.services.autoscaling.model.DeleteLaunchConfigurationRequest;
-import com.amazonaws.services.autoscaling.model.DeleteLaunchConfigurationResult;
+import com.amazonaws.services.autoscaling.model.PredefinedMetricSpecification;
 import com.amazonaws.services.autoscaling.model.PutScalingPolicyRequest;
+import com.amazonaws.services.autoscaling.model.PutWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.StepAdjustment;
+import com.amazonaws.services.autoscaling.model.TargetTrackingConfiguration;
 import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupRequest;
 import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupResult;
-import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
 import com.amazonaws.services.autoscaling.model.DescribeScalingActivitiesRequest;
-import com.amazonaws.services.autoscaling.model.Instance;
 
-import java.util.ArrayList;
 /**
  * Amazon AutoScaling resource class.
  */
 public final class Aas {
-    /**
-     * Max size of AGS.
-     */
-    private static final Integer MAX_SIZE_ASG
-            = configuration.getInt("asg_max_size");
-
-        /**
-     * Min size of AGS.
-     */
-    private static final Integer MIN_SIZE_ASG
-                = configuration.getInt("asg_min_size");
-
-    /**
-     * Health Check grace period.
-     */
-    private static final Integer HEALTH_CHECK_GRACE
-            = configuration.getInt("health_check_grace_period");
-    /**
-     * Cool down period Scale In.
-     */
-    private static final Integer COOLDOWN_PERIOD_SCALEIN
-            = configuration.getInt("cool_down_period_scale_in");
-
-    /**
-     * Cool down period Scale Out.
-     */
-    private static final Integer COOLDOWN_PERIOD_SCALEOUT
-            = configuration.getInt("cool_down_period_scale_out");
-
-    /**
-     * Number of instances to scale out by.
-     */
-    private static final int SCALING_OUT_ADJUSTMENT
-            = configuration.getInt("scale_out_adjustment");
-    /**
-     * Number of instances to scale in by.
-     */
-    private static final int SCALING_IN_ADJUSTMENT
-            = configuration.getInt("scale_in_adjustment");
-
-    /**
-     * ASG Cool down period in seconds.
-     */
-    private static final Integer COOLDOWN_PERIOD_ASG
-            = configuration.getInt("asg_default_cool_down_period");
-
     /**
      * Unused constructor.
      */
@@ -92,19 +47,28 @@ public final class Aas {
     /**
      * Create launch configuration.
      *
-     * @param aas AAS client
+     * @param aas    AAS client
+     * @param region region of the stack
      */
-    static void createLaunchConfiguration(final AmazonAutoScaling aas) {
+    static void createLaunchConfiguration(final AmazonAutoScaling aas, final StackRegion region) {
         //TODO: Implement this method 
 
-        CreateLaunchConfigurationRequest request = new CreateLaunchConfigurationRequest()
+        aas.createLaunchConfiguration(launchConfigurationRequest(region));
+    }
+
+    /**
+     * Launch configuration the configuration asks for.
+     *
+     * @param region region of the stack
+     * @return request
+     */
+    static CreateLaunchConfigurationRequest launchConfigurationRequest(final StackRegion region) {
+        return new CreateLaunchConfigurationRequest()
                                                         .withLaunchConfigurationName(AutoScale.LAUNCH_CONFIGURATION_NAME)
-                                                        .withImageId(AutoScale.WEB_SERVICE)
+                                                        .withImageId(region.getWebServiceAmi())
                                                         .withSecurityGroups(AutoScale.ELBASG_SECURITY_GROUP)
                                                         .withInstanceType(AutoScale.INSTANCE_TYPE)
                                                         .withInstanceMonitoring(new InstanceMonitoring().withEnabled(true));
-        
-        aas.createLaunchConfiguration(request);
     }
 
     /**
@@ -114,49 +78,221 @@ public final class Aas {
      * @param aas            AAS Client
      * @param cloudWatch     CloudWatch client
      * @param targetGroupArn target group arn
+     * @param zones          availability zones to spread the group over
+     */
+    public static void createAutoScalingGroup(final AmazonAutoScaling aas,
+                                              final AmazonCloudWatch cloudWatch,
+                                              final String targetGroupArn,
+                                              final List<String> zones) {
+        createAutoScalingGroup(aas, cloudWatch, targetGroupArn, zones,
+                ScalingSettings.current().getPolicyType());
+    }
+
+    /**
+     * Create auto scaling group with a given type of scaling policies.
+     * Simple and step policies are driven by the ScaleIn and ScaleOut
+     * alarms; a target tracking policy gets its alarms from AWS.
+     *
+     * @param aas            AAS Client
+     * @param cloudWatch     CloudWatch client
+     * @param targetGroupArn target group arn
+     * @param zones          availability zones to spread the group over
+     * @param policyType     SimpleScaling, StepScaling or TargetTrackingScaling
      */
     public static void createAutoScalingGroup(final AmazonAutoScaling aas,
                                               final AmazonCloudWatch cloudWatch,
-                                              final String targetGroupArn) {
+                                              final String targetGroupArn,
+                                              final List<String> zones,
+                                              final String policyType) {
         //TODO: Implement this method
-        CreateAutoScalingGroupRequest request = new CreateAutoScalingGroupRequest()
+        ScalingSettings settings = ScalingSettings.current();
+        CreateAutoScalingGroupResult response = aas.createAutoScalingGroup(
+                autoScalingGroupRequest(settings, targetGroupArn, zones));
+        System.out.println("ASG created");
+        if (settings.isWarmPool()) {
+            putWarmPool(aas);
+        }
+        putScalingPolicies(aas, cloudWatch, settings, policyType);
+    }
+
+    /**
+     * Auto scaling group a configuration asks for.
+     *
+     * @param settings       scaling settings
+     * @param targetGroupArn target group arn
+     * @param zones          availability zones to spread the group over
+     * @return request
+     */
+    static CreateAutoScalingGroupRequest autoScalingGroupRequest(final ScalingSettings settings,
+                                                                 final String targetGroupArn,
+                                                                 final List<String> zones) {
+        return new CreateAutoScalingGroupRequest()
                                                 .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
                                                 .withLaunchConfigurationName(AutoScale.LAUNCH_CONFIGURATION_NAME)
                                                 .withTargetGroupARNs(targetGroupArn)
                                                 .withHealthCheckType("EC2")
                                                 .withTags(AAS_TAGS_LIST)
-                                                .withMaxSize(MAX_SIZE_ASG)
-                                                .withMinSize(MIN_SIZE_ASG)
+                                                .withMaxSize(settings.getMaxSize())
+                                                .withMinSize(settings.getMinSize())
                                                 .withDesiredCapacity(1)
-                                                .withDefaultCooldown(COOLDOWN_PERIOD_ASG)
-                                                .withHealthCheckGracePeriod(HEALTH_CHECK_GRACE)
-                                                .withAvailabilityZones("us-east-1a");
+                                                .withDefaultCooldown(settings.getDefaultCooldown())
+                                                .withHealthCheckGracePeriod(settings.getHealthCheckGracePeriod())
+                                                .withAvailabilityZones(zones);
+    }
 
-        CreateAutoScalingGroupResult response = aas.createAutoScalingGroup(request);
-        System.out.println("ASG created");
+    /**
+     * Put the scaling policies of the group and the alarms driving them.
+     * Policies and alarms are replaced in place when they already exist.
+     *
+     * @param aas        AAS Client
+     * @param cloudWatch CloudWatch client
+     * @param settings   scaling settings
+     * @param policyType SimpleScaling, StepScaling or TargetTrackingScaling
+     */
+    public static void putScalingPolicies(final AmazonAutoScaling aas,
+                                          final AmazonCloudWatch cloudWatch,
+                                          final ScalingSettings settings,
+                                          final String policyType) {
+        boolean alarms = false;
+        for (PutScalingPolicyRequest policy : scalingPolicyRequests(settings, policyType)) {
+            String arn = aas.putScalingPolicy(policy).getPolicyARN();
+            PutMetricAlarmRequest alarm = alarmRequest(settings, policy.getPolicyName(), arn);
+            if (alarm != null) {
+                cloudWatch.putMetricAlarm(alarm);
+                alarms = true;
+            }
+        }
+        System.out.println(alarms ? "cw created" : "target tracking policy created");
+    }
 
-        PutScalingPolicyRequest scaleIn = new PutScalingPolicyRequest()
+    /**
+     * Scaling policies a configuration asks for.
+     *
+     * @param settings   scaling settings
+     * @param policyType SimpleScaling, StepScaling or TargetTrackingScaling
+     * @return policy requests
+     */
+    static List<PutScalingPolicyRequest> scalingPolicyRequests(final ScalingSettings settings,
+                                                               final String policyType) {
+        switch (policyType) {
+            case "SimpleScaling":
+                return Arrays.asList(
+                        new PutScalingPolicyRequest()
                                                 .withAdjustmentType("ChangeInCapacity")
                                                 .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
-                                                .withCooldown(COOLDOWN_PERIOD_SCALEIN)
-                                                .withScalingAdjustment(SCALING_IN_ADJUSTMENT)
-                                                .withPolicyName("scaleIn");
-
-        PutScalingPolicyRequest scaleOut = new PutScalingPolicyRequest()
+                                                .withCooldown(settings.getScaleInCooldown())
+                                                .withScalingAdjustment(settings.getScaleInAdjustment())
+                                                .withPolicyName("scaleIn"),
+                        new PutScalingPolicyRequest()
                                                 .withAdjustmentType("ChangeInCapacity")
                                                 .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
-                                                .withCooldown(COOLDOWN_PERIOD_SCALEOUT)
-                                                .withScalingAdjustment(SCALING_OUT_ADJUSTMENT)
-                                                .withPolicyName("scaleOut");
-
-        String inArn = aas.putScalingPolicy(scaleIn).getPolicyARN();
-        String outArn = aas.putScalingPolicy(scaleOut).getPolicyARN();
-
-        Cloudwatch.createScaleInAlarm(cloudWatch, inArn);
-        Cloudwatch.createScaleOutAlarm(cloudWatch, outArn);
-        
-        System.out.println("cw created");
-        
+                                                .withCooldown(settings.getScaleOutCooldown())
+                                                .withScalingAdjustment(settings.getScaleOutAdjustment())
+                                                .withPolicyName("scaleOut"));
+            case "StepScaling":
+                return Arrays.asList(
+                        stepScalingPolicy(settings, "scaleIn", settings.getScaleInSteps()),
+                        stepScalingPolicy(settings, "scaleOut", settings.getScaleOutSteps()));
+            case "TargetTrackingScaling":
+                return Arrays.asList(new PutScalingPolicyRequest()
+                        .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                        .withPolicyName("targetTracking")
+                        .withPolicyType("TargetTrackingScaling")
+                        .withEstimatedInstanceWarmup(settings.getEstimatedInstanceWarmup())
+                        .withTargetTrackingConfiguration(new TargetTrackingConfiguration()
+                                .withPredefinedMetricSpecification(new PredefinedMetricSpecification()
+                                        .withPredefinedMetricType("ASGAverageCPUUtilization"))
+                                .withTargetValue(settings.getTargetTrackingCpu())));
+            default:
+                throw new IllegalArgumentException("Unknown scaling policy type " + policyType);
+        }
+    }
+
+    /**
+     * Alarm driving a scaling policy.
+     *
+     * @param settings   scaling settings
+     * @param policyName policy name
+     * @param policyArn  policy ARN
+     * @return alarm request, null when AWS owns the alarms of the policy
+     */
+    static PutMetricAlarmRequest alarmRequest(final ScalingSettings settings,
+                                              final String policyName, final String policyArn) {
+        switch (policyName) {
+            case "scaleIn":
+                return Cloudwatch.scaleInAlarmRequest(settings, policyArn);
+            case "scaleOut":
+                return Cloudwatch.scaleOutAlarmRequest(settings, policyArn);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Build a step scaling policy.
+     *
+     * @param settings   scaling settings
+     * @param policyName policy name
+     * @param steps      steps, bounds relative to the alarm threshold
+     * @return policy request
+     */
+    private static PutScalingPolicyRequest stepScalingPolicy(final ScalingSettings settings,
+                                                             final String policyName,
+                                                             final List<StepAdjustment> steps) {
+        return new PutScalingPolicyRequest()
+                .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                .withPolicyName(policyName)
+                .withPolicyType("StepScaling")
+                .withAdjustmentType("ChangeInCapacity")
+                .withMetricAggregationType("Average")
+                .withEstimatedInstanceWarmup(settings.getEstimatedInstanceWarmup())
+                .withStepAdjustments(steps);
+    }
+
+    /**
+     * Create the warm pool of the group.
+     * Scale outs start its stopped instances, which skip the AMI boot and
+     * initialization, and the pool refills in the background.
+     *
+     * @param aas AAS client
+     */
+    public static void putWarmPool(final AmazonAutoScaling aas) {
+        aas.putWarmPool(warmPoolRequest(ScalingSettings.current()));
+        System.out.println("warm pool created");
+    }
+
+    /**
+     * Warm pool a configuration asks for.
+     *
+     * @param settings scaling settings
+     * @return request
+     */
+    static PutWarmPoolRequest warmPoolRequest(final ScalingSettings settings) {
+        PutWarmPoolRequest request = new PutWarmPoolRequest()
+                .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                .withMinSize(settings.getWarmPoolMinSize())
+                .withPoolState("Stopped");
+        if (settings.getWarmPoolMaxPreparedCapacity() >= 0) {
+            request.setMaxGroupPreparedCapacity(settings.getWarmPoolMaxPreparedCapacity());
+        }
+        return request;
+    }
+
+    /**
+     * Delete the warm pool of the group and its instances, if there is one.
+     *
+     * @param aas AAS client
+     */
+    static void deleteWarmPool(final AmazonAutoScaling aas) {
+        if (aas.describeWarmPool(new DescribeWarmPoolRequest()
+                .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME))
+                .getWarmPoolConfiguration() == null) {
+            return;
+        }
+        aas.deleteWarmPool(new DeleteWarmPoolRequest()
+                .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                .withForceDelete(true));
+        System.out.println("warm pool deleted");
     }
 
     /**
@@ -166,6 +302,8 @@ public final class Aas {
      */
     public static void terminateAutoScalingGroup(final AmazonAutoScaling aas) throws InterruptedException{
         //TODO: Implement this method
+        // Pool instances are not group instances, they would keep the group alive
+        deleteWarmPool(aas);
         UpdateAutoScalingGroupRequest updateAutoScalingGroupRequest = new UpdateAutoScalingGroupRequest()
                                                                         .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
                                                                         .withDesiredCapacity(0)
@@ -173,17 +311,11 @@ public final class Aas {
                                                                         .withMinSize(0);
         aas.updateAutoScalingGroup(updateAutoScalingGroupRequest);
 
-        DescribeAutoScalingGroupsRequest autoScalingGroupsRequest = new DescribeAutoScalingGroupsRequest()
-                                                                        .withAutoScalingGroupNames(AutoScale.AUTO_SCALING_GROUP_NAME);
-        List<Instance> instances = aas.describeAutoScalingGroups(autoScalingGroupsRequest).getAutoScalingGroups().get(0).getInstances();  
-        while (!instances.isEmpty()) {
-                Thread.sleep(800);
-                instances = aas.describeAutoScalingGroups(autoScalingGroupsRequest).getAutoScalingGroups().get(0).getInstances();
-        } 
-        Thread.sleep(30000);                 
-        DeleteAutoScalingGroupRequest request = new DeleteAutoScalingGroupRequest()
+        Waiters.await(Waiters.autoScalingGroupDrained(aas, AutoScale.AUTO_SCALING_GROUP_NAME));
+        final DeleteAutoScalingGroupRequest request = new DeleteAutoScalingGroupRequest()
                                                 .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME);
-        DeleteAutoScalingGroupResult response = aas.deleteAutoScalingGroup(request);
+        // The last scaling activity may still be finishing once the group is empty
+        Retries.retryWhileInUse("delete ASG", () -> aas.deleteAutoScalingGroup(request));
     }
 
     /**
@@ -191,10 +323,10 @@ public final class Aas {
      *
      * @param aas AAS client
      */
-    public static void deleteLaunchConfiguration(final AmazonAutoScaling aas) {
+    public static void deleteLaunchConfiguration(final AmazonAutoScaling aas) throws InterruptedException {
         //TODO: Implement this method
-        DeleteLaunchConfigurationRequest request = new DeleteLaunchConfigurationRequest()
+        final DeleteLaunchConfigurationRequest request = new DeleteLaunchConfigurationRequest()
                                                         .withLaunchConfigurationName(AutoScale.LAUNCH_CONFIGURATION_NAME);
-        DeleteLaunchConfigurationResult response = aas.deleteLaunchConfiguration(request);
+        Retries.retryWhileInUse("delete launch configuration", () -> aas.deleteLaunchConfiguration(request));
     }
 }
@@ -1,12 +1,11 @@
 package autoscaling;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.FileUtils;
 import org.ini4j.Ini;
 
 import utilities.HttpRequest;
@@ -18,14 +17,25 @@ public final class Api {
     /**
      * Submission Password.
      */
-    private static final String SUBMISSION_PASSWORD
+    static final String SUBMISSION_PASSWORD
             = System.getenv("TPZ_PASSWORD");
     /**
      * AndrewID.
      */
-    private static final String ANDREW_ID
+    static final String ANDREW_ID
             = System.getenv("TPZ_USERNAME");
 
+    /**
+     * Log name in a Load Generator response.
+     */
+    private static final Pattern TEST_LOG = Pattern.compile("test\\.([0-9]*)\\.log");
+
+    /**
+     * Log tailers keyed by log URL.
+     */
+    private static final Map<String, LogTailer> LOG_TAILERS
+            = new ConcurrentHashMap<>();
+
     /**
      * Unused Constructor.
      */
@@ -104,6 +114,7 @@ public final class Api {
 
     /**
      * Get the latest version of the log.
+     * Only the part of the log added since the previous call is fetched.
      *
      * @param loadGeneratorDNS DNS Name of load generator
      * @param testId           TestID String
@@ -113,12 +124,31 @@ public final class Api {
     public static Ini getIniUpdate(final String loadGeneratorDNS,
                                    final String testId)
             throws IOException {
-        String response = HttpRequest.sendGet("http://"
-                + loadGeneratorDNS + "/log?name=test." + testId + ".log");
-        File log = new File(testId + ".log");
-        FileUtils.writeStringToFile(log, response, Charset.defaultCharset());
-        Ini ini = new Ini(log);
-        return ini;
+        return getLogTailer(loadGeneratorDNS, testId).poll();
+    }
+
+    /**
+     * Get the tailer of a test log.
+     *
+     * @param loadGeneratorDNS DNS Name of load generator
+     * @param testId           TestID String
+     * @return shared tailer of the log
+     */
+    public static LogTailer getLogTailer(final String loadGeneratorDNS,
+                                         final String testId) {
+        String url = "http://" + loadGeneratorDNS
+                + "/log?name=test." + testId + ".log";
+        return LOG_TAILERS.computeIfAbsent(url, key -> new LogTailer(key, null));
+    }
+
+    /**
+     * Forget the tailer of a log whose test has ended, and close it.
+     *
+     * @param tailer tailer from {@link #getLogTailer(String, String)}
+     */
+    public static void closeLogTailer(final LogTailer tailer) {
+        LOG_TAILERS.remove(tailer.getUrl(), tailer);
+        tailer.close();
     }
 
     /**
@@ -128,8 +158,7 @@ public final class Api {
      * @return TestID string
      */
     public static String getTestId(final String response) {
-        Pattern pattern = Pattern.compile("test\\.([0-9]*)\\.log");
-        Matcher matcher = pattern.matcher(response);
+        Matcher matcher = TEST_LOG.matcher(response);
         if (matcher.find()) {
             return matcher.group(1);
         }
@@ -0,0 +1,192 @@
+package autoscaling;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.ini4j.Ini;
+
+/**
+ * Non-blocking variant of {@link Api}.
+ * Calls return futures and retries are scheduled instead of slept, so a
+ * single thread can drive many load generators at the same time.
+ */
+public final class AsyncApi {
+
+    /**
+     * Connect timeout.
+     */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * Request timeout.
+     */
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Give up retrying after this long, the LG may take minutes to boot.
+     */
+    private static final long RETRY_DEADLINE_MILLIS = 15 * 60 * 1000;
+
+    /**
+     * Backoff between retries of a failed call.
+     */
+    private static final Backoff RETRY_BACKOFF = new Backoff(AutoScale.RETRY_DELAY_MILLIS, 5000, 2.0, 0.2);
+
+    /**
+     * Shared non-blocking client.
+     */
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .build();
+
+    /**
+     * Unused Constructor.
+     */
+    private AsyncApi() {
+    }
+
+    /**
+     * Supply LG with TPZ credentials.
+     *
+     * @param loadGeneratorDNS DNS Name of load generator
+     * @return future completed with the server response
+     */
+    public static CompletableFuture<String> authenticate(final String loadGeneratorDNS) {
+        return getWithRetry("http://" + loadGeneratorDNS
+                + "/password?passwd=" + Api.SUBMISSION_PASSWORD
+                + "&username=" + Api.ANDREW_ID, true);
+    }
+
+    /**
+     * Warm up an ELB.
+     * @param loadGeneratorDNS LG DNS name
+     * @param loadBalancerDNS ELB DNS Name
+     * @return future completed with the server response
+     */
+    public static CompletableFuture<String> initializeWarmup(final String loadGeneratorDNS,
+                                                             final String loadBalancerDNS) {
+        return getWithRetry("http://" + loadGeneratorDNS
+                + "/warmup?dns=" + loadBalancerDNS, false);
+    }
+
+    /**
+     * Start the auto scaling test.
+     * @param loadGeneratorDNS LG DNS name
+     * @param loadBalancerDNS ELB DNS name
+     * @return future completed with the server response
+     */
+    public static CompletableFuture<String> initializeTest(final String loadGeneratorDNS,
+                                                           final String loadBalancerDNS) {
+        return getWithRetry("http://" + loadGeneratorDNS
+                + "/autoscaling?dns=" + loadBalancerDNS, false);
+    }
+
+    /**
+     * Get the latest version of the log.
+     *
+     * @param loadGeneratorDNS DNS Name of load generator
+     * @param testId           TestID String
+     * @return future completed with the log parsed so far
+     */
+    public static CompletableFuture<Ini> getIniUpdate(final String loadGeneratorDNS,
+                                                      final String testId) {
+        return poll(Api.getLogTailer(loadGeneratorDNS, testId));
+    }
+
+    /**
+     * Fetch the new part of a log without blocking.
+     * @param tailer log tailer, not polled by anyone else meanwhile
+     * @return future completed with the log parsed so far
+     */
+    static CompletableFuture<Ini> poll(final LogTailer tailer) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(tailer.getUrl()))
+                .timeout(REQUEST_TIMEOUT)
+                .GET();
+        for (Map.Entry<String, String> header : tailer.nextRequestHeaders().entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        return CLIENT.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    try {
+                        return tailer.accept(new utilities.HttpResponse(
+                                response.statusCode(), response.headers().map(), response.body()));
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * GET a URL until it answers with a success status.
+     * A Load Generator that cannot be connected to yet is retried until the
+     * deadline. A client error status fails at once. Once the request may
+     * have reached the server, i.e. on a server error, a timeout or a
+     * broken connection, only an idempotent call is sent again: the warmup
+     * and test calls start a test on every call.
+     * @param url URL
+     * @param idempotent whether sending the request twice is harmless
+     * @return future completed with the body
+     */
+    private static CompletableFuture<String> getWithRetry(final String url, final boolean idempotent) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+        return attempt(request, idempotent, 0, System.currentTimeMillis() + RETRY_DEADLINE_MILLIS);
+    }
+
+    /**
+     * Send one attempt and schedule the next one on a failure worth retrying.
+     * @param request request
+     * @param idempotent whether sending the request twice is harmless
+     * @param attempt zero based attempt
+     * @param deadline give up after this time
+     * @return future completed with the body
+     */
+    private static CompletableFuture<String> attempt(final HttpRequest request,
+                                                     final boolean idempotent,
+                                                     final int attempt,
+                                                     final long deadline) {
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .handle((response, error) -> {
+                    if (error == null && response.statusCode() < 400) {
+                        System.out.println(response.body());
+                        return CompletableFuture.completedFuture(response.body());
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    boolean retry;
+                    if (cause == null) {
+                        retry = response.statusCode() >= 500 && idempotent;
+                    } else {
+                        retry = cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException
+                                || (idempotent && cause instanceof IOException);
+                    }
+                    long delay = RETRY_BACKOFF.delayMillis(attempt);
+                    if (!retry || System.currentTimeMillis() + delay > deadline) {
+                        CompletableFuture<String> failed = new CompletableFuture<>();
+                        failed.completeExceptionally(cause != null ? cause
+                                : new IOException("HTTP " + response.statusCode()
+                                        + " for " + request.uri()));
+                        return failed;
+                    }
+                    return CompletableFuture.supplyAsync(() -> request,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(same -> attempt(same, idempotent, attempt + 1, deadline));
+                })
+                .thenCompose(Function.identity());
+    }
+}
@@ -2,21 +2,14 @@ package autoscaling;
 
 import java.lang.InterruptedException;
 
-import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.regions.Regions;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.autoscaling.AmazonAutoScaling;
-import com.amazonaws.services.autoscaling.AmazonAutoScalingClientBuilder;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
-import com.amazonaws.services.cloudwatch.AmazonCloudWatchClientBuilder;
 import com.amazonaws.services.ec2.AmazonEC2;
-import com.amazonaws.services.ec2.AmazonEC2ClientBuilder;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Tag;
 import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
-import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancingClientBuilder;
 
-import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeInstancesResult;
 import com.amazonaws.services.ec2.model.Reservation;
@@ -31,7 +24,6 @@ import com.amazonaws.services.ec2.model.RunInstancesResult;
 import com.amazonaws.services.ec2.model.RunInstancesRequest;
 import com.amazonaws.services.ec2.model.CreateTagsRequest;
 import com.amazonaws.services.ec2.model.CreateTagsResult;
-import com.amazonaws.services.ec2.model.Tag;
 import com.amazonaws.services.ec2.model.DeleteSecurityGroupRequest;
 import com.amazonaws.services.ec2.model.DeleteSecurityGroupResult;
 import com.amazonaws.services.ec2.model.DescribeInstanceStatusRequest;
@@ -41,8 +33,24 @@ import com.amazonaws.services.elasticloadbalancingv2.model.LoadBalancer;
 import com.amazonaws.services.ec2.model.TagSpecification;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import org.ini4j.Ini;
 import utilities.Configuration;
@@ -70,7 +78,7 @@ public final class AutoScale {
     /**
      * LG Security group Name.
      */
-    private static final String LG_SECURITY_GROUP =
+    static final String LG_SECURITY_GROUP =
             "lgSecurityGroup";
     /**
      * ELB/ASG Security group Name.
@@ -78,18 +86,6 @@ public final class AutoScale {
     static final String ELBASG_SECURITY_GROUP =
             "ELBASGSecurityGroup";
 
-    /**
-     * Load Generator AMI.
-     */
-    private static final String LOAD_GENERATOR_AMI_ID
-            = configuration.getString("load_generator_ami");
-
-    /**
-     * Web Service AMI.
-     */
-    static final String WEB_SERVICE
-            = configuration.getString("web_service_ami");
-
     /**
      * Instance Type Name.
      */
@@ -141,61 +137,134 @@ public final class AutoScale {
      */
     public static final int RETRY_DELAY_MILLIS = 100;
 
+    /**
+     * Expected length of the warmup test in minutes.
+     */
+    public static final int WARMUP_MINUTES
+            = configuration.getInt("warmup_minutes");
+
+    /**
+     * Expected length of the auto scaling test in minutes.
+     */
+    public static final int TEST_MINUTES
+            = configuration.getInt("test_minutes");
+
+    /**
+     * Number of Load Generators driving the test.
+     */
+    static final int LOAD_GENERATOR_COUNT
+            = configuration.getInt("load_generator_count");
+
+    /**
+     * Monitor shared by all running tests.
+     */
+    private static final TestProgressMonitor TEST_MONITOR = new TestProgressMonitor();
+
+    /**
+     * Number of resources provisioned or deleted at the same time.
+     */
+    private static final int PROVISIONING_THREADS = 4;
+
+    /**
+     * Journal of the current run, replayed when a run restarts. Every
+     * region journals to this name with ".region" appended.
+     */
+    private static final String JOURNAL_FILE
+            = configuration.getString("journal_file");
 
 
     /**
      *  Main method to run the auto-scaling Task2.
+     *  Every declared region gets its own stack, all regions at the same time.
+     *  The clients of all regions are built at once before anything runs.
      * @param args No args required
      */
-    public static void main(final String[] args) throws InterruptedException{
-        AWSCredentialsProvider credentialsProvider =
-                new DefaultAWSCredentialsProviderChain();
-
-        // Create an Amazon Ec2 Client
-        final AmazonEC2 ec2 = AmazonEC2ClientBuilder
-                .standard()
-                .withCredentials(credentialsProvider)
-                .withRegion(Regions.US_EAST_1)
-                .build();
-
-        // Create an Amazon auto scaling client
-        final AmazonAutoScaling aas = AmazonAutoScalingClientBuilder
-                .standard()
-                .withCredentials(credentialsProvider)
-                .withRegion(Regions.US_EAST_1)
-                .build();
-
-        // Create an ELB client
-        final AmazonElasticLoadBalancing elb
-                = AmazonElasticLoadBalancingClientBuilder
-                .standard()
-                .withCredentials(credentialsProvider)
-                .withRegion(Regions.US_EAST_1)
-                .build();
-
-        // Create a cloudwatch client
-        final AmazonCloudWatch cloudWatch = AmazonCloudWatchClientBuilder
-                .standard()
-                .withCredentials(credentialsProvider)
-                .withRegion(Regions.US_EAST_1)
-                .build();
-
-        runAutoScalingTask(ec2, aas, elb, cloudWatch);
+    public static void main(final String[] args)
+            throws InterruptedException, ExecutionException {
+        List<StackRegion> regions = StackRegion.fromConfiguration();
+        List<ClientFactory.Clients> clients = ClientFactory.fromConfiguration().build(regions);
+        runAutoScalingTasks(clients);
+    }
 
+    /**
+     * Run the autoscaling task in every region.
+     * @param clients clients of each region
+     */
+    private static void runAutoScalingTasks(final List<ClientFactory.Clients> clients)
+            throws InterruptedException, ExecutionException {
+        migrateJournal(clients.get(0).getRegion());
+        if (clients.size() == 1) {
+            runAutoScalingTask(clients.get(0), journalFile(clients.get(0).getRegion()));
+            return;
+        }
+
+        // Regions share no resource, each one runs its own task and journal
+        ExecutorService executor = Executors.newFixedThreadPool(clients.size());
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (ClientFactory.Clients region : clients) {
+                runs.add(executor.submit(() -> {
+                    runAutoScalingTask(region, journalFile(region.getRegion()));
+                    return null;
+                }));
+            }
+            ExecutionException failure = null;
+            for (int i = 0; i < clients.size(); i++) {
+                try {
+                    runs.get(i).get();
+                    System.out.println(clients.get(i).getRegion() + ": done");
+                } catch (ExecutionException e) {
+                    System.out.println(clients.get(i).getRegion() + ": failed, " + e.getCause());
+                    failure = failure != null ? failure : e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdown();
+        }
     }
 
     /**
-     * Run the autoscaling task.
-     * @param ec2 EC2
-     * @param aas AAS
-     * @param elb ELB
-     * @param cloudWatch Cloud watch Interface
+     * Journal of the run in a region, the same whether one or more
+     * regions run.
+     * @param region region of the stack
+     * @return journal file
+     */
+    private static Path journalFile(final StackRegion region) {
+        return Paths.get(JOURNAL_FILE + "." + region.getName());
+    }
+
+    /**
+     * Move a journal that a single-region run left under the name without
+     * region to the name of the first region, which was the one it ran in.
+     * An existing journal of that region is kept.
+     * @param region first region
+     */
+    private static void migrateJournal(final StackRegion region) {
+        Path legacy = Paths.get(JOURNAL_FILE);
+        Path target = journalFile(region);
+        if (!Files.exists(legacy) || Files.exists(target)) {
+            return;
+        }
+        try {
+            Files.move(legacy, target, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("journal: moved " + legacy + " to " + target);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot move journal " + legacy + " to " + target, e);
+        }
+    }
+
+    /**
+     * Run the autoscaling task in a region.
+     * @param clients clients of the region
+     * @param journalFile journal of the run in this region
      */
     private static void runAutoScalingTask (
-            AmazonEC2 ec2,
-            AmazonAutoScaling aas,
-            AmazonElasticLoadBalancing elb,
-            AmazonCloudWatch cloudWatch) throws InterruptedException{
+            final ClientFactory.Clients clients,
+            final Path journalFile)
+            throws InterruptedException, ExecutionException {
         // BIG PICTURE TODO: Programmatically provision autoscaling resources
         //   - Create security groups for Load Generator and ASG, ELB
         //   - Provision a Load Generator
@@ -208,167 +277,384 @@ public final class AutoScale {
         //   - Initialize Autoscaling Test
         //   - Terminate Resources
 
-        ResourceConfig resourceConfig = initializeResources(ec2, elb, aas, cloudWatch);
-        resourceConfig = initializeTestResources(ec2, resourceConfig);
+        try (RunJournal journal = RunJournal.open(journalFile)) {
+            runAutoScalingTask(clients.getEc2(), clients.getAutoScaling(), clients.getElb(),
+                    clients.getCloudWatch(), journal, clients.getRegion());
+        }
+    }
+
+    /**
+     * Run the autoscaling task, or what is left of the run in a journal.
+     * A journal of a finished run starts a new run. Otherwise finished
+     * provisioning steps and phases are skipped, unless a step was cut
+     * short: its resource may half exist, so everything the last run
+     * created is torn down first.
+     * In reconcile mode the run adopts the resources that already exist
+     * and keeps them; the journal then holds them as provisioned, so a
+     * later run without reconcile tests and tears them down.
+     * @param ec2 EC2
+     * @param aas AAS
+     * @param elb ELB
+     * @param cloudWatch Cloud watch Interface
+     * @param journal journal of the run
+     * @param region region of the stack
+     */
+    static void runAutoScalingTask(
+            final AmazonEC2 ec2,
+            final AmazonAutoScaling aas,
+            final AmazonElasticLoadBalancing elb,
+            final AmazonCloudWatch cloudWatch,
+            final RunJournal journal,
+            final StackRegion region)
+            throws InterruptedException, ExecutionException {
+        runAutoScalingTask(ec2, aas, elb, cloudWatch, journal, region,
+                System::currentTimeMillis, AutoScale::executeTest);
+    }
+
+    /**
+     * Run the whole autoscaling task against other clients, e.g. those of
+     * a simulated account, in the primary region.
+     * @param ec2 EC2
+     * @param aas AAS
+     * @param elb ELB
+     * @param cloudWatch Cloud watch Interface
+     * @param journalFile journal of the run
+     * @param clock epoch milliseconds of the AWS side
+     * @param test runs the test against the provisioned resources
+     */
+    public static void runAutoScalingTask(
+            final AmazonEC2 ec2,
+            final AmazonAutoScaling aas,
+            final AmazonElasticLoadBalancing elb,
+            final AmazonCloudWatch cloudWatch,
+            final Path journalFile,
+            final LongSupplier clock,
+            final Consumer<ResourceConfig> test)
+            throws InterruptedException, ExecutionException {
+        try (RunJournal journal = RunJournal.open(journalFile)) {
+            runAutoScalingTask(ec2, aas, elb, cloudWatch, journal, StackRegion.primary(), clock, test);
+        }
+    }
+
+    /**
+     * Run the autoscaling task with a given clock and test.
+     * @param ec2 EC2
+     * @param aas AAS
+     * @param elb ELB
+     * @param cloudWatch Cloud watch Interface
+     * @param journal journal of the run
+     * @param region region of the stack
+     * @param clock epoch milliseconds of the AWS side
+     * @param test runs the test against the provisioned resources
+     */
+    private static void runAutoScalingTask(
+            final AmazonEC2 ec2,
+            final AmazonAutoScaling aas,
+            final AmazonElasticLoadBalancing elb,
+            final AmazonCloudWatch cloudWatch,
+            final RunJournal journal,
+            final StackRegion region,
+            final LongSupplier clock,
+            final Consumer<ResourceConfig> test)
+            throws InterruptedException, ExecutionException {
+        if (Reconciler.ENABLED) {
+            // Whatever the last run left is adopted, not resumed
+            journal.reset();
+            ResourceConfig resourceConfig = new Reconciler(ec2, elb, aas, cloudWatch, journal, region)
+                    .reconcile();
+            runTest(ec2, aas, elb, cloudWatch, resourceConfig, clock, test);
+            System.out.println("reconcile: keeping the resources for the next run");
+            return;
+        }
+        if (journal.isClean()) {
+            journal.reset();
+        } else if (journal.getPhase() == null && !journal.unfinished().isEmpty()) {
+            System.out.println("journal: " + journal.unfinished()
+                    + " were interrupted, tearing down the last run");
+            destroy(aas, ec2, elb, cloudWatch, restore(journal), journal, journal.begun());
+            journal.reset();
+        } else {
+            System.out.println("journal: resuming the last run"
+                    + (journal.getPhase() != null ? " after " + journal.getPhase() : ""));
+        }
 
-        executeTest(resourceConfig);
+        ResourceConfig resourceConfig = initializeResources(ec2, elb, aas, cloudWatch, journal, region);
+        if (!RunJournal.TESTED.equals(journal.getPhase())) {
+            runTest(ec2, aas, elb, cloudWatch, resourceConfig, clock, test);
+            journal.phase(RunJournal.TESTED);
+        }
 
-        destroy(aas, ec2, elb, cloudWatch, resourceConfig);
+        destroy(aas, ec2, elb, cloudWatch, resourceConfig, journal, journal.begun());
+        journal.phase(RunJournal.DESTROYED);
     }
 
     /**
-     * Intialize Auto-scaling Task Resources.
+     * Run the test with the metric collector, the configuration reloader,
+     * the readiness prober if enabled and, if enabled, the local scaling
+     * controller or else the predictive scaler. Both set the desired
+     * capacity, so only one of them runs.
+     * @param ec2 EC2
+     * @param aas AAS
+     * @param elb ELB
+     * @param cloudWatch Cloud watch Interface
+     * @param resourceConfig Resource configuration
+     * @param clock epoch milliseconds of the AWS side
+     * @param test runs the test against the provisioned resources
+     */
+    // The reloader, prober, loop and scaler run in the background and are
+    // only declared in the try to be closed when the test ends
+    @SuppressWarnings("try")
+    private static void runTest(final AmazonEC2 ec2,
+                                final AmazonAutoScaling aas,
+                                final AmazonElasticLoadBalancing elb,
+                                final AmazonCloudWatch cloudWatch,
+                                final ResourceConfig resourceConfig,
+                                final LongSupplier clock,
+                                final Consumer<ResourceConfig> test) {
+        long testStart = clock.getAsLong();
+        try (MetricCollector collector = MetricCollector
+                .fromConfiguration(cloudWatch, clock)
+                .watch(AUTO_SCALING_GROUP_NAME, resourceConfig);
+             ConfigReloader reloader = ConfigReloader.fromConfiguration(aas, cloudWatch).start();
+             ReadinessProber prober = ReadinessProber.ENABLED
+                     ? ReadinessProber.fromConfiguration(aas, ec2).start() : null) {
+            if (MetricCollector.COLLECTION_SECONDS > 0) {
+                collector.start(MetricCollector.COLLECTION_SECONDS * 1000L);
+            }
+            if (ControlLoop.ENABLED) {
+                try (ControlLoop loop = ControlLoop
+                        .fromConfiguration(aas, cloudWatch, elb, ec2, resourceConfig, clock).start()) {
+                    test.accept(resourceConfig);
+                }
+            } else if (PredictiveScaler.ENABLED) {
+                try (PredictiveScaler scaler = PredictiveScaler
+                        .fromConfiguration(aas, cloudWatch, resourceConfig.getLoadBalancerArn(), clock).start()) {
+                    test.accept(resourceConfig);
+                }
+            } else {
+                test.accept(resourceConfig);
+            }
+            if (MetricCollector.COLLECTION_SECONDS > 0) {
+                collector.summary(testStart, clock.getAsLong()).forEach(System.out::println);
+            }
+        }
+    }
+
+    /**
+     * Intialize Auto-scaling Task Resources and the Load Generator.
+     * Resources are provisioned as a dependency graph so that independent
+     * steps, e.g. the Load Generator boot and the ELB activation, overlap.
      * @param ec2 EC2 client
      * @param elb ELB Client
      * @param aas AAS Client
      * @param cloudWatch Cloud Watch Client
-     * @return Load Balancer instance
+     * @return Resource configuration
      */
-    private static ResourceConfig initializeResources(final AmazonEC2 ec2,
+    public static ResourceConfig initializeResources(final AmazonEC2 ec2,
                                         final AmazonElasticLoadBalancing elb,
                                         final AmazonAutoScaling aas,
-                                        final AmazonCloudWatch cloudWatch) throws InterruptedException{
-
-        //TODO: Create a target group and a load balancer instance 
-        //      check Elb.java for more information
-        //TODO: Create an auto scaling group. 
-        //      check Aas.java for more information
-        Ec2.createHttpSecurityGroup(ec2, LG_SECURITY_GROUP);
-        Ec2.createHttpSecurityGroup(ec2, ELBASG_SECURITY_GROUP);
-        
-        String lgSecurityGroupId = Ec2.getSecurityGroupId(ec2, LG_SECURITY_GROUP);
-        String elbAndAsgSecurityGroupId = Ec2.getSecurityGroupId(ec2, ELBASG_SECURITY_GROUP);
-
-        TargetGroup targetGroup = Elb.createTargetGroup(elb, ec2);
-        String targetGroupArn = targetGroup.getTargetGroupArn();
+                                        final AmazonCloudWatch cloudWatch)
+            throws InterruptedException, ExecutionException {
+        return initializeResources(ec2, elb, aas, cloudWatch, RunJournal.inMemory(), StackRegion.primary());
+    }
 
-        LoadBalancer loadBalancer = Elb.createLoadBalancer(elb, ec2, elbAndAsgSecurityGroupId, targetGroupArn);
-        
-        String loadBalancerDNS = loadBalancer.getDNSName();
-        String loadBalancerArn = loadBalancer.getLoadBalancerArn();
+    /**
+     * Intialize Auto-scaling Task Resources and the Load Generator,
+     * skipping the steps a journal has as finished.
+     * Steps record what they create in the journal before they finish.
+     * The group spreads over the zones of the load balancer.
+     * @param ec2 EC2 client
+     * @param elb ELB Client
+     * @param aas AAS Client
+     * @param cloudWatch Cloud Watch Client
+     * @param journal journal of the run
+     * @param region region of the stack
+     * @return Resource configuration
+     */
+    static ResourceConfig initializeResources(final AmazonEC2 ec2,
+                                              final AmazonElasticLoadBalancing elb,
+                                              final AmazonAutoScaling aas,
+                                              final AmazonCloudWatch cloudWatch,
+                                              final RunJournal journal,
+                                              final StackRegion region)
+            throws InterruptedException, ExecutionException {
+        ProvisioningGraph graph = new ProvisioningGraph("provisioning")
+                .add("lgSecurityGroup", journaled(journal, "lgSecurityGroup", () ->
+                        Ec2.createHttpSecurityGroup(ec2, LG_SECURITY_GROUP)))
+                .add("elbAsgSecurityGroup", journaled(journal, "elbAsgSecurityGroup", () ->
+                        journal.set("elbAsgSecurityGroupId",
+                                Ec2.createHttpSecurityGroup(ec2, ELBASG_SECURITY_GROUP))))
+                .add("targetGroup", journaled(journal, "targetGroup", () -> {
+                    TargetGroup targetGroup = Elb.createTargetGroup(elb, ec2);
+                    journal.set("targetGroupArn", targetGroup.getTargetGroupArn());
+                }))
+                // IDs and ARNs are journaled as soon as they exist, before any
+                // wait, so that an interrupted step can still be torn down
+                .add("loadGenerator", journaled(journal, "loadGenerator", () -> {
+                    for (Instance loadGenerator : launchLoadGenerators(ec2, region, LOAD_GENERATOR_COUNT,
+                            instanceId -> journal.add("loadGeneratorId", instanceId))) {
+                        journal.add("loadGeneratorDns", loadGenerator.getPublicDnsName());
+                    }
+                }), "lgSecurityGroup")
+                .add("loadBalancer", journaled(journal, "loadBalancer", () -> {
+                    LoadBalancer loadBalancer = Elb.createLoadBalancer(elb, ec2,
+                            journal.get("elbAsgSecurityGroupId"),
+                            journal.get("targetGroupArn"), region.getZones(),
+                            arn -> journal.set("loadBalancerArn", arn));
+                    journal.set("loadBalancerDns", loadBalancer.getDNSName());
+                    for (String zone : Elb.zoneNames(loadBalancer)) {
+                        journal.add("zone", zone);
+                    }
+                }), "elbAsgSecurityGroup", "targetGroup")
+                .add("launchConfiguration", journaled(journal, "launchConfiguration", () ->
+                        Aas.createLaunchConfiguration(aas, region)),
+                        "elbAsgSecurityGroup")
+                // The target group must be attached to the ELB before the ASG uses it
+                .add("autoScalingGroup", journaled(journal, "autoScalingGroup", () ->
+                        Aas.createAutoScalingGroup(aas, cloudWatch,
+                                journal.get("targetGroupArn"), journal.getList("zone"))),
+                        "launchConfiguration", "loadBalancer");
+
+        ExecutorService executor = Executors.newFixedThreadPool(PROVISIONING_THREADS);
+        try {
+            graph.execute(executor);
+        } finally {
+            executor.shutdown();
+        }
+        if (journal.getPhase() == null) {
+            journal.phase(RunJournal.PROVISIONED);
+        }
+        return restore(journal);
+    }
 
-        Aas.createLaunchConfiguration(aas);
-        Aas.createAutoScalingGroup(aas, cloudWatch, targetGroupArn);
+    /**
+     * Wrap a step so that it is skipped when the journal has it as
+     * finished and journaled otherwise.
+     * @param journal journal of the run
+     * @param name step name
+     * @param step work to run
+     * @return journaled step
+     */
+    private static ProvisioningGraph.Step journaled(final RunJournal journal, final String name,
+                                                    final ProvisioningGraph.Step step) {
+        return () -> {
+            if (journal.isDone(name)) {
+                return;
+            }
+            journal.begin(name);
+            step.run();
+            journal.done(name);
+        };
+    }
 
+    /**
+     * Rebuild the resource configuration from a journal.
+     * @param journal journal of the run
+     * @return Resource configuration
+     */
+    static ResourceConfig restore(final RunJournal journal) {
         ResourceConfig resourceConfig = new ResourceConfig();
-        resourceConfig.setTargetGroupArn(targetGroupArn);
-        resourceConfig.setLoadBalancerArn(loadBalancerArn);
-        resourceConfig.setLoadBalancerDns(loadBalancerDNS);
+        resourceConfig.setTargetGroupArn(journal.get("targetGroupArn"));
+        resourceConfig.setLoadBalancerArn(journal.get("loadBalancerArn"));
+        resourceConfig.setLoadBalancerDns(journal.get("loadBalancerDns"));
+        resourceConfig.setLoadGeneratorIDs(journal.getList("loadGeneratorId"));
+        resourceConfig.setLoadGeneratorDnsNames(journal.getList("loadGeneratorDns"));
         return resourceConfig;
     }
 
     /**
-     * Create a load Generator and initialize test.
+     * Launch Load Generators and wait until they run, handing out each
+     * instance ID as soon as the instance exists.
      * @param ec2 EC2 client
-     * @param config Resource configuration
-     * @return config Resource configuration
+     * @param region region of the stack
+     * @param count Load Generators to launch
+     * @param launched called with each instance ID before any wait
+     * @return running Load Generators
      */
-    public static autoscaling.ResourceConfig initializeTestResources(final AmazonEC2 ec2,
-                                                                     final ResourceConfig config) throws InterruptedException {
-
-        //TODO: Create a Load Generator instance
-        TagSpecification tagspecification =  new TagSpecification();
-        tagspecification.setTags(TAGS_LIST);
-        Instance loadGenerator = Ec2.launchInstance(ec2, new TagSpecification().withTags(TAGS_LIST).withResourceType("instance"), 
-            LOAD_GENERATOR_AMI_ID, INSTANCE_TYPE, KEY_NAME, LG_SECURITY_GROUP, true);    
-
-        RunInstancesRequest runLoadGeneratorRequest = new RunInstancesRequest();
-
-        config.setLoadGeneratorDns(loadGenerator.getPublicDnsName());
-        config.setLoadGeneratorID(loadGenerator.getInstanceId());
-        return config;
+    static List<Instance> launchLoadGenerators(final AmazonEC2 ec2, final StackRegion region, final int count,
+                                               final Consumer<String> launched)
+            throws InterruptedException {
+        return Ec2.launchInstances(ec2,
+                new TagSpecification().withTags(TAGS_LIST).withResourceType("instance"),
+                region.getLoadGeneratorAmi(), INSTANCE_TYPE, KEY_NAME, LG_SECURITY_GROUP, true,
+                count, launched);
     }
 
     /**
-     * Execute auto scaling test.
+     * Execute auto scaling test and print the combined timeline.
      * @param resourceConfig Resource configuration
      */
     public static void executeTest(ResourceConfig resourceConfig) {
-        boolean submissionPasswordUpdated = false;
-
-        while (!submissionPasswordUpdated) {
-            try {
-                Api.authenticate(resourceConfig.getLoadGeneratorDns());
-                submissionPasswordUpdated = true;
-            } catch (Exception e) {
-                try {
-                    Thread.sleep(100); //small sleep > 1s
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
+        try {
+            List<Ini> logs = executeTestAsync(resourceConfig).get();
+            if (logs.size() > 1) {
+                for (String line : LogAggregator.format(LogAggregator.merge(logs))) {
+                    System.out.println(line);
                 }
             }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
         }
-
-
-        //Submit ELB DNS to Load Generator for Warmup test 
-        executeWarmUp(resourceConfig);
-
-        //Submit ELB DNS to Load Generator for Auto-scaling test
-        boolean testStarted = false;
-        String response = "";
-        while (!testStarted) {
-            try {
-                response
-                = Api.initializeTest(resourceConfig.getLoadGeneratorDns(),
-                        resourceConfig.getLoadBalancerDns());
-                testStarted = true;
-
-            } catch (Exception e) {
-                //Ignore errors
-            }
-        }
-
-        //Test started
-        waitForTestEnd(resourceConfig, response);
     }
 
+    /**
+     * Execute warm-up and auto scaling test on every Load Generator at once
+     * without blocking. The test only starts once every warm-up is over.
+     * @param resourceConfig Resource configuration
+     * @return future completed with the test log of every Load Generator
+     */
+    public static CompletableFuture<List<Ini>> executeTestAsync(final ResourceConfig resourceConfig) {
+        final String loadBalancerDns = resourceConfig.getLoadBalancerDns();
+        final List<String> loadGenerators = resourceConfig.getLoadGeneratorDnsNames();
+        //Submit ELB DNS to Load Generators for Warmup test
+        return onAll(loadGenerators, dns -> AsyncApi.authenticate(dns)
+                .thenCompose(response -> AsyncApi.initializeWarmup(dns, loadBalancerDns))
+                .thenCompose(response -> waitForTestEnd(dns, response, WARMUP_MINUTES)))
+                //Submit ELB DNS to Load Generators for Auto-scaling test
+                .thenCompose(warmups -> onAll(loadGenerators, dns ->
+                        AsyncApi.initializeTest(dns, loadBalancerDns)
+                        .thenCompose(response -> waitForTestEnd(dns, response, TEST_MINUTES))));
+    }
 
     /**
-     * Execute warm-upp test using API.
-     * @param resourceConfig Resource Configuration
+     * Run a call on every Load Generator at the same time.
+     * @param loadGenerators Load Generator DNS names
+     * @param call asynchronous call
+     * @return future completed with the results in Load Generator order
      */
-    private static void executeWarmUp(ResourceConfig resourceConfig) {
-        boolean warmupStarted = false;
-        String warmupResponse = "";
-        while (!warmupStarted) {
-            try {
-                warmupResponse = Api.initializeWarmup(resourceConfig.getLoadGeneratorDns(),
-                        resourceConfig.getLoadBalancerDns());
-                warmupStarted = true;
-            } catch (Exception e) {
-                try {
-                    Thread.sleep(RETRY_DELAY_MILLIS);
-                } catch (InterruptedException e1) {
-                    e1.printStackTrace();
-                }
-            }
+    private static CompletableFuture<List<Ini>> onAll(final List<String> loadGenerators,
+            final Function<String, CompletableFuture<Ini>> call) {
+        final List<CompletableFuture<Ini>> futures = new ArrayList<>();
+        for (String dns : loadGenerators) {
+            futures.add(call.apply(dns));
         }
-
-        //Test started
-        waitForTestEnd(resourceConfig, warmupResponse);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    List<Ini> results = new ArrayList<>();
+                    for (CompletableFuture<Ini> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
     }
 
-
     /**
      * Wait For Test Execution to be complete.
-     * @param resourceConfig Resource Configuration
+     * @param loadGeneratorDns Load Generator DNS
      * @param response Response from Test Initialization.
+     * @param expectedMinutes Expected test length in minutes.
+     * @return future completed with the final log
      */
-    private static void waitForTestEnd(ResourceConfig resourceConfig, String response) {
-        try {
-            Ini ini = Api.getIniUpdate(resourceConfig.getLoadGeneratorDns(),
-                    Api.getTestId(response));
-            while (ini == null || !ini.containsKey("Test finished")) {
-                ini = Api.getIniUpdate(resourceConfig.getLoadGeneratorDns(),
-                        Api.getTestId(response));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private static CompletableFuture<Ini> waitForTestEnd(String loadGeneratorDns, String response,
+                                                         int expectedMinutes) {
+        return TEST_MONITOR.monitor(loadGeneratorDns, Api.getTestId(response), expectedMinutes);
     }
 
     /**
      * Destroy all resources created for the task.
+     * Independent resources are deleted at the same time; deletions that
+     * AWS rejects while a dependent resource is still going away are
+     * retried with backoff.
      * @param aas AmazonAutoScaling
      * @param ec2 AmazonEC2
      * @param elb AmazonElasticLoadBalancing
@@ -379,40 +665,115 @@ public final class AutoScale {
                                final AmazonEC2 ec2,
                                final AmazonElasticLoadBalancing elb,
                                final AmazonCloudWatch cloudWatch,
-                               final ResourceConfig resourceConfig) throws InterruptedException{
-
-        //TODO: Terminate All Resources
-                        
-        Elb.deleteLoadBalancer(elb, resourceConfig.getLoadBalancerArn());
-        System.out.println("lb deleted");
-
-        Aas.terminateAutoScalingGroup(aas);
-        System.out.println("asg deleted");
-
-        Aas.deleteLaunchConfiguration(aas);
-        System.out.println("lc deleted");
-
-
-
-
-        Cloudwatch.deleteAlarms(cloudWatch);
-        System.out.println("cw deleted");
-        TerminateInstancesRequest request = new TerminateInstancesRequest()
-                                                .withInstanceIds(resourceConfig.getLoadGeneratorID());
-        ec2.terminateInstances(request);
-        String dns = resourceConfig.getLoadGeneratorDns();
+                               final ResourceConfig resourceConfig)
+            throws InterruptedException, ExecutionException {
+        destroy(aas, ec2, elb, cloudWatch, resourceConfig, RunJournal.inMemory(), null);
+    }
 
-        while(!dns.equals("")) {
-            Thread.sleep(800);
-            dns = Ec2.getInstance(ec2, resourceConfig.getLoadGeneratorID()).getPublicDnsName();
+    /**
+     * Destroy the resources of the provisioning steps that started,
+     * skipping deletions the journal has as finished.
+     * @param aas AmazonAutoScaling
+     * @param ec2 AmazonEC2
+     * @param elb AmazonElasticLoadBalancing
+     * @param cloudWatch AmazonCloudWatch
+     * @param resourceConfig Resource Configuration
+     * @param journal journal of the run
+     * @param provisioned provisioning steps that started, null for all of them
+     */
+    static void destroy(final AmazonAutoScaling aas,
+                        final AmazonEC2 ec2,
+                        final AmazonElasticLoadBalancing elb,
+                        final AmazonCloudWatch cloudWatch,
+                        final ResourceConfig resourceConfig,
+                        final RunJournal journal,
+                        final Set<String> provisioned)
+            throws InterruptedException, ExecutionException {
+
+        ProvisioningGraph graph = new ProvisioningGraph("teardown");
+        addTeardown(graph, journal, provisioned, "loadBalancer", () ->
+                Elb.deleteLoadBalancer(elb, resourceConfig.getLoadBalancerArn()));
+        addTeardown(graph, journal, provisioned, "autoScalingGroup", "alarms", () ->
+                Cloudwatch.deleteAlarms(cloudWatch));
+        addTeardown(graph, journal, provisioned, "autoScalingGroup", () ->
+                Aas.terminateAutoScalingGroup(aas));
+        addTeardown(graph, journal, provisioned, "loadGenerator", () -> {
+            if (DELETE_LOAD_GENERATOR) {
+                Ec2.terminateInstances(ec2, resourceConfig.getLoadGeneratorIDs());
+            }
+        });
+        addTeardown(graph, journal, provisioned, "launchConfiguration", () ->
+                Aas.deleteLaunchConfiguration(aas),
+                "autoScalingGroup");
+        addTeardown(graph, journal, provisioned, "targetGroup", () ->
+                Elb.deleteTargetGroup(elb, resourceConfig.getTargetGroupArn()),
+                "loadBalancer", "autoScalingGroup");
+        addTeardown(graph, journal, provisioned, "elbAsgSecurityGroup", () ->
+                Ec2.deleteSecurityGroup(ec2, ELBASG_SECURITY_GROUP),
+                "loadBalancer", "autoScalingGroup");
+        addTeardown(graph, journal, provisioned, "lgSecurityGroup", () ->
+                Ec2.deleteSecurityGroup(ec2, LG_SECURITY_GROUP),
+                "loadGenerator");
+
+        ExecutorService executor = Executors.newFixedThreadPool(PROVISIONING_THREADS);
+        try {
+            graph.execute(executor);
+        } finally {
+            executor.shutdown();
         }
+    }
 
-        Ec2.deleteSecurityGroup(ec2, ELBASG_SECURITY_GROUP);
-        Thread.sleep(10000);
-        Ec2.deleteSecurityGroup(ec2, LG_SECURITY_GROUP);
+    /**
+     * Add the teardown of a provisioning step's resource.
+     * @param graph teardown graph
+     * @param journal journal of the run
+     * @param provisioned provisioning steps that started, null for all of them
+     * @param name provisioning step, also the teardown node name
+     * @param step deletion
+     * @param dependencies teardown nodes that must finish first, if present
+     */
+    private static void addTeardown(final ProvisioningGraph graph, final RunJournal journal,
+                                    final Set<String> provisioned, final String name,
+                                    final ProvisioningGraph.Step step, final String... dependencies) {
+        addTeardown(graph, journal, provisioned, name, name, step, dependencies);
+    }
 
-        Elb.deleteTargetGroup(elb, resourceConfig.getTargetGroupArn());
-        System.out.println("tg deleted");
+    /**
+     * Add the teardown of a resource created by a provisioning step.
+     * Nothing is added when the step never started.
+     * @param graph teardown graph
+     * @param journal journal of the run
+     * @param provisioned provisioning steps that started, null for all of them
+     * @param resource provisioning step that creates the resource
+     * @param name teardown node name
+     * @param step deletion
+     * @param dependencies teardown nodes that must finish first, if present
+     */
+    private static void addTeardown(final ProvisioningGraph graph, final RunJournal journal,
+                                    final Set<String> provisioned, final String resource,
+                                    final String name, final ProvisioningGraph.Step step,
+                                    final String... dependencies) {
+        if (provisioned != null && !provisioned.contains(resource)) {
+            return;
+        }
+        ProvisioningGraph.Step deletion = step;
+        if (journal.unfinished().contains(resource) || journal.unfinished().contains("teardown:" + name)) {
+            // A step was cut short: its resource may never have been created or may be gone already
+            deletion = () -> {
+                try {
+                    step.run();
+                } catch (AmazonServiceException e) {
+                    System.out.println(name + ": nothing to delete (" + e.getMessage() + ")");
+                }
+            };
+        }
+        List<String> present = new ArrayList<>();
+        for (String dependency : dependencies) {
+            if (graph.contains(dependency)) {
+                present.add(dependency);
+            }
+        }
+        graph.add(name, journaled(journal, "teardown:" + name, deletion), present.toArray(new String[0]));
     }
 
 }
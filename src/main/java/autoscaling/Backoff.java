@@ -0,0 +1,59 @@
+package autoscaling;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter.
+ */
+public final class Backoff {
+
+    /**
+     * Delay before the first retry.
+     */
+    private final long initialMillis;
+
+    /**
+     * Upper bound of a single delay.
+     */
+    private final long maxMillis;
+
+    /**
+     * Growth factor between attempts.
+     */
+    private final double multiplier;
+
+    /**
+     * Fraction of the delay that is randomized, between 0 and 1.
+     */
+    private final double jitter;
+
+    /**
+     * Create a backoff policy.
+     * @param initialMillis delay before the first retry
+     * @param maxMillis upper bound of a single delay
+     * @param multiplier growth factor between attempts
+     * @param jitter randomized fraction of each delay
+     */
+    public Backoff(final long initialMillis,
+                   final long maxMillis,
+                   final double multiplier,
+                   final double jitter) {
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Delay to wait before the given attempt.
+     * @param attempt zero based retry attempt
+     * @return delay in milliseconds
+     */
+    public long delayMillis(final int attempt) {
+        double delay = Math.min(maxMillis,
+                initialMillis * Math.pow(multiplier, attempt));
+        double spread = delay * jitter;
+        return (long) (delay - spread
+                + ThreadLocalRandom.current().nextDouble() * spread);
+    }
+}
@@ -0,0 +1,240 @@
+package autoscaling;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Polls one resource type on a shared scheduler until conditions hold.
+ * All waits that are due on a tick are served by a single batched
+ * describe call; each wait backs off on its own until its deadline.
+ * A describe error that retrying cannot fix, e.g. AccessDenied or a
+ * ValidationError, fails the due waits at once.
+ *
+ * @param <K> resource key, e.g. an instance ID
+ * @param <V> described resource
+ */
+public final class BatchedPoller<K, V> {
+
+    /**
+     * Waits due within this window of a tick are polled early on that tick,
+     * so jittered waits still share describe calls.
+     */
+    private static final long COALESCE_MILLIS = 250;
+
+    /**
+     * A pending wait.
+     */
+    private final class Wait {
+        /**
+         * Resource key.
+         */
+        private final K key;
+        /**
+         * Condition the resource has to satisfy.
+         */
+        private final Predicate<V> condition;
+        /**
+         * Future completed with the resource.
+         */
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        /**
+         * Deadline in milliseconds.
+         */
+        private final long deadline;
+        /**
+         * Number of polls so far.
+         */
+        private int attempt;
+        /**
+         * Time of the next poll in milliseconds.
+         */
+        private long dueAt;
+
+        Wait(final K key, final Predicate<V> condition, final long deadline) {
+            this.key = key;
+            this.condition = condition;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Resource type name used in errors.
+     */
+    private final String name;
+
+    /**
+     * Shared scheduler.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Batched describe call, absent keys are left out of the result.
+     */
+    private final Function<Set<K>, Map<K, V>> describe;
+
+    /**
+     * Backoff between polls of one wait.
+     */
+    private final Backoff backoff;
+
+    /**
+     * Waits that are not being polled right now.
+     */
+    private final List<Wait> waits = new ArrayList<>();
+
+    /**
+     * Next scheduled tick.
+     */
+    private ScheduledFuture<?> nextTick;
+
+    /**
+     * Time of the next scheduled tick in milliseconds.
+     */
+    private long nextTickAt = Long.MAX_VALUE;
+
+    /**
+     * Create a poller.
+     * @param name resource type name
+     * @param scheduler shared scheduler
+     * @param describe batched describe call
+     * @param backoff backoff between polls
+     */
+    public BatchedPoller(final String name,
+                         final ScheduledExecutorService scheduler,
+                         final Function<Set<K>, Map<K, V>> describe,
+                         final Backoff backoff) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.describe = describe;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Wait for a resource to satisfy a condition.
+     * @param key resource key
+     * @param condition condition on the described resource
+     * @param timeoutMillis time to wait before failing
+     * @return future completed with the resource, or failed on timeout
+     */
+    public CompletableFuture<V> await(final K key,
+                                      final Predicate<V> condition,
+                                      final long timeoutMillis) {
+        long now = System.currentTimeMillis();
+        Wait wait = new Wait(key, condition, now + timeoutMillis);
+        wait.dueAt = now;
+        synchronized (this) {
+            waits.add(wait);
+            scheduleLocked();
+        }
+        return wait.future;
+    }
+
+    /**
+     * Poll every due wait with one describe call.
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        List<Wait> due = new ArrayList<>();
+        synchronized (this) {
+            nextTick = null;
+            nextTickAt = Long.MAX_VALUE;
+            for (Iterator<Wait> it = waits.iterator(); it.hasNext();) {
+                Wait wait = it.next();
+                if (wait.future.isDone()) {
+                    it.remove();
+                } else if (wait.dueAt <= now + COALESCE_MILLIS) {
+                    due.add(wait);
+                    it.remove();
+                }
+            }
+        }
+        if (!due.isEmpty()) {
+            Set<K> keys = new LinkedHashSet<>();
+            for (Wait wait : due) {
+                keys.add(wait.key);
+            }
+            Map<K, V> described;
+            RuntimeException failure = null;
+            try {
+                described = describe.apply(keys);
+            } catch (RuntimeException e) {
+                described = Collections.emptyMap();
+                failure = e;
+            }
+            now = System.currentTimeMillis();
+            List<Wait> pending = new ArrayList<>();
+            for (Wait wait : due) {
+                V value = described.get(wait.key);
+                if (value != null && wait.condition.test(value)) {
+                    wait.future.complete(value);
+                } else if (failure != null && !isRetryable(failure)) {
+                    wait.future.completeExceptionally(failure);
+                } else if (now >= wait.deadline) {
+                    wait.future.completeExceptionally(new IllegalStateException(
+                            "Timed out waiting for " + name + " " + wait.key, failure));
+                } else {
+                    wait.dueAt = Math.min(wait.deadline,
+                            now + backoff.delayMillis(wait.attempt++));
+                    pending.add(wait);
+                }
+            }
+            synchronized (this) {
+                waits.addAll(pending);
+            }
+        }
+        synchronized (this) {
+            scheduleLocked();
+        }
+    }
+
+    /**
+     * Whether a describe error may go away by polling again: throttling,
+     * server errors, a resource not visible yet right after its creation,
+     * or a failure on the client side, e.g. the network.
+     * @param failure describe error
+     * @return true to keep polling
+     */
+    static boolean isRetryable(final RuntimeException failure) {
+        if (!(failure instanceof AmazonServiceException)) {
+            return true;
+        }
+        AmazonServiceException error = (AmazonServiceException) failure;
+        return RetryUtils.isThrottlingException(error)
+                || error.getStatusCode() >= 500
+                || (error.getErrorCode() != null && error.getErrorCode().contains("NotFound"));
+    }
+
+    /**
+     * Schedule a tick for the earliest due wait unless one comes sooner.
+     */
+    private void scheduleLocked() {
+        long earliest = Long.MAX_VALUE;
+        for (Wait wait : waits) {
+            earliest = Math.min(earliest, wait.dueAt);
+        }
+        if (earliest == Long.MAX_VALUE || earliest >= nextTickAt) {
+            return;
+        }
+        if (nextTick != null) {
+            nextTick.cancel(false);
+        }
+        nextTickAt = earliest;
+        nextTick = scheduler.schedule(this::tick,
+                Math.max(0, earliest - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS);
+    }
+}
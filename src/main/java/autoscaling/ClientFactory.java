@@ -0,0 +1,294 @@
+package autoscaling;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricDatum;
+import com.amazonaws.services.cloudwatch.model.PutMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Builds the AWS clients of every region at once.
+ * All clients share one tuned {@link ClientConfiguration} and one
+ * credentials chain. The chain is resolved up front, next to the client
+ * builds instead of inside the first call, and then sticks to the
+ * provider that answered, which caches and refreshes the credentials.
+ * The time from JVM start to the first answered API call of each region
+ * is printed and, as soon as that call answers, published as a CloudWatch
+ * metric of the region, with the region as a dimension.
+ */
+public final class ClientFactory {
+
+    /**
+     * Namespace of the startup metric when none is configured.
+     */
+    private static final String DEFAULT_STARTUP_NAMESPACE = "AutoScale";
+
+    /**
+     * Namespace of the startup metric, empty to only print it.
+     */
+    private static final String STARTUP_NAMESPACE = configuration.has("startup_metric_namespace")
+            ? configuration.getString("startup_metric_namespace") : DEFAULT_STARTUP_NAMESPACE;
+
+    /**
+     * Clients of one region.
+     */
+    public static final class Clients {
+
+        /**
+         * Region of the clients.
+         */
+        private final StackRegion region;
+
+        /**
+         * EC2 client.
+         */
+        private final AmazonEC2 ec2;
+
+        /**
+         * AAS client.
+         */
+        private final AmazonAutoScaling autoScaling;
+
+        /**
+         * ELB client.
+         */
+        private final AmazonElasticLoadBalancing elb;
+
+        /**
+         * CloudWatch client.
+         */
+        private final AmazonCloudWatch cloudWatch;
+
+        /**
+         * Group the clients of a region.
+         * @param region region of the clients
+         * @param ec2 EC2 client
+         * @param autoScaling AAS client
+         * @param elb ELB client
+         * @param cloudWatch CloudWatch client
+         */
+        public Clients(final StackRegion region, final AmazonEC2 ec2, final AmazonAutoScaling autoScaling,
+                       final AmazonElasticLoadBalancing elb, final AmazonCloudWatch cloudWatch) {
+            this.region = region;
+            this.ec2 = ec2;
+            this.autoScaling = autoScaling;
+            this.elb = elb;
+            this.cloudWatch = cloudWatch;
+        }
+
+        public StackRegion getRegion() {
+            return region;
+        }
+
+        public AmazonEC2 getEc2() {
+            return ec2;
+        }
+
+        public AmazonAutoScaling getAutoScaling() {
+            return autoScaling;
+        }
+
+        public AmazonElasticLoadBalancing getElb() {
+            return elb;
+        }
+
+        public AmazonCloudWatch getCloudWatch() {
+            return cloudWatch;
+        }
+    }
+
+    /**
+     * Credentials shared by all clients.
+     */
+    private final AWSCredentialsProvider credentialsProvider;
+
+    /**
+     * Connection settings shared by all clients.
+     */
+    private final ClientConfiguration clientConfiguration;
+
+    /**
+     * Epoch milliseconds the startup is measured from.
+     */
+    private final long startMillis;
+
+    /**
+     * Milliseconds from the start to the first answered call of any
+     * region, -1 before it.
+     */
+    private final AtomicLong timeToFirstCall = new AtomicLong(-1);
+
+    /**
+     * Handler recording the first answered call of the clients of a region
+     * and publishing it through the CloudWatch client of the region.
+     * Publishing runs apart from the call, which it does not hold up.
+     * @param region region of the clients
+     * @param publisher CloudWatch client of the region, once built
+     * @return handler
+     */
+    private RequestHandler2 firstCall(final StackRegion region,
+                                      final CompletableFuture<AmazonCloudWatch> publisher) {
+        final AtomicLong regionFirstCall = new AtomicLong(-1);
+        return new RequestHandler2() {
+            @Override
+            public void afterResponse(final Request<?> request, final Response<?> response) {
+                long elapsed = System.currentTimeMillis() - startMillis;
+                if (!regionFirstCall.compareAndSet(-1, elapsed)) {
+                    return;
+                }
+                timeToFirstCall.compareAndSet(-1, elapsed);
+                System.out.println("startup: first API call in " + region.getName() + " ("
+                        + request.getServiceName() + ") answered " + elapsed + " ms after start");
+                publisher.thenAcceptAsync(cloudWatch -> publish(cloudWatch, region, elapsed));
+            }
+        };
+    }
+
+    /**
+     * Create a factory.
+     * @param credentialsProvider credentials shared by all clients
+     * @param clientConfiguration connection settings shared by all clients
+     * @param startMillis epoch milliseconds the startup is measured from
+     */
+    public ClientFactory(final AWSCredentialsProvider credentialsProvider,
+                         final ClientConfiguration clientConfiguration, final long startMillis) {
+        this.credentialsProvider = credentialsProvider;
+        this.clientConfiguration = clientConfiguration;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Create a factory with the default credentials chain and the
+     * configured connection settings, measuring from JVM start.
+     * @return factory
+     */
+    public static ClientFactory fromConfiguration() {
+        return new ClientFactory(new DefaultAWSCredentialsProviderChain(), clientConfiguration(),
+                ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * Connection settings the configuration asks for. Retries back off
+     * exponentially on throttling and server errors; the SDK defaults keep
+     * a small pool and no keep-alive, which the pollers and the metric
+     * collector outgrow.
+     * @return client configuration
+     */
+    static ClientConfiguration clientConfiguration() {
+        return new ClientConfiguration()
+                .withMaxConnections(configuration.getInt("client_max_connections"))
+                .withConnectionTimeout(configuration.getInt("client_connection_timeout_millis"))
+                .withSocketTimeout(configuration.getInt("client_socket_timeout_millis"))
+                .withTcpKeepAlive(configuration.getBoolean("client_tcp_keep_alive"))
+                .withGzip(configuration.getBoolean("client_gzip"))
+                .withRetryPolicy(PredefinedRetryPolicies.getDefaultRetryPolicyWithCustomMaxRetries(
+                        configuration.getInt("client_max_error_retry")));
+    }
+
+    /**
+     * Build the clients of regions, all at once, while resolving the
+     * credentials.
+     * @param regions regions
+     * @return clients, in the order of the regions
+     * @throws InterruptedException when interrupted while building
+     * @throws ExecutionException when a client or the credentials fail
+     */
+    public List<Clients> build(final List<StackRegion> regions)
+            throws InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(1 + 4 * regions.size(), runnable -> {
+            Thread thread = new Thread(runnable, "client-factory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> credentials = executor.submit(credentialsProvider::getCredentials);
+            List<Future<AmazonEC2>> ec2 = new ArrayList<>();
+            List<Future<AmazonAutoScaling>> autoScaling = new ArrayList<>();
+            List<Future<AmazonElasticLoadBalancing>> elb = new ArrayList<>();
+            List<Future<AmazonCloudWatch>> cloudWatch = new ArrayList<>();
+            List<CompletableFuture<AmazonCloudWatch>> publishers = new ArrayList<>();
+            for (StackRegion region : regions) {
+                CompletableFuture<AmazonCloudWatch> publisher = new CompletableFuture<>();
+                publishers.add(publisher);
+                RequestHandler2 firstCall = firstCall(region, publisher);
+                ec2.add(executor.submit(() -> region.ec2(credentialsProvider, clientConfiguration, firstCall)));
+                autoScaling.add(executor.submit(()
+                        -> region.autoScaling(credentialsProvider, clientConfiguration, firstCall)));
+                elb.add(executor.submit(() -> region.elb(credentialsProvider, clientConfiguration, firstCall)));
+                cloudWatch.add(executor.submit(()
+                        -> region.cloudWatch(credentialsProvider, clientConfiguration, firstCall)));
+            }
+            List<Clients> clients = new ArrayList<>();
+            for (int i = 0; i < regions.size(); i++) {
+                clients.add(new Clients(regions.get(i), ec2.get(i).get(), autoScaling.get(i).get(),
+                        elb.get(i).get(), cloudWatch.get(i).get()));
+                publishers.get(i).complete(clients.get(i).getCloudWatch());
+            }
+            credentials.get();
+            System.out.println("startup: " + 4 * regions.size() + " clients and credentials ready in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return clients;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Milliseconds from the start to the first answered API call.
+     * @return milliseconds, -1 when no call was answered yet
+     */
+    public long getTimeToFirstCallMillis() {
+        return timeToFirstCall.get();
+    }
+
+    /**
+     * Publish the time to the first API call of a region, if a namespace is
+     * configured.
+     * @param cloudWatch CloudWatch client of the region
+     * @param region region
+     * @param elapsed milliseconds from the start to the first answered call of the region
+     */
+    private static void publish(final AmazonCloudWatch cloudWatch, final StackRegion region, final long elapsed) {
+        if (STARTUP_NAMESPACE.isEmpty()) {
+            return;
+        }
+        try {
+            cloudWatch.putMetricData(new PutMetricDataRequest()
+                    .withNamespace(STARTUP_NAMESPACE)
+                    .withMetricData(new MetricDatum()
+                            .withMetricName("TimeToFirstApiCall")
+                            .withDimensions(new Dimension().withName("AutoScalingGroupName")
+                                    .withValue(AutoScale.AUTO_SCALING_GROUP_NAME),
+                                    new Dimension().withName("Region").withValue(region.getName()))
+                            .withUnit(StandardUnit.Milliseconds)
+                            .withValue((double) elapsed)));
+        } catch (AmazonClientException e) {
+            System.out.println("startup: could not publish the startup metric of " + region.getName()
+                    + ": " + e.getMessage());
+        }
+    }
+}
@@ -3,45 +3,24 @@ package autoscaling;
 
 import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
 
-import static autoscaling.AutoScale.configuration;
-
 import com.amazonaws.services.cloudwatch.model.PutMetricAlarmRequest;
 import com.amazonaws.services.cloudwatch.model.DeleteAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DisableAlarmActionsRequest;
+import com.amazonaws.services.cloudwatch.model.EnableAlarmActionsRequest;
 
 import com.amazonaws.services.cloudwatch.model.ComparisonOperator;
 import com.amazonaws.services.cloudwatch.model.StandardUnit;
 import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.MetricAlarm;
+
+import java.util.ArrayList;
+import java.util.List;
 /**
  * CloudWatch resources.
  */
 public final class Cloudwatch {
 
-    /**
-     * Sixty seconds.
-     */
-    private static final Integer ALARM_PERIOD
-            = configuration.getInt("alarm_period");
-    /**
-     * CPU Lower Threshold.
-     */
-    private static final Double CPU_LOWER_THRESHOLD
-            = configuration.getDouble("cpu_lower_threshold");
-    /**
-     * CPU Upper Threshold.
-     */
-    private static final Double CPU_UPPER_THRESHOLD
-            = configuration.getDouble("cpu_upper_threshold");
-    /**
-     * Alarm Evaluation Period out.
-     */
-    public static final int ALARM_EVALUATION_PERIODS_SCALE_OUT
-            = configuration.getInt("alarm_evaluation_periods_scale_out");
-    /**
-     * Alarm Evaluation Period in.
-     */
-    public static final int ALARM_EVALUATION_PERIODS_SCALE_IN
-            = configuration.getInt("alarm_evaluation_periods_scale_in");
-
     /**
      * Unused constructor.
      */
@@ -56,25 +35,22 @@ public final class Cloudwatch {
      */
     public static void createScaleOutAlarm(final AmazonCloudWatch cloudWatch,
                                            final String policyArn) {
-         //TODO: Create scale-out alarm policy
-         Dimension dimension = new Dimension()
-                                .withName("AutoScalingGroupName")
-                                .withValue(AutoScale.AUTO_SCALING_GROUP_NAME);
-         PutMetricAlarmRequest request = new PutMetricAlarmRequest()    
-                                                .withAlarmName("ScaleOut")
-                                                .withComparisonOperator("LessThanThreshold")
-                                                .withEvaluationPeriods(ALARM_EVALUATION_PERIODS_SCALE_OUT)
-                                                .withMetricName("CPUUtilization")
-                                                .withPeriod(ALARM_PERIOD)
-                                                .withNamespace("AWS/EC2")
-                                                .withStatistic("Average")
-                                                .withThreshold(CPU_LOWER_THRESHOLD)
-                                                // .withActionsEnabled(false)
-                                                // .withAlarmDescription("Alarm when server CPU utilization drops below threshold")
-                                                .withDimensions(dimension)
-                                                .withAlarmActions(policyArn);
+        //TODO: Create scale-out alarm policy
+        cloudWatch.putMetricAlarm(scaleOutAlarmRequest(ScalingSettings.current(), policyArn));
+    }
 
-        cloudWatch.putMetricAlarm(request);
+    /**
+     * Scale out alarm a configuration asks for.
+     *
+     * @param settings  scaling settings
+     * @param policyArn policy ARN
+     * @return request
+     */
+    static PutMetricAlarmRequest scaleOutAlarmRequest(final ScalingSettings settings,
+                                                      final String policyArn) {
+        return cpuAlarmRequest("ScaleOut", ComparisonOperator.LessThanThreshold,
+                settings.getCpuLowerThreshold(), settings.getEvaluationPeriodsScaleOut(),
+                settings.getAlarmPeriod(), policyArn);
     }
 
     /**
@@ -86,39 +62,90 @@ public final class Cloudwatch {
     public static void createScaleInAlarm(final AmazonCloudWatch cloudWatch,
                                           final String policyArn) {
         //TODO: Create scale-in alarm policy
+        cloudWatch.putMetricAlarm(scaleInAlarmRequest(ScalingSettings.current(), policyArn));
+    }
+
+    /**
+     * ScaleIn alarm a configuration asks for.
+     *
+     * @param settings  scaling settings
+     * @param policyArn policy ARN
+     * @return request
+     */
+    static PutMetricAlarmRequest scaleInAlarmRequest(final ScalingSettings settings,
+                                                     final String policyArn) {
+        return cpuAlarmRequest("ScaleIn", ComparisonOperator.GreaterThanThreshold,
+                settings.getCpuUpperThreshold(), settings.getEvaluationPeriodsScaleIn(),
+                settings.getAlarmPeriod(), policyArn);
+    }
+
+    /**
+     * Build an alarm on the average CPU of the auto scaling group.
+     *
+     * @param alarmName          alarm name
+     * @param comparison         comparison of the average CPU with the threshold
+     * @param threshold          CPU percent
+     * @param evaluationPeriods  breaching periods before the alarm fires
+     * @param period             period in seconds
+     * @param policyArn          policy ARN
+     * @return request
+     */
+    private static PutMetricAlarmRequest cpuAlarmRequest(final String alarmName,
+                                                         final ComparisonOperator comparison,
+                                                         final double threshold,
+                                                         final int evaluationPeriods,
+                                                         final int period,
+                                                         final String policyArn) {
         Dimension dimension = new Dimension()
                         .withName("AutoScalingGroupName")
                         .withValue(AutoScale.AUTO_SCALING_GROUP_NAME);
-        PutMetricAlarmRequest request = new PutMetricAlarmRequest()    
-                                                .withAlarmName("ScaleIn")
-                                                .withComparisonOperator("GreaterThanThreshold")
-                                                .withEvaluationPeriods(ALARM_EVALUATION_PERIODS_SCALE_IN)
+        PutMetricAlarmRequest request = new PutMetricAlarmRequest()
+                                                .withAlarmName(alarmName)
+                                                .withComparisonOperator(comparison)
+                                                .withEvaluationPeriods(evaluationPeriods)
                                                 .withMetricName("CPUUtilization")
-                                                .withPeriod(ALARM_PERIOD)
+                                                .withPeriod(period)
                                                 .withNamespace("AWS/EC2")
                                                 .withStatistic("Average")
-                                                .withThreshold(CPU_UPPER_THRESHOLD)
-                                                // .withActionsEnabled(false)
-                                                // .withAlarmDescription("Alarm when server CPU utilization exceeds threshold")
+                                                .withThreshold(threshold)
                                                 .withDimensions(dimension)
                                                 .withAlarmActions(policyArn);
-    
-        cloudWatch.putMetricAlarm(request);
+
+        return request;
+    }
+
+    /**
+     * Switch the actions of the Scale out alarm, e.g. while another
+     * controller decides when to remove instances.
+     *
+     * @param cloudWatch cloud watch client
+     * @param enabled    whether the alarm scales the group
+     */
+    public static void setScaleOutAlarmActions(final AmazonCloudWatch cloudWatch,
+                                               final boolean enabled) {
+        if (enabled) {
+            cloudWatch.enableAlarmActions(new EnableAlarmActionsRequest().withAlarmNames("ScaleOut"));
+        } else {
+            cloudWatch.disableAlarmActions(new DisableAlarmActionsRequest().withAlarmNames("ScaleOut"));
+        }
     }
 
     /**
      * Delete the two above Alarms.
+     * Target tracking policies have no such alarms, AWS owns theirs, so
+     * only the alarms that exist are deleted.
      *
      * @param cloudWatch cloud watch client
      */
     public static void deleteAlarms(final AmazonCloudWatch cloudWatch) {
          //TODO: Delete all alarm resources
-        DeleteAlarmsRequest request = new DeleteAlarmsRequest().withAlarmNames("ScaleIn");
-     
-        cloudWatch.deleteAlarms(request);
-
-        request = new DeleteAlarmsRequest().withAlarmNames("ScaleOut");
-     
-        cloudWatch.deleteAlarms(request);
+        List<String> names = new ArrayList<>();
+        for (MetricAlarm alarm : cloudWatch.describeAlarms(new DescribeAlarmsRequest()
+                .withAlarmNames("ScaleIn", "ScaleOut")).getMetricAlarms()) {
+            names.add(alarm.getAlarmName());
+        }
+        if (!names.isEmpty()) {
+            cloudWatch.deleteAlarms(new DeleteAlarmsRequest().withAlarmNames(names));
+        }
     }
 }
@@ -0,0 +1,329 @@
+package autoscaling;
+
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.DeletePolicyRequest;
+import com.amazonaws.services.autoscaling.model.DescribePoliciesRequest;
+import com.amazonaws.services.autoscaling.model.PutScalingPolicyRequest;
+import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupRequest;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.DeleteAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.MetricAlarm;
+import com.amazonaws.services.cloudwatch.model.PutMetricAlarmRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import utilities.Configuration;
+
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Watches a configuration file and retunes the running group when it
+ * changes. A change is validated into a new {@link ScalingSettings}
+ * snapshot and only the requests that differ from the ones of the
+ * current snapshot are sent: UpdateAutoScalingGroup for sizes and
+ * cooldowns, PutScalingPolicy for policies, PutMetricAlarm for alarms and
+ * the warm pool calls. Nothing is recreated, so a new threshold is live
+ * seconds after the file is saved. An invalid file keeps the current
+ * snapshot.
+ */
+public final class ConfigReloader implements AutoCloseable {
+
+    /**
+     * File to watch, empty to never reload.
+     */
+    static final String CONFIG_FILE = configuration.getString("live_config_file");
+
+    /**
+     * Quiet time after a change before reloading; editors save in several writes.
+     */
+    private static final long SETTLE_MILLIS = 200;
+
+    /**
+     * Stands in for policy ARNs when alarm requests are compared.
+     */
+    private static final String ANY_POLICY = "";
+
+    /**
+     * Watched file, null when reloading is off.
+     */
+    private final Path file;
+
+    /**
+     * AAS client.
+     */
+    private final AmazonAutoScaling aas;
+
+    /**
+     * CloudWatch client.
+     */
+    private final AmazonCloudWatch cloudWatch;
+
+    /**
+     * Snapshot the group runs with. Every region has its reloader, so
+     * the one a reloader applied is not always the current one.
+     */
+    private ScalingSettings applied = ScalingSettings.current();
+
+    /**
+     * File system watcher, null until started.
+     */
+    private WatchService watcher;
+
+    /**
+     * Thread waiting for changes.
+     */
+    private Thread thread;
+
+    /**
+     * Reloads applied.
+     */
+    private int reloads;
+
+    /**
+     * Create a reloader.
+     * @param file configuration file, null to never reload
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     */
+    public ConfigReloader(final Path file, final AmazonAutoScaling aas, final AmazonCloudWatch cloudWatch) {
+        this.file = file != null ? file.toAbsolutePath() : null;
+        this.aas = aas;
+        this.cloudWatch = cloudWatch;
+    }
+
+    /**
+     * Create a reloader of the configured file.
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @return reloader, not started
+     */
+    public static ConfigReloader fromConfiguration(final AmazonAutoScaling aas,
+                                                   final AmazonCloudWatch cloudWatch) {
+        return new ConfigReloader(CONFIG_FILE.isEmpty() ? null : Paths.get(CONFIG_FILE), aas, cloudWatch);
+    }
+
+    /**
+     * Apply the file once and watch it in the background.
+     * @return this reloader
+     */
+    public ConfigReloader start() {
+        if (file == null) {
+            return this;
+        }
+        try {
+            watcher = file.getFileSystem().newWatchService();
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot watch " + file, e);
+        }
+        reload();
+        thread = new Thread(this::watch, "config-reloader");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("config: watching " + file);
+        return this;
+    }
+
+    /**
+     * Reload after every burst of changes to the file.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                if (!changed(watcher.take())) {
+                    continue;
+                }
+                Thread.sleep(SETTLE_MILLIS);
+                for (WatchKey key = watcher.poll(); key != null; key = watcher.poll()) {
+                    changed(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Consume the events of a key.
+     * @param key signalled key
+     * @return whether one of them is about the watched file
+     */
+    private boolean changed(final WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Read the file and apply what changed. The applied snapshot is only
+     * replaced once every change went through, so a failed reload is
+     * retried in full by the next one.
+     * @return changes applied
+     */
+    synchronized List<String> reload() {
+        long start = System.currentTimeMillis();
+        ScalingSettings next;
+        try {
+            next = ScalingSettings.from(Configuration.fromFile(file));
+        } catch (RuntimeException e) {
+            System.out.println("config: keeping the current settings, " + e);
+            return Collections.emptyList();
+        }
+        List<String> changes = new ArrayList<>();
+        try {
+            apply(applied, next, changes);
+        } catch (RuntimeException e) {
+            // Client errors and bugs alike keep the previous snapshot, the watcher must not die
+            System.out.println("config: reload failed after " + changes + ", keeping the current settings, " + e);
+            return changes;
+        }
+        applied = next;
+        ScalingSettings.setCurrent(next);
+        reloads++;
+        if (!changes.isEmpty()) {
+            System.out.println("config: " + String.join(", ", changes) + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return changes;
+    }
+
+    /**
+     * Send the requests of a snapshot that differ from another one.
+     * @param current snapshot the group runs with
+     * @param next new snapshot
+     * @param changes changes applied, appended to
+     */
+    void apply(final ScalingSettings current, final ScalingSettings next, final List<String> changes) {
+        CreateAutoScalingGroupRequest from = Aas.autoScalingGroupRequest(current, null,
+                Collections.<String>emptyList());
+        CreateAutoScalingGroupRequest to = Aas.autoScalingGroupRequest(next, null,
+                Collections.<String>emptyList());
+        if (!from.equals(to)) {
+            // AWS moves the desired capacity into the new bounds
+            aas.updateAutoScalingGroup(new UpdateAutoScalingGroupRequest()
+                    .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                    .withMinSize(to.getMinSize())
+                    .withMaxSize(to.getMaxSize())
+                    .withDefaultCooldown(to.getDefaultCooldown())
+                    .withHealthCheckGracePeriod(to.getHealthCheckGracePeriod()));
+            changes.add("group updated");
+        }
+
+        if (current.isWarmPool() && !next.isWarmPool()) {
+            Aas.deleteWarmPool(aas);
+            changes.add("warm pool deleted");
+        } else if (next.isWarmPool() && (!current.isWarmPool()
+                || !Aas.warmPoolRequest(current).equals(Aas.warmPoolRequest(next)))) {
+            aas.putWarmPool(Aas.warmPoolRequest(next));
+            changes.add("warm pool updated");
+        }
+
+        Map<String, PutScalingPolicyRequest> oldPolicies = byName(
+                Aas.scalingPolicyRequests(current, current.getPolicyType()));
+        Map<String, String> arns = new LinkedHashMap<>();
+        for (PutScalingPolicyRequest policy : Aas.scalingPolicyRequests(next, next.getPolicyType())) {
+            String name = policy.getPolicyName();
+            PutScalingPolicyRequest old = oldPolicies.remove(name);
+            if (!policy.equals(old)) {
+                arns.put(name, aas.putScalingPolicy(policy).getPolicyARN());
+                changes.add("policy " + name + (old == null ? " created" : " updated"));
+            }
+            PutMetricAlarmRequest alarm = Aas.alarmRequest(next, name, ANY_POLICY);
+            PutMetricAlarmRequest oldAlarm = old != null ? Aas.alarmRequest(current, name, ANY_POLICY) : null;
+            if (alarm != null && (!alarm.equals(oldAlarm) || old == null)) {
+                String arn = arns.containsKey(name) ? arns.get(name) : policyArn(name);
+                cloudWatch.putMetricAlarm(Aas.alarmRequest(next, name, arn)
+                        .withActionsEnabled(actionsEnabled(alarm.getAlarmName())));
+                changes.add("alarm " + alarm.getAlarmName() + " updated");
+            }
+        }
+        for (PutScalingPolicyRequest old : oldPolicies.values()) {
+            PutMetricAlarmRequest oldAlarm = Aas.alarmRequest(current, old.getPolicyName(), ANY_POLICY);
+            if (oldAlarm != null) {
+                cloudWatch.deleteAlarms(new DeleteAlarmsRequest().withAlarmNames(oldAlarm.getAlarmName()));
+                changes.add("alarm " + oldAlarm.getAlarmName() + " deleted");
+            }
+            aas.deletePolicy(new DeletePolicyRequest()
+                    .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                    .withPolicyName(old.getPolicyName()));
+            changes.add("policy " + old.getPolicyName() + " deleted");
+        }
+    }
+
+    /**
+     * Index policy requests by name.
+     * @param policies policy requests
+     * @return requests by policy name
+     */
+    private static Map<String, PutScalingPolicyRequest> byName(final List<PutScalingPolicyRequest> policies) {
+        Map<String, PutScalingPolicyRequest> byName = new LinkedHashMap<>();
+        for (PutScalingPolicyRequest policy : policies) {
+            byName.put(policy.getPolicyName(), policy);
+        }
+        return byName;
+    }
+
+    /**
+     * Whether the actions of an alarm are enabled. A put enables them
+     * unless told otherwise, which would hand the group back to the
+     * alarms while the predictive scaler or the control loop owns it.
+     * @param name alarm name
+     * @return current state, true for an alarm that does not exist yet
+     */
+    private boolean actionsEnabled(final String name) {
+        for (MetricAlarm alarm : cloudWatch.describeAlarms(new DescribeAlarmsRequest()
+                .withAlarmNames(name)).getMetricAlarms()) {
+            return !Boolean.FALSE.equals(alarm.getActionsEnabled());
+        }
+        return true;
+    }
+
+    /**
+     * ARN of an existing policy of the group.
+     * @param name policy name
+     * @return policy ARN
+     */
+    private String policyArn(final String name) {
+        return Objects.requireNonNull(aas.describePolicies(new DescribePoliciesRequest()
+                .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                .withPolicyNames(name)).getScalingPolicies().get(0).getPolicyARN());
+    }
+
+    public synchronized int getReloads() {
+        return reloads;
+    }
+
+    @Override
+    public void close() {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close the watcher of " + file, e);
+        }
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,14 @@
+package autoscaling;
+
+/**
+ * Source of the value a {@link ScalingController} acts on.
+ */
+public interface ControlInput {
+
+    /**
+     * Read the current value.
+     * @param nowMillis time of the reading in milliseconds
+     * @return value, NaN when there is nothing new to read
+     */
+    double read(long nowMillis);
+}
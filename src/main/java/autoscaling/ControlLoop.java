@@ -0,0 +1,385 @@
+package autoscaling;
+
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.DescribePoliciesRequest;
+import com.amazonaws.services.autoscaling.model.Instance;
+import com.amazonaws.services.autoscaling.model.ScalingPolicy;
+import com.amazonaws.services.autoscaling.model.SetDesiredCapacityRequest;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsResult;
+import com.amazonaws.services.cloudwatch.model.DisableAlarmActionsRequest;
+import com.amazonaws.services.cloudwatch.model.EnableAlarmActionsRequest;
+import com.amazonaws.services.cloudwatch.model.MetricAlarm;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Local control loop that sizes the group every few hundred milliseconds
+ * to seconds with a {@link ScalingController}, instead of waiting a full
+ * alarm period and evaluation for CloudWatch. The input is either a high
+ * resolution metric of the group or a direct probe of its instances.
+ * While it runs it owns the group: the actions of every alarm behind the
+ * group's policies are disabled, and enabled again on close. When the
+ * input has nothing new for too long the alarms get the group back until
+ * readings return.
+ */
+public final class ControlLoop implements AutoCloseable {
+
+    /**
+     * Controller to run, "pid" or "threshold"; empty leaves scaling to the alarms.
+     */
+    static final String CONTROLLER = configuration.getString("scaling_controller");
+
+    /**
+     * Whether the local control loop runs.
+     */
+    static final boolean ENABLED = !CONTROLLER.isEmpty();
+
+    /**
+     * Milliseconds between two steps.
+     */
+    private static final long INTERVAL_MILLIS = configuration.getInt("controller_interval_millis");
+
+    /**
+     * Milliseconds between two reads of the group, to catch capacity
+     * changed by someone else, e.g. a replaced unhealthy instance.
+     */
+    private static final long RESYNC_MILLIS = 10000;
+
+    /**
+     * Milliseconds without a reading after which the alarms take over.
+     */
+    private static final long FALLBACK_MILLIS = configuration.getInt("controller_fallback_millis");
+
+    /**
+     * AAS client.
+     */
+    private final AmazonAutoScaling aas;
+
+    /**
+     * CloudWatch client.
+     */
+    private final AmazonCloudWatch cloudWatch;
+
+    /**
+     * Group name.
+     */
+    private final String groupName;
+
+    /**
+     * Controller deciding the capacity.
+     */
+    private final ScalingController controller;
+
+    /**
+     * Input of the controller.
+     */
+    private final ControlInput input;
+
+    /**
+     * Epoch milliseconds of the AWS side.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Desired capacity as last set or read.
+     */
+    private int desired = -1;
+
+    /**
+     * Whether instances were still launching or in a Pending state at the last read of the group.
+     */
+    private boolean pending;
+
+    /**
+     * Time of the last read of the group.
+     */
+    private long lastResync;
+
+    /**
+     * Time of the last reading.
+     */
+    private long lastReading;
+
+    /**
+     * Whether the alarms have the group back for lack of readings.
+     */
+    private boolean fallback;
+
+    /**
+     * Alarms whose actions were disabled.
+     */
+    private List<String> alarms = new ArrayList<>();
+
+    /**
+     * Scheduler of the control loop, null until started.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a loop.
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @param groupName group name
+     * @param controller controller deciding the capacity
+     * @param input input of the controller
+     * @param clock epoch milliseconds of the AWS side
+     */
+    public ControlLoop(final AmazonAutoScaling aas, final AmazonCloudWatch cloudWatch,
+                       final String groupName, final ScalingController controller,
+                       final ControlInput input, final LongSupplier clock) {
+        this.aas = aas;
+        this.cloudWatch = cloudWatch;
+        this.groupName = groupName;
+        this.controller = controller;
+        this.input = input;
+        this.clock = clock;
+        this.lastReading = clock.getAsLong();
+    }
+
+    /**
+     * Create the configured loop for the configured group.
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @param elb ELB client, for probes
+     * @param ec2 EC2 client, for probes
+     * @param resourceConfig resources of the run
+     * @return loop, not started
+     */
+    public static ControlLoop fromConfiguration(final AmazonAutoScaling aas, final AmazonCloudWatch cloudWatch,
+                                                final AmazonElasticLoadBalancing elb, final AmazonEC2 ec2,
+                                                final ResourceConfig resourceConfig) {
+        return fromConfiguration(aas, cloudWatch, elb, ec2, resourceConfig, System::currentTimeMillis);
+    }
+
+    /**
+     * Create the configured loop for the configured group against another
+     * clock, e.g. the one of a simulated account.
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @param elb ELB client, for probes
+     * @param ec2 EC2 client, for probes
+     * @param resourceConfig resources of the run
+     * @param clock epoch milliseconds of the AWS side
+     * @return loop, not started
+     */
+    public static ControlLoop fromConfiguration(final AmazonAutoScaling aas, final AmazonCloudWatch cloudWatch,
+                                                final AmazonElasticLoadBalancing elb, final AmazonEC2 ec2,
+                                                final ResourceConfig resourceConfig, final LongSupplier clock) {
+        return new ControlLoop(aas, cloudWatch, AutoScale.AUTO_SCALING_GROUP_NAME,
+                controller(), input(cloudWatch, elb, ec2, resourceConfig), clock);
+    }
+
+    /**
+     * Build the configured controller.
+     * @return controller
+     */
+    private static ScalingController controller() {
+        switch (CONTROLLER) {
+            case "pid":
+                return new PidController(configuration.getDouble("controller_setpoint"),
+                        configuration.getDouble("controller_kp"),
+                        configuration.getDouble("controller_ki"),
+                        configuration.getDouble("controller_kd"));
+            case "threshold":
+                return new ThresholdController(configuration.getDouble("controller_lower"),
+                        configuration.getDouble("controller_upper"),
+                        configuration.getInt("controller_step"),
+                        configuration.getInt("controller_readings"),
+                        configuration.getInt("controller_cooldown_millis"));
+            default:
+                throw new IllegalArgumentException("Unknown scaling controller: " + CONTROLLER);
+        }
+    }
+
+    /**
+     * Build the configured input.
+     * @param cloudWatch CloudWatch client
+     * @param elb ELB client
+     * @param ec2 EC2 client
+     * @param resourceConfig resources of the run
+     * @return input
+     */
+    private static ControlInput input(final AmazonCloudWatch cloudWatch, final AmazonElasticLoadBalancing elb,
+                                      final AmazonEC2 ec2, final ResourceConfig resourceConfig) {
+        String kind = configuration.getString("controller_input");
+        switch (kind) {
+            case "metric":
+                return new MetricInput(cloudWatch, configuration.getString("controller_metric_namespace"),
+                        configuration.getString("controller_metric_name"), AutoScale.AUTO_SCALING_GROUP_NAME,
+                        configuration.getInt("controller_metric_period"));
+            case "probe":
+                return new ProbeInput(elb, ec2, resourceConfig.getTargetGroupArn(),
+                        configuration.getString("controller_probe_path"),
+                        configuration.getInt("controller_probe_timeout_millis"));
+            default:
+                throw new IllegalArgumentException("Unknown controller input: " + kind);
+        }
+    }
+
+    /**
+     * Take the group over from its alarms and run the loop in the background.
+     * @param tickMillis real milliseconds between two steps
+     * @return this loop
+     */
+    public ControlLoop start(final long tickMillis) {
+        alarms = policyAlarms();
+        setAlarmActions(false);
+        lastReading = clock.getAsLong();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scaling-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                step();
+            } catch (RuntimeException e) {
+                // The next step tries again; an exception out of here would end the loop
+                System.out.println("Scaling controller step failed: " + e);
+            }
+        }, 0, tickMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Run the loop at the configured interval.
+     * @return this loop
+     */
+    public ControlLoop start() {
+        return start(INTERVAL_MILLIS);
+    }
+
+    /**
+     * Read the input once and resize the group if the controller asks for it.
+     * The result is clamped to the current bounds of the group. Nothing moves
+     * while instances are launching or Pending, as their capacity does not
+     * show in the input yet. Without a reading for {@link #FALLBACK_MILLIS} the alarms get the group back,
+     * and lose it again with the next reading.
+     * @return desired capacity set, or -1 when nothing changed
+     */
+    public int step() {
+        long now = clock.getAsLong();
+        double value = input.read(now);
+        if (Double.isNaN(value)) {
+            if (!fallback && now - lastReading >= FALLBACK_MILLIS) {
+                setAlarmActions(true);
+                fallback = true;
+                System.out.println("Scaling controller: no input for " + (now - lastReading)
+                        + " ms, the alarms take over");
+            }
+            return -1;
+        }
+        lastReading = now;
+        if (fallback) {
+            setAlarmActions(false);
+            fallback = false;
+            // The alarms may have moved the capacity meanwhile
+            desired = -1;
+            System.out.println("Scaling controller: input is back, taking over from the alarms");
+        }
+        if (desired < 0 || pending || now - lastResync >= RESYNC_MILLIS) {
+            List<AutoScalingGroup> groups = aas.describeAutoScalingGroups(new DescribeAutoScalingGroupsRequest()
+                    .withAutoScalingGroupNames(groupName)).getAutoScalingGroups();
+            if (groups.isEmpty()) {
+                // Not visible yet right after its creation
+                return -1;
+            }
+            AutoScalingGroup group = groups.get(0);
+            desired = group.getDesiredCapacity();
+            // Fewer instances than desired means launches the group has not started yet
+            pending = group.getInstances().size() < desired;
+            for (Instance instance : group.getInstances()) {
+                // Includes Pending:Wait and Pending:Proceed while a lifecycle hook holds it
+                pending |= instance.getLifecycleState().startsWith("Pending");
+            }
+            lastResync = now;
+        }
+        if (pending) {
+            // Checked before the controller, which counts the readings it is given
+            return -1;
+        }
+        ScalingSettings settings = ScalingSettings.current();
+        int target = Math.max(settings.getMinSize(), Math.min(settings.getMaxSize(),
+                controller.desiredCapacity(value, desired, now)));
+        if (target == desired) {
+            return -1;
+        }
+        aas.setDesiredCapacity(new SetDesiredCapacityRequest()
+                .withAutoScalingGroupName(groupName)
+                .withDesiredCapacity(target)
+                .withHonorCooldown(false));
+        System.out.printf("Scaling controller: input %.1f, desired %d -> %d%n", value, desired, target);
+        desired = target;
+        // Read the group again on the next step to hold off until the change has landed
+        pending = true;
+        return target;
+    }
+
+    /**
+     * Enable or disable the actions of the alarms taken over.
+     * @param enabled true to let the alarms act on the group
+     */
+    private void setAlarmActions(final boolean enabled) {
+        if (alarms.isEmpty()) {
+            return;
+        }
+        if (enabled) {
+            cloudWatch.enableAlarmActions(new EnableAlarmActionsRequest().withAlarmNames(alarms));
+        } else {
+            cloudWatch.disableAlarmActions(new DisableAlarmActionsRequest().withAlarmNames(alarms));
+        }
+    }
+
+    /**
+     * Alarms that trigger one of the policies of the group.
+     * @return alarm names
+     */
+    private List<String> policyAlarms() {
+        Set<String> policies = new HashSet<>();
+        for (ScalingPolicy policy : aas.describePolicies(new DescribePoliciesRequest()
+                .withAutoScalingGroupName(groupName)).getScalingPolicies()) {
+            policies.add(policy.getPolicyARN());
+        }
+        List<String> names = new ArrayList<>();
+        DescribeAlarmsRequest request = new DescribeAlarmsRequest();
+        do {
+            DescribeAlarmsResult result = cloudWatch.describeAlarms(request);
+            for (MetricAlarm alarm : result.getMetricAlarms()) {
+                for (String action : alarm.getAlarmActions()) {
+                    if (policies.contains(action)) {
+                        names.add(alarm.getAlarmName());
+                        break;
+                    }
+                }
+            }
+            request.setNextToken(result.getNextToken());
+        } while (request.getNextToken() != null);
+        return names;
+    }
+
+    /**
+     * Stop the loop and hand the group back to its alarms.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            setAlarmActions(true);
+        }
+    }
+}
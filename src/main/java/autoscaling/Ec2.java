@@ -7,8 +7,14 @@ import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Tag;
 import com.amazonaws.services.ec2.model.TagSpecification;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
@@ -29,9 +35,10 @@ import com.amazonaws.services.ec2.model.Tag;
 import com.amazonaws.services.ec2.model.DeleteSecurityGroupRequest;
 import com.amazonaws.services.ec2.model.DeleteSecurityGroupResult;
 import com.amazonaws.services.ec2.model.DescribeInstanceStatusRequest;
-import com.amazonaws.services.ec2.model.DescribeSecurityGroupsRequest;
-import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
-import com.amazonaws.services.ec2.model.SecurityGroup;
+import com.amazonaws.services.ec2.model.DescribeSubnetsRequest;
+import com.amazonaws.services.ec2.model.DescribeSubnetsResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Subnet;
 import java.lang.InterruptedException;
 /**
  * Class to manage EC2 resources.
@@ -44,6 +51,24 @@ public final class Ec2 {
     public static final List<Tag> EC2_TAGS_LIST = Arrays.asList(
             new Tag().withKey("Project").withValue(PROJECT_VALUE));
 
+    /**
+     * How long a described instance is reused, below the polling interval
+     * so that pollers always see a fresh state.
+     */
+    private static final long INSTANCE_STATE_TTL_MILLIS = 500;
+
+    /**
+     * Instance state services keyed by client.
+     */
+    private static final Map<AmazonEC2, InstanceStateService> INSTANCE_STATES
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Security group registries keyed by client.
+     */
+    private static final Map<AmazonEC2, SecurityGroupRegistry> SECURITY_GROUPS
+            = new ConcurrentHashMap<>();
+
     /**
      * Unused default constructor.
      */
@@ -68,6 +93,58 @@ public final class Ec2 {
                                           final String keyName,
                                           final String securityGroupName,
                                           final Boolean detailedMonitoring) throws InterruptedException{
+        return launchInstances(ec2, tagSpecification, amiId, instanceType, keyName,
+                securityGroupName, detailedMonitoring, 1).get(0);
+    }
+
+    /**
+     * Launch several Ec2 Instances with one request and wait for all of them.
+     * @param ec2 EC2Client
+     * @param tagSpecification TagsSpecified to create instance
+     * @param amiId amiId
+     * @param instanceType Type of instance
+     * @param keyName Security key pair name
+     * @param securityGroup Security Group
+     * @param detailedMonitoring With Detailed Monitoring Enabled
+     * @param count Number of instances
+     * @return running instances
+     */
+    public static List<Instance> launchInstances(final AmazonEC2 ec2,
+                                                 final TagSpecification tagSpecification,
+                                                 final String amiId,
+                                                 final String instanceType,
+                                                 final String keyName,
+                                                 final String securityGroupName,
+                                                 final Boolean detailedMonitoring,
+                                                 final int count) throws InterruptedException {
+        return launchInstances(ec2, tagSpecification, amiId, instanceType, keyName,
+                securityGroupName, detailedMonitoring, count, instanceId -> { });
+    }
+
+    /**
+     * Launch several Ec2 Instances with one request and wait for all of them,
+     * handing out each instance ID as soon as the instance exists.
+     * @param ec2 EC2Client
+     * @param tagSpecification TagsSpecified to create instance
+     * @param amiId amiId
+     * @param instanceType Type of instance
+     * @param keyName Security key pair name
+     * @param securityGroup Security Group
+     * @param detailedMonitoring With Detailed Monitoring Enabled
+     * @param count Number of instances
+     * @param launched called with each instance ID before any wait
+     * @return running instances
+     */
+    public static List<Instance> launchInstances(final AmazonEC2 ec2,
+                                                 final TagSpecification tagSpecification,
+                                                 final String amiId,
+                                                 final String instanceType,
+                                                 final String keyName,
+                                                 final String securityGroupName,
+                                                 final Boolean detailedMonitoring,
+                                                 final int count,
+                                                 final Consumer<String> launched)
+            throws InterruptedException {
         //TODO: Launch EC2 instances 
         // - Create a Run Instance Request
         // - Wait for VM to start running
@@ -82,23 +159,27 @@ public final class Ec2 {
                                 .withKeyName(keyName)
                                 .withSecurityGroups(securityGroupName)
                                 .withMonitoring(detailedMonitoring)
-                                .withMinCount(1)
-                                .withMaxCount(1);
+                                .withMinCount(count)
+                                .withMaxCount(count);
                 
         RunInstancesResult result = ec2.runInstances(request);
+        for (Instance instance : result.getReservation().getInstances()) {
+            launched.accept(instance.getInstanceId());
+        }
 
-        Instance instance = result.getReservation()
-                                    .getInstances()
-                                    .get(0);
+        List<CompletableFuture<Instance>> running = new ArrayList<>();
+        for (Instance instance : result.getReservation().getInstances()) {
+            running.add(Waiters.instanceInState(ec2, instance.getInstanceId(), "running"));
+        }
+        Waiters.await(CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])));
 
-        String instanceId = instance.getInstanceId();
-        while(!instance.getState().getName().equals("running")) {
-            Thread.sleep(800); // sleep < 1 sec
-            instance = getInstance(ec2, instanceId);
+        List<Instance> instances = new ArrayList<>();
+        for (CompletableFuture<Instance> instance : running) {
+            instances.add(instance.join());
+            System.out.println("load generator dns is ");
+            System.out.println(instance.join().getPublicDnsName());
         }
-        System.out.println("load generator dns is ");
-        System.out.println(instance.getPublicDnsName());
-        return instance;
+        return instances;
     }
 
     /**
@@ -109,41 +190,57 @@ public final class Ec2 {
      */
     protected static Instance getInstance(final AmazonEC2 ec2,
                                         final String instanceId) {
-        //TODO: get Instance by ID
-        DescribeInstancesRequest request = new DescribeInstancesRequest();
-        DescribeInstancesResult response = ec2.describeInstances(request);
-        for(Reservation reservation : response.getReservations()) {
-            for(Instance instance : reservation.getInstances()) {
-                if (instance.getInstanceId().equals(instanceId)) {
-                    return instance;
-                }
-            }
-        }
-        return null;
+        return instanceStates(ec2).get(instanceId);
+    }
+
+    /**
+     * Address an instance is reached at, public DNS when it has one.
+     * @param instance instance
+     * @return host name or IP address
+     */
+    static String instanceHost(final Instance instance) {
+        return instance.getPublicDnsName() != null && !instance.getPublicDnsName().isEmpty()
+                ? instance.getPublicDnsName() : instance.getPrivateIpAddress();
+    }
+
+    /**
+     * Get the instance state service of an EC2 client.
+     * @param ec2 Ec2 client instance
+     * @return shared instance state service
+     */
+    static InstanceStateService instanceStates(final AmazonEC2 ec2) {
+        return INSTANCE_STATES.computeIfAbsent(ec2,
+                client -> new InstanceStateService(client, INSTANCE_STATE_TTL_MILLIS));
+    }
+
+    /**
+     * Get the security group registry of an EC2 client.
+     * @param ec2 Ec2 client instance
+     * @return shared security group registry
+     */
+    static SecurityGroupRegistry securityGroups(final AmazonEC2 ec2) {
+        return SECURITY_GROUPS.computeIfAbsent(ec2, SecurityGroupRegistry::new);
     }
 
     /**
      * Create a new HTTPSecurity Group.
      * @param ec2 EC2Client instance
      * @param securityGroup Security group name
+     * @return group ID
      */
-    static void createHttpSecurityGroup(final AmazonEC2 ec2,
-                                        final String securityGroupName) {
+    static String createHttpSecurityGroup(final AmazonEC2 ec2,
+                                          final String securityGroupName) {
         //TODO:
         // - Create Security Group
         // - Add permission to security group
-        IpPermission ipPermission = new IpPermission();
-        IpRange ip_range = new IpRange().withCidrIp("0.0.0.0/0");
-        ipPermission.withIpv4Ranges(ip_range)
-                    .withIpProtocol("tcp")
-                    .withFromPort(22)
-                    .withToPort(80);
+        IpPermission ipPermission = httpPermission();
 
         CreateSecurityGroupRequest request = new CreateSecurityGroupRequest();
 
         request.withGroupName(securityGroupName).withDescription("My security group");
 
         CreateSecurityGroupResult result = ec2.createSecurityGroup(request);
+        securityGroups(ec2).register(securityGroupName, result.getGroupId());
 
 
         AuthorizeSecurityGroupIngressRequest request2 = new AuthorizeSecurityGroupIngressRequest();
@@ -153,6 +250,21 @@ public final class Ec2 {
 
         ec2.authorizeSecurityGroupIngress(request2);
 
+        return result.getGroupId();
+    }
+
+    /**
+     * Ingress rule of the HTTP security groups: SSH to HTTP from anywhere.
+     * @return permission
+     */
+    static IpPermission httpPermission() {
+        IpPermission ipPermission = new IpPermission();
+        IpRange ip_range = new IpRange().withCidrIp("0.0.0.0/0");
+        ipPermission.withIpv4Ranges(ip_range)
+                    .withIpProtocol("tcp")
+                    .withFromPort(22)
+                    .withToPort(80);
+        return ipPermission;
     }
 
     /**
@@ -166,6 +278,56 @@ public final class Ec2 {
         return ec2.describeVpcs().getVpcs().get(0).getVpcId();
     }
 
+    /**
+     * Get the default subnets of the default VPC, one per zone.
+     * @param ec2 Ec2 Client
+     * @param zones availability zones to cover, empty for all
+     * @return subnets ordered by zone
+     * @throws IllegalStateException when a zone has no default subnet
+     *         or fewer than two zones have one, the ELB minimum
+     */
+    static List<Subnet> getDefaultSubnets(final AmazonEC2 ec2, final List<String> zones) {
+        DescribeSubnetsRequest request = new DescribeSubnetsRequest()
+                .withFilters(new Filter("vpc-id").withValues(getDefaultVPC(ec2)),
+                        new Filter("default-for-az").withValues("true"));
+        if (!zones.isEmpty()) {
+            request.withFilters(new Filter("availability-zone").withValues(zones));
+        }
+        List<Subnet> subnets = new ArrayList<>();
+        do {
+            DescribeSubnetsResult response = ec2.describeSubnets(request);
+            subnets.addAll(response.getSubnets());
+            request.setNextToken(response.getNextToken());
+        } while (request.getNextToken() != null);
+        subnets.sort(Comparator.comparing(Subnet::getAvailabilityZone));
+
+        List<String> missing = new ArrayList<>(zones);
+        for (Subnet subnet : subnets) {
+            missing.remove(subnet.getAvailabilityZone());
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("No default subnet in " + missing);
+        }
+        if (subnets.size() < 2) {
+            throw new IllegalStateException("A load balancer needs two zones, found default subnets in "
+                    + zoneNames(subnets));
+        }
+        return subnets;
+    }
+
+    /**
+     * Availability zones of subnets.
+     * @param subnets subnets
+     * @return zone names in subnet order
+     */
+    static List<String> zoneNames(final List<Subnet> subnets) {
+        List<String> zones = new ArrayList<>();
+        for (Subnet subnet : subnets) {
+            zones.add(subnet.getAvailabilityZone());
+        }
+        return zones;
+    }
+
     /**
      * Fetch a Security Group's ID by Name.
      * @param ec2 Ec2 client
@@ -174,16 +336,7 @@ public final class Ec2 {
      */
     static String getSecurityGroupId(final AmazonEC2 ec2,
                                      final String groupName) {
-        //TODO: Get Security Group ID
-        DescribeSecurityGroupsRequest request = new DescribeSecurityGroupsRequest();
-        DescribeSecurityGroupsResult response = ec2.describeSecurityGroups(request);
-
-        for(SecurityGroup securityGroup : response.getSecurityGroups()) {
-            if (securityGroup.getGroupName().equals(groupName)) {
-                return securityGroup.getGroupId();
-            }
-        }
-        return null;
+        return securityGroups(ec2).getId(groupName);
     }
 
     /**
@@ -192,12 +345,27 @@ public final class Ec2 {
      * @param elbSecurityGroup security group name
      */
     static void deleteSecurityGroup(final AmazonEC2 ec2,
-                                    final String elbSecurityGroup) {
+                                    final String elbSecurityGroup) throws InterruptedException {
         //TODO: Delete all security groups
-        DeleteSecurityGroupRequest request = new DeleteSecurityGroupRequest();
+        final DeleteSecurityGroupRequest request = new DeleteSecurityGroupRequest();
 
         request.withGroupName(elbSecurityGroup);
 
-        ec2.deleteSecurityGroup(request);
+        // Instances and ELB network interfaces release the group asynchronously
+        Retries.retryWhileInUse("delete security group " + elbSecurityGroup,
+                () -> ec2.deleteSecurityGroup(request));
+        securityGroups(ec2).evict(elbSecurityGroup);
+    }
+
+    /**
+     * Terminate instances without waiting for them to shut down.
+     * @param ec2 ec2 client
+     * @param instanceIds instance IDs
+     */
+    static void terminateInstances(final AmazonEC2 ec2,
+                                   final List<String> instanceIds) {
+        TerminateInstancesRequest request = new TerminateInstancesRequest()
+                                                .withInstanceIds(instanceIds);
+        ec2.terminateInstances(request);
     }
 }
@@ -3,6 +3,7 @@ package autoscaling;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.Subnet;
 import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.model.AvailabilityZone;
 import com.amazonaws.services.elasticloadbalancingv2.model.LoadBalancer;
 import com.amazonaws.services.elasticloadbalancingv2.model.Tag;
 import com.amazonaws.services.elasticloadbalancingv2.model.TargetGroup;
@@ -10,6 +11,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.ArrayList; // import the ArrayList class
 import java.lang.InterruptedException;
 
@@ -24,14 +26,12 @@ import com.amazonaws.services.elasticloadbalancingv2.model.CreateLoadBalancerRes
 import com.amazonaws.services.elasticloadbalancingv2.model.DeleteLoadBalancerRequest;
 import com.amazonaws.services.elasticloadbalancingv2.model.DeleteLoadBalancerResult;
 import com.amazonaws.services.elasticloadbalancingv2.model.DeleteTargetGroupRequest;
-import com.amazonaws.services.elasticloadbalancingv2.model.DeleteTargetGroupResult;
 // import com.amazonaws.services.elasticloadbalancingv2.model.CreateLoadBalancerListenersRequest;
 import com.amazonaws.services.elasticloadbalancingv2.model.CreateListenerRequest;
 import com.amazonaws.services.elasticloadbalancingv2.model.LoadBalancerTypeEnum;
 import com.amazonaws.services.elasticloadbalancingv2.model.Listener;
 import com.amazonaws.services.elasticloadbalancingv2.model.Action;
 import com.amazonaws.services.elasticloadbalancingv2.model.ActionTypeEnum;
-import com.amazonaws.services.elasticloadbalancingv2.model.DescribeLoadBalancersRequest;
 import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTargetGroupAttributesRequest;
 import com.amazonaws.services.elasticloadbalancingv2.model.ModifyTargetGroupAttributesRequest;
 import com.amazonaws.services.elasticloadbalancingv2.model.TargetGroupAttribute;
@@ -63,17 +63,7 @@ public final class Elb {
             final AmazonEC2 ec2) {
         //TODO: Create Target Group
 
-        CreateTargetGroupRequest request = new CreateTargetGroupRequest()
-                                        .withHealthCheckPath("/")
-                                        .withPort(AutoScale.HTTP_PORT)
-                                        .withName(AutoScale.AUTO_SCALING_TARGET_GROUP)
-                                        .withProtocol("HTTP")
-                                        .withHealthCheckIntervalSeconds(60)
-                                        .withHealthCheckTimeoutSeconds(5)
-                                        .withUnhealthyThresholdCount(2)
-                                        .withHealthyThresholdCount(10)
-                                        .withTargetType("instance")
-                                        .withVpcId(Ec2.getDefaultVPC(ec2));
+        CreateTargetGroupRequest request = targetGroupRequest(Ec2.getDefaultVPC(ec2));
 
         CreateTargetGroupResult response = elb.createTargetGroup(request);
         TargetGroup targetGroup = response.getTargetGroups().get(0);
@@ -88,6 +78,26 @@ public final class Elb {
         return targetGroup;
     }
 
+    /**
+     * Target group the configuration asks for.
+     *
+     * @param vpcId VPC of the target group
+     * @return request
+     */
+    static CreateTargetGroupRequest targetGroupRequest(final String vpcId) {
+        return new CreateTargetGroupRequest()
+                                        .withHealthCheckPath("/")
+                                        .withPort(AutoScale.HTTP_PORT)
+                                        .withName(AutoScale.AUTO_SCALING_TARGET_GROUP)
+                                        .withProtocol("HTTP")
+                                        .withHealthCheckIntervalSeconds(60)
+                                        .withHealthCheckTimeoutSeconds(5)
+                                        .withUnhealthyThresholdCount(2)
+                                        .withHealthyThresholdCount(10)
+                                        .withTargetType("instance")
+                                        .withVpcId(vpcId);
+    }
+
     /**
      * Create a load balancer.
      *
@@ -95,30 +105,46 @@ public final class Elb {
      * @param ec2             EC2 client
      * @param securityGroupId Security group ID
      * @param targetGroupArn  target group ARN
+     * @param zones           availability zones to cover, empty for all
      * @return Load balancer instance
      */
     public static LoadBalancer createLoadBalancer (
             final AmazonElasticLoadBalancing elb,
             final AmazonEC2 ec2,
             final String securityGroupId,
-            final String targetGroupArn) throws InterruptedException{
-
-        //TODO: 
-        //  - Get Subnets for us-east-1 region
-        //  - Create Load Balancer
-        //  - Attach Listener
-        // Listener listener = new Listener().builder()  
-        //                                 .protocol("HTTP")
-        //                                 .loadBalancerPort(80)
-        //                                 .instancePort(80)
-        //                                 .build();
+            final String targetGroupArn,
+            final List<String> zones) throws InterruptedException{
+        return createLoadBalancer(elb, ec2, securityGroupId, targetGroupArn, zones, arn -> { });
+    }
 
-        // List<Listener> listeners =  new ArrayList<Listener>(1);
-        // listeners.add(listener);
+    /**
+     * Create a load balancer, handing out its ARN as soon as it exists.
+     *
+     * @param elb             ELB client
+     * @param ec2             EC2 client
+     * @param securityGroupId Security group ID
+     * @param targetGroupArn  target group ARN
+     * @param zones           availability zones to cover, empty for all
+     * @param created         called with the ARN before waiting for it to be active
+     * @return Load balancer instance
+     */
+    public static LoadBalancer createLoadBalancer (
+            final AmazonElasticLoadBalancing elb,
+            final AmazonEC2 ec2,
+            final String securityGroupId,
+            final String targetGroupArn,
+            final List<String> zones,
+            final Consumer<String> created) throws InterruptedException{
+
+        // One default subnet per zone of the region
+        List<String> subnetIds = new ArrayList<>();
+        for (Subnet subnet : Ec2.getDefaultSubnets(ec2, zones)) {
+            subnetIds.add(subnet.getSubnetId());
+        }
 
         CreateLoadBalancerRequest request = new CreateLoadBalancerRequest()
                                                 .withName(AutoScale.LOAD_BALANCER_NAME)
-                                                .withSubnets("subnet-c040328d", "subnet-2dec4372")
+                                                .withSubnets(subnetIds)
                                                 .withTags(ELB_TAGS_LIST)
                                                 .withSecurityGroups(securityGroupId)
                                                 .withType(LoadBalancerTypeEnum.Application);
@@ -127,22 +153,45 @@ public final class Elb {
 
         LoadBalancer loadBalancer = response.getLoadBalancers().get(0);
         String loadBalancerArn = loadBalancer.getLoadBalancerArn();
+        created.accept(loadBalancerArn);
 
-        while (!loadBalancer.getState().getCode().equals("active")) {
-            Thread.sleep(900); // sleep < 1 sec
-            DescribeLoadBalancersRequest describeLoadBalancersRequest = new DescribeLoadBalancersRequest()
-                                                        .withLoadBalancerArns(loadBalancerArn);
-            loadBalancer = elb.describeLoadBalancers(describeLoadBalancersRequest).getLoadBalancers().get(0);
-        }
+        loadBalancer = Waiters.await(Waiters.loadBalancerActive(elb, loadBalancerArn));
         System.out.println("loadbalancer arn is ");
         System.out.println(loadBalancer.getLoadBalancerArn());
+        createListener(elb, loadBalancerArn, targetGroupArn);
+        return loadBalancer;
+    }
+
+    /**
+     * Forward HTTP traffic of a load balancer to a target group.
+     *
+     * @param elb             ELB client
+     * @param loadBalancerArn load balancer ARN
+     * @param targetGroupArn  target group ARN
+     */
+    static void createListener(final AmazonElasticLoadBalancing elb,
+                               final String loadBalancerArn,
+                               final String targetGroupArn) {
         CreateListenerRequest listenerRequest = new CreateListenerRequest()
                                                                 .withPort(80)
                                                                 .withProtocol("HTTP")
                                                                 .withDefaultActions(new Action().withType(ActionTypeEnum.Forward).withTargetGroupArn(targetGroupArn))
                                                                 .withLoadBalancerArn(loadBalancerArn);
         elb.createListener(listenerRequest);
-        return loadBalancer;
+    }
+
+    /**
+     * Availability zones a load balancer covers.
+     *
+     * @param loadBalancer load balancer
+     * @return zone names
+     */
+    static List<String> zoneNames(final LoadBalancer loadBalancer) {
+        List<String> zones = new ArrayList<>();
+        for (AvailabilityZone zone : loadBalancer.getAvailabilityZones()) {
+            zones.add(zone.getZoneName());
+        }
+        return zones;
     }
 
     /**
@@ -164,9 +213,10 @@ public final class Elb {
      * @param targetGroupArn target Group ARN
      */
     public static void deleteTargetGroup(final AmazonElasticLoadBalancing elb,
-                                         final String targetGroupArn) {
+                                         final String targetGroupArn) throws InterruptedException {
        //TODO: Delete Target Group
-       DeleteTargetGroupRequest request = new DeleteTargetGroupRequest().withTargetGroupArn(targetGroupArn);
-       DeleteTargetGroupResult response = elb.deleteTargetGroup(request);
+       final DeleteTargetGroupRequest request = new DeleteTargetGroupRequest().withTargetGroupArn(targetGroupArn);
+       // Stays in use until the listener of the deleted ELB is gone
+       Retries.retryWhileInUse("delete target group", () -> elb.deleteTargetGroup(request));
     }
 }
@@ -0,0 +1,193 @@
+package autoscaling;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instance lookups by ID backed by a short-lived in-memory index.
+ * Lookups are filtered by instance ID, paginated and batched, and callers
+ * asking for the same instance at the same time share one describe call.
+ */
+public final class InstanceStateService {
+
+    /**
+     * Maximum number of instance IDs sent in one filter.
+     */
+    private static final int MAX_IDS_PER_CALL = 200;
+
+    /**
+     * Page size of describe calls.
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * Cached instance with the time it was fetched.
+     */
+    private static final class Entry {
+        /**
+         * Instance, null when AWS did not return it.
+         */
+        private final Instance instance;
+        /**
+         * Fetch time in milliseconds.
+         */
+        private final long fetchedAt;
+
+        Entry(final Instance instance, final long fetchedAt) {
+            this.instance = instance;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * EC2 client.
+     */
+    private final AmazonEC2 ec2;
+
+    /**
+     * How long an entry is served from the index.
+     */
+    private final long ttlMillis;
+
+    /**
+     * Index keyed by instance ID.
+     */
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    /**
+     * Lookups currently in flight keyed by instance ID.
+     */
+    private final Map<String, CompletableFuture<Instance>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Create the service.
+     * @param ec2 EC2 client
+     * @param ttlMillis time to live of index entries
+     */
+    public InstanceStateService(final AmazonEC2 ec2, final long ttlMillis) {
+        this.ec2 = ec2;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Get an instance by ID.
+     * @param instanceId instance ID
+     * @return instance or null when it does not exist (yet)
+     */
+    public Instance get(final String instanceId) {
+        return getAll(Collections.singleton(instanceId)).get(instanceId);
+    }
+
+    /**
+     * Get many instances, fetching every stale ID in one batched lookup.
+     * @param instanceIds instance IDs
+     * @return instances keyed by ID, missing instances are left out
+     */
+    public Map<String, Instance> getAll(final Collection<String> instanceIds) {
+        Map<String, Instance> found = new HashMap<>();
+        Map<String, CompletableFuture<Instance>> waiting = new HashMap<>();
+        Map<String, CompletableFuture<Instance>> claimed = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (String instanceId : new LinkedHashSet<>(instanceIds)) {
+            Entry entry = index.get(instanceId);
+            if (entry != null && now - entry.fetchedAt < ttlMillis) {
+                if (entry.instance != null) {
+                    found.put(instanceId, entry.instance);
+                }
+                continue;
+            }
+            CompletableFuture<Instance> mine = new CompletableFuture<>();
+            CompletableFuture<Instance> other = inFlight.putIfAbsent(instanceId, mine);
+            if (other == null) {
+                claimed.put(instanceId, mine);
+            } else {
+                waiting.put(instanceId, other);
+            }
+        }
+        if (!claimed.isEmpty()) {
+            try {
+                Map<String, Instance> fetched = refresh(claimed.keySet());
+                for (Map.Entry<String, CompletableFuture<Instance>> claim : claimed.entrySet()) {
+                    claim.getValue().complete(fetched.get(claim.getKey()));
+                }
+            } catch (RuntimeException e) {
+                for (CompletableFuture<Instance> claim : claimed.values()) {
+                    claim.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<String, CompletableFuture<Instance>> claim : claimed.entrySet()) {
+                    inFlight.remove(claim.getKey(), claim.getValue());
+                }
+            }
+            waiting.putAll(claimed);
+        }
+        for (Map.Entry<String, CompletableFuture<Instance>> wait : waiting.entrySet()) {
+            Instance instance;
+            try {
+                instance = wait.getValue().join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : e;
+            }
+            if (instance != null) {
+                found.put(wait.getKey(), instance);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Describe instances by ID, bypassing the index, and update the index.
+     * @param instanceIds instance IDs
+     * @return instances keyed by ID, missing instances are left out
+     */
+    public Map<String, Instance> refresh(final Collection<String> instanceIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(instanceIds));
+        Map<String, Instance> found = new HashMap<>();
+        long fetchedAt = System.currentTimeMillis();
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_CALL) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_CALL));
+            // A filter, unlike InstanceIds, does not fail on IDs not visible yet
+            DescribeInstancesRequest request = new DescribeInstancesRequest()
+                    .withFilters(new Filter("instance-id", chunk))
+                    .withMaxResults(PAGE_SIZE);
+            do {
+                DescribeInstancesResult response = ec2.describeInstances(request);
+                for (Reservation reservation : response.getReservations()) {
+                    for (Instance instance : reservation.getInstances()) {
+                        found.put(instance.getInstanceId(), instance);
+                    }
+                }
+                request.setNextToken(response.getNextToken());
+            } while (request.getNextToken() != null);
+        }
+        for (String instanceId : ids) {
+            index.put(instanceId, new Entry(found.get(instanceId), fetchedAt));
+        }
+        return found;
+    }
+
+    /**
+     * Drop an instance from the index.
+     * @param instanceId instance ID
+     */
+    public void invalidate(final String instanceId) {
+        index.remove(instanceId);
+    }
+}
@@ -0,0 +1,125 @@
+package autoscaling;
+
+/**
+ * Streaming additive Holt-Winters forecaster.
+ * Keeps a level, a trend and optionally one seasonal offset per period of
+ * the season, updated once per observation in constant time. Without a
+ * season it is an exponentially weighted moving average with trend.
+ * Observations are placed by their timestamp, so a period with no
+ * observation is filled with the trend instead of shifting the season.
+ */
+public final class LoadForecaster {
+
+    /**
+     * Level smoothing factor.
+     */
+    private final double alpha;
+
+    /**
+     * Trend smoothing factor.
+     */
+    private final double beta;
+
+    /**
+     * Seasonal smoothing factor.
+     */
+    private final double gamma;
+
+    /**
+     * Length of a period in milliseconds.
+     */
+    private final long periodMillis;
+
+    /**
+     * Seasonal offsets, one per period of the season; empty without a season.
+     * They start at zero and are learnt from the first season on.
+     */
+    private final double[] seasonal;
+
+    /**
+     * Smoothed level.
+     */
+    private double level;
+
+    /**
+     * Smoothed change per period.
+     */
+    private double trend;
+
+    /**
+     * Observations so far.
+     */
+    private long count;
+
+    /**
+     * Period of the last observation, timestamp divided by the period length.
+     */
+    private long lastPeriod;
+
+    /**
+     * Create a forecaster.
+     * @param alpha level smoothing factor, between 0 and 1
+     * @param beta trend smoothing factor, between 0 and 1
+     * @param gamma seasonal smoothing factor, between 0 and 1
+     * @param seasonPeriods periods per season, 0 for none
+     * @param periodMillis length of a period in milliseconds
+     */
+    public LoadForecaster(final double alpha, final double beta,
+                          final double gamma, final int seasonPeriods, final long periodMillis) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Period must be positive, got " + periodMillis);
+        }
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.seasonal = new double[seasonPeriods];
+        this.periodMillis = periodMillis;
+    }
+
+    /**
+     * Add the observation of a period. Observations of a period at or
+     * before the last one are ignored. Periods skipped since the last one
+     * move the level along the trend, as if the forecast had been observed.
+     * @param timestamp epoch milliseconds within the period
+     * @param value observed value
+     */
+    public void update(final long timestamp, final double value) {
+        long period = Math.floorDiv(timestamp, periodMillis);
+        if (count > 0 && period <= lastPeriod) {
+            return;
+        }
+        int season = seasonal.length > 0 ? (int) Math.floorMod(period, (long) seasonal.length) : -1;
+        double offset = season >= 0 ? seasonal[season] : 0;
+        if (count == 0) {
+            level = value;
+        } else {
+            level += (period - lastPeriod - 1) * trend;
+            double previous = level;
+            level = alpha * (value - offset) + (1 - alpha) * (level + trend);
+            trend = beta * (level - previous) + (1 - beta) * trend;
+            if (season >= 0) {
+                seasonal[season] = gamma * (value - level) + (1 - gamma) * offset;
+            }
+        }
+        count++;
+        lastPeriod = period;
+    }
+
+    /**
+     * Forecast a period ahead of the last observation.
+     * @param periods periods ahead, at least 1
+     * @return forecast, NaN before the first observation
+     */
+    public double forecast(final int periods) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double offset = seasonal.length > 0
+                ? seasonal[(int) Math.floorMod(lastPeriod + periods, (long) seasonal.length)] : 0;
+        return level + periods * trend + offset;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
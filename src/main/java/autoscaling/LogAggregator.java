@@ -0,0 +1,125 @@
+package autoscaling;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.ini4j.Ini;
+import org.ini4j.Profile;
+
+/**
+ * Merges the per-minute sections of several Load Generator logs into one
+ * timeline. Throughput values add up across generators; latencies are
+ * averaged.
+ */
+public final class LogAggregator {
+
+    /**
+     * Prefix of the per-minute log sections.
+     */
+    private static final String MINUTE_PREFIX = "Minute";
+
+    /**
+     * Unused constructor.
+     */
+    private LogAggregator() {
+    }
+
+    /**
+     * Merge logs minute by minute.
+     * @param logs Load Generator logs
+     * @return merged numeric values keyed by minute
+     */
+    public static SortedMap<Integer, Map<String, Double>> merge(final List<Ini> logs) {
+        SortedMap<Integer, Map<String, Double>> sums = new TreeMap<>();
+        SortedMap<Integer, Map<String, Integer>> counts = new TreeMap<>();
+        for (Ini log : logs) {
+            for (Profile.Section section : log.values()) {
+                Integer minute = minuteOf(section.getName());
+                if (minute == null) {
+                    continue;
+                }
+                Map<String, Double> sum = sums.computeIfAbsent(minute, m -> new LinkedHashMap<>());
+                Map<String, Integer> count = counts.computeIfAbsent(minute, m -> new LinkedHashMap<>());
+                for (Map.Entry<String, String> entry : section.entrySet()) {
+                    Double value = parse(entry.getValue());
+                    if (value != null) {
+                        sum.merge(entry.getKey(), value, Double::sum);
+                        count.merge(entry.getKey(), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, Map<String, Double>> minute : sums.entrySet()) {
+            Map<String, Integer> count = counts.get(minute.getKey());
+            for (Map.Entry<String, Double> value : minute.getValue().entrySet()) {
+                if (isAveraged(value.getKey())) {
+                    value.setValue(value.getValue() / count.get(value.getKey()));
+                }
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Format a merged timeline, one line per minute.
+     * @param timeline merged timeline
+     * @return printable lines
+     */
+    public static List<String> format(final SortedMap<Integer, Map<String, Double>> timeline) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Integer, Map<String, Double>> minute : timeline.entrySet()) {
+            StringBuilder line = new StringBuilder(MINUTE_PREFIX).append(' ').append(minute.getKey());
+            for (Map.Entry<String, Double> value : minute.getValue().entrySet()) {
+                line.append(' ').append(value.getKey()).append('=')
+                        .append(String.format("%.2f", value.getValue()));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Whether a key is averaged instead of summed.
+     * @param key log key
+     * @return true for latencies
+     */
+    private static boolean isAveraged(final String key) {
+        return key.toLowerCase().contains("latency");
+    }
+
+    /**
+     * Minute number of a section.
+     * @param name section name, e.g. "Minute 3"
+     * @return minute or null for other sections
+     */
+    private static Integer minuteOf(final String name) {
+        if (!name.startsWith(MINUTE_PREFIX)) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(name.substring(MINUTE_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a numeric log value.
+     * @param value raw value
+     * @return number or null
+     */
+    private static Double parse(final String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
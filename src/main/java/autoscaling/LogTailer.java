@@ -0,0 +1,292 @@
+package autoscaling;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ini4j.Ini;
+import org.ini4j.Profile;
+
+import utilities.HttpRequest;
+import utilities.HttpResponse;
+
+/**
+ * Incremental reader of a Load Generator log.
+ * Only bytes past the consumed offset are requested (HTTP Range) and
+ * parsed into an in-memory INI, so each poll costs the size of the new
+ * log lines rather than the whole log. Unchanged logs are detected with
+ * conditional requests and not downloaded again.
+ * The log has no end marker, so the last section is only handed to the
+ * listener when the tailer is closed.
+ */
+public final class LogTailer implements AutoCloseable {
+
+    /**
+     * Callback for completed log sections.
+     */
+    @FunctionalInterface
+    public interface SectionListener {
+        /**
+         * Called once a section is complete, i.e. the next one has started
+         * or the tailer was closed.
+         * @param name section name
+         * @param section section content
+         */
+        void onSection(String name, Profile.Section section);
+    }
+
+    /**
+     * HTTP partial content.
+     */
+    private static final int PARTIAL_CONTENT = 206;
+
+    /**
+     * HTTP not modified.
+     */
+    private static final int NOT_MODIFIED = 304;
+
+    /**
+     * HTTP range not satisfiable, nothing past the offset.
+     */
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * Log URL.
+     */
+    private final String url;
+
+    /**
+     * Listener for completed sections, may be null.
+     */
+    private final SectionListener listener;
+
+    /**
+     * Sections parsed so far.
+     */
+    private final Ini ini = new Ini();
+
+    /**
+     * Number of log bytes consumed, including the pending partial line.
+     */
+    private long offset;
+
+    /**
+     * Bytes of a line that has not been terminated yet.
+     */
+    private byte[] partialLine = new byte[0];
+
+    /**
+     * Section receiving the lines.
+     */
+    private Profile.Section currentSection;
+
+    /**
+     * ETag of the last response, may be null.
+     */
+    private String etag;
+
+    /**
+     * Last-Modified of the last response, null unless safe to reuse.
+     */
+    private String lastModified;
+
+    /**
+     * Create a tailer.
+     * @param url log URL
+     * @param listener listener for completed sections, may be null
+     */
+    public LogTailer(final String url, final SectionListener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    /**
+     * Fetch and parse the new part of the log.
+     * @return all sections parsed so far
+     * @throws IOException on network failure
+     */
+    public synchronized Ini poll() throws IOException {
+        return accept(HttpRequest.sendGet(url, nextRequestHeaders()));
+    }
+
+    /**
+     * Get the log URL.
+     * @return log URL
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Headers of the next request, for callers doing their own I/O.
+     * The response has to be passed to {@link #accept(HttpResponse)}
+     * before the next request is built.
+     * @return Range and conditional request headers
+     */
+    public synchronized Map<String, String> nextRequestHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Range", "bytes=" + offset + "-");
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        } else if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * Parse the response to a request built with {@link #nextRequestHeaders()}.
+     * @param response log response
+     * @return all sections parsed so far
+     * @throws IOException on an error status
+     */
+    public synchronized Ini accept(final HttpResponse response) throws IOException {
+        if (response.getStatus() == NOT_MODIFIED
+                || response.getStatus() == RANGE_NOT_SATISFIABLE) {
+            return ini;
+        }
+        if (response.getStatus() >= 400) {
+            throw new IOException("HTTP " + response.getStatus() + " for " + url);
+        }
+        byte[] body = response.getBody();
+        int from = 0;
+        if (response.getStatus() != PARTIAL_CONTENT) {
+            // Server ignored the range and sent the whole log
+            if (body.length < offset) {
+                reset();
+            }
+            from = (int) offset;
+        }
+        consume(body, from);
+        rememberValidators(response);
+        return ini;
+    }
+
+    /**
+     * Get the sections parsed so far.
+     * @return INI object
+     */
+    public synchronized Ini getIni() {
+        return ini;
+    }
+
+    /**
+     * End the log: parse an unterminated last line and hand the last
+     * section to the listener. Later calls do nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (partialLine.length > 0) {
+            String line = new String(partialLine, StandardCharsets.UTF_8);
+            partialLine = new byte[0];
+            parseLine(line.trim());
+        }
+        if (currentSection != null && listener != null) {
+            listener.onSection(currentSection.getName(), currentSection);
+        }
+        currentSection = null;
+    }
+
+    /**
+     * Keep the validators of a response for the next conditional request.
+     * Last-Modified only has second precision, so it is only reused once the
+     * server clock has moved past it; otherwise a write later in the same
+     * second would be answered with 304.
+     * @param response last response
+     */
+    private void rememberValidators(final HttpResponse response) {
+        etag = response.getHeader("ETag");
+        lastModified = null;
+        String modified = response.getHeader("Last-Modified");
+        String date = response.getHeader("Date");
+        if (modified != null && date != null) {
+            try {
+                ZonedDateTime modifiedAt = ZonedDateTime.parse(modified, DateTimeFormatter.RFC_1123_DATE_TIME);
+                ZonedDateTime dateAt = ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME);
+                if (dateAt.isAfter(modifiedAt)) {
+                    lastModified = modified;
+                }
+            } catch (DateTimeParseException e) {
+                //ignore invalid dates
+            }
+        }
+    }
+
+    /**
+     * Parse new bytes line by line.
+     * @param bytes buffer
+     * @param from first new byte
+     */
+    private void consume(final byte[] bytes, final int from) {
+        offset += bytes.length - from;
+        int lineStart = from;
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            String line;
+            if (partialLine.length > 0) {
+                byte[] joined = Arrays.copyOf(partialLine, partialLine.length + i - lineStart);
+                System.arraycopy(bytes, lineStart, joined, partialLine.length, i - lineStart);
+                line = new String(joined, StandardCharsets.UTF_8);
+                partialLine = new byte[0];
+            } else {
+                line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            }
+            parseLine(line.trim());
+            lineStart = i + 1;
+        }
+        if (lineStart < bytes.length) {
+            byte[] joined = Arrays.copyOf(partialLine, partialLine.length + bytes.length - lineStart);
+            System.arraycopy(bytes, lineStart, joined, partialLine.length, bytes.length - lineStart);
+            partialLine = joined;
+        }
+    }
+
+    /**
+     * Parse one INI line.
+     * @param line trimmed line
+     */
+    private void parseLine(final String line) {
+        if (line.isEmpty() || line.charAt(0) == ';' || line.charAt(0) == '#') {
+            return;
+        }
+        if (line.charAt(0) == '[' && line.charAt(line.length() - 1) == ']') {
+            if (currentSection != null && listener != null) {
+                listener.onSection(currentSection.getName(), currentSection);
+            }
+            currentSection = ini.add(line.substring(1, line.length() - 1).trim());
+            return;
+        }
+        if (currentSection == null) {
+            return;
+        }
+        int separator = line.indexOf('=');
+        if (separator < 0) {
+            separator = line.indexOf(':');
+        }
+        if (separator < 0) {
+            currentSection.add(line, null);
+        } else {
+            currentSection.add(line.substring(0, separator).trim(),
+                    line.substring(separator + 1).trim());
+        }
+    }
+
+    /**
+     * Start over after the log was replaced.
+     */
+    private void reset() {
+        ini.clear();
+        offset = 0;
+        etag = null;
+        lastModified = null;
+        partialLine = new byte[0];
+        currentSection = null;
+    }
+}
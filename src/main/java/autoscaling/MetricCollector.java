@@ -0,0 +1,287 @@
+package autoscaling;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.GetMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.GetMetricDataResult;
+import com.amazonaws.services.cloudwatch.model.Metric;
+import com.amazonaws.services.cloudwatch.model.MetricDataQuery;
+import com.amazonaws.services.cloudwatch.model.MetricDataResult;
+import com.amazonaws.services.cloudwatch.model.MetricStat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Pulls the metrics of watched stacks into a {@link MetricStore}.
+ * All metrics of all stacks go into GetMetricData calls of up to
+ * {@link #MAX_QUERIES} queries, so watching more groups adds queries,
+ * not calls. Series are keyed "group/metric".
+ */
+public final class MetricCollector implements AutoCloseable {
+
+    /**
+     * Seconds between two collections, 0 to collect nothing.
+     */
+    static final int COLLECTION_SECONDS = configuration.getInt("metric_collection_seconds");
+
+    /**
+     * Most queries in one GetMetricData call.
+     */
+    private static final int MAX_QUERIES = 500;
+
+    /**
+     * Periods read again on every collection; CloudWatch fills in the
+     * latest periods as late datapoints arrive.
+     */
+    private static final int LATE_PERIODS = 2;
+
+    /**
+     * Periods read on the first collection.
+     */
+    private static final int BACKFILL_PERIODS = 10;
+
+    /**
+     * Samples kept per series: a day of one minute periods.
+     */
+    private static final int STORE_CAPACITY = 1440;
+
+    /**
+     * CloudWatch client.
+     */
+    private final AmazonCloudWatch cloudWatch;
+
+    /**
+     * Samples.
+     */
+    private final MetricStore store;
+
+    /**
+     * Metric period in seconds.
+     */
+    private final int periodSeconds;
+
+    /**
+     * Epoch milliseconds of the AWS side.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Queries of all watched stacks.
+     */
+    private final List<MetricDataQuery> queries = new ArrayList<>();
+
+    /**
+     * Series key by query ID.
+     */
+    private final Map<String, String> keys = new HashMap<>();
+
+    /**
+     * End of the last collected window, 0 before the first collection.
+     */
+    private long collectedUntil;
+
+    /**
+     * GetMetricData calls made.
+     */
+    private int calls;
+
+    /**
+     * Scheduler of the collection loop, null until started.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a collector.
+     * @param cloudWatch CloudWatch client
+     * @param store samples
+     * @param periodSeconds metric period in seconds
+     * @param clock epoch milliseconds of the AWS side
+     */
+    public MetricCollector(final AmazonCloudWatch cloudWatch, final MetricStore store,
+                           final int periodSeconds, final LongSupplier clock) {
+        this.cloudWatch = cloudWatch;
+        this.store = store;
+        this.periodSeconds = periodSeconds;
+        this.clock = clock;
+    }
+
+    /**
+     * Create a collector with the configured alarm period.
+     * @param cloudWatch CloudWatch client
+     * @param clock epoch milliseconds of the AWS side
+     * @return collector watching nothing yet
+     */
+    public static MetricCollector fromConfiguration(final AmazonCloudWatch cloudWatch,
+                                                    final LongSupplier clock) {
+        return new MetricCollector(cloudWatch, new MetricStore(STORE_CAPACITY),
+                ScalingSettings.current().getAlarmPeriod(), clock);
+    }
+
+    /**
+     * LoadBalancer dimension of a load balancer ARN.
+     * @param loadBalancerArn ARN
+     * @return "app/name/id"
+     */
+    static String loadBalancerDimension(final String loadBalancerArn) {
+        return loadBalancerArn.substring(loadBalancerArn.indexOf(":loadbalancer/") + ":loadbalancer/".length());
+    }
+
+    /**
+     * TargetGroup dimension of a target group ARN.
+     * @param targetGroupArn ARN
+     * @return "targetgroup/name/id"
+     */
+    static String targetGroupDimension(final String targetGroupArn) {
+        return targetGroupArn.substring(targetGroupArn.lastIndexOf(':') + 1);
+    }
+
+    /**
+     * Watch a group and the load balancer and target group in front of it:
+     * group CPU, request count, average and p99 response time and healthy
+     * hosts. The p99 series is keyed "group/TargetResponseTime.p99".
+     * @param groupName auto scaling group name
+     * @param resources load balancer and target group ARNs
+     * @return this collector
+     */
+    public synchronized MetricCollector watch(final String groupName, final ResourceConfig resources) {
+        Dimension group = new Dimension().withName("AutoScalingGroupName").withValue(groupName);
+        Dimension loadBalancer = new Dimension().withName("LoadBalancer")
+                .withValue(loadBalancerDimension(resources.getLoadBalancerArn()));
+        Dimension targetGroup = new Dimension().withName("TargetGroup")
+                .withValue(targetGroupDimension(resources.getTargetGroupArn()));
+        add(groupName, "AWS/EC2", "CPUUtilization", "Average", group);
+        add(groupName, "AWS/ApplicationELB", "RequestCount", "Sum", loadBalancer);
+        add(groupName, "AWS/ApplicationELB", "TargetResponseTime", "Average", loadBalancer);
+        add(groupName, "AWS/ApplicationELB", "TargetResponseTime", "p99", loadBalancer);
+        add(groupName, "AWS/ApplicationELB", "HealthyHostCount", "Average", targetGroup, loadBalancer);
+        return this;
+    }
+
+    /**
+     * Add the query of one metric.
+     * @param groupName group the series belongs to
+     * @param namespace metric namespace
+     * @param metricName metric name
+     * @param statistic statistic
+     * @param dimensions metric dimensions
+     */
+    private void add(final String groupName, final String namespace, final String metricName,
+                     final String statistic, final Dimension... dimensions) {
+        // IDs must start with a lower case letter
+        String id = "m" + queries.size();
+        queries.add(new MetricDataQuery()
+                .withId(id)
+                .withMetricStat(new MetricStat()
+                        .withMetric(new Metric()
+                                .withNamespace(namespace)
+                                .withMetricName(metricName)
+                                .withDimensions(dimensions))
+                        .withPeriod(periodSeconds)
+                        .withStat(statistic))
+                .withReturnData(true));
+        keys.put(id, groupName + "/" + metricName
+                + ("Average".equals(statistic) || "Sum".equals(statistic) ? "" : "." + statistic));
+    }
+
+    /**
+     * Read the periods completed since the last collection, plus the last
+     * few again, into the store.
+     * @return datapoints read
+     */
+    public synchronized int collect() {
+        long period = periodSeconds * 1000L;
+        long end = clock.getAsLong() / period * period;
+        long start = collectedUntil > 0 ? collectedUntil - LATE_PERIODS * period
+                : end - BACKFILL_PERIODS * period;
+        int datapoints = 0;
+        for (int from = 0; from < queries.size(); from += MAX_QUERIES) {
+            GetMetricDataRequest request = new GetMetricDataRequest()
+                    .withMetricDataQueries(queries.subList(from, Math.min(queries.size(), from + MAX_QUERIES)))
+                    .withStartTime(new Date(start))
+                    .withEndTime(new Date(end))
+                    .withScanBy("TimestampAscending");
+            do {
+                GetMetricDataResult result = cloudWatch.getMetricData(request);
+                calls++;
+                for (MetricDataResult data : result.getMetricDataResults()) {
+                    String key = keys.get(data.getId());
+                    for (int i = 0; i < data.getTimestamps().size(); i++) {
+                        store.add(key, data.getTimestamps().get(i).getTime(), data.getValues().get(i));
+                        datapoints++;
+                    }
+                }
+                request.setNextToken(result.getNextToken());
+            } while (request.getNextToken() != null);
+        }
+        collectedUntil = end;
+        return datapoints;
+    }
+
+    /**
+     * Collect in the background.
+     * @param tickMillis real milliseconds between two collections
+     * @return this collector
+     */
+    public MetricCollector start(final long tickMillis) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metric-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                collect();
+            } catch (RuntimeException e) {
+                // The next collection reads the missed periods again
+                System.out.println("Metric collection failed: " + e.getMessage());
+            }
+        }, 0, tickMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public MetricStore getStore() {
+        return store;
+    }
+
+    public synchronized int getCalls() {
+        return calls;
+    }
+
+    /**
+     * Summarize every series over a time range.
+     * @param from first timestamp, inclusive
+     * @param to last timestamp, exclusive
+     * @return one line per series
+     */
+    public List<String> summary(final long from, final long to) {
+        List<String> lines = new ArrayList<>();
+        for (String key : new TreeSet<>(store.keys())) {
+            MetricStore.TimeSeries series = store.get(key);
+            lines.add(String.format("%s samples=%d average=%.3f max=%.3f latest=%.3f",
+                    key, series.range(from, to).size(), series.average(from, to),
+                    series.max(from, to), series.latest()));
+        }
+        return lines;
+    }
+
+    /**
+     * Stop collecting.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
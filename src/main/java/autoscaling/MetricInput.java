@@ -0,0 +1,98 @@
+package autoscaling;
+
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.GetMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.Metric;
+import com.amazonaws.services.cloudwatch.model.MetricDataQuery;
+import com.amazonaws.services.cloudwatch.model.MetricDataResult;
+import com.amazonaws.services.cloudwatch.model.MetricStat;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Latest average of a metric of the group, e.g. a high resolution
+ * custom metric the instances publish every second. Standard EC2
+ * metrics only have one minute periods; high resolution ones can be
+ * read at 1, 5, 10 or 30 seconds. Each datapoint is read once, so a
+ * controller stepping faster than the period does not count the same
+ * period again and again.
+ */
+public final class MetricInput implements ControlInput {
+
+    /**
+     * Periods read back, late datapoints leave the latest ones empty.
+     */
+    private static final int LOOKBACK_PERIODS = 5;
+
+    /**
+     * Shortest period of the metrics AWS services publish.
+     */
+    private static final int AWS_MIN_PERIOD_SECONDS = 60;
+
+    /**
+     * CloudWatch client.
+     */
+    private final AmazonCloudWatch cloudWatch;
+
+    /**
+     * Metric read, with the group dimension.
+     */
+    private final Metric metric;
+
+    /**
+     * Period in seconds.
+     */
+    private final int periodSeconds;
+
+    /**
+     * Timestamp of the datapoint read last.
+     */
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Create an input.
+     * @param cloudWatch CloudWatch client
+     * @param namespace metric namespace
+     * @param metricName metric name
+     * @param groupName group name, the AutoScalingGroupName dimension
+     * @param periodSeconds period in seconds, at least 60 for AWS/* namespaces
+     */
+    public MetricInput(final AmazonCloudWatch cloudWatch, final String namespace, final String metricName,
+                       final String groupName, final int periodSeconds) {
+        if (namespace.startsWith("AWS/") && periodSeconds < AWS_MIN_PERIOD_SECONDS) {
+            throw new IllegalArgumentException(namespace + " metrics have periods of "
+                    + AWS_MIN_PERIOD_SECONDS + " seconds at best, not " + periodSeconds);
+        }
+        this.cloudWatch = cloudWatch;
+        this.metric = new Metric()
+                .withNamespace(namespace)
+                .withMetricName(metricName)
+                .withDimensions(new Dimension().withName("AutoScalingGroupName").withValue(groupName));
+        this.periodSeconds = periodSeconds;
+    }
+
+    @Override
+    public double read(final long nowMillis) {
+        List<MetricDataResult> results = cloudWatch.getMetricData(new GetMetricDataRequest()
+                .withMetricDataQueries(new MetricDataQuery()
+                        .withId("input")
+                        .withMetricStat(new MetricStat()
+                                .withMetric(metric)
+                                .withPeriod(periodSeconds)
+                                .withStat("Average")))
+                .withStartTime(new Date(nowMillis - LOOKBACK_PERIODS * periodSeconds * 1000L))
+                .withEndTime(new Date(nowMillis))
+                .withScanBy("TimestampDescending")).getMetricDataResults();
+        if (results.isEmpty() || results.get(0).getValues().isEmpty()) {
+            return Double.NaN;
+        }
+        long timestamp = results.get(0).getTimestamps().get(0).getTime();
+        if (timestamp <= lastTimestamp) {
+            return Double.NaN;
+        }
+        lastTimestamp = timestamp;
+        return results.get(0).getValues().get(0);
+    }
+}
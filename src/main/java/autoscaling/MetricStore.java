@@ -0,0 +1,258 @@
+package autoscaling;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory time series of metric samples, keyed by name.
+ * Every series keeps its latest samples in a ring of primitive arrays, so
+ * the memory per series is fixed and old samples roll out of the window.
+ * Series can be written by a collector and read by controllers at the
+ * same time.
+ */
+public final class MetricStore {
+
+    /**
+     * Samples kept per series.
+     */
+    private final int capacity;
+
+    /**
+     * Series by key.
+     */
+    private final ConcurrentMap<String, TimeSeries> series = new ConcurrentHashMap<>();
+
+    /**
+     * Create a store.
+     * @param capacity samples kept per series
+     */
+    public MetricStore(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("A series needs room for at least one sample");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a sample.
+     * @param key series key
+     * @param timestamp epoch milliseconds
+     * @param value sample value
+     */
+    public void add(final String key, final long timestamp, final double value) {
+        series.computeIfAbsent(key, k -> new TimeSeries(capacity)).add(timestamp, value);
+    }
+
+    /**
+     * A series.
+     * @param key series key
+     * @return series or null when nothing was added under the key
+     */
+    public TimeSeries get(final String key) {
+        return series.get(key);
+    }
+
+    /**
+     * Keys of all series.
+     * @return keys, a live view
+     */
+    public Set<String> keys() {
+        return series.keySet();
+    }
+
+    /**
+     * Samples of one metric in timestamp order.
+     */
+    public static final class TimeSeries {
+        /**
+         * Timestamps, a ring starting at {@link #start}.
+         */
+        private final long[] times;
+        /**
+         * Values, same positions as the timestamps.
+         */
+        private final double[] values;
+        /**
+         * Position of the oldest sample.
+         */
+        private int start;
+        /**
+         * Number of samples.
+         */
+        private int size;
+
+        TimeSeries(final int capacity) {
+            this.times = new long[capacity];
+            this.values = new double[capacity];
+        }
+
+        /**
+         * Position in the arrays of the i-th oldest sample.
+         * @param i sample index
+         * @return array position
+         */
+        private int slot(final int i) {
+            int slot = start + i;
+            return slot >= times.length ? slot - times.length : slot;
+        }
+
+        /**
+         * Index of the first sample at or after a time.
+         * @param timestamp epoch milliseconds
+         * @return sample index, size when there is none
+         */
+        private int indexOf(final long timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[slot(middle)] < timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Add a sample. A sample for a timestamp already stored replaces it,
+         * CloudWatch revises the latest periods as late data arrives. A late
+         * sample older than the newest one is inserted in timestamp order;
+         * only one older than the whole window of a full series is dropped.
+         * @param timestamp epoch milliseconds
+         * @param value sample value
+         */
+        public synchronized void add(final long timestamp, final double value) {
+            int index = indexOf(timestamp);
+            if (index < size && times[slot(index)] == timestamp) {
+                values[slot(index)] = value;
+                return;
+            }
+            if (size == times.length) {
+                if (index == 0) {
+                    return;
+                }
+                start = slot(1);
+                size--;
+                index--;
+            }
+            // Late samples are a few periods back, so only a few move
+            for (int i = size; i > index; i--) {
+                times[slot(i)] = times[slot(i - 1)];
+                values[slot(i)] = values[slot(i - 1)];
+            }
+            int slot = slot(index);
+            times[slot] = timestamp;
+            values[slot] = value;
+            size++;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Timestamp of the newest sample.
+         * @return epoch milliseconds, Long.MIN_VALUE when empty
+         */
+        public synchronized long latestTime() {
+            return size == 0 ? Long.MIN_VALUE : times[slot(size - 1)];
+        }
+
+        /**
+         * Value of the newest sample.
+         * @return value, NaN when empty
+         */
+        public synchronized double latest() {
+            return size == 0 ? Double.NaN : values[slot(size - 1)];
+        }
+
+        /**
+         * Average of the samples in a time range.
+         * @param from first timestamp, inclusive
+         * @param to last timestamp, exclusive
+         * @return average, NaN without samples
+         */
+        public synchronized double average(final long from, final long to) {
+            double sum = 0;
+            int count = 0;
+            for (int i = indexOf(from); i < size && times[slot(i)] < to; i++) {
+                sum += values[slot(i)];
+                count++;
+            }
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        /**
+         * Largest sample in a time range.
+         * @param from first timestamp, inclusive
+         * @param to last timestamp, exclusive
+         * @return maximum, NaN without samples
+         */
+        public synchronized double max(final long from, final long to) {
+            double max = Double.NaN;
+            for (int i = indexOf(from); i < size && times[slot(i)] < to; i++) {
+                double value = values[slot(i)];
+                max = Double.isNaN(max) ? value : Math.max(max, value);
+            }
+            return max;
+        }
+
+        /**
+         * Copy the samples in a time range.
+         * @param from first timestamp, inclusive
+         * @param to last timestamp, exclusive
+         * @return timestamps and values, oldest first
+         */
+        public synchronized Samples range(final long from, final long to) {
+            int first = indexOf(from);
+            int end = indexOf(to);
+            long[] rangeTimes = new long[end - first];
+            double[] rangeValues = new double[end - first];
+            for (int i = first; i < end; i++) {
+                rangeTimes[i - first] = times[slot(i)];
+                rangeValues[i - first] = values[slot(i)];
+            }
+            return new Samples(rangeTimes, rangeValues);
+        }
+    }
+
+    /**
+     * Copied samples of a series.
+     */
+    public static final class Samples {
+        /**
+         * Epoch milliseconds, oldest first.
+         */
+        private final long[] times;
+        /**
+         * Values.
+         */
+        private final double[] values;
+
+        Samples(final long[] times, final double[] values) {
+            this.times = times;
+            this.values = values;
+        }
+
+        public int size() {
+            return times.length;
+        }
+
+        public long time(final int i) {
+            return times[i];
+        }
+
+        public double value(final int i) {
+            return values[i];
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+}
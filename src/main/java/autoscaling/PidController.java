@@ -0,0 +1,121 @@
+package autoscaling;
+
+/**
+ * Keeps the input at a setpoint with a PID controller in velocity form:
+ * every reading moves a continuous capacity by the change of the PID
+ * output, and the group follows that capacity once it is more than half
+ * an instance plus a dead band away. The error is relative to the
+ * setpoint and the moves relative to the capacity, so the same gains fit
+ * any metric and group size. Scale in only goes as far as the input,
+ * spread over fewer instances, stays at or under the setpoint, so that a
+ * setpoint between two capacities does not flap between them. When the
+ * group ends up at another capacity than the one asked for, e.g. clamped
+ * to its bounds, the controller restarts from it, which keeps the
+ * integral from winding up.
+ */
+public final class PidController implements ScalingController {
+
+    /**
+     * Instances beyond half an instance the output must move before the
+     * capacity follows, against flapping around a rounding boundary.
+     */
+    private static final double DEAD_BAND = 0.25;
+
+    /**
+     * Value the input is kept at.
+     */
+    private final double setpoint;
+
+    /**
+     * Proportional gain.
+     */
+    private final double kp;
+
+    /**
+     * Integral gain, per second.
+     */
+    private final double ki;
+
+    /**
+     * Derivative gain, in seconds.
+     */
+    private final double kd;
+
+    /**
+     * Continuous capacity.
+     */
+    private double output;
+
+    /**
+     * Error of the last reading.
+     */
+    private double lastError;
+
+    /**
+     * Error of the reading before the last one.
+     */
+    private double previousError;
+
+    /**
+     * Time of the last reading, -1 before the first.
+     */
+    private long lastMillis = -1;
+
+    /**
+     * Capacity returned last.
+     */
+    private int lastCapacity;
+
+    /**
+     * Create a controller.
+     * @param setpoint value the input is kept at
+     * @param kp proportional gain
+     * @param ki integral gain, per second
+     * @param kd derivative gain, in seconds
+     */
+    public PidController(final double setpoint, final double kp, final double ki, final double kd) {
+        if (setpoint <= 0) {
+            throw new IllegalArgumentException("PID setpoint must be positive, got " + setpoint);
+        }
+        this.setpoint = setpoint;
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+    }
+
+    @Override
+    public int desiredCapacity(final double value, final int capacity, final long nowMillis) {
+        double error = (value - setpoint) / setpoint;
+        if (lastMillis < 0 || capacity != lastCapacity) {
+            output = capacity;
+            lastError = error;
+            previousError = error;
+            lastMillis = nowMillis;
+            lastCapacity = capacity;
+            return capacity;
+        }
+        double seconds = (nowMillis - lastMillis) / 1000.0;
+        if (seconds <= 0) {
+            return capacity;
+        }
+        double change = kp * (error - lastError)
+                + ki * error * seconds
+                + kd * (error - 2 * lastError + previousError) / seconds;
+        output += Math.max(1, capacity) * change;
+        previousError = lastError;
+        lastError = error;
+        lastMillis = nowMillis;
+
+        if (Math.abs(output - capacity) >= 0.5 + DEAD_BAND) {
+            int next = (int) Math.max(0, Math.round(output));
+            if (next < capacity && value * capacity > setpoint * next) {
+                // The fewer instances would run above the setpoint and be
+                // added back right away: hold and drop the accumulated move
+                output = capacity;
+                return capacity;
+            }
+            lastCapacity = next;
+        }
+        return lastCapacity;
+    }
+}
@@ -0,0 +1,306 @@
+package autoscaling;
+
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.Instance;
+import com.amazonaws.services.autoscaling.model.SetDesiredCapacityRequest;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.Datapoint;
+import com.amazonaws.services.cloudwatch.model.Dimension;
+import com.amazonaws.services.cloudwatch.model.GetMetricStatisticsRequest;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Sets the desired capacity of the group ahead of demand.
+ * Every alarm period it reads the request count of the load balancer,
+ * forecasts the request rate one boot and health check grace period ahead
+ * with a {@link LoadForecaster} and sizes the group for the rate one
+ * instance should serve. Requests are read instead of CPU because CPU
+ * saturates during exactly the overloads the forecast has to see.
+ * While it runs it owns scale in: the low CPU "ScaleOut" alarm would
+ * otherwise remove the capacity bought ahead of a ramp. The high CPU
+ * "ScaleIn" alarm stays as the reactive fallback.
+ */
+public final class PredictiveScaler implements AutoCloseable {
+
+    /**
+     * Whether the predictive mode runs next to the alarms.
+     */
+    static final boolean ENABLED = configuration.getBoolean("predictive_scaling");
+
+    /**
+     * Requests per second one instance should serve.
+     */
+    private static final double REQUESTS_PER_INSTANCE
+            = configuration.getDouble("predictive_requests_per_instance");
+
+    /**
+     * Seconds from a capacity change to new instances serving.
+     */
+    private static final int LEAD_SECONDS = configuration.getInt("predictive_lead_seconds");
+
+    /**
+     * Alarm periods per season of the load, 0 for none.
+     */
+    private static final int SEASON_PERIODS = configuration.getInt("predictive_season_periods");
+
+    /**
+     * Level smoothing factor.
+     */
+    private static final double ALPHA = 0.5;
+
+    /**
+     * Trend smoothing factor.
+     */
+    private static final double BETA = 0.3;
+
+    /**
+     * Seasonal smoothing factor.
+     */
+    private static final double GAMMA = 0.1;
+
+    /**
+     * AAS client.
+     */
+    private final AmazonAutoScaling aas;
+
+    /**
+     * CloudWatch client.
+     */
+    private final AmazonCloudWatch cloudWatch;
+
+    /**
+     * Group name.
+     */
+    private final String groupName;
+
+    /**
+     * LoadBalancer metric dimension, "app/name/id".
+     */
+    private final String loadBalancer;
+
+    /**
+     * Requests per second one instance should serve.
+     */
+    private final double requestsPerInstance;
+
+    /**
+     * Metric period in seconds.
+     */
+    private final int periodSeconds;
+
+    /**
+     * Periods to forecast ahead.
+     */
+    private final int leadPeriods;
+
+    /**
+     * Demand forecaster.
+     */
+    private final LoadForecaster forecaster;
+
+    /**
+     * Epoch milliseconds of the AWS side, the wall clock against AWS.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Timestamp of the last datapoint used.
+     */
+    private long lastDatapoint = Long.MIN_VALUE;
+
+    /**
+     * Scheduler of the control loop, null until started.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a scaler.
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @param groupName group name
+     * @param loadBalancerArn ARN of the load balancer in front of the group
+     * @param requestsPerInstance requests per second one instance should serve
+     * @param periodSeconds metric period in seconds
+     * @param leadSeconds seconds from a capacity change to new instances serving
+     * @param forecaster demand forecaster with periods of {@code periodSeconds}
+     * @param clock epoch milliseconds of the AWS side
+     */
+    public PredictiveScaler(final AmazonAutoScaling aas, final AmazonCloudWatch cloudWatch,
+                            final String groupName, final String loadBalancerArn,
+                            final double requestsPerInstance,
+                            final int periodSeconds, final int leadSeconds,
+                            final LoadForecaster forecaster, final LongSupplier clock) {
+        this.aas = aas;
+        this.cloudWatch = cloudWatch;
+        this.groupName = groupName;
+        this.loadBalancer = MetricCollector.loadBalancerDimension(loadBalancerArn);
+        this.requestsPerInstance = requestsPerInstance;
+        this.periodSeconds = periodSeconds;
+        this.leadPeriods = Math.max(1, (leadSeconds + periodSeconds - 1) / periodSeconds);
+        this.forecaster = forecaster;
+        this.clock = clock;
+    }
+
+    /**
+     * Create a scaler for the configured group.
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @param loadBalancerArn ARN of the load balancer in front of the group
+     * @return scaler, not started
+     */
+    public static PredictiveScaler fromConfiguration(final AmazonAutoScaling aas,
+                                                     final AmazonCloudWatch cloudWatch,
+                                                     final String loadBalancerArn) {
+        return fromConfiguration(aas, cloudWatch, loadBalancerArn, System::currentTimeMillis);
+    }
+
+    /**
+     * Create a scaler for the configured group against another clock,
+     * e.g. the one of a simulated account.
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @param loadBalancerArn ARN of the load balancer in front of the group
+     * @param clock epoch milliseconds of the AWS side
+     * @return scaler, not started
+     */
+    public static PredictiveScaler fromConfiguration(final AmazonAutoScaling aas,
+                                                     final AmazonCloudWatch cloudWatch,
+                                                     final String loadBalancerArn,
+                                                     final LongSupplier clock) {
+        ScalingSettings settings = ScalingSettings.current();
+        return new PredictiveScaler(aas, cloudWatch, AutoScale.AUTO_SCALING_GROUP_NAME,
+                loadBalancerArn, REQUESTS_PER_INSTANCE, settings.getAlarmPeriod(), LEAD_SECONDS,
+                new LoadForecaster(ALPHA, BETA, GAMMA, SEASON_PERIODS, settings.getAlarmPeriod() * 1000L),
+                clock);
+    }
+
+    /**
+     * Run the control loop in the background.
+     * @param tickMillis real milliseconds between two steps, usually the period
+     * @return this scaler
+     */
+    public PredictiveScaler start(final long tickMillis) {
+        Cloudwatch.setScaleOutAlarmActions(cloudWatch, false);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "predictive-scaler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                step();
+            } catch (RuntimeException e) {
+                // The next period tries again; an exception out of here would end the loop
+                System.out.println("Predictive scaling step failed: " + e);
+            }
+        }, 0, tickMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Run the control loop once per alarm period of real time.
+     * @return this scaler
+     */
+    public PredictiveScaler start() {
+        return start(periodSeconds * 1000L);
+    }
+
+    /**
+     * Read the latest period and resize the group if the forecast asks for it.
+     * Scale out goes straight to the forecast need. Scale in waits until no
+     * instance is pending and then goes one instance per period, so that a
+     * dip in the forecast does not give away capacity the trend wants back
+     * a period later.
+     * @return desired capacity set, or -1 when nothing changed
+     */
+    public int step() {
+        Datapoint datapoint = latestDatapoint();
+        if (datapoint == null || datapoint.getTimestamp().getTime() <= lastDatapoint) {
+            return -1;
+        }
+        lastDatapoint = datapoint.getTimestamp().getTime();
+        double rate = datapoint.getSum() / periodSeconds;
+        forecaster.update(lastDatapoint, rate);
+        double predicted = Math.max(rate, forecaster.forecast(leadPeriods));
+        int needed = (int) Math.ceil(predicted / requestsPerInstance);
+
+        List<AutoScalingGroup> groups = aas.describeAutoScalingGroups(new DescribeAutoScalingGroupsRequest()
+                .withAutoScalingGroupNames(groupName)).getAutoScalingGroups();
+        if (groups.isEmpty()) {
+            // Not visible yet right after its creation
+            return -1;
+        }
+        AutoScalingGroup group = groups.get(0);
+        boolean pending = false;
+        for (Instance instance : group.getInstances()) {
+            // Includes Pending:Wait and Pending:Proceed while a lifecycle hook holds it
+            pending |= instance.getLifecycleState().startsWith("Pending");
+        }
+        int desired = group.getDesiredCapacity();
+        int target = desired;
+        if (needed > desired) {
+            target = needed;
+        } else if (needed < desired && !pending) {
+            target = desired - 1;
+        }
+        // The group limits may be reloaded during the run
+        ScalingSettings settings = ScalingSettings.current();
+        target = Math.max(settings.getMinSize(), Math.min(settings.getMaxSize(), target));
+        if (target == desired) {
+            return -1;
+        }
+        aas.setDesiredCapacity(new SetDesiredCapacityRequest()
+                .withAutoScalingGroupName(groupName)
+                .withDesiredCapacity(target)
+                .withHonorCooldown(false));
+        System.out.printf("Predictive scaling: %.0f requests/s, forecast %.0f, desired %d -> %d%n",
+                rate, predicted, desired, target);
+        return target;
+    }
+
+    /**
+     * Latest complete period of the load balancer request count.
+     * @return datapoint or null when there is none yet
+     */
+    private Datapoint latestDatapoint() {
+        long now = clock.getAsLong();
+        List<Datapoint> datapoints = cloudWatch.getMetricStatistics(new GetMetricStatisticsRequest()
+                .withNamespace("AWS/ApplicationELB")
+                .withMetricName("RequestCount")
+                .withDimensions(new Dimension()
+                        .withName("LoadBalancer")
+                        .withValue(loadBalancer))
+                .withStartTime(new Date(now - 3L * periodSeconds * 1000))
+                .withEndTime(new Date(now))
+                .withPeriod(periodSeconds)
+                .withStatistics("Sum")).getDatapoints();
+        Datapoint latest = null;
+        for (Datapoint datapoint : datapoints) {
+            if (latest == null || datapoint.getTimestamp().after(latest.getTimestamp())) {
+                latest = datapoint;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Stop the control loop and hand scale in back to the alarm.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            Cloudwatch.setScaleOutAlarmActions(cloudWatch, true);
+        }
+    }
+}
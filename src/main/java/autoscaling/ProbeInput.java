@@ -0,0 +1,145 @@
+package autoscaling;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTargetHealthRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.TargetHealthDescription;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Average response time in milliseconds of the healthy instances of the
+ * target group, probed directly and all at once instead of waiting for
+ * the load balancer metrics. A probe that fails or times out counts as
+ * the timeout: an instance too busy to answer is the saturation the
+ * controller has to see.
+ * Reading never waits for the probes: a read starts a round when none is
+ * in flight and returns the average of the round that finished since the
+ * last read, so a reading is at most one round old.
+ */
+public final class ProbeInput implements ControlInput {
+
+    /**
+     * Shared non-blocking client.
+     */
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    /**
+     * ELB client.
+     */
+    private final AmazonElasticLoadBalancing elb;
+
+    /**
+     * EC2 client.
+     */
+    private final AmazonEC2 ec2;
+
+    /**
+     * Target group of the instances.
+     */
+    private final String targetGroupArn;
+
+    /**
+     * Path probed.
+     */
+    private final String path;
+
+    /**
+     * Probe timeout in milliseconds.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Round of probes started by the last read, null before the first.
+     */
+    private CompletableFuture<Double> round;
+
+    /**
+     * Create an input.
+     * @param elb ELB client
+     * @param ec2 EC2 client
+     * @param targetGroupArn target group of the instances
+     * @param path path probed, e.g. "/"
+     * @param timeoutMillis probe timeout in milliseconds
+     */
+    public ProbeInput(final AmazonElasticLoadBalancing elb, final AmazonEC2 ec2,
+                      final String targetGroupArn, final String path, final long timeoutMillis) {
+        this.elb = elb;
+        this.ec2 = ec2;
+        this.targetGroupArn = targetGroupArn;
+        this.path = path;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public synchronized double read(final long nowMillis) {
+        if (round != null && !round.isDone()) {
+            return Double.NaN;
+        }
+        double value = round != null ? round.join() : Double.NaN;
+        round = startRound();
+        return value;
+    }
+
+    /**
+     * Probe every healthy instance at once.
+     * @return future completed with the average response time, NaN without healthy instances
+     */
+    private CompletableFuture<Double> startRound() {
+        InstanceStateService instances = Ec2.instanceStates(ec2);
+        List<CompletableFuture<Long>> probes = new ArrayList<>();
+        for (TargetHealthDescription target : elb.describeTargetHealth(new DescribeTargetHealthRequest()
+                .withTargetGroupArn(targetGroupArn)).getTargetHealthDescriptions()) {
+            if ("healthy".equals(target.getTargetHealth().getState())) {
+                probes.add(probe(instances.get(target.getTarget().getId())));
+            }
+        }
+        if (probes.isEmpty()) {
+            return CompletableFuture.completedFuture(Double.NaN);
+        }
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            long total = 0;
+            for (CompletableFuture<Long> probe : probes) {
+                total += probe.join();
+            }
+            return (double) total / probes.size();
+        });
+    }
+
+    /**
+     * Time one request to an instance.
+     * @param instance instance
+     * @return future completed with the response time, the timeout on failure
+     */
+    private CompletableFuture<Long> probe(final Instance instance) {
+        if (instance == null) {
+            return CompletableFuture.completedFuture(timeoutMillis);
+        }
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create("http://" + Ec2.instanceHost(instance)
+                            + ":" + AutoScale.HTTP_PORT + path))
+                    .timeout(Duration.ofMillis(timeoutMillis))
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(timeoutMillis);
+        }
+        long start = System.nanoTime();
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> error == null && response.statusCode() < 500
+                        ? Math.min(timeoutMillis, (System.nanoTime() - start) / 1000000)
+                        : timeoutMillis);
+    }
+}
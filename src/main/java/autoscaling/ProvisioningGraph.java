@@ -0,0 +1,213 @@
+package autoscaling;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dependency graph of resource steps.
+ * Every step starts as soon as all of its dependencies have finished,
+ * so independent steps run at the same time on the supplied executor.
+ */
+public final class ProvisioningGraph {
+
+    /**
+     * A single unit of work in the graph.
+     */
+    @FunctionalInterface
+    public interface Step {
+        /**
+         * Run the step.
+         * @throws Exception on failure, dependents are not started
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Graph node with its timing.
+     */
+    private static final class Node {
+        /**
+         * Node name.
+         */
+        private final String name;
+        /**
+         * Work to run.
+         */
+        private final Step step;
+        /**
+         * Names of the nodes this node depends on.
+         */
+        private final List<String> dependencies;
+        /**
+         * Start offset from the graph start in nanoseconds.
+         */
+        private volatile long startNanos = -1;
+        /**
+         * End offset from the graph start in nanoseconds.
+         */
+        private volatile long endNanos = -1;
+
+        Node(final String name, final Step step,
+             final List<String> dependencies) {
+            this.name = name;
+            this.step = step;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * Graph name used in the timing report.
+     */
+    private final String name;
+
+    /**
+     * Nodes in insertion order, which is also a topological order.
+     */
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    /**
+     * Create an empty graph.
+     * @param name graph name
+     */
+    public ProvisioningGraph(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add a node. Dependencies must already be in the graph,
+     * which keeps the graph acyclic by construction.
+     * @param nodeName unique node name
+     * @param step work to run
+     * @param dependencies names of nodes that must finish first
+     * @return this graph
+     */
+    public ProvisioningGraph add(final String nodeName,
+                                 final Step step,
+                                 final String... dependencies) {
+        if (nodes.containsKey(nodeName)) {
+            throw new IllegalArgumentException("Duplicate node " + nodeName);
+        }
+        List<String> deps = new ArrayList<>();
+        for (String dependency : dependencies) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("Node " + nodeName
+                        + " depends on unknown node " + dependency);
+            }
+            deps.add(dependency);
+        }
+        nodes.put(nodeName, new Node(nodeName, step, deps));
+        return this;
+    }
+
+    /**
+     * Whether the graph has a node.
+     * @param nodeName node name
+     * @return true when added
+     */
+    public boolean contains(final String nodeName) {
+        return nodes.containsKey(nodeName);
+    }
+
+    /**
+     * Run every node and wait for the whole graph.
+     * Prints the timing of each node and the critical path.
+     * @param executor executor bounding the parallelism
+     * @throws InterruptedException when interrupted while waiting
+     * @throws ExecutionException when a node fails
+     */
+    public void execute(final ExecutorService executor)
+            throws InterruptedException, ExecutionException {
+        final long graphStart = System.nanoTime();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (Node node : nodes.values()) {
+            CompletableFuture<?>[] deps = new CompletableFuture<?>[node.dependencies.size()];
+            for (int i = 0; i < deps.length; i++) {
+                deps[i] = futures.get(node.dependencies.get(i));
+            }
+            futures.put(node.name, CompletableFuture.allOf(deps)
+                    .thenRunAsync(() -> runNode(node, graphStart), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.values()
+                    .toArray(new CompletableFuture<?>[0])).get();
+        } finally {
+            printReport();
+        }
+    }
+
+    /**
+     * Run one node and record its timing.
+     * @param node node to run
+     * @param graphStart graph start in nanoseconds
+     */
+    private static void runNode(final Node node, final long graphStart) {
+        node.startNanos = System.nanoTime() - graphStart;
+        try {
+            node.step.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            node.endNanos = System.nanoTime() - graphStart;
+        }
+    }
+
+    /**
+     * Print per-node timings and the critical path.
+     */
+    private void printReport() {
+        System.out.println(name + " timings:");
+        Node last = null;
+        for (Node node : nodes.values()) {
+            if (node.endNanos < 0) {
+                System.out.println("  " + node.name + " did not run");
+                continue;
+            }
+            System.out.println("  " + node.name
+                    + " start=" + millis(node.startNanos) + "ms"
+                    + " duration=" + millis(node.endNanos - node.startNanos) + "ms");
+            if (last == null || node.endNanos > last.endNanos) {
+                last = node;
+            }
+        }
+        List<String> path = new ArrayList<>();
+        for (Node node = last; node != null; node = latestDependency(node)) {
+            path.add(0, node.name);
+        }
+        System.out.println("  critical path: " + String.join(" -> ", path)
+                + (last == null ? "" : " (" + millis(last.endNanos) + "ms)"));
+    }
+
+    /**
+     * Find the dependency that finished last, which is what held the node back.
+     * @param node node to inspect
+     * @return the latest finishing dependency or null
+     */
+    private Node latestDependency(final Node node) {
+        Node latest = null;
+        for (String dependency : node.dependencies) {
+            Node candidate = nodes.get(dependency);
+            if (latest == null || candidate.endNanos > latest.endNanos) {
+                latest = candidate;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds.
+     * @param nanos nanoseconds
+     * @return milliseconds
+     */
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
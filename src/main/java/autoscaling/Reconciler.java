@@ -0,0 +1,685 @@
+package autoscaling;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.CreateLaunchConfigurationRequest;
+import com.amazonaws.services.autoscaling.model.DeletePolicyRequest;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeLaunchConfigurationsRequest;
+import com.amazonaws.services.autoscaling.model.DescribePoliciesRequest;
+import com.amazonaws.services.autoscaling.model.DescribePoliciesResult;
+import com.amazonaws.services.autoscaling.model.DescribeWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.LaunchConfiguration;
+import com.amazonaws.services.autoscaling.model.PutScalingPolicyRequest;
+import com.amazonaws.services.autoscaling.model.PutWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.ScalingPolicy;
+import com.amazonaws.services.autoscaling.model.TagDescription;
+import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.WarmPoolConfiguration;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.DeleteAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.MetricAlarm;
+import com.amazonaws.services.cloudwatch.model.PutMetricAlarmRequest;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.AuthorizeSecurityGroupIngressRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsRequest;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.IpPermission;
+import com.amazonaws.services.ec2.model.IpRange;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.SecurityGroup;
+import com.amazonaws.services.ec2.model.Subnet;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.model.Action;
+import com.amazonaws.services.elasticloadbalancingv2.model.AvailabilityZone;
+import com.amazonaws.services.elasticloadbalancingv2.model.CreateTargetGroupRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeListenersRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeLoadBalancersRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTagsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTargetGroupsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.Listener;
+import com.amazonaws.services.elasticloadbalancingv2.model.LoadBalancer;
+import com.amazonaws.services.elasticloadbalancingv2.model.ModifyTargetGroupRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.SetSecurityGroupsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.SetSubnetsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.Tag;
+import com.amazonaws.services.elasticloadbalancingv2.model.TargetGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static autoscaling.AutoScale.PROJECT_VALUE;
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Brings the account to the resources the configuration asks for instead
+ * of provisioning from scratch, so that runs reuse what the last one left.
+ * Resources are found by name, and the load balancer, auto scaling group
+ * and Load Generators by their Project tag too; a resource by our name
+ * that is not tagged as ours is never adopted. Each one is compared with
+ * the request that would create it:
+ * - settings that can change in place (target group health checks,
+ *   group sizes, cooldowns and zones, warm pool, policies, alarms,
+ *   security group rules, the listener, the load balancer subnets and
+ *   security groups) are updated in place,
+ * - immutable ones (launch configuration, target group port) replace the
+ *   resource and the ones that depend on it,
+ * - missing resources are provisioned by {@link AutoScale#initializeResources}
+ *   with the adopted ones marked as done in the journal.
+ * Nothing is torn down at the end of the run.
+ */
+public final class Reconciler {
+
+    /**
+     * Whether runs reconcile and keep their resources.
+     */
+    static final boolean ENABLED = configuration.getBoolean("reconcile");
+
+    /**
+     * Alarms of the simple and step scaling policies.
+     */
+    private static final String[] ALARM_NAMES = {"ScaleIn", "ScaleOut"};
+
+    /**
+     * EC2 client.
+     */
+    private final AmazonEC2 ec2;
+
+    /**
+     * ELB client.
+     */
+    private final AmazonElasticLoadBalancing elb;
+
+    /**
+     * AAS client.
+     */
+    private final AmazonAutoScaling aas;
+
+    /**
+     * CloudWatch client.
+     */
+    private final AmazonCloudWatch cloudWatch;
+
+    /**
+     * Journal of the run; adopted resources are recorded as provisioned.
+     */
+    private final RunJournal journal;
+
+    /**
+     * Region of the stack.
+     */
+    private final StackRegion region;
+
+    /**
+     * Default subnets of the zones of the region, one per zone.
+     */
+    private List<Subnet> subnets;
+
+    /**
+     * Provisioning steps whose resources must be replaced.
+     */
+    private final Set<String> replaced = new LinkedHashSet<>();
+
+    /**
+     * Settings the group is reconciled to.
+     */
+    private final ScalingSettings settings = ScalingSettings.current();
+
+    /**
+     * Changes applied, in order.
+     */
+    private final List<String> changes = new ArrayList<>();
+
+    /**
+     * Create a reconciler.
+     * @param ec2 EC2 client
+     * @param elb ELB client
+     * @param aas AAS client
+     * @param cloudWatch CloudWatch client
+     * @param journal empty journal of the run
+     * @param region region of the stack
+     */
+    public Reconciler(final AmazonEC2 ec2,
+                      final AmazonElasticLoadBalancing elb,
+                      final AmazonAutoScaling aas,
+                      final AmazonCloudWatch cloudWatch,
+                      final RunJournal journal,
+                      final StackRegion region) {
+        this.ec2 = ec2;
+        this.elb = elb;
+        this.aas = aas;
+        this.cloudWatch = cloudWatch;
+        this.journal = journal;
+        this.region = region;
+    }
+
+    /**
+     * Reconcile every resource of the task.
+     * @return Resource configuration
+     */
+    public ResourceConfig reconcile() throws InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        subnets = Ec2.getDefaultSubnets(ec2, region.getZones());
+        reconcileSecurityGroup("lgSecurityGroup", AutoScale.LG_SECURITY_GROUP);
+        String elbAsgSecurityGroupId = reconcileSecurityGroup("elbAsgSecurityGroup",
+                AutoScale.ELBASG_SECURITY_GROUP);
+        if (elbAsgSecurityGroupId != null) {
+            journal.set("elbAsgSecurityGroupId", elbAsgSecurityGroupId);
+        }
+        reconcileTargetGroup();
+        reconcileLoadBalancer(elbAsgSecurityGroupId);
+        int loadGenerators = reconcileLoadGenerators();
+        reconcileLaunchConfiguration();
+        reconcileAutoScalingGroup();
+
+        if (!replaced.isEmpty()) {
+            AutoScale.destroy(aas, ec2, elb, cloudWatch, AutoScale.restore(journal),
+                    RunJournal.inMemory(), replaced);
+        }
+        ResourceConfig resourceConfig = AutoScale.initializeResources(ec2, elb, aas, cloudWatch, journal, region);
+        if (loadGenerators > 0 && loadGenerators < AutoScale.LOAD_GENERATOR_COUNT) {
+            for (Instance instance : AutoScale.launchLoadGenerators(ec2, region,
+                    AutoScale.LOAD_GENERATOR_COUNT - loadGenerators,
+                    instanceId -> journal.add("loadGeneratorId", instanceId))) {
+                journal.add("loadGeneratorDns", instance.getPublicDnsName());
+            }
+            resourceConfig = AutoScale.restore(journal);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (changes.isEmpty()) {
+            System.out.println("reconcile: up to date in " + elapsed + " ms");
+        } else {
+            System.out.println("reconcile: " + changes.size() + " changes in " + elapsed + " ms");
+        }
+        return resourceConfig;
+    }
+
+    public List<String> getChanges() {
+        return new ArrayList<>(changes);
+    }
+
+    /**
+     * Record and print a change.
+     * @param change what changed
+     */
+    private void change(final String change) {
+        changes.add(change);
+        System.out.println("reconcile: " + change);
+    }
+
+    /**
+     * Record a resource as provisioned.
+     * @param step provisioning step of the resource
+     */
+    private void adopt(final String step) {
+        journal.begin(step);
+        journal.done(step);
+    }
+
+    /**
+     * Replace a resource and the ones provisioned on top of it.
+     * @param step provisioning step of the resource
+     * @param reason why it cannot be changed in place
+     */
+    private void replace(final String step, final String reason) {
+        replaced.add(step);
+        change(step + ": " + reason + ", replacing");
+    }
+
+    /**
+     * Adopt a security group, restoring its ingress rule.
+     * @param step provisioning step of the group
+     * @param groupName group name
+     * @return group ID, null when the group is missing
+     */
+    private String reconcileSecurityGroup(final String step, final String groupName) {
+        DescribeSecurityGroupsRequest request = new DescribeSecurityGroupsRequest()
+                .withFilters(new Filter("group-name").withValues(groupName));
+        SecurityGroup found = null;
+        do {
+            DescribeSecurityGroupsResult response = ec2.describeSecurityGroups(request);
+            for (SecurityGroup securityGroup : response.getSecurityGroups()) {
+                if (securityGroup.getGroupName().equals(groupName)) {
+                    found = securityGroup;
+                }
+            }
+            request.setNextToken(response.getNextToken());
+        } while (request.getNextToken() != null);
+        if (found == null) {
+            change(step + ": missing, creating");
+            return null;
+        }
+        Ec2.securityGroups(ec2).register(groupName, found.getGroupId());
+        if (!allows(found.getIpPermissions(), Ec2.httpPermission())) {
+            ec2.authorizeSecurityGroupIngress(new AuthorizeSecurityGroupIngressRequest()
+                    .withGroupId(found.getGroupId())
+                    .withIpPermissions(Ec2.httpPermission()));
+            change(step + ": ingress rule restored");
+        }
+        adopt(step);
+        return found.getGroupId();
+    }
+
+    /**
+     * Whether ingress rules cover a rule.
+     * @param rules rules of a group
+     * @param wanted rule
+     * @return true when one rule has the ports, protocol and ranges
+     */
+    private static boolean allows(final List<IpPermission> rules, final IpPermission wanted) {
+        for (IpPermission rule : rules) {
+            Set<String> ranges = new HashSet<>();
+            for (IpRange range : rule.getIpv4Ranges()) {
+                ranges.add(range.getCidrIp());
+            }
+            boolean covered = true;
+            for (IpRange range : wanted.getIpv4Ranges()) {
+                covered &= ranges.contains(range.getCidrIp());
+            }
+            if (covered && wanted.getIpProtocol().equals(rule.getIpProtocol())
+                    && wanted.getFromPort().equals(rule.getFromPort())
+                    && wanted.getToPort().equals(rule.getToPort())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adopt the target group, updating its health check.
+     */
+    private void reconcileTargetGroup() {
+        TargetGroup found = null;
+        try {
+            List<TargetGroup> targetGroups = elb.describeTargetGroups(new DescribeTargetGroupsRequest()
+                    .withNames(AutoScale.AUTO_SCALING_TARGET_GROUP)).getTargetGroups();
+            found = targetGroups.isEmpty() ? null : targetGroups.get(0);
+        } catch (AmazonServiceException e) {
+            if (!"TargetGroupNotFound".equals(e.getErrorCode())) {
+                throw e;
+            }
+        }
+        if (found == null) {
+            change("targetGroup: missing, creating");
+            return;
+        }
+        journal.set("targetGroupArn", found.getTargetGroupArn());
+        CreateTargetGroupRequest wanted = Elb.targetGroupRequest(Ec2.getDefaultVPC(ec2));
+        if (!Objects.equals(wanted.getPort(), found.getPort())
+                || !Objects.equals(wanted.getProtocol(), found.getProtocol())
+                || !Objects.equals(wanted.getVpcId(), found.getVpcId())) {
+            replace("targetGroup", "port, protocol or VPC changed");
+            return;
+        }
+        if (!Objects.equals(wanted.getHealthCheckPath(), found.getHealthCheckPath())
+                || !Objects.equals(wanted.getHealthCheckIntervalSeconds(), found.getHealthCheckIntervalSeconds())
+                || !Objects.equals(wanted.getHealthyThresholdCount(), found.getHealthyThresholdCount())) {
+            elb.modifyTargetGroup(new ModifyTargetGroupRequest()
+                    .withTargetGroupArn(found.getTargetGroupArn())
+                    .withHealthCheckPath(wanted.getHealthCheckPath())
+                    .withHealthCheckIntervalSeconds(wanted.getHealthCheckIntervalSeconds())
+                    .withHealthCheckTimeoutSeconds(wanted.getHealthCheckTimeoutSeconds())
+                    .withHealthyThresholdCount(wanted.getHealthyThresholdCount())
+                    .withUnhealthyThresholdCount(wanted.getUnhealthyThresholdCount()));
+            change("targetGroup: health check updated");
+        }
+        adopt("targetGroup");
+    }
+
+    /**
+     * Adopt the load balancer, restoring its listener.
+     * @param securityGroupId ID of the ELB/ASG security group, null when missing
+     */
+    private void reconcileLoadBalancer(final String securityGroupId) throws InterruptedException {
+        LoadBalancer found = null;
+        try {
+            found = elb.describeLoadBalancers(new DescribeLoadBalancersRequest()
+                    .withNames(AutoScale.LOAD_BALANCER_NAME)).getLoadBalancers().get(0);
+        } catch (AmazonServiceException e) {
+            if (!"LoadBalancerNotFound".equals(e.getErrorCode())) {
+                throw e;
+            }
+        }
+        if (found == null) {
+            change("loadBalancer: missing, creating");
+            return;
+        }
+        String arn = found.getLoadBalancerArn();
+        List<Tag> tags = elb.describeTags(new DescribeTagsRequest().withResourceArns(arn))
+                .getTagDescriptions().get(0).getTags();
+        if (!tags.contains(Elb.ELB_TAGS_LIST.get(0))) {
+            throw new IllegalStateException("Load balancer " + AutoScale.LOAD_BALANCER_NAME
+                    + " exists but is not tagged Project=" + PROJECT_VALUE + ", refusing to adopt it");
+        }
+        journal.set("loadBalancerArn", arn);
+        journal.set("loadBalancerDns", found.getDNSName());
+        if (!journal.isDone("targetGroup")) {
+            replace("loadBalancer", "its target group is replaced");
+            return;
+        }
+        if (securityGroupId == null) {
+            replace("loadBalancer", "its security group is created again");
+            return;
+        }
+
+        Waiters.await(Waiters.loadBalancerActive(elb, arn));
+        String targetGroupArn = journal.get("targetGroupArn");
+        boolean forwarding = false;
+        for (Listener listener : elb.describeListeners(new DescribeListenersRequest()
+                .withLoadBalancerArn(arn)).getListeners()) {
+            for (Action action : listener.getDefaultActions()) {
+                forwarding |= targetGroupArn.equals(action.getTargetGroupArn());
+            }
+            if (!forwarding && AutoScale.HTTP_PORT.equals(listener.getPort())) {
+                replace("loadBalancer", "its listener forwards elsewhere");
+                return;
+            }
+        }
+        if (!forwarding) {
+            Elb.createListener(elb, arn, targetGroupArn);
+            change("loadBalancer: listener restored");
+        }
+
+        // Security groups and subnets of an application load balancer change in place
+        if (!found.getSecurityGroups().equals(Collections.singletonList(securityGroupId))) {
+            elb.setSecurityGroups(new SetSecurityGroupsRequest().withLoadBalancerArn(arn)
+                    .withSecurityGroups(securityGroupId));
+            change("loadBalancer: security groups " + found.getSecurityGroups() + " -> [" + securityGroupId + "]");
+        }
+        Set<String> subnetIds = new HashSet<>();
+        for (AvailabilityZone zone : found.getAvailabilityZones()) {
+            subnetIds.add(zone.getSubnetId());
+        }
+        List<String> wantedSubnetIds = new ArrayList<>();
+        for (Subnet subnet : subnets) {
+            wantedSubnetIds.add(subnet.getSubnetId());
+        }
+        if (!subnetIds.equals(new HashSet<>(wantedSubnetIds))) {
+            elb.setSubnets(new SetSubnetsRequest().withLoadBalancerArn(arn).withSubnets(wantedSubnetIds));
+            change("loadBalancer: zones " + Elb.zoneNames(found) + " -> " + Ec2.zoneNames(subnets));
+        }
+        for (String zone : Ec2.zoneNames(subnets)) {
+            journal.add("zone", zone);
+        }
+        adopt("loadBalancer");
+    }
+
+    /**
+     * Adopt the running Load Generators and terminate the ones too many.
+     * @return Load Generators adopted
+     */
+    private int reconcileLoadGenerators() throws InterruptedException {
+        DescribeInstancesRequest request = new DescribeInstancesRequest().withFilters(
+                new Filter("tag:Project").withValues(PROJECT_VALUE),
+                new Filter("image-id").withValues(region.getLoadGeneratorAmi()),
+                new Filter("instance-state-name").withValues("pending", "running"));
+        List<String> ids = new ArrayList<>();
+        do {
+            DescribeInstancesResult response = ec2.describeInstances(request);
+            for (Reservation reservation : response.getReservations()) {
+                for (Instance instance : reservation.getInstances()) {
+                    ids.add(instance.getInstanceId());
+                }
+            }
+            request.setNextToken(response.getNextToken());
+        } while (request.getNextToken() != null);
+        if (ids.isEmpty()) {
+            change("loadGenerator: missing, launching " + AutoScale.LOAD_GENERATOR_COUNT);
+            return 0;
+        }
+
+        int keep = Math.min(ids.size(), AutoScale.LOAD_GENERATOR_COUNT);
+        if (ids.size() > keep) {
+            Ec2.terminateInstances(ec2, ids.subList(keep, ids.size()));
+            change("loadGenerator: terminated " + (ids.size() - keep) + " too many");
+        }
+        List<CompletableFuture<Instance>> running = new ArrayList<>();
+        for (String id : ids.subList(0, keep)) {
+            running.add(Waiters.instanceInState(ec2, id, "running"));
+        }
+        Waiters.await(CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])));
+        for (CompletableFuture<Instance> instance : running) {
+            journal.add("loadGeneratorId", instance.join().getInstanceId());
+            journal.add("loadGeneratorDns", instance.join().getPublicDnsName());
+        }
+        if (keep < AutoScale.LOAD_GENERATOR_COUNT) {
+            change("loadGenerator: launching " + (AutoScale.LOAD_GENERATOR_COUNT - keep) + " more");
+        }
+        adopt("loadGenerator");
+        return keep;
+    }
+
+    /**
+     * Adopt the launch configuration, which cannot change in place.
+     */
+    private void reconcileLaunchConfiguration() {
+        List<LaunchConfiguration> found = aas.describeLaunchConfigurations(new DescribeLaunchConfigurationsRequest()
+                .withLaunchConfigurationNames(AutoScale.LAUNCH_CONFIGURATION_NAME)).getLaunchConfigurations();
+        if (found.isEmpty()) {
+            change("launchConfiguration: missing, creating");
+            return;
+        }
+        LaunchConfiguration launchConfiguration = found.get(0);
+        CreateLaunchConfigurationRequest wanted = Aas.launchConfigurationRequest(region);
+        if (!Objects.equals(wanted.getImageId(), launchConfiguration.getImageId())
+                || !Objects.equals(wanted.getInstanceType(), launchConfiguration.getInstanceType())
+                || !new HashSet<>(wanted.getSecurityGroups())
+                        .equals(new HashSet<>(launchConfiguration.getSecurityGroups()))) {
+            replace("launchConfiguration", "image, instance type or security groups changed");
+            return;
+        }
+        adopt("launchConfiguration");
+    }
+
+    /**
+     * Adopt the auto scaling group, updating its sizes, warm pool,
+     * policies and alarms in place. The desired capacity goes back to
+     * its initial value so that every test starts from the same group.
+     */
+    private void reconcileAutoScalingGroup() {
+        List<AutoScalingGroup> found = aas.describeAutoScalingGroups(new DescribeAutoScalingGroupsRequest()
+                .withAutoScalingGroupNames(AutoScale.AUTO_SCALING_GROUP_NAME)).getAutoScalingGroups();
+        if (found.isEmpty()) {
+            change("autoScalingGroup: missing, creating");
+            return;
+        }
+        AutoScalingGroup group = found.get(0);
+        if (group.getStatus() != null) {
+            throw new IllegalStateException("Auto scaling group " + group.getAutoScalingGroupName()
+                    + " is being deleted, retry once it is gone");
+        }
+        boolean ours = false;
+        for (TagDescription tag : group.getTags()) {
+            ours |= "Project".equals(tag.getKey()) && PROJECT_VALUE.equals(tag.getValue());
+        }
+        if (!ours) {
+            throw new IllegalStateException("Auto scaling group " + group.getAutoScalingGroupName()
+                    + " exists but is not tagged Project=" + PROJECT_VALUE + ", refusing to adopt it");
+        }
+        if (!journal.isDone("launchConfiguration")) {
+            replace("autoScalingGroup", "its launch configuration is replaced");
+            return;
+        }
+        if (!journal.isDone("targetGroup")
+                || !group.getTargetGroupARNs().contains(journal.get("targetGroupArn"))) {
+            replace("autoScalingGroup", "its target group is replaced");
+            return;
+        }
+
+        CreateAutoScalingGroupRequest wanted = Aas.autoScalingGroupRequest(settings, journal.get("targetGroupArn"),
+                Ec2.zoneNames(subnets));
+        List<String> updated = new ArrayList<>();
+        if (!wanted.getMinSize().equals(group.getMinSize())) {
+            updated.add("min " + group.getMinSize() + " -> " + wanted.getMinSize());
+        }
+        if (!wanted.getMaxSize().equals(group.getMaxSize())) {
+            updated.add("max " + group.getMaxSize() + " -> " + wanted.getMaxSize());
+        }
+        if (!wanted.getDesiredCapacity().equals(group.getDesiredCapacity())) {
+            updated.add("desired " + group.getDesiredCapacity() + " -> " + wanted.getDesiredCapacity());
+        }
+        if (!wanted.getDefaultCooldown().equals(group.getDefaultCooldown())) {
+            updated.add("cooldown " + group.getDefaultCooldown() + " -> " + wanted.getDefaultCooldown());
+        }
+        if (!wanted.getHealthCheckGracePeriod().equals(group.getHealthCheckGracePeriod())) {
+            updated.add("grace period " + group.getHealthCheckGracePeriod()
+                    + " -> " + wanted.getHealthCheckGracePeriod());
+        }
+        if (!new HashSet<>(wanted.getAvailabilityZones()).equals(new HashSet<>(group.getAvailabilityZones()))) {
+            updated.add("zones " + group.getAvailabilityZones() + " -> " + wanted.getAvailabilityZones());
+        }
+        if (!updated.isEmpty()) {
+            aas.updateAutoScalingGroup(new UpdateAutoScalingGroupRequest()
+                    .withAutoScalingGroupName(group.getAutoScalingGroupName())
+                    .withMinSize(wanted.getMinSize())
+                    .withMaxSize(wanted.getMaxSize())
+                    .withDesiredCapacity(wanted.getDesiredCapacity())
+                    .withDefaultCooldown(wanted.getDefaultCooldown())
+                    .withHealthCheckGracePeriod(wanted.getHealthCheckGracePeriod())
+                    .withAvailabilityZones(wanted.getAvailabilityZones()));
+            change("autoScalingGroup: " + String.join(", ", updated));
+        }
+        reconcileWarmPool();
+        reconcileScalingPolicies();
+        adopt("autoScalingGroup");
+    }
+
+    /**
+     * Put, update or delete the warm pool of the group.
+     */
+    private void reconcileWarmPool() {
+        WarmPoolConfiguration found = aas.describeWarmPool(new DescribeWarmPoolRequest()
+                .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)).getWarmPoolConfiguration();
+        if (!settings.isWarmPool()) {
+            if (found != null) {
+                Aas.deleteWarmPool(aas);
+                change("warm pool: deleted");
+            }
+            return;
+        }
+        PutWarmPoolRequest wanted = Aas.warmPoolRequest(settings);
+        if (found == null
+                || !Objects.equals(wanted.getMinSize(), found.getMinSize())
+                || !Objects.equals(wanted.getPoolState(), found.getPoolState())
+                || !Objects.equals(wanted.getMaxGroupPreparedCapacity(), found.getMaxGroupPreparedCapacity())) {
+            aas.putWarmPool(wanted);
+            change("warm pool: " + (found == null ? "created" : "updated"));
+        }
+    }
+
+    /**
+     * Put the scaling policies and alarms that differ from the
+     * configuration and delete the ones it no longer has.
+     */
+    private void reconcileScalingPolicies() {
+        Map<String, ScalingPolicy> policies = new LinkedHashMap<>();
+        DescribePoliciesRequest request = new DescribePoliciesRequest()
+                .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME);
+        do {
+            DescribePoliciesResult response = aas.describePolicies(request);
+            for (ScalingPolicy policy : response.getScalingPolicies()) {
+                policies.put(policy.getPolicyName(), policy);
+            }
+            request.setNextToken(response.getNextToken());
+        } while (request.getNextToken() != null);
+
+        Map<String, PutMetricAlarmRequest> alarms = new LinkedHashMap<>();
+        for (PutScalingPolicyRequest wanted : Aas.scalingPolicyRequests(settings, settings.getPolicyType())) {
+            ScalingPolicy policy = policies.remove(wanted.getPolicyName());
+            String arn;
+            if (policy == null || differs(wanted, policy)) {
+                arn = aas.putScalingPolicy(wanted).getPolicyARN();
+                change("policy " + wanted.getPolicyName() + ": " + (policy == null ? "created" : "updated"));
+            } else {
+                arn = policy.getPolicyARN();
+            }
+            PutMetricAlarmRequest alarm = Aas.alarmRequest(settings, wanted.getPolicyName(), arn);
+            if (alarm != null) {
+                alarms.put(alarm.getAlarmName(), alarm);
+            }
+        }
+        for (ScalingPolicy policy : policies.values()) {
+            aas.deletePolicy(new DeletePolicyRequest()
+                    .withAutoScalingGroupName(AutoScale.AUTO_SCALING_GROUP_NAME)
+                    .withPolicyName(policy.getPolicyName()));
+            change("policy " + policy.getPolicyName() + ": deleted");
+        }
+
+        for (MetricAlarm alarm : cloudWatch.describeAlarms(new DescribeAlarmsRequest()
+                .withAlarmNames(ALARM_NAMES)).getMetricAlarms()) {
+            PutMetricAlarmRequest wanted = alarms.remove(alarm.getAlarmName());
+            if (wanted == null) {
+                cloudWatch.deleteAlarms(new DeleteAlarmsRequest().withAlarmNames(alarm.getAlarmName()));
+                change("alarm " + alarm.getAlarmName() + ": deleted");
+            } else if (differs(wanted, alarm)) {
+                cloudWatch.putMetricAlarm(wanted);
+                change("alarm " + alarm.getAlarmName() + ": threshold " + alarm.getThreshold()
+                        + " -> " + wanted.getThreshold() + ", periods " + alarm.getEvaluationPeriods()
+                        + " -> " + wanted.getEvaluationPeriods() + ", actions enabled "
+                        + alarm.getActionsEnabled() + " -> " + !Boolean.FALSE.equals(wanted.getActionsEnabled()));
+            }
+        }
+        for (PutMetricAlarmRequest wanted : alarms.values()) {
+            cloudWatch.putMetricAlarm(wanted);
+            change("alarm " + wanted.getAlarmName() + ": created");
+        }
+    }
+
+    /**
+     * Whether a policy differs from the configured one.
+     * @param wanted configured policy
+     * @param policy existing policy
+     * @return true when it must be put again
+     */
+    private static boolean differs(final PutScalingPolicyRequest wanted, final ScalingPolicy policy) {
+        String type = wanted.getPolicyType() != null ? wanted.getPolicyType() : "SimpleScaling";
+        Double target = wanted.getTargetTrackingConfiguration() != null
+                ? wanted.getTargetTrackingConfiguration().getTargetValue() : null;
+        Double found = policy.getTargetTrackingConfiguration() != null
+                ? policy.getTargetTrackingConfiguration().getTargetValue() : null;
+        return !type.equals(policy.getPolicyType())
+                || !Objects.equals(wanted.getAdjustmentType(), policy.getAdjustmentType())
+                || !Objects.equals(wanted.getScalingAdjustment(), policy.getScalingAdjustment())
+                || !Objects.equals(wanted.getCooldown(), policy.getCooldown())
+                || !Objects.equals(wanted.getEstimatedInstanceWarmup(), policy.getEstimatedInstanceWarmup())
+                || !wanted.getStepAdjustments().equals(policy.getStepAdjustments())
+                || !Objects.equals(target, found);
+    }
+
+    /**
+     * Whether an alarm differs from the configured one.
+     * @param wanted configured alarm
+     * @param alarm existing alarm
+     * @return true when it must be put again
+     */
+    private static boolean differs(final PutMetricAlarmRequest wanted, final MetricAlarm alarm) {
+        return !Objects.equals(wanted.getComparisonOperator(), alarm.getComparisonOperator())
+                || !Objects.equals(wanted.getThreshold(), alarm.getThreshold())
+                || !Objects.equals(wanted.getEvaluationPeriods(), alarm.getEvaluationPeriods())
+                || !Objects.equals(wanted.getPeriod(), alarm.getPeriod())
+                || !Objects.equals(wanted.getMetricName(), alarm.getMetricName())
+                || !Objects.equals(wanted.getNamespace(), alarm.getNamespace())
+                || !Objects.equals(wanted.getStatistic(), alarm.getStatistic())
+                || Boolean.FALSE.equals(wanted.getActionsEnabled())
+                        != Boolean.FALSE.equals(alarm.getActionsEnabled())
+                || !wanted.getDimensions().equals(alarm.getDimensions())
+                || !wanted.getAlarmActions().equals(alarm.getAlarmActions());
+    }
+}
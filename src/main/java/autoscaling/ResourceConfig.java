@@ -1,14 +1,18 @@
 package autoscaling;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Resource Configuration Class.
  */
 public class ResourceConfig {
 
     /**
-     * Load Generator ID.
+     * Load Generator IDs.
      */
-    private String loadGeneratorID;
+    private List<String> loadGeneratorIDs = new ArrayList<>();
 
     /**
      * Target Group ARN.
@@ -16,9 +20,9 @@ public class ResourceConfig {
     private String targetGroupArn;
 
     /**
-     * Load Generator DNS.
+     * Load Generator DNS names, in the order of the IDs.
      */
-    private String loadGeneratorDns;
+    private List<String> loadGeneratorDnsNames = new ArrayList<>();
 
     /**
      * Load Balancer Arn.
@@ -31,11 +35,19 @@ public class ResourceConfig {
     private String loadBalancerDns;
 
     public String getLoadGeneratorID() {
-        return loadGeneratorID;
+        return loadGeneratorIDs.isEmpty() ? null : loadGeneratorIDs.get(0);
     }
 
     public void setLoadGeneratorID(String loadGeneratorID) {
-        this.loadGeneratorID = loadGeneratorID;
+        this.loadGeneratorIDs = new ArrayList<>(Collections.singletonList(loadGeneratorID));
+    }
+
+    public List<String> getLoadGeneratorIDs() {
+        return loadGeneratorIDs;
+    }
+
+    public void setLoadGeneratorIDs(List<String> loadGeneratorIDs) {
+        this.loadGeneratorIDs = loadGeneratorIDs;
     }
 
     public String getTargetGroupArn() {
@@ -48,11 +60,19 @@ public class ResourceConfig {
 
 
     public String getLoadGeneratorDns() {
-        return loadGeneratorDns;
+        return loadGeneratorDnsNames.isEmpty() ? null : loadGeneratorDnsNames.get(0);
     }
 
     public void setLoadGeneratorDns(String loadGeneratorDns) {
-        this.loadGeneratorDns = loadGeneratorDns;
+        this.loadGeneratorDnsNames = new ArrayList<>(Collections.singletonList(loadGeneratorDns));
+    }
+
+    public List<String> getLoadGeneratorDnsNames() {
+        return loadGeneratorDnsNames;
+    }
+
+    public void setLoadGeneratorDnsNames(List<String> loadGeneratorDnsNames) {
+        this.loadGeneratorDnsNames = loadGeneratorDnsNames;
     }
 
     public String getLoadBalancerArn() {
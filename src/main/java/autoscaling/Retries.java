@@ -0,0 +1,64 @@
+package autoscaling;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Retry helpers for AWS calls that fail while a dependent resource
+ * is still being released.
+ */
+public final class Retries {
+
+    /**
+     * Error codes returned while another resource still holds a reference.
+     */
+    private static final Set<String> IN_USE_ERROR_CODES = new HashSet<>(Arrays.asList(
+            "DependencyViolation",
+            "ResourceInUse",
+            "ScalingActivityInProgress"));
+
+    /**
+     * Backoff used while waiting for a resource to be released.
+     */
+    private static final Backoff IN_USE_BACKOFF = new Backoff(500, 15000, 2.0, 0.2);
+
+    /**
+     * Give up after this long.
+     */
+    private static final long IN_USE_DEADLINE_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Unused constructor.
+     */
+    private Retries() {
+    }
+
+    /**
+     * Run a call, retrying with backoff while AWS reports the resource in use.
+     * @param description description used in log output
+     * @param call AWS call
+     * @throws InterruptedException when interrupted while backing off
+     */
+    public static void retryWhileInUse(final String description,
+                                       final Runnable call) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + IN_USE_DEADLINE_MILLIS;
+        for (int attempt = 0;; attempt++) {
+            try {
+                call.run();
+                return;
+            } catch (AmazonServiceException e) {
+                long delay = IN_USE_BACKOFF.delayMillis(attempt);
+                if (!IN_USE_ERROR_CODES.contains(e.getErrorCode())
+                        || System.currentTimeMillis() + delay > deadline) {
+                    throw e;
+                }
+                System.out.println(description + ": " + e.getErrorCode()
+                        + ", retrying in " + delay + "ms");
+                Thread.sleep(delay);
+            }
+        }
+    }
+}
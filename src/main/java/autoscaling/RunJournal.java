@@ -0,0 +1,409 @@
+package autoscaling;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of a run: the resources it created and the steps
+ * and phases it finished, so that a restarted run can pick up where the
+ * last one stopped.
+ *
+ * Every record is one line "crc type key value" with tab separators,
+ * the CRC32 covering the rest of the line. Appends block until their
+ * record is on disk; records appended while a sync is running are
+ * written and synced together by the next caller, so concurrent steps
+ * share fsyncs. Replay stops at the first torn or corrupt record and
+ * truncates the file there.
+ */
+public final class RunJournal implements AutoCloseable {
+
+    /**
+     * Phase: every resource is provisioned.
+     */
+    public static final String PROVISIONED = "provisioned";
+
+    /**
+     * Phase: the test is over.
+     */
+    public static final String TESTED = "tested";
+
+    /**
+     * Phase: every resource is deleted.
+     */
+    public static final String DESTROYED = "destroyed";
+
+    /**
+     * Journal file, null for a journal kept in memory only.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Held while writing and syncing a batch.
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * Lines appended but not written yet.
+     */
+    private final List<String> pending = new ArrayList<>();
+
+    /**
+     * Records appended, the sequence number of the last one.
+     */
+    private long appended;
+
+    /**
+     * Sequence number of the last record on disk, guarded by {@link #syncLock}.
+     */
+    private long durable;
+
+    /**
+     * Batches synced.
+     */
+    private int syncs;
+
+    /**
+     * Single values by key.
+     */
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    /**
+     * Value lists by key.
+     */
+    private final Map<String, List<String>> lists = new LinkedHashMap<>();
+
+    /**
+     * Steps started.
+     */
+    private final Set<String> begun = new HashSet<>();
+
+    /**
+     * Steps finished.
+     */
+    private final Set<String> done = new HashSet<>();
+
+    /**
+     * Last phase reached, null before the first.
+     */
+    private String phase;
+
+    /**
+     * Create a journal.
+     * @param channel journal file, null to keep the journal in memory
+     */
+    private RunJournal(final FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Journal that is not written anywhere, for runs that need no restart.
+     * @return empty journal
+     */
+    public static RunJournal inMemory() {
+        return new RunJournal(null);
+    }
+
+    /**
+     * Open a journal file, creating it if needed, and replay it.
+     * @param path journal file
+     * @return journal holding the state of the last run
+     */
+    public static RunJournal open(final Path path) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            RunJournal journal = new RunJournal(channel);
+            long valid = journal.replay(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            if (valid < channel.size()) {
+                System.out.println("journal: dropping " + (channel.size() - valid)
+                        + " bytes of a torn record");
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            channel.position(valid);
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal " + path, e);
+        }
+    }
+
+    /**
+     * Apply the valid records of a journal.
+     * @param text journal contents
+     * @return length in bytes of the valid records
+     */
+    private long replay(final String text) {
+        long valid = 0;
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0; end = text.indexOf('\n', start)) {
+            String line = text.substring(start, end);
+            String[] fields = line.split("\t", 4);
+            if (fields.length != 4 || !fields[0].equals(crc(line.substring(fields[0].length() + 1)))) {
+                break;
+            }
+            apply(fields[1], fields[2], fields[3]);
+            valid += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            start = end + 1;
+        }
+        return valid;
+    }
+
+    /**
+     * Checksum of a record.
+     * @param record record without its checksum
+     * @return CRC32 in hexadecimal
+     */
+    private static String crc(final String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Apply a record to the state.
+     * @param type record type
+     * @param key record key
+     * @param value record value
+     */
+    private void apply(final String type, final String key, final String value) {
+        switch (type) {
+            case "set":
+                values.put(key, value);
+                break;
+            case "add":
+                lists.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+                break;
+            case "begin":
+                begun.add(key);
+                break;
+            case "done":
+                done.add(key);
+                break;
+            case "phase":
+                phase = key;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record " + type);
+        }
+    }
+
+    /**
+     * Append a record and wait until it is on disk.
+     * @param type record type
+     * @param key record key
+     * @param value record value
+     */
+    private void append(final String type, final String key, final String value) {
+        String record = type + "\t" + key + "\t" + value;
+        if (record.indexOf('\n') >= 0 || key.indexOf('\t') >= 0) {
+            throw new IllegalArgumentException("Journal record must be a single line: " + record);
+        }
+        long sequence;
+        synchronized (this) {
+            apply(type, key, value);
+            if (channel == null) {
+                return;
+            }
+            pending.add(crc(record) + "\t" + record + "\n");
+            sequence = ++appended;
+        }
+        sync(sequence);
+    }
+
+    /**
+     * Write and sync every pending record unless another caller already
+     * synced past a sequence number. The records stay pending until the
+     * batch is on disk, and a failed batch is cut off the file again, so
+     * the next caller writes them once more after the last good record.
+     * @param sequence sequence number that must be on disk
+     */
+    private void sync(final long sequence) {
+        synchronized (syncLock) {
+            if (durable >= sequence) {
+                return;
+            }
+            StringBuilder batch = new StringBuilder();
+            int count;
+            long last;
+            synchronized (this) {
+                for (String line : pending) {
+                    batch.append(line);
+                }
+                count = pending.size();
+                last = appended;
+            }
+            long start = -1;
+            try {
+                start = channel.position();
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                if (start >= 0) {
+                    try {
+                        channel.truncate(start);
+                        channel.position(start);
+                    } catch (IOException truncation) {
+                        e.addSuppressed(truncation);
+                    }
+                }
+                throw new UncheckedIOException("Cannot write journal", e);
+            }
+            synchronized (this) {
+                pending.subList(0, count).clear();
+            }
+            durable = last;
+            syncs++;
+        }
+    }
+
+    /**
+     * Record a value, replacing an earlier one.
+     * @param key value name
+     * @param value value
+     */
+    public void set(final String key, final String value) {
+        append("set", key, value);
+    }
+
+    /**
+     * Record one more value of a list.
+     * @param key list name
+     * @param value value
+     */
+    public void add(final String key, final String value) {
+        append("add", key, value);
+    }
+
+    /**
+     * Record that a step started.
+     * @param step step name
+     */
+    public void begin(final String step) {
+        append("begin", step, "");
+    }
+
+    /**
+     * Record that a step finished.
+     * @param step step name
+     */
+    public void done(final String step) {
+        append("done", step, "");
+    }
+
+    /**
+     * Record that the run reached a phase.
+     * @param name phase name
+     */
+    public void phase(final String name) {
+        append("phase", name, "");
+    }
+
+    /**
+     * Forget the last run and start an empty journal.
+     */
+    public void reset() {
+        // same lock order as sync
+        synchronized (syncLock) {
+            synchronized (this) {
+                values.clear();
+                lists.clear();
+                begun.clear();
+                done.clear();
+                phase = null;
+                pending.clear();
+                durable = appended;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot reset journal", e);
+            }
+        }
+    }
+
+    public synchronized String get(final String key) {
+        return values.get(key);
+    }
+
+    public synchronized List<String> getList(final String key) {
+        return new ArrayList<>(lists.getOrDefault(key, Collections.<String>emptyList()));
+    }
+
+    public synchronized boolean isBegun(final String step) {
+        return begun.contains(step);
+    }
+
+    public synchronized boolean isDone(final String step) {
+        return done.contains(step);
+    }
+
+    /**
+     * Steps started, finished or not.
+     * @return step names
+     */
+    public synchronized Set<String> begun() {
+        return new HashSet<>(begun);
+    }
+
+    /**
+     * Steps started but not finished, whose resources may half exist.
+     * @return step names
+     */
+    public synchronized Set<String> unfinished() {
+        Set<String> steps = new HashSet<>(begun);
+        steps.removeAll(done);
+        return steps;
+    }
+
+    public synchronized String getPhase() {
+        return phase;
+    }
+
+    /**
+     * Whether the journal holds nothing of an unfinished run.
+     * @return true when empty or destroyed
+     */
+    public synchronized boolean isClean() {
+        return begun.isEmpty() && phase == null || DESTROYED.equals(phase);
+    }
+
+    public int getSyncs() {
+        synchronized (syncLock) {
+            return syncs;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close journal", e);
+        }
+    }
+}
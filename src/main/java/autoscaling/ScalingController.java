@@ -0,0 +1,20 @@
+package autoscaling;
+
+/**
+ * Decides the capacity of the group from one reading of a control input.
+ * A {@link ControlLoop} calls it every few hundred milliseconds to few
+ * seconds, far more often than alarms evaluate, and sets the desired
+ * capacity it returns, clamped to the group bounds. Implementations keep
+ * their own state between calls and are only called from the loop thread.
+ */
+public interface ScalingController {
+
+    /**
+     * Capacity the group should have.
+     * @param value latest reading of the input, never NaN
+     * @param capacity desired capacity of the group
+     * @param nowMillis time of the reading in milliseconds
+     * @return desired capacity, the same one for no change
+     */
+    int desiredCapacity(double value, int capacity, long nowMillis);
+}
@@ -0,0 +1,326 @@
+package autoscaling;
+
+import com.amazonaws.services.autoscaling.model.StepAdjustment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import utilities.Configuration;
+
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Validated snapshot of the configuration keys that can change on a
+ * running group: its sizes and cooldowns, the scaling policies, their
+ * alarms and the warm pool. Snapshots never change; a reload replaces
+ * the current one.
+ */
+public final class ScalingSettings {
+
+    /**
+     * Scaling policy types.
+     */
+    private static final List<String> POLICY_TYPES
+            = Arrays.asList("SimpleScaling", "StepScaling", "TargetTrackingScaling");
+
+    /**
+     * Check that the steps of a policy cover one range without overlaps
+     * or gaps, as PutScalingPolicy requires. Only the lowest step may be
+     * unbounded below and only the highest unbounded above.
+     * @param problems problems, added to
+     * @param key configuration key of the steps
+     * @param steps steps in any order
+     */
+    private static void addStepProblems(final List<String> problems, final String key,
+                                        final List<StepAdjustment> steps) {
+        List<StepAdjustment> sorted = new ArrayList<>(steps);
+        sorted.sort(Comparator.comparingDouble(step -> step.getMetricIntervalLowerBound() != null
+                ? step.getMetricIntervalLowerBound() : Double.NEGATIVE_INFINITY));
+        for (int i = 0; i < sorted.size(); i++) {
+            Double lower = sorted.get(i).getMetricIntervalLowerBound();
+            Double upper = sorted.get(i).getMetricIntervalUpperBound();
+            if (lower == null && i > 0) {
+                problems.add(key + ": only the lowest step may have no lower bound");
+            }
+            if (upper == null && i < sorted.size() - 1) {
+                problems.add(key + ": only the highest step may have no upper bound");
+            }
+            if (lower != null && upper != null && lower >= upper) {
+                problems.add(key + ": step [" + lower + ", " + upper + ") is empty");
+            }
+            if (i > 0) {
+                Double previousUpper = sorted.get(i - 1).getMetricIntervalUpperBound();
+                if (previousUpper != null && lower != null && previousUpper < lower) {
+                    problems.add(key + ": gap between " + previousUpper + " and " + lower);
+                } else if (previousUpper != null && lower != null && previousUpper > lower) {
+                    problems.add(key + ": steps overlap between " + lower + " and " + previousUpper);
+                }
+            }
+        }
+    }
+
+    /**
+     * Snapshot the next group, policy and alarm requests are built from.
+     */
+    private static volatile ScalingSettings current = from(configuration);
+
+    private final int minSize;
+    private final int maxSize;
+    private final int defaultCooldown;
+    private final int healthCheckGracePeriod;
+    private final String policyType;
+    private final int scaleInAdjustment;
+    private final int scaleOutAdjustment;
+    private final int scaleInCooldown;
+    private final int scaleOutCooldown;
+    private final List<StepAdjustment> scaleInSteps;
+    private final List<StepAdjustment> scaleOutSteps;
+    private final double targetTrackingCpu;
+    private final int estimatedInstanceWarmup;
+    private final int alarmPeriod;
+    private final double cpuLowerThreshold;
+    private final double cpuUpperThreshold;
+    private final int evaluationPeriodsScaleIn;
+    private final int evaluationPeriodsScaleOut;
+    private final boolean warmPool;
+    private final int warmPoolMinSize;
+    private final int warmPoolMaxPreparedCapacity;
+
+    /**
+     * Read a snapshot.
+     * @param config configuration
+     */
+    private ScalingSettings(final Configuration config) {
+        minSize = config.getInt("asg_min_size");
+        maxSize = config.getInt("asg_max_size");
+        defaultCooldown = config.getInt("asg_default_cool_down_period");
+        healthCheckGracePeriod = config.getInt("health_check_grace_period");
+        policyType = config.getString("scaling_policy_type");
+        scaleInAdjustment = config.getInt("scale_in_adjustment");
+        scaleOutAdjustment = config.getInt("scale_out_adjustment");
+        scaleInCooldown = config.getInt("cool_down_period_scale_in");
+        scaleOutCooldown = config.getInt("cool_down_period_scale_out");
+        scaleInSteps = steps(config.getJSONArray("scale_in_steps"));
+        scaleOutSteps = steps(config.getJSONArray("scale_out_steps"));
+        targetTrackingCpu = config.getDouble("target_tracking_cpu");
+        estimatedInstanceWarmup = config.getInt("estimated_instance_warmup");
+        alarmPeriod = config.getInt("alarm_period");
+        cpuLowerThreshold = config.getDouble("cpu_lower_threshold");
+        cpuUpperThreshold = config.getDouble("cpu_upper_threshold");
+        evaluationPeriodsScaleIn = config.getInt("alarm_evaluation_periods_scale_in");
+        evaluationPeriodsScaleOut = config.getInt("alarm_evaluation_periods_scale_out");
+        warmPool = config.getBoolean("warm_pool");
+        warmPoolMinSize = config.getInt("warm_pool_min_size");
+        warmPoolMaxPreparedCapacity = config.getInt("warm_pool_max_prepared_capacity");
+    }
+
+    /**
+     * Read and validate a snapshot.
+     * @param config configuration
+     * @return snapshot
+     * @throws IllegalArgumentException when a key is missing or a value is out of range
+     */
+    public static ScalingSettings from(final Configuration config) {
+        ScalingSettings settings;
+        try {
+            settings = new ScalingSettings(config);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid configuration: " + e.getMessage(), e);
+        }
+        List<String> problems = settings.validate();
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException("Invalid configuration: " + String.join("; ", problems));
+        }
+        return settings;
+    }
+
+    /**
+     * Parse the steps of a step scaling policy. Each step is an object
+     * with an optional "lower" and "upper" bound, relative to the alarm
+     * threshold, and an "adjustment".
+     * @param steps steps from the configuration
+     * @return steps
+     */
+    private static List<StepAdjustment> steps(final JSONArray steps) {
+        List<StepAdjustment> adjustments = new ArrayList<>();
+        for (int i = 0; i < steps.length(); i++) {
+            JSONObject step = steps.getJSONObject(i);
+            adjustments.add(new StepAdjustment()
+                    .withMetricIntervalLowerBound(step.has("lower") ? step.getDouble("lower") : null)
+                    .withMetricIntervalUpperBound(step.has("upper") ? step.getDouble("upper") : null)
+                    .withScalingAdjustment(step.getInt("adjustment")));
+        }
+        return Collections.unmodifiableList(adjustments);
+    }
+
+    /**
+     * Check the values AWS would reject or that cannot scale the group.
+     * @return problems, empty when valid
+     */
+    private List<String> validate() {
+        List<String> problems = new ArrayList<>();
+        if (minSize < 0 || maxSize < minSize) {
+            problems.add("need 0 <= asg_min_size <= asg_max_size, got " + minSize + " and " + maxSize);
+        }
+        if (!(0 <= cpuLowerThreshold && cpuLowerThreshold < cpuUpperThreshold && cpuUpperThreshold <= 100)) {
+            problems.add("need 0 <= cpu_lower_threshold < cpu_upper_threshold <= 100, got "
+                    + cpuLowerThreshold + " and " + cpuUpperThreshold);
+        }
+        // The alarms watch AWS/EC2 CPUUtilization; AWS/* metrics have no period below 60
+        if (alarmPeriod < 60 || alarmPeriod % 60 != 0) {
+            problems.add("alarm_period must be a multiple of 60 for AWS/EC2 metrics, got " + alarmPeriod);
+        }
+        if (evaluationPeriodsScaleIn < 1 || evaluationPeriodsScaleOut < 1) {
+            problems.add("alarm evaluation periods must be at least 1");
+        }
+        if (defaultCooldown < 0 || scaleInCooldown < 0 || scaleOutCooldown < 0 || healthCheckGracePeriod < 0) {
+            problems.add("cooldowns and the health check grace period cannot be negative");
+        }
+        if (!POLICY_TYPES.contains(policyType)) {
+            problems.add("scaling_policy_type must be one of " + POLICY_TYPES + ", got " + policyType);
+        }
+        if (scaleInAdjustment == 0 || scaleOutAdjustment == 0) {
+            problems.add("scale adjustments cannot be 0");
+        }
+        if (scaleInSteps.isEmpty() || scaleOutSteps.isEmpty()) {
+            problems.add("step policies need at least one step");
+        } else {
+            addStepProblems(problems, "scale_in_steps", scaleInSteps);
+            addStepProblems(problems, "scale_out_steps", scaleOutSteps);
+        }
+        if (targetTrackingCpu <= 0 || targetTrackingCpu > 100) {
+            problems.add("target_tracking_cpu must be in (0, 100], got " + targetTrackingCpu);
+        }
+        if (warmPoolMinSize < 0 || warmPoolMaxPreparedCapacity < -1) {
+            problems.add("warm_pool_min_size must be >= 0 and warm_pool_max_prepared_capacity >= -1");
+        }
+        return problems;
+    }
+
+    /**
+     * Snapshot the next group, policy and alarm requests are built from.
+     * @return snapshot
+     */
+    public static ScalingSettings current() {
+        return current;
+    }
+
+    /**
+     * Replace the current snapshot.
+     * @param settings new snapshot
+     */
+    static void setCurrent(final ScalingSettings settings) {
+        current = settings;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getDefaultCooldown() {
+        return defaultCooldown;
+    }
+
+    public int getHealthCheckGracePeriod() {
+        return healthCheckGracePeriod;
+    }
+
+    public String getPolicyType() {
+        return policyType;
+    }
+
+    public int getScaleInAdjustment() {
+        return scaleInAdjustment;
+    }
+
+    public int getScaleOutAdjustment() {
+        return scaleOutAdjustment;
+    }
+
+    public int getScaleInCooldown() {
+        return scaleInCooldown;
+    }
+
+    public int getScaleOutCooldown() {
+        return scaleOutCooldown;
+    }
+
+    /**
+     * Steps of the scale in policy, bounds relative to the upper CPU threshold.
+     * @return copies of the steps
+     */
+    public List<StepAdjustment> getScaleInSteps() {
+        return copy(scaleInSteps);
+    }
+
+    /**
+     * Steps of the scale out policy, bounds relative to the lower CPU threshold.
+     * @return copies of the steps
+     */
+    public List<StepAdjustment> getScaleOutSteps() {
+        return copy(scaleOutSteps);
+    }
+
+    /**
+     * Copy steps, SDK models are mutable.
+     * @param steps steps
+     * @return copies
+     */
+    private static List<StepAdjustment> copy(final List<StepAdjustment> steps) {
+        List<StepAdjustment> copies = new ArrayList<>();
+        for (StepAdjustment step : steps) {
+            copies.add(step.clone());
+        }
+        return copies;
+    }
+
+    public double getTargetTrackingCpu() {
+        return targetTrackingCpu;
+    }
+
+    public int getEstimatedInstanceWarmup() {
+        return estimatedInstanceWarmup;
+    }
+
+    public int getAlarmPeriod() {
+        return alarmPeriod;
+    }
+
+    public double getCpuLowerThreshold() {
+        return cpuLowerThreshold;
+    }
+
+    public double getCpuUpperThreshold() {
+        return cpuUpperThreshold;
+    }
+
+    public int getEvaluationPeriodsScaleIn() {
+        return evaluationPeriodsScaleIn;
+    }
+
+    public int getEvaluationPeriodsScaleOut() {
+        return evaluationPeriodsScaleOut;
+    }
+
+    public boolean isWarmPool() {
+        return warmPool;
+    }
+
+    public int getWarmPoolMinSize() {
+        return warmPoolMinSize;
+    }
+
+    public int getWarmPoolMaxPreparedCapacity() {
+        return warmPoolMaxPreparedCapacity;
+    }
+}
@@ -0,0 +1,89 @@
+package autoscaling;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsRequest;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.SecurityGroup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Security group name to ID mappings kept for the whole run.
+ * IDs are recorded when groups are created; unknown names fall back
+ * to a name filtered describe call.
+ */
+public final class SecurityGroupRegistry {
+
+    /**
+     * EC2 client.
+     */
+    private final AmazonEC2 ec2;
+
+    /**
+     * Group IDs keyed by group name.
+     */
+    private final Map<String, String> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Create the registry.
+     * @param ec2 EC2 client
+     */
+    public SecurityGroupRegistry(final AmazonEC2 ec2) {
+        this.ec2 = ec2;
+    }
+
+    /**
+     * Record the ID of a group, e.g. from a CreateSecurityGroupResult.
+     * @param groupName group name
+     * @param groupId group ID
+     */
+    public void register(final String groupName, final String groupId) {
+        ids.put(groupName, groupId);
+    }
+
+    /**
+     * Get the ID of a group by name.
+     * @param groupName group name
+     * @return group ID or null when no such group exists
+     */
+    public String getId(final String groupName) {
+        String groupId = ids.get(groupName);
+        if (groupId == null) {
+            groupId = describe(groupName);
+            if (groupId != null) {
+                ids.put(groupName, groupId);
+            }
+        }
+        return groupId;
+    }
+
+    /**
+     * Forget a deleted group.
+     * @param groupName group name
+     */
+    public void evict(final String groupName) {
+        ids.remove(groupName);
+    }
+
+    /**
+     * Look a group up by name.
+     * @param groupName group name
+     * @return group ID or null
+     */
+    private String describe(final String groupName) {
+        DescribeSecurityGroupsRequest request = new DescribeSecurityGroupsRequest()
+                .withFilters(new Filter("group-name").withValues(groupName));
+        do {
+            DescribeSecurityGroupsResult response = ec2.describeSecurityGroups(request);
+            for (SecurityGroup securityGroup : response.getSecurityGroups()) {
+                if (securityGroup.getGroupName().equals(groupName)) {
+                    return securityGroup.getGroupId();
+                }
+            }
+            request.setNextToken(response.getNextToken());
+        } while (request.getNextToken() != null);
+        return null;
+    }
+}
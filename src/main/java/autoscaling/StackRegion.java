@@ -0,0 +1,231 @@
+package autoscaling;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.AmazonAutoScalingClientBuilder;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatchClientBuilder;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2ClientBuilder;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancingClientBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utilities.Configuration;
+
+import static autoscaling.AutoScale.configuration;
+
+/**
+ * Region a stack is provisioned in, declared under "regions" in the
+ * configuration as e.g.
+ * {"region": "us-east-1", "zones": ["us-east-1a", "us-east-1b"]}.
+ * No zones means every zone with a default subnet. AMIs are region
+ * scoped, so a region may override "web_service_ami" and
+ * "load_generator_ami"; an "endpoint" points the clients of the region
+ * at a local stand-in instead of AWS.
+ */
+public final class StackRegion {
+
+    /**
+     * Region name.
+     */
+    private final String name;
+
+    /**
+     * Availability zones, empty for all.
+     */
+    private final List<String> zones;
+
+    /**
+     * Web Service AMI.
+     */
+    private final String webServiceAmi;
+
+    /**
+     * Load Generator AMI.
+     */
+    private final String loadGeneratorAmi;
+
+    /**
+     * Endpoint of every service, empty for AWS.
+     */
+    private final String endpoint;
+
+    /**
+     * Create a region.
+     * @param name region name
+     * @param zones availability zones, empty for all
+     * @param webServiceAmi Web Service AMI
+     * @param loadGeneratorAmi Load Generator AMI
+     * @param endpoint endpoint of every service, empty for AWS
+     */
+    public StackRegion(final String name, final List<String> zones, final String webServiceAmi,
+                       final String loadGeneratorAmi, final String endpoint) {
+        this.name = name;
+        this.zones = Collections.unmodifiableList(new ArrayList<>(zones));
+        this.webServiceAmi = webServiceAmi;
+        this.loadGeneratorAmi = loadGeneratorAmi;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Regions declared in a configuration.
+     * @param config configuration
+     * @return regions, in declaration order
+     * @throws IllegalArgumentException when no region or a region twice is declared
+     */
+    static List<StackRegion> fromConfiguration(final Configuration config) {
+        JSONArray declared = config.getJSONArray("regions");
+        List<StackRegion> regions = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < declared.length(); i++) {
+            JSONObject region = declared.getJSONObject(i);
+            List<String> zones = new ArrayList<>();
+            JSONArray zoneNames = region.optJSONArray("zones");
+            for (int j = 0; zoneNames != null && j < zoneNames.length(); j++) {
+                zones.add(zoneNames.getString(j));
+            }
+            StackRegion stackRegion = new StackRegion(region.getString("region"), zones,
+                    region.optString("web_service_ami", config.getString("web_service_ami")),
+                    region.optString("load_generator_ami", config.getString("load_generator_ami")),
+                    region.optString("endpoint", ""));
+            if (names.contains(stackRegion.name)) {
+                throw new IllegalArgumentException("Region " + stackRegion.name + " is declared twice");
+            }
+            names.add(stackRegion.name);
+            regions.add(stackRegion);
+        }
+        if (regions.isEmpty()) {
+            throw new IllegalArgumentException("No region is declared");
+        }
+        return regions;
+    }
+
+    /**
+     * Regions of the configuration.
+     * @return regions, in declaration order
+     */
+    public static List<StackRegion> fromConfiguration() {
+        return fromConfiguration(configuration);
+    }
+
+    /**
+     * First declared region, the one single region runs use.
+     * @return region
+     */
+    public static StackRegion primary() {
+        return fromConfiguration().get(0);
+    }
+
+    /**
+     * Point a client builder at this region.
+     * @param builder client builder
+     * @param credentialsProvider credentials
+     * @param clientConfiguration connection settings
+     * @param handlers request handlers
+     * @param <B> builder type
+     * @return the builder
+     */
+    private <B extends AwsClientBuilder<B, ?>> B configure(final B builder,
+                                                          final AWSCredentialsProvider credentialsProvider,
+                                                          final ClientConfiguration clientConfiguration,
+                                                          final RequestHandler2... handlers) {
+        builder.withCredentials(credentialsProvider)
+                .withClientConfiguration(clientConfiguration)
+                .withRequestHandlers(handlers);
+        if (endpoint.isEmpty()) {
+            return builder.withRegion(name);
+        }
+        return builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, name));
+    }
+
+    /**
+     * Create an EC2 client of this region.
+     * @param credentialsProvider credentials
+     * @param clientConfiguration connection settings
+     * @param handlers request handlers
+     * @return client
+     */
+    public AmazonEC2 ec2(final AWSCredentialsProvider credentialsProvider,
+                         final ClientConfiguration clientConfiguration,
+                         final RequestHandler2... handlers) {
+        return configure(AmazonEC2ClientBuilder.standard(), credentialsProvider,
+                clientConfiguration, handlers).build();
+    }
+
+    /**
+     * Create an auto scaling client of this region.
+     * @param credentialsProvider credentials
+     * @param clientConfiguration connection settings
+     * @param handlers request handlers
+     * @return client
+     */
+    public AmazonAutoScaling autoScaling(final AWSCredentialsProvider credentialsProvider,
+                                         final ClientConfiguration clientConfiguration,
+                                         final RequestHandler2... handlers) {
+        return configure(AmazonAutoScalingClientBuilder.standard(), credentialsProvider,
+                clientConfiguration, handlers).build();
+    }
+
+    /**
+     * Create an ELB client of this region.
+     * @param credentialsProvider credentials
+     * @param clientConfiguration connection settings
+     * @param handlers request handlers
+     * @return client
+     */
+    public AmazonElasticLoadBalancing elb(final AWSCredentialsProvider credentialsProvider,
+                                          final ClientConfiguration clientConfiguration,
+                                          final RequestHandler2... handlers) {
+        return configure(AmazonElasticLoadBalancingClientBuilder.standard(), credentialsProvider,
+                clientConfiguration, handlers).build();
+    }
+
+    /**
+     * Create a CloudWatch client of this region.
+     * @param credentialsProvider credentials
+     * @param clientConfiguration connection settings
+     * @param handlers request handlers
+     * @return client
+     */
+    public AmazonCloudWatch cloudWatch(final AWSCredentialsProvider credentialsProvider,
+                                       final ClientConfiguration clientConfiguration,
+                                       final RequestHandler2... handlers) {
+        return configure(AmazonCloudWatchClientBuilder.standard(), credentialsProvider,
+                clientConfiguration, handlers).build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getZones() {
+        return zones;
+    }
+
+    public String getWebServiceAmi() {
+        return webServiceAmi;
+    }
+
+    public String getLoadGeneratorAmi() {
+        return loadGeneratorAmi;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
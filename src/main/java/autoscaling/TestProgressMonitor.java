@@ -0,0 +1,170 @@
+package autoscaling;
+
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.ini4j.Ini;
+
+/**
+ * Watches test logs on a single thread until the tests finish.
+ * Logs are fetched with {@link AsyncApi}, so the thread never blocks on
+ * a Load Generator.
+ * Polls are spread out while a test is in its steady minutes and become
+ * more frequent as the expected end, extrapolated from the minute
+ * sections seen so far, comes closer.
+ * A Load Generator that cannot be connected to is retried for at most the
+ * expected length of its test; any other failure, e.g. an error status
+ * for a missing log, fails the test at once.
+ */
+public final class TestProgressMonitor {
+
+    /**
+     * Section written by the Load Generator once a test is over.
+     */
+    private static final String TEST_FINISHED = "Test finished";
+
+    /**
+     * Prefix of the per-minute log sections.
+     */
+    private static final String MINUTE_PREFIX = "Minute";
+
+    /**
+     * Length of a log minute in milliseconds.
+     */
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    /**
+     * Shortest delay between two polls of a test.
+     */
+    private static final long MIN_POLL_MILLIS = 1000;
+
+    /**
+     * Longest delay between two polls of a test.
+     */
+    private static final long MAX_POLL_MILLIS = 20 * 1000;
+
+    /**
+     * A monitored test.
+     */
+    private final class Test {
+        /**
+         * Log tailer of the test.
+         */
+        private final LogTailer tailer;
+        /**
+         * Expected number of minute sections.
+         */
+        private final int expectedMinutes;
+        /**
+         * Future completed with the final log.
+         */
+        private final CompletableFuture<Ini> finished = new CompletableFuture<>();
+        /**
+         * Minute sections seen so far.
+         */
+        private int minutesSeen;
+        /**
+         * When the last new minute section was seen.
+         */
+        private long lastMinuteAt = System.currentTimeMillis();
+        /**
+         * When the Load Generator last answered, or the monitoring started.
+         */
+        private long lastReachedAt = lastMinuteAt;
+
+        Test(final LogTailer tailer, final int expectedMinutes) {
+            this.tailer = tailer;
+            this.expectedMinutes = expectedMinutes;
+        }
+
+        /**
+         * Request the log without blocking the monitor thread.
+         */
+        private void poll() {
+            AsyncApi.poll(tailer).whenCompleteAsync(this::onLog, scheduler);
+        }
+
+        /**
+         * Handle a polled log and schedule the next poll.
+         * @param ini log parsed so far, null on error
+         * @param error failure, null on success
+         */
+        private void onLog(final Ini ini, final Throwable error) {
+            long delay = MIN_POLL_MILLIS;
+            long now = System.currentTimeMillis();
+            if (error == null) {
+                lastReachedAt = now;
+                if (ini.containsKey(TEST_FINISHED)) {
+                    Api.closeLogTailer(tailer);
+                    finished.complete(ini);
+                    return;
+                }
+                int minutes = 0;
+                for (String section : ini.keySet()) {
+                    if (section.startsWith(MINUTE_PREFIX)) {
+                        minutes++;
+                    }
+                }
+                if (minutes != minutesSeen) {
+                    minutesSeen = minutes;
+                    lastMinuteAt = now;
+                }
+                delay = nextDelay(now);
+            } else {
+                Throwable cause = error instanceof CompletionException
+                        && error.getCause() != null ? error.getCause() : error;
+                boolean unreachable = cause instanceof ConnectException
+                        || cause instanceof HttpConnectTimeoutException;
+                if (!unreachable || now - lastReachedAt > Math.max(1, expectedMinutes) * MINUTE_MILLIS) {
+                    Api.closeLogTailer(tailer);
+                    finished.completeExceptionally(cause);
+                    return;
+                }
+                //LG not reachable yet, retry soon
+            }
+            scheduler.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Half the time left until the expected end, within the bounds.
+         * @param now current time
+         * @return delay before the next poll
+         */
+        private long nextDelay(final long now) {
+            long expectedEnd = lastMinuteAt
+                    + Math.max(0, expectedMinutes - minutesSeen) * MINUTE_MILLIS;
+            return Math.max(MIN_POLL_MILLIS,
+                    Math.min(MAX_POLL_MILLIS, (expectedEnd - now) / 2));
+        }
+    }
+
+    /**
+     * Thread shared by all monitored tests.
+     */
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "test-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Start monitoring a test.
+     * @param loadGeneratorDNS DNS name of the load generator
+     * @param testId test ID
+     * @param expectedMinutes expected test length in minutes
+     * @return future completed with the final log
+     */
+    public CompletableFuture<Ini> monitor(final String loadGeneratorDNS,
+                                          final String testId,
+                                          final int expectedMinutes) {
+        Test test = new Test(Api.getLogTailer(loadGeneratorDNS, testId), expectedMinutes);
+        scheduler.execute(test::poll);
+        return test.finished;
+    }
+}
@@ -0,0 +1,91 @@
+package autoscaling;
+
+/**
+ * Steps the capacity when the input stays above an upper or below a
+ * lower threshold for a number of consecutive readings, like the alarms
+ * but on readings seconds apart instead of minutes. A step is followed
+ * by a cooldown during which readings are counted but nothing changes.
+ */
+public final class ThresholdController implements ScalingController {
+
+    /**
+     * Scale in below this value.
+     */
+    private final double lower;
+
+    /**
+     * Scale out above this value.
+     */
+    private final double upper;
+
+    /**
+     * Instances added or removed per step.
+     */
+    private final int step;
+
+    /**
+     * Consecutive readings beyond a threshold before a step.
+     */
+    private final int readings;
+
+    /**
+     * Milliseconds after a step before the next one.
+     */
+    private final long cooldownMillis;
+
+    /**
+     * Consecutive readings above the upper threshold.
+     */
+    private int above;
+
+    /**
+     * Consecutive readings below the lower threshold.
+     */
+    private int below;
+
+    /**
+     * No step before this time.
+     */
+    private long quietUntil = Long.MIN_VALUE;
+
+    /**
+     * Create a controller.
+     * @param lower scale in below this value
+     * @param upper scale out above this value
+     * @param step instances added or removed per step
+     * @param readings consecutive readings beyond a threshold before a step
+     * @param cooldownMillis milliseconds after a step before the next one
+     */
+    public ThresholdController(final double lower, final double upper, final int step,
+                               final int readings, final long cooldownMillis) {
+        if (lower >= upper || step < 1 || readings < 1 || cooldownMillis < 0) {
+            throw new IllegalArgumentException("Need lower < upper, step >= 1, readings >= 1 and cooldown >= 0, got "
+                    + lower + ", " + upper + ", " + step + ", " + readings + ", " + cooldownMillis);
+        }
+        this.lower = lower;
+        this.upper = upper;
+        this.step = step;
+        this.readings = readings;
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    @Override
+    public int desiredCapacity(final double value, final int capacity, final long nowMillis) {
+        above = value > upper ? above + 1 : 0;
+        below = value < lower ? below + 1 : 0;
+        if (nowMillis < quietUntil) {
+            return capacity;
+        }
+        if (above >= readings) {
+            above = 0;
+            quietUntil = nowMillis + cooldownMillis;
+            return capacity + step;
+        }
+        if (below >= readings && capacity > 0) {
+            below = 0;
+            quietUntil = nowMillis + cooldownMillis;
+            return Math.max(0, capacity - step);
+        }
+        return capacity;
+    }
+}
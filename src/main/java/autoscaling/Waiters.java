@@ -0,0 +1,203 @@
+package autoscaling;
+
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsResult;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeLoadBalancersRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeLoadBalancersResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.LoadBalancer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Asynchronous waiters for EC2 instances, load balancers and ASGs.
+ * All waiters share one small scheduler, and waits on the same resource
+ * type are merged into one describe call per tick.
+ */
+public final class Waiters {
+
+    /**
+     * Number of scheduler threads shared by all waiters.
+     */
+    private static final int SCHEDULER_THREADS = 2;
+
+    /**
+     * Maximum load balancer ARNs per describe call.
+     */
+    private static final int MAX_LOAD_BALANCERS_PER_CALL = 20;
+
+    /**
+     * Maximum ASG names per describe call.
+     */
+    private static final int MAX_GROUPS_PER_CALL = 50;
+
+    /**
+     * Timeout of every wait.
+     */
+    private static final long WAIT_TIMEOUT_MILLIS = 15 * 60 * 1000;
+
+    /**
+     * Backoff between polls of a single wait.
+     */
+    private static final Backoff POLL_BACKOFF = new Backoff(500, 10000, 1.5, 0.2);
+
+    /**
+     * Shared scheduler.
+     */
+    private static final ScheduledExecutorService SCHEDULER =
+            Executors.newScheduledThreadPool(SCHEDULER_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "waiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Instance pollers keyed by client.
+     */
+    private static final Map<AmazonEC2, BatchedPoller<String, Instance>> INSTANCES
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Load balancer pollers keyed by client.
+     */
+    private static final Map<AmazonElasticLoadBalancing, BatchedPoller<String, LoadBalancer>> LOAD_BALANCERS
+            = new ConcurrentHashMap<>();
+
+    /**
+     * ASG pollers keyed by client.
+     */
+    private static final Map<AmazonAutoScaling, BatchedPoller<String, AutoScalingGroup>> GROUPS
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Unused constructor.
+     */
+    private Waiters() {
+    }
+
+    /**
+     * Wait for an instance to reach a state.
+     * @param ec2 EC2 client
+     * @param instanceId instance ID
+     * @param state state name, e.g. running
+     * @return future completed with the instance
+     */
+    public static CompletableFuture<Instance> instanceInState(final AmazonEC2 ec2,
+                                                              final String instanceId,
+                                                              final String state) {
+        return INSTANCES.computeIfAbsent(ec2, client -> new BatchedPoller<>("instance",
+                SCHEDULER, ids -> Ec2.instanceStates(client).refresh(ids), POLL_BACKOFF))
+                .await(instanceId,
+                        instance -> instance.getState().getName().equals(state),
+                        WAIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Wait for a load balancer to become active.
+     * @param elb ELB client
+     * @param loadBalancerArn load balancer ARN
+     * @return future completed with the load balancer
+     */
+    public static CompletableFuture<LoadBalancer> loadBalancerActive(
+            final AmazonElasticLoadBalancing elb,
+            final String loadBalancerArn) {
+        return LOAD_BALANCERS.computeIfAbsent(elb, client -> new BatchedPoller<>("load balancer",
+                SCHEDULER, arns -> describeLoadBalancers(client, arns), POLL_BACKOFF))
+                .await(loadBalancerArn,
+                        loadBalancer -> loadBalancer.getState().getCode().equals("active"),
+                        WAIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Wait for an ASG to have no instances left.
+     * @param aas AAS client
+     * @param groupName ASG name
+     * @return future completed with the group
+     */
+    public static CompletableFuture<AutoScalingGroup> autoScalingGroupDrained(
+            final AmazonAutoScaling aas,
+            final String groupName) {
+        return GROUPS.computeIfAbsent(aas, client -> new BatchedPoller<>("auto scaling group",
+                SCHEDULER, names -> describeAutoScalingGroups(client, names), POLL_BACKOFF))
+                .await(groupName,
+                        group -> group.getInstances().isEmpty(),
+                        WAIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Block on a waiter from synchronous code.
+     * @param future waiter future
+     * @param <T> resource type
+     * @return the resource
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public static <T> T await(final CompletableFuture<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Describe load balancers in batches.
+     * @param elb ELB client
+     * @param arns load balancer ARNs
+     * @return load balancers keyed by ARN
+     */
+    private static Map<String, LoadBalancer> describeLoadBalancers(
+            final AmazonElasticLoadBalancing elb,
+            final Set<String> arns) {
+        Map<String, LoadBalancer> found = new HashMap<>();
+        List<String> all = new ArrayList<>(arns);
+        for (int from = 0; from < all.size(); from += MAX_LOAD_BALANCERS_PER_CALL) {
+            DescribeLoadBalancersRequest request = new DescribeLoadBalancersRequest()
+                    .withLoadBalancerArns(all.subList(from,
+                            Math.min(all.size(), from + MAX_LOAD_BALANCERS_PER_CALL)));
+            DescribeLoadBalancersResult response = elb.describeLoadBalancers(request);
+            for (LoadBalancer loadBalancer : response.getLoadBalancers()) {
+                found.put(loadBalancer.getLoadBalancerArn(), loadBalancer);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Describe auto scaling groups in batches.
+     * @param aas AAS client
+     * @param names group names
+     * @return groups keyed by name
+     */
+    private static Map<String, AutoScalingGroup> describeAutoScalingGroups(
+            final AmazonAutoScaling aas,
+            final Set<String> names) {
+        Map<String, AutoScalingGroup> found = new HashMap<>();
+        List<String> all = new ArrayList<>(names);
+        for (int from = 0; from < all.size(); from += MAX_GROUPS_PER_CALL) {
+            DescribeAutoScalingGroupsRequest request = new DescribeAutoScalingGroupsRequest()
+                    .withAutoScalingGroupNames(all.subList(from,
+                            Math.min(all.size(), from + MAX_GROUPS_PER_CALL)));
+            DescribeAutoScalingGroupsResult response = aas.describeAutoScalingGroups(request);
+            for (AutoScalingGroup group : response.getAutoScalingGroups()) {
+                found.put(group.getAutoScalingGroupName(), group);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,145 @@
+package simulator;
+
+import autoscaling.AutoScale;
+import autoscaling.ResourceConfig;
+
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Runs {@link AutoScale} end to end on a {@link SimulatedAws} account:
+ * provisioning from the journal, the test with the configured collector,
+ * reloader, prober and controller or predictive scaler, and the teardown.
+ * The Load Generator is replaced by the load model of the account, a base
+ * rate through the warmup and a spike in the middle of the test. Fails
+ * when anything outlives the teardown.
+ */
+public final class EndToEndRun {
+
+    /**
+     * Simulated seconds between two lines of the timeline.
+     */
+    private static final int SAMPLE_SECONDS = 60;
+
+    /**
+     * Unused constructor.
+     */
+    private EndToEndRun() {
+    }
+
+    /**
+     * Test standing in for the Load Generator: waits the warmup and test
+     * minutes on the simulated clock and prints the group every sample.
+     * @param aws simulated account
+     * @param testStart simulated epoch milliseconds the test started at, set here
+     * @return test
+     */
+    private static Consumer<ResourceConfig> test(final SimulatedAws aws, final AtomicLong testStart) {
+        return resourceConfig -> {
+            long start = aws.getClock().now();
+            testStart.set(start);
+            long end = start + (AutoScale.WARMUP_MINUTES + AutoScale.TEST_MINUTES) * 60000L;
+            try {
+                for (long due = start + SAMPLE_SECONDS * 1000L; due <= end; due += SAMPLE_SECONDS * 1000L) {
+                    long wait = (long) ((due - aws.getClock().now()) / aws.getClock().getSpeedup());
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                    AutoScalingGroup group = aws.getAutoScaling().describeAutoScalingGroups()
+                            .getAutoScalingGroups().get(0);
+                    int inService = 0;
+                    for (Instance instance : group.getInstances()) {
+                        if ("InService".equals(instance.getLifecycleState())) {
+                            inService++;
+                        }
+                    }
+                    System.out.printf("t=%dm load=%.0f desired=%d inService=%d%n",
+                            (due - start) / 60000, aws.getSettings().getLoad().applyAsDouble(
+                                    (due - aws.getClock().getStartMillis()) / 1000.0),
+                            group.getDesiredCapacity(), inService);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    /**
+     * Resources still around after the run.
+     * @param aws simulated account
+     * @return description of each leftover resource
+     */
+    private static List<String> leftovers(final SimulatedAws aws) {
+        List<String> left = new ArrayList<>();
+        for (AutoScalingGroup group : aws.getAutoScaling().describeAutoScalingGroups().getAutoScalingGroups()) {
+            left.add("group " + group.getAutoScalingGroupName());
+        }
+        aws.getElb().describeLoadBalancers(new com.amazonaws.services.elasticloadbalancingv2.model
+                .DescribeLoadBalancersRequest()).getLoadBalancers()
+                .forEach(loadBalancer -> left.add("load balancer " + loadBalancer.getLoadBalancerName()));
+        aws.getElb().describeTargetGroups(new com.amazonaws.services.elasticloadbalancingv2.model
+                .DescribeTargetGroupsRequest()).getTargetGroups()
+                .forEach(targetGroup -> left.add("target group " + targetGroup.getTargetGroupName()));
+        aws.getCloudWatch().describeAlarms().getMetricAlarms()
+                .forEach(alarm -> left.add("alarm " + alarm.getAlarmName()));
+        for (Reservation reservation : aws.getEc2().describeInstances().getReservations()) {
+            reservation.getInstances().stream()
+                    .filter(instance -> !"terminated".equals(instance.getState().getName()))
+                    .forEach(instance -> left.add("instance " + instance.getInstanceId()));
+        }
+        aws.getEc2().describeSecurityGroups().getSecurityGroups().stream()
+                .filter(group -> !"default".equals(group.getGroupName()))
+                .forEach(group -> left.add("security group " + group.getGroupName()));
+        return left;
+    }
+
+    /**
+     * Run the task once.
+     * Usage: EndToEndRun [speedup [base-requests-per-second [peak-requests-per-second]]]
+     * @param args command line arguments
+     * @throws InterruptedException when interrupted
+     * @throws ExecutionException when the run fails
+     * @throws IOException when the journal cannot be created
+     */
+    public static void main(final String[] args)
+            throws InterruptedException, ExecutionException, IOException {
+        double speedup = args.length > 0 ? Double.parseDouble(args[0]) : 60;
+        final double base = args.length > 1 ? Double.parseDouble(args[1]) : 500;
+        final double peak = args.length > 2 ? Double.parseDouble(args[2]) : 4000;
+        final AtomicLong testStart = new AtomicLong(Long.MAX_VALUE);
+        // The spike covers the middle third of the test, after the warmup
+        final long spikeStart = (AutoScale.WARMUP_MINUTES + AutoScale.TEST_MINUTES / 3) * 60000L;
+        final long spikeEnd = (AutoScale.WARMUP_MINUTES + 2 * AutoScale.TEST_MINUTES / 3) * 60000L;
+        final AtomicLong clockStart = new AtomicLong();
+        DoubleUnaryOperator shape = seconds -> {
+            long intoTest = clockStart.get() + (long) (seconds * 1000) - testStart.get();
+            return intoTest >= spikeStart && intoTest < spikeEnd ? peak : base;
+        };
+        SimulatedAws aws = new SimulatedAws(new SimulationSettings().withSpeedup(speedup).withLoad(shape));
+        clockStart.set(aws.getClock().getStartMillis());
+        Path journal = Files.createTempFile("autoscaling-e2e", ".journal");
+        Files.delete(journal);
+        try {
+            AutoScale.runAutoScalingTask(aws.getEc2(), aws.getAutoScaling(), aws.getElb(),
+                    aws.getCloudWatch(), journal, aws.getClock()::now, test(aws, testStart));
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+        List<String> left = leftovers(aws);
+        if (!left.isEmpty()) {
+            throw new IllegalStateException("Left after the run: " + left);
+        }
+        System.out.println("end to end: provisioned, tested and torn down");
+    }
+}
@@ -0,0 +1,114 @@
+package simulator;
+
+import java.util.Arrays;
+
+/**
+ * Priority queue of timed events packed into primitive longs.
+ * An event is a time in milliseconds, a type and a small payload; the
+ * queue never allocates once it has grown to its working size.
+ */
+final class EventQueue {
+
+    /**
+     * Bits of the payload.
+     */
+    private static final int PAYLOAD_BITS = 16;
+
+    /**
+     * Bits of the type.
+     */
+    private static final int TYPE_BITS = 4;
+
+    /**
+     * Largest payload.
+     */
+    static final int MAX_PAYLOAD = (1 << PAYLOAD_BITS) - 1;
+
+    /**
+     * Binary min-heap of packed events.
+     */
+    private long[] heap = new long[16];
+
+    /**
+     * Number of queued events.
+     */
+    private int size;
+
+    /**
+     * Queue an event. Events at the same time come out by type, then payload.
+     * @param timeMillis event time
+     * @param type event type, 0 to 15
+     * @param payload event payload, 0 to {@link #MAX_PAYLOAD}
+     */
+    void add(final long timeMillis, final int type, final int payload) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        long event = (timeMillis << (TYPE_BITS + PAYLOAD_BITS))
+                | ((long) type << PAYLOAD_BITS) | payload;
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= event) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = event;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Time of the next event.
+     * @return milliseconds, Long.MAX_VALUE when empty
+     */
+    long peekTime() {
+        return size == 0 ? Long.MAX_VALUE : heap[0] >>> (TYPE_BITS + PAYLOAD_BITS);
+    }
+
+    /**
+     * Remove the next event.
+     * @return packed event, decode with {@link #type} and {@link #payload}
+     */
+    long poll() {
+        long first = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return first;
+    }
+
+    /**
+     * Type of a packed event.
+     * @param event packed event
+     * @return type
+     */
+    static int type(final long event) {
+        return (int) (event >>> PAYLOAD_BITS) & ((1 << TYPE_BITS) - 1);
+    }
+
+    /**
+     * Payload of a packed event.
+     * @param event packed event
+     * @return payload
+     */
+    static int payload(final long event) {
+        return (int) event & MAX_PAYLOAD;
+    }
+}
@@ -0,0 +1,53 @@
+package simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribution of API call latencies in real milliseconds.
+ */
+@FunctionalInterface
+public interface LatencyModel {
+
+    /**
+     * Draw one latency.
+     * @return latency in milliseconds
+     */
+    double sampleMillis();
+
+    /**
+     * No latency.
+     * @return latency model
+     */
+    static LatencyModel none() {
+        return () -> 0;
+    }
+
+    /**
+     * Constant latency.
+     * @param millis latency in milliseconds
+     * @return latency model
+     */
+    static LatencyModel fixed(final double millis) {
+        return () -> millis;
+    }
+
+    /**
+     * Uniformly distributed latency.
+     * @param minMillis lower bound
+     * @param maxMillis upper bound
+     * @return latency model
+     */
+    static LatencyModel uniform(final double minMillis, final double maxMillis) {
+        return () -> ThreadLocalRandom.current().nextDouble(minMillis, maxMillis);
+    }
+
+    /**
+     * Log-normal latency, the usual shape of network round trips.
+     * @param medianMillis median latency
+     * @param sigma standard deviation of the underlying normal distribution
+     * @return latency model
+     */
+    static LatencyModel logNormal(final double medianMillis, final double sigma) {
+        return () -> medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+}
@@ -0,0 +1,128 @@
+package simulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Request rate over time, sampled at a fixed step.
+ * The rate holds from one sample to the next.
+ */
+public final class LoadTrace {
+
+    /**
+     * Seconds between two samples.
+     */
+    private final double stepSeconds;
+
+    /**
+     * Requests per second of every step.
+     */
+    private final double[] rates;
+
+    /**
+     * Create a trace.
+     * @param stepSeconds seconds between two samples
+     * @param rates requests per second of every step, not copied
+     */
+    public LoadTrace(final double stepSeconds, final double[] rates) {
+        if (stepSeconds <= 0 || rates.length == 0) {
+            throw new IllegalArgumentException("A trace needs a positive step and at least one sample");
+        }
+        this.stepSeconds = stepSeconds;
+        this.rates = rates;
+    }
+
+    /**
+     * Sample a rate function.
+     * @param rate requests per second by seconds since the start
+     * @param durationSeconds trace length
+     * @param stepSeconds seconds between two samples
+     * @return trace
+     */
+    public static LoadTrace sample(final DoubleUnaryOperator rate,
+                                   final double durationSeconds,
+                                   final double stepSeconds) {
+        double[] rates = new double[(int) Math.ceil(durationSeconds / stepSeconds)];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = rate.applyAsDouble(i * stepSeconds);
+        }
+        return new LoadTrace(stepSeconds, rates);
+    }
+
+    /**
+     * Read a trace file.
+     * Lines are either a rate, one per second, or "seconds,rate" with a
+     * fixed step. Blank lines and lines starting with # are skipped.
+     * @param file trace file
+     * @return trace
+     * @throws IOException when the file cannot be read
+     */
+    public static LoadTrace read(final Path file) throws IOException {
+        double[] rates = new double[1024];
+        int count = 0;
+        double firstTime = Double.NaN;
+        double secondTime = Double.NaN;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                double rate;
+                if (comma < 0) {
+                    rate = Double.parseDouble(line);
+                } else {
+                    double time = Double.parseDouble(line.substring(0, comma).trim());
+                    if (count == 0) {
+                        firstTime = time;
+                    } else if (count == 1) {
+                        secondTime = time;
+                    }
+                    rate = Double.parseDouble(line.substring(comma + 1).trim());
+                }
+                if (count == rates.length) {
+                    rates = Arrays.copyOf(rates, count * 2);
+                }
+                rates[count++] = rate;
+            }
+        }
+        double step = Double.isNaN(secondTime) ? 1 : secondTime - firstTime;
+        return new LoadTrace(step, Arrays.copyOf(rates, count));
+    }
+
+    public double getStepSeconds() {
+        return stepSeconds;
+    }
+
+    /**
+     * Number of samples.
+     * @return sample count
+     */
+    public int length() {
+        return rates.length;
+    }
+
+    /**
+     * Rate of a step.
+     * @param index step
+     * @return requests per second
+     */
+    public double rate(final int index) {
+        return rates[index];
+    }
+
+    /**
+     * Trace length.
+     * @return seconds
+     */
+    public double durationSeconds() {
+        return rates.length * stepSeconds;
+    }
+}
@@ -0,0 +1,44 @@
+package simulator;
+
+import java.util.List;
+
+/**
+ * One page of a paginated describe call.
+ * Tokens are the offset of the next item, which is good enough as long
+ * as the simulated collections only grow at the end.
+ * @param <T> item type
+ */
+final class Page<T> {
+
+    /**
+     * Items of the page.
+     */
+    final List<T> items;
+
+    /**
+     * Token of the next page, null on the last page.
+     */
+    final String nextToken;
+
+    private Page(final List<T> items, final String nextToken) {
+        this.items = items;
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Cut a page out of all matches.
+     * @param all all matching items
+     * @param token token of the requested page or null
+     * @param maxResults requested page size or null
+     * @param pageSize largest page size of the service
+     * @param <T> item type
+     * @return page
+     */
+    static <T> Page<T> of(final List<T> all, final String token,
+                          final Integer maxResults, final int pageSize) {
+        int from = token == null ? 0 : Math.min(all.size(), Integer.parseInt(token));
+        int size = maxResults == null ? pageSize : Math.min(maxResults, pageSize);
+        int to = Math.min(all.size(), from + Math.max(1, size));
+        return new Page<>(all.subList(from, to), to < all.size() ? Integer.toString(to) : null);
+    }
+}
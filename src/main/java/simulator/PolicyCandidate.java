@@ -0,0 +1,151 @@
+package simulator;
+
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * One assignment of the scaling keys of auto-scaling-config.json.
+ * The keys keep their meaning in {@code Aas} and {@code Cloudwatch}:
+ * the "ScaleIn" alarm fires above {@code cpu_upper_threshold} and applies
+ * {@code scale_in_adjustment}, the "ScaleOut" alarm fires below
+ * {@code cpu_lower_threshold} and applies {@code scale_out_adjustment}.
+ * Only SimpleScaling policies without a warm pool are modelled, other
+ * configurations are rejected rather than tuned as something they are not.
+ */
+public final class PolicyCandidate {
+
+    /**
+     * Tuned keys, in the order of {@link #values}.
+     */
+    static final String[] KEYS = {
+        "cpu_upper_threshold",
+        "cpu_lower_threshold",
+        "scale_in_adjustment",
+        "scale_out_adjustment",
+        "cool_down_period_scale_in",
+        "cool_down_period_scale_out",
+        "alarm_evaluation_periods_scale_in",
+        "alarm_evaluation_periods_scale_out",
+        "alarm_period",
+        "asg_min_size",
+        "asg_max_size",
+    };
+
+    /**
+     * Policy type the candidates configure.
+     */
+    static final String POLICY_TYPE = "SimpleScaling";
+
+    /**
+     * Value of every key.
+     */
+    private final double[] values;
+
+    /**
+     * Create a candidate.
+     * @param values value of every key of {@link #KEYS}, not copied
+     */
+    PolicyCandidate(final double[] values) {
+        if (values.length != KEYS.length) {
+            throw new IllegalArgumentException("Expected " + KEYS.length + " values");
+        }
+        this.values = values;
+    }
+
+    /**
+     * Read the current values from a configuration.
+     * @param config parsed auto-scaling-config.json
+     * @return candidate
+     * @throws IllegalArgumentException for another policy type or a warm pool
+     */
+    public static PolicyCandidate fromConfig(final JSONObject config) {
+        String policyType = config.optString("scaling_policy_type", POLICY_TYPE);
+        if (!POLICY_TYPE.equals(policyType) || config.optBoolean("warm_pool", false)) {
+            throw new IllegalArgumentException("Only " + POLICY_TYPE + " without a warm pool can be tuned, got "
+                    + policyType + (config.optBoolean("warm_pool", false) ? " with a warm pool" : ""));
+        }
+        double[] values = new double[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            values[i] = config.getDouble(KEYS[i]);
+        }
+        return new PolicyCandidate(values);
+    }
+
+    /**
+     * Value of a key.
+     * @param key configuration key
+     * @return value
+     */
+    public double get(final String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key)) {
+                return values[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown key " + key);
+    }
+
+    /**
+     * Whether the candidate is a usable policy.
+     * @return true when the thresholds and sizes are ordered
+     */
+    public boolean isValid() {
+        return get("cpu_lower_threshold") < get("cpu_upper_threshold")
+                && get("asg_min_size") <= get("asg_max_size");
+    }
+
+    /**
+     * Build the policy the candidate configures.
+     * @param defaultCooldownSeconds group default cooldown
+     * @return policy model
+     */
+    public ScalingPolicyModel toModel(final int defaultCooldownSeconds) {
+        int period = (int) get("alarm_period");
+        int minSize = (int) get("asg_min_size");
+        return new ScalingPolicyModel(minSize, (int) get("asg_max_size"),
+                Math.max(1, minSize), defaultCooldownSeconds, Arrays.asList(
+                new ScalingPolicyModel.AlarmRule("ScaleIn", "GreaterThanThreshold",
+                        get("cpu_upper_threshold"), period,
+                        (int) get("alarm_evaluation_periods_scale_in"), "ChangeInCapacity",
+                        (int) get("scale_in_adjustment"), (int) get("cool_down_period_scale_in")),
+                new ScalingPolicyModel.AlarmRule("ScaleOut", "LessThanThreshold",
+                        get("cpu_lower_threshold"), period,
+                        (int) get("alarm_evaluation_periods_scale_out"), "ChangeInCapacity",
+                        (int) get("scale_out_adjustment"), (int) get("cool_down_period_scale_out"))));
+    }
+
+    /**
+     * Write the values into a configuration, keeping the other keys but
+     * the policy type and warm pool, which are set to what was modelled.
+     * Thresholds stay decimals, every other key is an integer.
+     * @param config parsed auto-scaling-config.json, modified
+     * @return the configuration
+     */
+    public JSONObject writeTo(final JSONObject config) {
+        config.put("scaling_policy_type", POLICY_TYPE);
+        config.put("warm_pool", false);
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].startsWith("cpu_")) {
+                config.put(KEYS[i], values[i]);
+            } else {
+                config.put(KEYS[i], (int) values[i]);
+            }
+        }
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < KEYS.length; i++) {
+            text.append(i == 0 ? "" : " ").append(KEYS[i]).append('=');
+            if (values[i] == Math.rint(values[i])) {
+                text.append((long) values[i]);
+            } else {
+                text.append(values[i]);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package simulator;
+
+/**
+ * Compares the simple, step and target tracking policies of the current
+ * configuration, each without and with the configured warm pool, on a
+ * load spike with {@link PolicySimulator}: time until the serving
+ * instances cover the spike, time from an alarm to its instances serving,
+ * dropped requests and instance hours.
+ * Nothing is measured against AWS: the boot and warm start times are
+ * inputs, 40 s and 10 s unless given, and the time from an alarm to
+ * serving is only what the simulator derives from them and the alarm
+ * periods. Measure them on a real group before reading the result as a
+ * latency of the policy.
+ */
+public final class PolicyComparison {
+
+    /**
+     * Policy types {@link autoscaling.Aas} creates.
+     */
+    private static final String[] POLICY_TYPES = {
+        "SimpleScaling", "StepScaling", "TargetTrackingScaling",
+    };
+
+    /**
+     * Timeline resolution in seconds.
+     */
+    private static final int SAMPLE_SECONDS = 10;
+
+    /**
+     * Minutes of base load before the spike.
+     */
+    private static final int SPIKE_START_MINUTES = 10;
+
+    /**
+     * Minutes the spike lasts.
+     */
+    private static final int SPIKE_MINUTES = 30;
+
+    /**
+     * Minutes of base load after the spike.
+     */
+    private static final int COOLDOWN_MINUTES = 20;
+
+    /**
+     * Unused constructor.
+     */
+    private PolicyComparison() {
+    }
+
+    /**
+     * Seconds from the start of the spike until the serving instances
+     * can take the peak rate.
+     * @param result simulation result
+     * @param peak peak requests per second
+     * @param instanceCapacity requests per second of one instance
+     * @return seconds, -1 when the group never gets there during the spike
+     */
+    static int timeToCapacity(final PolicySimulationResult result, final double peak,
+                              final double instanceCapacity) {
+        int first = SPIKE_START_MINUTES * 60 / result.getSampleSeconds();
+        int last = (SPIKE_START_MINUTES + SPIKE_MINUTES) * 60 / result.getSampleSeconds();
+        for (int i = first; i < Math.min(last, result.getSamples()); i++) {
+            if (result.getInService(i) * instanceCapacity >= peak) {
+                return (i + 1 - first) * result.getSampleSeconds();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Run the comparison.
+     * Usage: PolicyComparison [peak-requests-per-second [requests-per-instance [boot-seconds
+     * [warm-start-seconds]]]]
+     * @param args command line arguments
+     */
+    public static void main(final String[] args) {
+        final double peak = args.length > 0 ? Double.parseDouble(args[0]) : 8000;
+        SimulationSettings settings = new SimulationSettings();
+        if (args.length > 1) {
+            settings.withInstanceCapacity(Double.parseDouble(args[1]));
+        }
+        if (args.length > 2) {
+            settings.withInstanceBootMillis(Long.parseLong(args[2]) * 1000);
+        }
+        if (args.length > 3) {
+            settings.withWarmStartMillis(Long.parseLong(args[3]) * 1000);
+        }
+        final double base = settings.getInstanceCapacity() / 2;
+        LoadTrace spike = LoadTrace.sample(seconds -> {
+            double minute = seconds / 60;
+            return minute >= SPIKE_START_MINUTES && minute < SPIKE_START_MINUTES + SPIKE_MINUTES
+                    ? peak : base;
+        }, (SPIKE_START_MINUTES + SPIKE_MINUTES + COOLDOWN_MINUTES) * 60, 1);
+
+        System.out.printf("spike %.0f -> %.0f requests/s, %.0f requests/s per instance, %ds boot,"
+                        + " %ds warm start (assumed, not measured)%n", base, peak, settings.getInstanceCapacity(),
+                settings.getInstanceBootMillis() / 1000, settings.getWarmStartMillis() / 1000);
+        for (String type : POLICY_TYPES) {
+            for (boolean warmPool : new boolean[] {false, true}) {
+                ScalingPolicyModel policy = ScalingPolicyModel.capture(type, warmPool);
+                PolicySimulationResult result = new PolicySimulator(policy, settings, SAMPLE_SECONDS).run(spike);
+                int seconds = timeToCapacity(result, peak, settings.getInstanceCapacity());
+                System.out.printf("%-22s %-12s timeToCapacity=%s modelledAlarmToServing=%.0fs (max %.0fs)"
+                                + " dropped=%.2f%% instanceHours=%.2f activities=%d%n",
+                        type, warmPool ? "warm pool" : "cold start",
+                        seconds < 0 ? "never" : seconds + "s",
+                        result.getMeanScaleOutSeconds(), result.getMaxScaleOutSeconds(),
+                        result.getDropRate() * 100, result.getInstanceHours(), result.getActivities());
+            }
+        }
+    }
+}
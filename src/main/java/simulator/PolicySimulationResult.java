@@ -0,0 +1,247 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Timelines and totals of a {@link PolicySimulator} run.
+ * Timelines hold one entry per sample interval.
+ */
+public final class PolicySimulationResult {
+
+    /**
+     * Length of a sample interval in seconds.
+     */
+    private final int sampleSeconds;
+
+    /**
+     * Desired capacity at the end of every interval.
+     */
+    private int[] desired;
+
+    /**
+     * Serving instances at the end of every interval.
+     */
+    private int[] inService;
+
+    /**
+     * Average CPU percent of every interval, NaN without serving instances.
+     */
+    private double[] cpu;
+
+    /**
+     * Dropped requests of every interval.
+     */
+    private double[] dropped;
+
+    /**
+     * Offered requests of every interval.
+     */
+    private double[] offered;
+
+    /**
+     * Recorded intervals.
+     */
+    private int samples;
+
+    /**
+     * Requests offered by the trace.
+     */
+    private double totalRequests;
+
+    /**
+     * Requests dropped.
+     */
+    private double droppedRequests;
+
+    /**
+     * Instance hours, booting instances included.
+     */
+    private double instanceHours;
+
+    /**
+     * Scaling activities.
+     */
+    private int activities;
+
+    /**
+     * Scale outs.
+     */
+    private int scaleOuts;
+
+    /**
+     * Sum of the seconds from an alarm to its instances serving, over scale outs.
+     */
+    private double scaleOutSeconds;
+
+    /**
+     * Longest time from an alarm to its instances serving.
+     */
+    private double maxScaleOutSeconds;
+
+    PolicySimulationResult(final int sampleSeconds, final int expectedSamples) {
+        this.sampleSeconds = sampleSeconds;
+        int capacity = Math.max(1, expectedSamples);
+        this.desired = new int[capacity];
+        this.inService = new int[capacity];
+        this.cpu = new double[capacity];
+        this.dropped = new double[capacity];
+        this.offered = new double[capacity];
+    }
+
+    /**
+     * Record one interval.
+     * @param desiredCapacity desired capacity
+     * @param serving serving instances
+     * @param averageCpu average CPU percent
+     * @param droppedRequests dropped requests
+     * @param offeredRequests offered requests
+     */
+    void record(final int desiredCapacity, final int serving, final double averageCpu,
+                final double droppedRequests, final double offeredRequests) {
+        if (samples == desired.length) {
+            int grown = samples * 2;
+            desired = Arrays.copyOf(desired, grown);
+            inService = Arrays.copyOf(inService, grown);
+            cpu = Arrays.copyOf(cpu, grown);
+            dropped = Arrays.copyOf(dropped, grown);
+            offered = Arrays.copyOf(offered, grown);
+        }
+        desired[samples] = desiredCapacity;
+        inService[samples] = serving;
+        cpu[samples] = averageCpu;
+        dropped[samples] = droppedRequests;
+        offered[samples] = offeredRequests;
+        samples++;
+    }
+
+    /**
+     * Count a scaling activity.
+     */
+    void countActivity() {
+        activities++;
+    }
+
+    /**
+     * Record a scale out.
+     * @param seconds time from the alarm to the last launched instance serving
+     */
+    void recordScaleOut(final double seconds) {
+        scaleOuts++;
+        scaleOutSeconds += seconds;
+        maxScaleOutSeconds = Math.max(maxScaleOutSeconds, seconds);
+    }
+
+    /**
+     * Set the totals.
+     * @param offered requests offered
+     * @param lost requests dropped
+     * @param hours instance hours
+     */
+    void finish(final double offered, final double lost, final double hours) {
+        this.totalRequests = offered;
+        this.droppedRequests = lost;
+        this.instanceHours = hours;
+    }
+
+    public int getSampleSeconds() {
+        return sampleSeconds;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public int getDesired(final int sample) {
+        return desired[sample];
+    }
+
+    public int getInService(final int sample) {
+        return inService[sample];
+    }
+
+    public double getCpu(final int sample) {
+        return cpu[sample];
+    }
+
+    public double getDropped(final int sample) {
+        return dropped[sample];
+    }
+
+    public double getOffered(final int sample) {
+        return offered[sample];
+    }
+
+    public double getTotalRequests() {
+        return totalRequests;
+    }
+
+    public double getDroppedRequests() {
+        return droppedRequests;
+    }
+
+    public double getInstanceHours() {
+        return instanceHours;
+    }
+
+    public int getActivities() {
+        return activities;
+    }
+
+    public int getScaleOuts() {
+        return scaleOuts;
+    }
+
+    /**
+     * Average time from an alarm to its instances serving.
+     * @return seconds, NaN without scale outs
+     */
+    public double getMeanScaleOutSeconds() {
+        return scaleOuts > 0 ? scaleOutSeconds / scaleOuts : Double.NaN;
+    }
+
+    public double getMaxScaleOutSeconds() {
+        return maxScaleOutSeconds;
+    }
+
+    /**
+     * Share of the offered requests that was dropped.
+     * @return fraction between 0 and 1
+     */
+    public double getDropRate() {
+        return totalRequests > 0 ? droppedRequests / totalRequests : 0;
+    }
+
+    /**
+     * Count the intervals that dropped more than a share of their requests.
+     * @param maxDropRate tolerated share of dropped requests
+     * @return intervals violating the objective
+     */
+    public int countViolations(final double maxDropRate) {
+        int violations = 0;
+        for (int i = 0; i < samples; i++) {
+            if (dropped[i] > maxDropRate * offered[i]) {
+                violations++;
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Format the timeline and totals, one line per interval.
+     * @return printable lines
+     */
+    public List<String> format() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < samples; i++) {
+            lines.add(String.format("t=%ds desired=%d inService=%d cpu=%.2f dropped=%.0f",
+                    (i + 1) * sampleSeconds, desired[i], inService[i], cpu[i], dropped[i]));
+        }
+        lines.add(String.format("requests=%.0f dropped=%.0f (%.2f%%) instanceHours=%.2f activities=%d"
+                        + " alarmToServing=%.0fs",
+                totalRequests, droppedRequests, getDropRate() * 100, instanceHours, activities,
+                getMeanScaleOutSeconds()));
+        return lines;
+    }
+}
@@ -0,0 +1,471 @@
+package simulator;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Discrete-event simulation of an auto scaling group under a load trace.
+ * Between events the load, the number of serving instances and thus CPU
+ * and dropped requests are constant, so hours of traffic take as many
+ * steps as there are trace samples, alarm periods and scaling activities.
+ *
+ * The capacity model: an instance serves
+ * {@link SimulationSettings#getInstanceCapacity()} requests per second at
+ * 100% CPU once it has booted for
+ * {@link SimulationSettings#getInstanceBootMillis()}; requests beyond the
+ * capacity of the serving instances are dropped. The alarm metric is the
+ * time-weighted average CPU of the serving instances over the alarm
+ * period. Simple scaling policies wait for their activity to finish and
+ * the cooldown to pass before the group reacts to an alarm again. Step
+ * and target tracking policies react every period instead; instances
+ * still in their warm-up count towards the desired capacity but not
+ * towards the capacity a new scale out starts from, and scale in waits
+ * for the warm-up to end. A warm pool starts full; scale outs take its
+ * stopped instances first, which serve after
+ * {@link SimulationSettings#getWarmStartMillis()}, and the pool refills
+ * with instances that boot for the full boot time.
+ */
+public final class PolicySimulator {
+
+    /**
+     * Event type: instances finished booting, payload is the count.
+     */
+    private static final int INSTANCES_READY = 0;
+
+    /**
+     * Event type: an alarm period ended, payload is the alarm index.
+     */
+    private static final int ALARM_PERIOD_END = 1;
+
+    /**
+     * Event type: warm pool instances finished initializing, payload is the count.
+     */
+    private static final int WARM_POOL_READY = 2;
+
+    /**
+     * Default timeline resolution in seconds.
+     */
+    private static final int DEFAULT_SAMPLE_SECONDS = 60;
+
+    /**
+     * Policy under test.
+     */
+    private final ScalingPolicyModel policy;
+
+    /**
+     * Instance boot time and capacity.
+     */
+    private final SimulationSettings settings;
+
+    /**
+     * Timeline resolution in seconds.
+     */
+    private final int sampleSeconds;
+
+    /**
+     * Create a simulator.
+     * @param policy policy under test
+     * @param settings instance boot time and capacity
+     * @param sampleSeconds timeline resolution in seconds
+     */
+    public PolicySimulator(final ScalingPolicyModel policy,
+                           final SimulationSettings settings,
+                           final int sampleSeconds) {
+        this.policy = policy;
+        this.settings = settings;
+        this.sampleSeconds = sampleSeconds;
+    }
+
+    /**
+     * Create a simulator with a one minute timeline.
+     * @param policy policy under test
+     * @param settings instance boot time and capacity
+     */
+    public PolicySimulator(final ScalingPolicyModel policy, final SimulationSettings settings) {
+        this(policy, settings, DEFAULT_SAMPLE_SECONDS);
+    }
+
+    /**
+     * Run a trace. The group starts with its initial capacity in service.
+     * @param trace request rate
+     * @return timelines and totals
+     */
+    public PolicySimulationResult run(final LoadTrace trace) {
+        return new Run(trace).execute();
+    }
+
+    /**
+     * State of one simulation run.
+     */
+    private final class Run {
+        /**
+         * Trace.
+         */
+        private final LoadTrace trace;
+        /**
+         * Pending events.
+         */
+        private final EventQueue events = new EventQueue();
+        /**
+         * Alarms.
+         */
+        private final ScalingPolicyModel.AlarmRule[] alarms;
+        /**
+         * Consecutive breaching periods per alarm.
+         */
+        private final int[] breaching;
+        /**
+         * CPU integral at the start of the current period, per alarm.
+         */
+        private final double[] periodCpuStart;
+        /**
+         * Serving time integral at the start of the current period, per alarm.
+         */
+        private final double[] periodServingStart;
+        /**
+         * Result being filled.
+         */
+        private final PolicySimulationResult result;
+        /**
+         * Current request rate.
+         */
+        private double load;
+        /**
+         * Instances serving.
+         */
+        private int inService;
+        /**
+         * Instances booting.
+         */
+        private int pending;
+        /**
+         * Booting instances to discard when they come up, after a scale in.
+         */
+        private int cancelled;
+        /**
+         * Desired capacity.
+         */
+        private int desired;
+        /**
+         * Stopped instances in the warm pool.
+         */
+        private int warm;
+        /**
+         * Warm pool instances initializing.
+         */
+        private int refilling;
+        /**
+         * No simple scaling before this time.
+         */
+        private long blockedUntil;
+        /**
+         * Instances launched by step or target tracking policies still warming up.
+         */
+        private int warming;
+        /**
+         * End of the current warm-up.
+         */
+        private long warmupEnd;
+        /**
+         * Integral of CPU percent over serving seconds.
+         */
+        private double cpuIntegral;
+        /**
+         * Seconds with at least one serving instance.
+         */
+        private double servingSeconds;
+        /**
+         * Integral of dropped requests per second, i.e. dropped requests.
+         */
+        private double dropped;
+        /**
+         * Requests offered.
+         */
+        private double offered;
+        /**
+         * Integral of running instances, booting or serving.
+         */
+        private double instanceSeconds;
+
+        Run(final LoadTrace trace) {
+            this.trace = trace;
+            List<ScalingPolicyModel.AlarmRule> rules = policy.getAlarms();
+            this.alarms = rules.toArray(new ScalingPolicyModel.AlarmRule[0]);
+            this.breaching = new int[alarms.length];
+            this.periodCpuStart = new double[alarms.length];
+            this.periodServingStart = new double[alarms.length];
+            this.result = new PolicySimulationResult(sampleSeconds,
+                    (int) Math.ceil(trace.durationSeconds() / sampleSeconds));
+        }
+
+        /**
+         * Run the event loop to the end of the trace.
+         * @return result
+         */
+        PolicySimulationResult execute() {
+            desired = policy.getInitialCapacity();
+            inService = desired;
+            warm = policy.warmPoolSize(desired);
+            load = trace.rate(0);
+            for (int i = 0; i < alarms.length; i++) {
+                events.add(alarms[i].getPeriodSeconds() * 1000L, ALARM_PERIOD_END, i);
+            }
+            long stepMillis = Math.round(trace.getStepSeconds() * 1000);
+            long sampleMillis = sampleSeconds * 1000L;
+            long endMillis = trace.length() * stepMillis;
+            int traceIndex = 0;
+            long nextStep = stepMillis;
+            long nextSample = sampleMillis;
+            double sampleCpuStart = 0;
+            double sampleServingStart = 0;
+            double sampleDroppedStart = 0;
+            double sampleOfferedStart = 0;
+            long now = 0;
+            while (now < endMillis) {
+                long next = Math.min(Math.min(nextStep, nextSample),
+                        Math.min(events.peekTime(), endMillis));
+                integrate((next - now) / 1000.0);
+                now = next;
+                if (now == nextStep) {
+                    traceIndex++;
+                    load = traceIndex < trace.length() ? trace.rate(traceIndex) : 0;
+                    nextStep += stepMillis;
+                }
+                while (events.peekTime() == now) {
+                    long event = events.poll();
+                    if (EventQueue.type(event) == INSTANCES_READY) {
+                        ready(EventQueue.payload(event));
+                    } else if (EventQueue.type(event) == WARM_POOL_READY) {
+                        refilling -= EventQueue.payload(event);
+                        warm += EventQueue.payload(event);
+                        refill(now);
+                    } else {
+                        evaluate(EventQueue.payload(event), now);
+                    }
+                }
+                if (now == nextSample || now == endMillis) {
+                    double serving = servingSeconds - sampleServingStart;
+                    result.record(desired, inService,
+                            serving > 0 ? (cpuIntegral - sampleCpuStart) / serving : Double.NaN,
+                            dropped - sampleDroppedStart, offered - sampleOfferedStart);
+                    sampleCpuStart = cpuIntegral;
+                    sampleServingStart = servingSeconds;
+                    sampleDroppedStart = dropped;
+                    sampleOfferedStart = offered;
+                    nextSample += sampleMillis;
+                }
+            }
+            result.finish(offered, dropped, instanceSeconds / 3600.0);
+            return result;
+        }
+
+        /**
+         * Accumulate the constant state over an interval.
+         * @param seconds interval length
+         */
+        private void integrate(final double seconds) {
+            if (seconds <= 0) {
+                return;
+            }
+            double capacity = inService * settings.getInstanceCapacity();
+            double served = Math.min(load, capacity);
+            if (inService > 0) {
+                cpuIntegral += served / capacity * 100.0 * seconds;
+                servingSeconds += seconds;
+            }
+            offered += load * seconds;
+            dropped += (load - served) * seconds;
+            instanceSeconds += (inService + pending + refilling) * seconds;
+        }
+
+        /**
+         * Booted instances start serving.
+         * @param count booted instances
+         */
+        private void ready(final int count) {
+            int discarded = Math.min(count, cancelled);
+            cancelled -= discarded;
+            pending -= count;
+            inService += count - discarded;
+        }
+
+        /**
+         * Close an alarm period and run the policy if the alarm fires.
+         * @param index alarm index
+         * @param now simulated time
+         */
+        private void evaluate(final int index, final long now) {
+            ScalingPolicyModel.AlarmRule alarm = alarms[index];
+            double serving = servingSeconds - periodServingStart[index];
+            double cpu = Double.NaN;
+            if (serving > 0) {
+                cpu = (cpuIntegral - periodCpuStart[index]) / serving;
+                breaching[index] = alarm.breaches(cpu) ? breaching[index] + 1 : 0;
+            } else {
+                // no datapoints, the alarm goes to INSUFFICIENT_DATA
+                breaching[index] = 0;
+            }
+            periodCpuStart[index] = cpuIntegral;
+            periodServingStart[index] = servingSeconds;
+            events.add(now + alarm.getPeriodSeconds() * 1000L, ALARM_PERIOD_END, index);
+            if (breaching[index] < alarm.getEvaluationPeriods()) {
+                return;
+            }
+            if ("SimpleScaling".equals(alarm.getPolicyType())) {
+                if (now >= blockedUntil) {
+                    scale(alarm, now);
+                }
+            } else {
+                scaleContinuously(alarm, now, cpu);
+            }
+        }
+
+        /**
+         * Apply a policy.
+         * @param alarm alarm and policy
+         * @param now simulated time
+         */
+        private void scale(final ScalingPolicyModel.AlarmRule alarm, final long now) {
+            int target = adjust(alarm.getAdjustmentType(), desired, alarm.getScalingAdjustment());
+            target = Math.max(policy.getMinSize(), Math.min(policy.getMaxSize(), target));
+            if (target == desired) {
+                return;
+            }
+            int cooldown = alarm.getCooldownSeconds() != null
+                    ? alarm.getCooldownSeconds() : policy.getDefaultCooldownSeconds();
+            blockedUntil = resize(target, now) + cooldown * 1000L;
+        }
+
+        /**
+         * Apply a step or target tracking policy.
+         * @param alarm alarm and policy
+         * @param now simulated time
+         * @param cpu metric value of the period
+         */
+        private void scaleContinuously(final ScalingPolicyModel.AlarmRule alarm, final long now,
+                                       final double cpu) {
+            if (Double.isNaN(cpu)) {
+                return;
+            }
+            boolean warmingUp = now < warmupEnd;
+            if (!warmingUp) {
+                warming = 0;
+            }
+            int target;
+            if ("TargetTrackingScaling".equals(alarm.getPolicyType())) {
+                target = (int) Math.ceil(Math.max(1, inService) * cpu / alarm.getTargetValue());
+            } else {
+                target = adjust(alarm.getAdjustmentType(), desired - warming, alarm.stepAdjustment(cpu));
+            }
+            target = Math.max(policy.getMinSize(), Math.min(policy.getMaxSize(), target));
+            if (target > desired) {
+                int before = desired;
+                resize(target, now);
+                int warmup = alarm.getCooldownSeconds() != null
+                        ? alarm.getCooldownSeconds() : policy.getDefaultCooldownSeconds();
+                warming += desired - before;
+                warmupEnd = now + warmup * 1000L;
+            } else if (target < desired && !warmingUp) {
+                resize(target, now);
+            }
+        }
+
+        /**
+         * Capacity after an adjustment.
+         * @param adjustmentType policy adjustment type
+         * @param from current capacity
+         * @param adjustment scaling adjustment
+         * @return new capacity, not bounded
+         */
+        private int adjust(final String adjustmentType, final int from, final int adjustment) {
+            if ("ExactCapacity".equals(adjustmentType)) {
+                return adjustment;
+            } else if ("PercentChangeInCapacity".equals(adjustmentType)) {
+                int change = (int) Math.round(from * adjustment / 100.0);
+                return from + (change == 0 ? Integer.signum(adjustment) : change);
+            }
+            return from + adjustment;
+        }
+
+        /**
+         * Launch or remove instances to reach a desired capacity.
+         * @param target desired capacity
+         * @param now simulated time
+         * @return end of the scaling activity
+         */
+        private long resize(final int target, final long now) {
+            long activityEnd = now;
+            if (target > desired) {
+                int launched = Math.min(target - desired, EventQueue.MAX_PAYLOAD);
+                int started = Math.min(launched, warm);
+                warm -= started;
+                pending += launched;
+                if (started > 0) {
+                    activityEnd = now + settings.getWarmStartMillis();
+                    events.add(activityEnd, INSTANCES_READY, started);
+                }
+                if (launched > started) {
+                    activityEnd = now + settings.getInstanceBootMillis();
+                    events.add(activityEnd, INSTANCES_READY, launched - started);
+                }
+                result.recordScaleOut((activityEnd - now) / 1000.0);
+            } else {
+                int remove = desired - target;
+                int fromService = Math.min(remove, inService);
+                inService -= fromService;
+                // the rest is still booting and goes once it is up
+                cancelled += remove - fromService;
+            }
+            desired = target;
+            result.countActivity();
+            refill(now);
+            return activityEnd;
+        }
+
+        /**
+         * Launch or terminate warm pool instances to reach the pool size
+         * of the desired capacity.
+         * @param now simulated time
+         */
+        private void refill(final long now) {
+            int size = policy.warmPoolSize(desired);
+            int missing = Math.min(size - warm - refilling, EventQueue.MAX_PAYLOAD);
+            if (missing > 0) {
+                refilling += missing;
+                events.add(now + settings.getInstanceBootMillis(), WARM_POOL_READY, missing);
+            }
+            warm = Math.min(warm, size);
+        }
+    }
+
+    /**
+     * Simulate the configured policy.
+     * Usage: PolicySimulator trace-file [requests-per-instance [boot-seconds]]
+     * @param args command line arguments
+     * @throws IOException when the trace cannot be read
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PolicySimulator trace-file [requests-per-instance [boot-seconds]]");
+            return;
+        }
+        SimulationSettings settings = new SimulationSettings();
+        if (args.length > 1) {
+            settings.withInstanceCapacity(Double.parseDouble(args[1]));
+        }
+        if (args.length > 2) {
+            settings.withInstanceBootMillis(Long.parseLong(args[2]) * 1000);
+        }
+        ScalingPolicyModel policy = ScalingPolicyModel.capture();
+        LoadTrace trace = LoadTrace.read(Paths.get(args[0]));
+        System.out.println(policy);
+        long start = System.nanoTime();
+        PolicySimulationResult result = new PolicySimulator(policy, settings).run(trace);
+        long micros = (System.nanoTime() - start) / 1000;
+        for (String line : result.format()) {
+            System.out.println(line);
+        }
+        System.out.println("simulated " + Math.round(trace.durationSeconds()) + "s in " + micros + "us");
+    }
+}
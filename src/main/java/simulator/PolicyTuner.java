@@ -0,0 +1,310 @@
+package simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Sweeps a {@link SearchSpace} of scaling configurations against load
+ * traces on a fork-join pool and keeps the Pareto front of objective
+ * violations against instance hours.
+ * Candidates are independent and traces are read-only, so every worker
+ * simulates on its own and only the small per-task fronts are merged.
+ */
+public final class PolicyTuner {
+
+    /**
+     * Candidates simulated by one task without splitting further.
+     */
+    private static final int LEAF_SIZE = 16;
+
+    /**
+     * Timeline resolution of the objective in seconds.
+     */
+    private static final int OBJECTIVE_SECONDS = 60;
+
+    /**
+     * Score of a candidate over all traces.
+     */
+    public static final class Evaluation {
+        /**
+         * Candidate.
+         */
+        private final PolicyCandidate candidate;
+        /**
+         * Minutes dropping more than the tolerated share of requests.
+         */
+        private final int violations;
+        /**
+         * Instance hours.
+         */
+        private final double instanceHours;
+        /**
+         * Dropped requests.
+         */
+        private final double droppedRequests;
+
+        Evaluation(final PolicyCandidate candidate, final int violations,
+                   final double instanceHours, final double droppedRequests) {
+            this.candidate = candidate;
+            this.violations = violations;
+            this.instanceHours = instanceHours;
+            this.droppedRequests = droppedRequests;
+        }
+
+        public PolicyCandidate getCandidate() {
+            return candidate;
+        }
+
+        public int getViolations() {
+            return violations;
+        }
+
+        public double getInstanceHours() {
+            return instanceHours;
+        }
+
+        public double getDroppedRequests() {
+            return droppedRequests;
+        }
+
+        /**
+         * Whether this evaluation is at least as good in both objectives.
+         * @param other other evaluation
+         * @return true when the other one can be dropped from the front
+         */
+        boolean covers(final Evaluation other) {
+            return violations <= other.violations && instanceHours <= other.instanceHours;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("violations=%d instanceHours=%.2f dropped=%.0f %s",
+                    violations, instanceHours, droppedRequests, candidate);
+        }
+    }
+
+    /**
+     * Candidates.
+     */
+    private final SearchSpace space;
+
+    /**
+     * Load traces every candidate runs against.
+     */
+    private final List<LoadTrace> traces;
+
+    /**
+     * Instance boot time and capacity.
+     */
+    private final SimulationSettings settings;
+
+    /**
+     * Tolerated share of dropped requests per minute.
+     */
+    private final double maxDropRate;
+
+    /**
+     * Group default cooldown in seconds.
+     */
+    private final int defaultCooldownSeconds;
+
+    /**
+     * Create a tuner.
+     * @param space candidates
+     * @param traces load traces
+     * @param settings instance boot time and capacity
+     * @param maxDropRate tolerated share of dropped requests per minute
+     * @param defaultCooldownSeconds group default cooldown
+     */
+    public PolicyTuner(final SearchSpace space, final List<LoadTrace> traces,
+                       final SimulationSettings settings, final double maxDropRate,
+                       final int defaultCooldownSeconds) {
+        this.space = space;
+        this.traces = traces;
+        this.settings = settings;
+        this.maxDropRate = maxDropRate;
+        this.defaultCooldownSeconds = defaultCooldownSeconds;
+    }
+
+    /**
+     * Evaluate every candidate.
+     * @param pool fork-join pool
+     * @return Pareto front, by instance hours
+     */
+    public List<Evaluation> paretoFront(final ForkJoinPool pool) {
+        List<Evaluation> front = pool.invoke(new Sweep(0, space.size()));
+        front.sort(Comparator.comparingDouble(Evaluation::getInstanceHours));
+        return front;
+    }
+
+    /**
+     * Simulate one candidate on all traces.
+     * @param candidate candidate
+     * @return evaluation
+     */
+    Evaluation evaluate(final PolicyCandidate candidate) {
+        PolicySimulator simulator = new PolicySimulator(candidate.toModel(defaultCooldownSeconds),
+                settings, OBJECTIVE_SECONDS);
+        int violations = 0;
+        double hours = 0;
+        double dropped = 0;
+        for (LoadTrace trace : traces) {
+            PolicySimulationResult result = simulator.run(trace);
+            violations += result.countViolations(maxDropRate);
+            hours += result.getInstanceHours();
+            dropped += result.getDroppedRequests();
+        }
+        return new Evaluation(candidate, violations, hours, dropped);
+    }
+
+    /**
+     * The evaluation to deploy: fewest violations, then fewest instance hours.
+     * @param front Pareto front
+     * @return chosen evaluation
+     */
+    public static Evaluation choose(final List<Evaluation> front) {
+        return front.stream()
+                .min(Comparator.comparingInt(Evaluation::getViolations)
+                        .thenComparingDouble(Evaluation::getInstanceHours))
+                .orElseThrow(() -> new IllegalStateException("No valid candidate"));
+    }
+
+    /**
+     * Add an evaluation to a front unless something on it covers it.
+     * @param front Pareto front, modified
+     * @param evaluation evaluation
+     */
+    static void insert(final List<Evaluation> front, final Evaluation evaluation) {
+        for (Evaluation member : front) {
+            if (member.covers(evaluation)) {
+                return;
+            }
+        }
+        front.removeIf(evaluation::covers);
+        front.add(evaluation);
+    }
+
+    /**
+     * Evaluates a range of candidate indices.
+     */
+    private final class Sweep extends RecursiveTask<List<Evaluation>> {
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+        /**
+         * First index.
+         */
+        private final long from;
+        /**
+         * End index, exclusive.
+         */
+        private final long to;
+
+        Sweep(final long from, final long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Evaluation> compute() {
+            if (to - from <= LEAF_SIZE) {
+                List<Evaluation> front = new ArrayList<>();
+                for (long index = from; index < to; index++) {
+                    PolicyCandidate candidate = space.candidate(index);
+                    if (candidate.isValid()) {
+                        insert(front, evaluate(candidate));
+                    }
+                }
+                return front;
+            }
+            long middle = (from + to) >>> 1;
+            Sweep left = new Sweep(from, middle);
+            left.fork();
+            List<Evaluation> front = new Sweep(middle, to).compute();
+            List<Evaluation> merged = left.join();
+            for (Evaluation evaluation : front) {
+                insert(merged, evaluation);
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Tune the configured policy.
+     * Usage: PolicyTuner output-config trace-file... [--capacity=requests-per-instance]
+     * [--boot=seconds] [--max-drop-rate=share] [--parallelism=threads]
+     * @param args command line arguments
+     * @throws IOException when a trace cannot be read or the config written
+     */
+    public static void main(final String[] args) throws IOException {
+        SimulationSettings settings = new SimulationSettings();
+        double maxDropRate = 0.01;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--capacity=")) {
+                settings.withInstanceCapacity(Double.parseDouble(arg.substring("--capacity=".length())));
+            } else if (arg.startsWith("--boot=")) {
+                settings.withInstanceBootMillis(Long.parseLong(arg.substring("--boot=".length())) * 1000);
+            } else if (arg.startsWith("--max-drop-rate=")) {
+                maxDropRate = Double.parseDouble(arg.substring("--max-drop-rate=".length()));
+            } else if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() < 2) {
+            System.out.println("Usage: PolicyTuner output-config trace-file... [--capacity=requests-per-instance]"
+                    + " [--boot=seconds] [--max-drop-rate=share] [--parallelism=threads]");
+            return;
+        }
+        JSONObject config;
+        try (InputStream in = PolicyTuner.class.getClassLoader()
+                .getResourceAsStream("auto-scaling-config.json")) {
+            config = new JSONObject(new JSONTokener(in));
+        }
+        List<LoadTrace> traces = new ArrayList<>();
+        for (String file : files.subList(1, files.size())) {
+            traces.add(LoadTrace.read(Paths.get(file)));
+        }
+        SearchSpace space = SearchSpace.around(PolicyCandidate.fromConfig(config));
+        PolicyTuner tuner = new PolicyTuner(space, traces, settings, maxDropRate,
+                config.getInt("asg_default_cool_down_period"));
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<Evaluation> front;
+        try {
+            front = tuner.paretoFront(pool);
+        } finally {
+            pool.shutdown();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        Evaluation current = tuner.evaluate(PolicyCandidate.fromConfig(config));
+        System.out.println("current: " + current);
+        System.out.println("Pareto front:");
+        for (Evaluation evaluation : front) {
+            System.out.println("  " + evaluation);
+        }
+        Evaluation chosen = choose(front);
+        System.out.println("chosen: " + chosen);
+        chosen.getCandidate().writeTo(config);
+        Files.write(Paths.get(files.get(0)), config.toString(2).getBytes(StandardCharsets.UTF_8));
+        System.out.println("wrote " + files.get(0) + "; " + space.size() + " candidates x "
+                + traces.size() + " traces in " + millis + "ms on " + parallelism + " threads");
+    }
+}
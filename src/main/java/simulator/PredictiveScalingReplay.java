@@ -0,0 +1,148 @@
+package simulator;
+
+import autoscaling.AutoScale;
+import autoscaling.PredictiveScaler;
+import autoscaling.ResourceConfig;
+
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.Instance;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Runs the configured stack on a {@link SimulatedAws} account through a
+ * load spike, once with the alarms alone and once with the
+ * {@link PredictiveScaler} next to them, and compares requests beyond the
+ * serving capacity and instance minutes.
+ */
+public final class PredictiveScalingReplay {
+
+    /**
+     * Simulated milliseconds per real millisecond.
+     */
+    private static final double SPEEDUP = 300;
+
+    /**
+     * Time from launch to serving: a 40 s boot plus the 180 s health check
+     * grace period the target group waits before routing.
+     */
+    private static final long SERVING_DELAY_MILLIS = 220000;
+
+    /**
+     * Simulated seconds per sample.
+     */
+    private static final int SAMPLE_SECONDS = 60;
+
+    /**
+     * Unused constructor.
+     */
+    private PredictiveScalingReplay() {
+    }
+
+    /**
+     * Totals of one replay.
+     */
+    private static final class Totals {
+        /**
+         * Requests beyond the capacity of the serving instances.
+         */
+        private double unserved;
+        /**
+         * Instance minutes, pending instances included.
+         */
+        private long instanceMinutes;
+    }
+
+    /**
+     * Replay a load shape.
+     * @param shape requests per second by seconds since the stack is up
+     * @param minutes replay length
+     * @param predictive whether the predictive scaler runs
+     * @return totals
+     * @throws InterruptedException when interrupted
+     * @throws ExecutionException when provisioning fails
+     */
+    private static Totals replay(final DoubleUnaryOperator shape, final int minutes,
+                                 final boolean predictive)
+            throws InterruptedException, ExecutionException {
+        // The shape starts once the stack is up, the base rate runs before
+        final AtomicLong startSeconds = new AtomicLong(Long.MAX_VALUE);
+        SimulationSettings settings = new SimulationSettings()
+                .withSpeedup(SPEEDUP)
+                .withInstanceBootMillis(SERVING_DELAY_MILLIS)
+                .withLoad(seconds -> shape.applyAsDouble(Math.max(0, seconds - startSeconds.get())));
+        SimulatedAws aws = new SimulatedAws(settings);
+        ResourceConfig resources = AutoScale.initializeResources(aws.getEc2(), aws.getElb(),
+                aws.getAutoScaling(), aws.getCloudWatch());
+        startSeconds.set(aws.getClock().elapsed() / 1000);
+        PredictiveScaler scaler = predictive
+                ? PredictiveScaler.fromConfiguration(aws.getAutoScaling(), aws.getCloudWatch(),
+                        resources.getLoadBalancerArn(), aws.getClock()::now).start((long) (SAMPLE_SECONDS * 1000 / SPEEDUP))
+                : null;
+        Totals totals = new Totals();
+        try {
+            for (int minute = 1; minute <= minutes; minute++) {
+                long due = (startSeconds.get() + (long) minute * SAMPLE_SECONDS) * 1000;
+                long wait = (long) ((due - aws.getClock().elapsed()) / SPEEDUP);
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+                AutoScalingGroup group = aws.getAutoScaling().describeAutoScalingGroups()
+                        .getAutoScalingGroups().get(0);
+                int inService = 0;
+                for (Instance instance : group.getInstances()) {
+                    if ("InService".equals(instance.getLifecycleState())) {
+                        inService++;
+                    }
+                }
+                double load = shape.applyAsDouble(minute * SAMPLE_SECONDS);
+                double unserved = Math.max(0, load - inService * settings.getInstanceCapacity())
+                        * SAMPLE_SECONDS;
+                totals.unserved += unserved;
+                totals.instanceMinutes += group.getInstances().size();
+                System.out.printf("%s t=%dm load=%.0f desired=%d inService=%d unserved=%.0f%n",
+                        predictive ? "predictive" : "alarms", minute, load,
+                        group.getDesiredCapacity(), inService, unserved);
+            }
+        } finally {
+            if (scaler != null) {
+                scaler.close();
+            }
+            AutoScale.destroy(aws.getAutoScaling(), aws.getEc2(), aws.getElb(),
+                    aws.getCloudWatch(), resources);
+        }
+        return totals;
+    }
+
+    /**
+     * Compare the two modes on a ramp to a spike and back.
+     * Usage: PredictiveScalingReplay [peak-requests-per-second [minutes]]
+     * @param args command line arguments
+     * @throws InterruptedException when interrupted
+     * @throws ExecutionException when provisioning fails
+     */
+    public static void main(final String[] args) throws InterruptedException, ExecutionException {
+        final double peak = args.length > 0 ? Double.parseDouble(args[0]) : 6000;
+        int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        final double base = 500;
+        DoubleUnaryOperator shape = seconds -> {
+            double minute = seconds / 60.0;
+            if (minute < 5 || minute >= 30) {
+                return base;
+            } else if (minute < 15) {
+                return base + (peak - base) * (minute - 5) / 10;
+            } else if (minute < 25) {
+                return peak;
+            }
+            return peak - (peak - base) * (minute - 25) / 5;
+        };
+        Totals alarms = replay(shape, minutes, false);
+        Totals predictive = replay(shape, minutes, true);
+        System.out.printf("alarms:     unserved=%.0f instanceMinutes=%d%n",
+                alarms.unserved, alarms.instanceMinutes);
+        System.out.printf("predictive: unserved=%.0f instanceMinutes=%d%n",
+                predictive.unserved, predictive.instanceMinutes);
+    }
+}
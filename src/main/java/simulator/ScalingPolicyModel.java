@@ -0,0 +1,570 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.autoscaling.AbstractAmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupResult;
+import com.amazonaws.services.autoscaling.model.PutScalingPolicyRequest;
+import com.amazonaws.services.autoscaling.model.PutScalingPolicyResult;
+import com.amazonaws.services.autoscaling.model.PutWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.PutWarmPoolResult;
+import com.amazonaws.services.autoscaling.model.StepAdjustment;
+import com.amazonaws.services.cloudwatch.AbstractAmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.PutMetricAlarmRequest;
+import com.amazonaws.services.cloudwatch.model.PutMetricAlarmResult;
+
+import autoscaling.Aas;
+import autoscaling.ScalingSettings;
+
+/**
+ * Scaling behaviour of an auto scaling group: its bounds, its warm pool
+ * and the alarms that drive its simple, step or target tracking scaling
+ * policies. Instances are immutable.
+ */
+public final class ScalingPolicyModel {
+
+    /**
+     * Warm pool minimum size of a group without a warm pool.
+     */
+    public static final int NO_WARM_POOL = -1;
+
+    /**
+     * Breaching periods before the alarm AWS creates for a target tracking
+     * policy scales out.
+     */
+    private static final int TARGET_TRACKING_HIGH_PERIODS = 3;
+
+    /**
+     * Periods below the target before the target tracking alarm scales in.
+     */
+    private static final int TARGET_TRACKING_LOW_PERIODS = 15;
+
+    /**
+     * Share of the target under which a target tracking policy scales in.
+     */
+    private static final double TARGET_TRACKING_LOW_RATIO = 0.9;
+
+    /**
+     * Period of the target tracking alarms in seconds.
+     */
+    private static final int TARGET_TRACKING_PERIOD = 60;
+
+    /**
+     * One step of a step scaling policy.
+     * Bounds are relative to the alarm threshold, lower inclusive and
+     * upper exclusive, infinite when open.
+     */
+    public static final class Step {
+        /**
+         * Lower bound.
+         */
+        private final double lowerBound;
+        /**
+         * Upper bound.
+         */
+        private final double upperBound;
+        /**
+         * Adjustment of the step.
+         */
+        private final int adjustment;
+
+        public Step(final double lowerBound, final double upperBound, final int adjustment) {
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.adjustment = adjustment;
+        }
+
+        public double getLowerBound() {
+            return lowerBound;
+        }
+
+        public double getUpperBound() {
+            return upperBound;
+        }
+
+        public int getAdjustment() {
+            return adjustment;
+        }
+
+        /**
+         * Whether the step covers a distance from the threshold.
+         * @param excess metric value minus threshold
+         * @return true when the step applies
+         */
+        boolean covers(final double excess) {
+            return excess >= lowerBound && excess < upperBound;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + lowerBound + ", " + upperBound + ") " + adjustment;
+        }
+    }
+
+    /**
+     * An alarm and the policy it triggers.
+     */
+    public static final class AlarmRule {
+        /**
+         * Alarm name.
+         */
+        private final String name;
+        /**
+         * CloudWatch comparison operator.
+         */
+        private final String comparisonOperator;
+        /**
+         * Threshold in CPU percent.
+         */
+        private final double threshold;
+        /**
+         * Alarm period in seconds.
+         */
+        private final int periodSeconds;
+        /**
+         * Breaching periods before the alarm fires.
+         */
+        private final int evaluationPeriods;
+        /**
+         * Policy adjustment type.
+         */
+        private final String adjustmentType;
+        /**
+         * Policy scaling adjustment.
+         */
+        private final int scalingAdjustment;
+        /**
+         * Policy cooldown in seconds, or the instance warm-up of step and
+         * target tracking policies; null for the group default.
+         */
+        private final Integer cooldownSeconds;
+        /**
+         * SimpleScaling, StepScaling or TargetTrackingScaling.
+         */
+        private final String policyType;
+        /**
+         * Steps of a step scaling policy, empty otherwise.
+         */
+        private final List<Step> steps;
+        /**
+         * CPU percent a target tracking policy keeps, NaN otherwise.
+         */
+        private final double targetValue;
+
+        /**
+         * Create a rule for a simple scaling policy.
+         */
+        public AlarmRule(final String name, final String comparisonOperator,
+                         final double threshold, final int periodSeconds,
+                         final int evaluationPeriods, final String adjustmentType,
+                         final int scalingAdjustment, final Integer cooldownSeconds) {
+            this(name, comparisonOperator, threshold, periodSeconds, evaluationPeriods,
+                    "SimpleScaling", adjustmentType, scalingAdjustment, cooldownSeconds,
+                    Collections.<Step>emptyList(), Double.NaN);
+        }
+
+        /**
+         * Create a rule for any type of policy.
+         */
+        public AlarmRule(final String name, final String comparisonOperator,
+                         final double threshold, final int periodSeconds,
+                         final int evaluationPeriods, final String policyType,
+                         final String adjustmentType, final int scalingAdjustment,
+                         final Integer cooldownSeconds, final List<Step> steps,
+                         final double targetValue) {
+            this.name = name;
+            this.comparisonOperator = comparisonOperator;
+            this.threshold = threshold;
+            this.periodSeconds = periodSeconds;
+            this.evaluationPeriods = evaluationPeriods;
+            this.policyType = policyType;
+            this.adjustmentType = adjustmentType;
+            this.scalingAdjustment = scalingAdjustment;
+            this.cooldownSeconds = cooldownSeconds;
+            this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+            this.targetValue = targetValue;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getComparisonOperator() {
+            return comparisonOperator;
+        }
+
+        public double getThreshold() {
+            return threshold;
+        }
+
+        public int getPeriodSeconds() {
+            return periodSeconds;
+        }
+
+        public int getEvaluationPeriods() {
+            return evaluationPeriods;
+        }
+
+        public String getAdjustmentType() {
+            return adjustmentType;
+        }
+
+        public int getScalingAdjustment() {
+            return scalingAdjustment;
+        }
+
+        public Integer getCooldownSeconds() {
+            return cooldownSeconds;
+        }
+
+        public String getPolicyType() {
+            return policyType;
+        }
+
+        public List<Step> getSteps() {
+            return steps;
+        }
+
+        public double getTargetValue() {
+            return targetValue;
+        }
+
+        /**
+         * Adjustment of the step covering a metric value.
+         * @param value metric value
+         * @return adjustment, 0 when no step covers the value
+         */
+        int stepAdjustment(final double value) {
+            for (Step step : steps) {
+                if (step.covers(value - threshold)) {
+                    return step.getAdjustment();
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Whether a metric value breaches the threshold.
+         * @param value metric value
+         * @return true when breaching
+         */
+        boolean breaches(final double value) {
+            switch (comparisonOperator) {
+                case "GreaterThanThreshold":
+                    return value > threshold;
+                case "GreaterThanOrEqualToThreshold":
+                    return value >= threshold;
+                case "LessThanThreshold":
+                    return value < threshold;
+                case "LessThanOrEqualToThreshold":
+                    return value <= threshold;
+                default:
+                    throw new IllegalArgumentException("Unsupported comparison " + comparisonOperator);
+            }
+        }
+
+        @Override
+        public String toString() {
+            String action;
+            if ("TargetTrackingScaling".equals(policyType)) {
+                action = "track CPU " + targetValue;
+            } else if ("StepScaling".equals(policyType)) {
+                action = adjustmentType + " steps " + steps;
+            } else {
+                action = adjustmentType + " " + scalingAdjustment;
+            }
+            return name + ": CPU " + comparisonOperator + " " + threshold
+                    + " for " + evaluationPeriods + "x" + periodSeconds + "s -> " + action
+                    + (cooldownSeconds != null ? ", cooldown " + cooldownSeconds + "s" : "");
+        }
+    }
+
+    /**
+     * Minimum group size.
+     */
+    private final int minSize;
+
+    /**
+     * Maximum group size.
+     */
+    private final int maxSize;
+
+    /**
+     * Desired capacity at creation.
+     */
+    private final int initialCapacity;
+
+    /**
+     * Group default cooldown in seconds.
+     */
+    private final int defaultCooldownSeconds;
+
+    /**
+     * Alarms of the group.
+     */
+    private final List<AlarmRule> alarms;
+
+    /**
+     * Stopped instances the warm pool keeps at least, {@link #NO_WARM_POOL} without one.
+     */
+    private final int warmPoolMinSize;
+
+    /**
+     * Group plus warm pool instances, -1 for the maximum size.
+     */
+    private final int warmPoolMaxPreparedCapacity;
+
+    public ScalingPolicyModel(final int minSize, final int maxSize,
+                              final int initialCapacity, final int defaultCooldownSeconds,
+                              final List<AlarmRule> alarms) {
+        this(minSize, maxSize, initialCapacity, defaultCooldownSeconds, alarms, NO_WARM_POOL, -1);
+    }
+
+    public ScalingPolicyModel(final int minSize, final int maxSize,
+                              final int initialCapacity, final int defaultCooldownSeconds,
+                              final List<AlarmRule> alarms, final int warmPoolMinSize,
+                              final int warmPoolMaxPreparedCapacity) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.initialCapacity = initialCapacity;
+        this.defaultCooldownSeconds = defaultCooldownSeconds;
+        this.alarms = Collections.unmodifiableList(new ArrayList<>(alarms));
+        this.warmPoolMinSize = warmPoolMinSize;
+        this.warmPoolMaxPreparedCapacity = warmPoolMaxPreparedCapacity;
+    }
+
+    /**
+     * The policy {@link Aas#createAutoScalingGroup} creates with the current
+     * configuration, recorded from the requests it sends.
+     * @return policy model
+     */
+    public static ScalingPolicyModel capture() {
+        return capture(ScalingSettings.current().getPolicyType());
+    }
+
+    /**
+     * The policy {@link Aas#createAutoScalingGroup} creates with the current
+     * configuration and another type of scaling policy.
+     * @param policyType SimpleScaling, StepScaling or TargetTrackingScaling
+     * @return policy model
+     */
+    public static ScalingPolicyModel capture(final String policyType) {
+        return capture(policyType, ScalingSettings.current().isWarmPool());
+    }
+
+    /**
+     * The policy {@link Aas#createAutoScalingGroup} creates with the current
+     * configuration, another type of scaling policy and with or without
+     * the configured warm pool.
+     * @param policyType SimpleScaling, StepScaling or TargetTrackingScaling
+     * @param warmPool whether the group has a warm pool
+     * @return policy model
+     */
+    public static ScalingPolicyModel capture(final String policyType, final boolean warmPool) {
+        RecordingAutoScaling aas = new RecordingAutoScaling();
+        RecordingCloudWatch cloudWatch = new RecordingCloudWatch();
+        Aas.createAutoScalingGroup(aas, cloudWatch, "targetGroup",
+                Collections.<String>emptyList(), policyType);
+        if (!warmPool) {
+            aas.warmPool = null;
+        } else if (aas.warmPool == null) {
+            Aas.putWarmPool(aas);
+        }
+        return fromRequests(aas.group, aas.policies, cloudWatch.alarms, aas.warmPool);
+    }
+
+    /**
+     * Build a model from the requests that create a group.
+     * Alarm actions refer to policies by ARN; {@code policies} maps the
+     * ARNs to the requests. Target tracking policies get the two alarms
+     * AWS creates for them.
+     * @param group group request
+     * @param policies policy requests keyed by policy ARN
+     * @param alarms alarm requests
+     * @return policy model
+     */
+    public static ScalingPolicyModel fromRequests(final CreateAutoScalingGroupRequest group,
+                                                  final Map<String, PutScalingPolicyRequest> policies,
+                                                  final List<PutMetricAlarmRequest> alarms) {
+        return fromRequests(group, policies, alarms, null);
+    }
+
+    /**
+     * Build a model from the requests that create a group and its warm pool.
+     * @param group group request
+     * @param policies policy requests keyed by policy ARN
+     * @param alarms alarm requests
+     * @param warmPool warm pool request, null without a warm pool
+     * @return policy model
+     */
+    public static ScalingPolicyModel fromRequests(final CreateAutoScalingGroupRequest group,
+                                                  final Map<String, PutScalingPolicyRequest> policies,
+                                                  final List<PutMetricAlarmRequest> alarms,
+                                                  final PutWarmPoolRequest warmPool) {
+        List<AlarmRule> rules = new ArrayList<>();
+        for (PutMetricAlarmRequest alarm : alarms) {
+            if (!"CPUUtilization".equals(alarm.getMetricName())) {
+                throw new IllegalArgumentException("Only CPUUtilization alarms are modelled: "
+                        + alarm.getAlarmName());
+            }
+            for (String action : alarm.getAlarmActions()) {
+                PutScalingPolicyRequest policy = policies.get(action);
+                if (policy == null) {
+                    continue;
+                }
+                if ("StepScaling".equals(policy.getPolicyType())) {
+                    List<Step> steps = new ArrayList<>();
+                    for (StepAdjustment step : policy.getStepAdjustments()) {
+                        steps.add(new Step(
+                                step.getMetricIntervalLowerBound() != null
+                                        ? step.getMetricIntervalLowerBound() : Double.NEGATIVE_INFINITY,
+                                step.getMetricIntervalUpperBound() != null
+                                        ? step.getMetricIntervalUpperBound() : Double.POSITIVE_INFINITY,
+                                step.getScalingAdjustment()));
+                    }
+                    rules.add(new AlarmRule(alarm.getAlarmName(), alarm.getComparisonOperator(),
+                            alarm.getThreshold(), alarm.getPeriod(), alarm.getEvaluationPeriods(),
+                            "StepScaling", policy.getAdjustmentType(), 0,
+                            policy.getEstimatedInstanceWarmup(), steps, Double.NaN));
+                } else {
+                    rules.add(new AlarmRule(alarm.getAlarmName(), alarm.getComparisonOperator(),
+                            alarm.getThreshold(), alarm.getPeriod(), alarm.getEvaluationPeriods(),
+                            policy.getAdjustmentType(), policy.getScalingAdjustment(),
+                            policy.getCooldown()));
+                }
+            }
+        }
+        for (PutScalingPolicyRequest policy : policies.values()) {
+            if ("TargetTrackingScaling".equals(policy.getPolicyType())) {
+                double target = policy.getTargetTrackingConfiguration().getTargetValue();
+                rules.add(new AlarmRule(policy.getPolicyName() + "-AlarmHigh", "GreaterThanThreshold",
+                        target, TARGET_TRACKING_PERIOD, TARGET_TRACKING_HIGH_PERIODS,
+                        "TargetTrackingScaling", null, 0, policy.getEstimatedInstanceWarmup(),
+                        Collections.<Step>emptyList(), target));
+                rules.add(new AlarmRule(policy.getPolicyName() + "-AlarmLow", "LessThanThreshold",
+                        target * TARGET_TRACKING_LOW_RATIO, TARGET_TRACKING_PERIOD,
+                        TARGET_TRACKING_LOW_PERIODS, "TargetTrackingScaling", null, 0,
+                        policy.getEstimatedInstanceWarmup(), Collections.<Step>emptyList(), target));
+            }
+        }
+        int defaultCooldown = group.getDefaultCooldown() != null ? group.getDefaultCooldown() : 300;
+        int initial = group.getDesiredCapacity() != null ? group.getDesiredCapacity() : group.getMinSize();
+        if (warmPool == null) {
+            return new ScalingPolicyModel(group.getMinSize(), group.getMaxSize(),
+                    initial, defaultCooldown, rules);
+        }
+        return new ScalingPolicyModel(group.getMinSize(), group.getMaxSize(),
+                initial, defaultCooldown, rules,
+                warmPool.getMinSize() != null ? warmPool.getMinSize() : 0,
+                warmPool.getMaxGroupPreparedCapacity() != null ? warmPool.getMaxGroupPreparedCapacity() : -1);
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    public int getDefaultCooldownSeconds() {
+        return defaultCooldownSeconds;
+    }
+
+    public List<AlarmRule> getAlarms() {
+        return alarms;
+    }
+
+    public boolean hasWarmPool() {
+        return warmPoolMinSize != NO_WARM_POOL;
+    }
+
+    /**
+     * Stopped instances the warm pool keeps for a desired capacity.
+     * @param desiredCapacity group desired capacity
+     * @return pool size, 0 without a warm pool
+     */
+    public int warmPoolSize(final int desiredCapacity) {
+        if (!hasWarmPool()) {
+            return 0;
+        }
+        int prepared = warmPoolMaxPreparedCapacity >= 0 ? warmPoolMaxPreparedCapacity : maxSize;
+        return Math.max(warmPoolMinSize, prepared - desiredCapacity);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("size ").append(minSize).append("..").append(maxSize)
+                .append(", initial ").append(initialCapacity)
+                .append(", default cooldown ").append(defaultCooldownSeconds).append('s');
+        if (hasWarmPool()) {
+            text.append(", warm pool ").append(warmPoolSize(initialCapacity));
+        }
+        for (AlarmRule alarm : alarms) {
+            text.append("\n  ").append(alarm);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Auto Scaling client that only records group, policy and warm pool requests.
+     */
+    private static final class RecordingAutoScaling extends AbstractAmazonAutoScaling {
+        /**
+         * Group request.
+         */
+        private CreateAutoScalingGroupRequest group;
+        /**
+         * Policy requests keyed by the ARN handed out.
+         */
+        private final Map<String, PutScalingPolicyRequest> policies = new HashMap<>();
+        /**
+         * Warm pool request, null without one.
+         */
+        private PutWarmPoolRequest warmPool;
+
+        @Override
+        public CreateAutoScalingGroupResult createAutoScalingGroup(final CreateAutoScalingGroupRequest request) {
+            group = request;
+            return new CreateAutoScalingGroupResult();
+        }
+
+        @Override
+        public PutScalingPolicyResult putScalingPolicy(final PutScalingPolicyRequest request) {
+            String arn = "policy/" + request.getPolicyName();
+            policies.put(arn, request);
+            return new PutScalingPolicyResult().withPolicyARN(arn);
+        }
+
+        @Override
+        public PutWarmPoolResult putWarmPool(final PutWarmPoolRequest request) {
+            warmPool = request;
+            return new PutWarmPoolResult();
+        }
+    }
+
+    /**
+     * CloudWatch client that only records alarm requests.
+     */
+    private static final class RecordingCloudWatch extends AbstractAmazonCloudWatch {
+        /**
+         * Alarm requests.
+         */
+        private final List<PutMetricAlarmRequest> alarms = new ArrayList<>();
+
+        @Override
+        public PutMetricAlarmResult putMetricAlarm(final PutMetricAlarmRequest request) {
+            alarms.add(request);
+            return new PutMetricAlarmResult();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package simulator;
+
+/**
+ * Cartesian product of candidate values for the tuned keys.
+ * Candidates are decoded from their index, so the space is never
+ * materialized.
+ */
+public final class SearchSpace {
+
+    /**
+     * Choices of every key, in the order of {@link PolicyCandidate#KEYS}.
+     */
+    private final double[][] choices;
+
+    /**
+     * Number of candidates.
+     */
+    private final long size;
+
+    /**
+     * Create a space.
+     * @param choices choices of every key, in the order of the tuned keys
+     */
+    SearchSpace(final double[][] choices) {
+        if (choices.length != PolicyCandidate.KEYS.length) {
+            throw new IllegalArgumentException("Expected choices for " + PolicyCandidate.KEYS.length + " keys");
+        }
+        long product = 1;
+        for (double[] values : choices) {
+            product = Math.multiplyExact(product, values.length);
+        }
+        this.choices = choices;
+        this.size = product;
+    }
+
+    /**
+     * A space around a base configuration. Alarm period and maximum size
+     * stay as configured: the period is a CloudWatch billing choice and
+     * the maximum a quota, neither is a tuning knob.
+     * @param base current configuration
+     * @return search space
+     */
+    public static SearchSpace around(final PolicyCandidate base) {
+        return new SearchSpace(new double[][] {
+            {60, 70, 80, 90},
+            {20, 30, 40, 50},
+            {1, 2, 3, 4},
+            {-1, -2},
+            {60, 120, 300},
+            {60, 120, 300},
+            {1, 2},
+            {1, 2, 3},
+            {base.get("alarm_period")},
+            {1, 2},
+            {base.get("asg_max_size")},
+        });
+    }
+
+    /**
+     * Number of candidates, valid or not.
+     * @return size
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Decode a candidate.
+     * @param index index between 0 and {@link #size()}
+     * @return candidate
+     */
+    public PolicyCandidate candidate(final long index) {
+        double[] values = new double[choices.length];
+        long rest = index;
+        for (int i = choices.length - 1; i >= 0; i--) {
+            values[i] = choices[i][(int) (rest % choices[i].length)];
+            rest /= choices[i].length;
+        }
+        return new PolicyCandidate(values);
+    }
+}
@@ -0,0 +1,64 @@
+package simulator;
+
+/**
+ * Simulated wall clock running a fixed factor faster than real time.
+ */
+public final class SimClock {
+
+    /**
+     * Real time at creation in nanoseconds.
+     */
+    private final long realStartNanos = System.nanoTime();
+
+    /**
+     * Simulated time at creation in milliseconds.
+     */
+    private final long simStartMillis;
+
+    /**
+     * Simulated milliseconds per real millisecond.
+     */
+    private final double speedup;
+
+    /**
+     * Create a clock starting at the current time.
+     * @param speedup simulated milliseconds per real millisecond
+     */
+    public SimClock(final double speedup) {
+        this.simStartMillis = System.currentTimeMillis();
+        this.speedup = speedup;
+    }
+
+    /**
+     * Current simulated time.
+     * @return simulated epoch milliseconds
+     */
+    public long now() {
+        return simStartMillis
+                + (long) ((System.nanoTime() - realStartNanos) / 1e6 * speedup);
+    }
+
+    /**
+     * Simulated time elapsed since creation.
+     * @return simulated milliseconds
+     */
+    public long elapsed() {
+        return now() - simStartMillis;
+    }
+
+    /**
+     * Simulated time at creation.
+     * @return simulated epoch milliseconds
+     */
+    public long getStartMillis() {
+        return simStartMillis;
+    }
+
+    /**
+     * Speedup of the clock.
+     * @return simulated milliseconds per real millisecond
+     */
+    public double getSpeedup() {
+        return speedup;
+    }
+}
@@ -0,0 +1,661 @@
+package simulator;
+
+import com.amazonaws.services.autoscaling.AbstractAmazonAutoScaling;
+import com.amazonaws.services.autoscaling.model.Alarm;
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.CompleteLifecycleActionRequest;
+import com.amazonaws.services.autoscaling.model.CompleteLifecycleActionResult;
+import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.CreateAutoScalingGroupResult;
+import com.amazonaws.services.autoscaling.model.CreateLaunchConfigurationRequest;
+import com.amazonaws.services.autoscaling.model.CreateLaunchConfigurationResult;
+import com.amazonaws.services.autoscaling.model.DeleteAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.DeleteAutoScalingGroupResult;
+import com.amazonaws.services.autoscaling.model.DeleteLaunchConfigurationRequest;
+import com.amazonaws.services.autoscaling.model.DeleteLaunchConfigurationResult;
+import com.amazonaws.services.autoscaling.model.DeleteLifecycleHookRequest;
+import com.amazonaws.services.autoscaling.model.DeleteLifecycleHookResult;
+import com.amazonaws.services.autoscaling.model.DeletePolicyRequest;
+import com.amazonaws.services.autoscaling.model.DeletePolicyResult;
+import com.amazonaws.services.autoscaling.model.DeleteWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.DeleteWarmPoolResult;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsResult;
+import com.amazonaws.services.autoscaling.model.DescribeLaunchConfigurationsRequest;
+import com.amazonaws.services.autoscaling.model.DescribeLaunchConfigurationsResult;
+import com.amazonaws.services.autoscaling.model.DescribeLifecycleHooksRequest;
+import com.amazonaws.services.autoscaling.model.DescribeLifecycleHooksResult;
+import com.amazonaws.services.autoscaling.model.DescribePoliciesRequest;
+import com.amazonaws.services.autoscaling.model.DescribePoliciesResult;
+import com.amazonaws.services.autoscaling.model.DescribeWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.DescribeWarmPoolResult;
+import com.amazonaws.services.autoscaling.model.Instance;
+import com.amazonaws.services.autoscaling.model.InstanceMonitoring;
+import com.amazonaws.services.autoscaling.model.LaunchConfiguration;
+import com.amazonaws.services.autoscaling.model.LifecycleHook;
+import com.amazonaws.services.autoscaling.model.PutLifecycleHookRequest;
+import com.amazonaws.services.autoscaling.model.PutLifecycleHookResult;
+import com.amazonaws.services.autoscaling.model.PutScalingPolicyRequest;
+import com.amazonaws.services.autoscaling.model.PutScalingPolicyResult;
+import com.amazonaws.services.autoscaling.model.PutWarmPoolRequest;
+import com.amazonaws.services.autoscaling.model.PutWarmPoolResult;
+import com.amazonaws.services.autoscaling.model.ScalingPolicy;
+import com.amazonaws.services.autoscaling.model.SetDesiredCapacityRequest;
+import com.amazonaws.services.autoscaling.model.SetDesiredCapacityResult;
+import com.amazonaws.services.autoscaling.model.Tag;
+import com.amazonaws.services.autoscaling.model.TagDescription;
+import com.amazonaws.services.autoscaling.model.TargetTrackingConfiguration;
+import com.amazonaws.services.autoscaling.model.PredefinedMetricSpecification;
+import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupRequest;
+import com.amazonaws.services.autoscaling.model.UpdateAutoScalingGroupResult;
+import com.amazonaws.services.autoscaling.model.WarmPoolConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Auto Scaling client of a {@link SimulatedAws} account.
+ * Groups launch and terminate simulated EC2 instances to follow their
+ * desired capacity, which alarms change through simple, step and target
+ * tracking scaling policies. A warm pool keeps stopped instances that
+ * join the group after a warm start instead of a full boot.
+ */
+final class SimulatedAutoScaling extends AbstractAmazonAutoScaling {
+
+    /**
+     * Service name used in errors.
+     */
+    private static final String SERVICE = "AmazonAutoScaling";
+
+    /**
+     * Account.
+     */
+    private final SimulatedAws aws;
+
+    SimulatedAutoScaling(final SimulatedAws aws) {
+        this.aws = aws;
+    }
+
+    @Override
+    public CreateLaunchConfigurationResult createLaunchConfiguration(
+            final CreateLaunchConfigurationRequest request) {
+        return aws.call(() -> {
+            if (aws.launchConfigurations.containsKey(request.getLaunchConfigurationName())) {
+                throw SimulatedAws.error(SERVICE, "AlreadyExists",
+                        "Launch Configuration by this name already exists");
+            }
+            SimulatedAws.LaunchConfigurationRecord launchConfiguration
+                    = new SimulatedAws.LaunchConfigurationRecord();
+            launchConfiguration.name = request.getLaunchConfigurationName();
+            launchConfiguration.imageId = request.getImageId();
+            launchConfiguration.instanceType = request.getInstanceType();
+            launchConfiguration.keyName = request.getKeyName();
+            launchConfiguration.securityGroups.addAll(request.getSecurityGroups());
+            launchConfiguration.visibleAt = aws.now() + aws.getSettings().getVisibilityDelayMillis();
+            aws.launchConfigurations.put(launchConfiguration.name, launchConfiguration);
+            return new CreateLaunchConfigurationResult();
+        });
+    }
+
+    @Override
+    public DeleteLaunchConfigurationResult deleteLaunchConfiguration(
+            final DeleteLaunchConfigurationRequest request) {
+        return aws.call(() -> {
+            String name = request.getLaunchConfigurationName();
+            if (!aws.launchConfigurations.containsKey(name)) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "Launch configuration name not found - " + name);
+            }
+            for (SimulatedAws.GroupRecord group : aws.groups.values()) {
+                if (name.equals(group.launchConfigurationName)) {
+                    throw SimulatedAws.error(SERVICE, "ResourceInUse",
+                            "Cannot delete launch configuration " + name + " because it is attached to AutoScalingGroup " + group.name);
+                }
+            }
+            aws.launchConfigurations.remove(name);
+            return new DeleteLaunchConfigurationResult();
+        });
+    }
+
+    @Override
+    public DescribeLaunchConfigurationsResult describeLaunchConfigurations(
+            final DescribeLaunchConfigurationsRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            List<LaunchConfiguration> matches = new ArrayList<>();
+            for (SimulatedAws.LaunchConfigurationRecord launchConfiguration : aws.launchConfigurations.values()) {
+                if (now >= launchConfiguration.visibleAt
+                        && (request.getLaunchConfigurationNames().isEmpty()
+                            || request.getLaunchConfigurationNames().contains(launchConfiguration.name))) {
+                    matches.add(new LaunchConfiguration()
+                            .withLaunchConfigurationName(launchConfiguration.name)
+                            .withImageId(launchConfiguration.imageId)
+                            .withInstanceType(launchConfiguration.instanceType)
+                            .withKeyName(launchConfiguration.keyName)
+                            .withSecurityGroups(launchConfiguration.securityGroups)
+                            .withInstanceMonitoring(new InstanceMonitoring().withEnabled(true)));
+                }
+            }
+            Page<LaunchConfiguration> page = Page.of(matches, request.getNextToken(),
+                    request.getMaxRecords(), Math.min(100, aws.getSettings().getPageSize()));
+            return new DescribeLaunchConfigurationsResult()
+                    .withLaunchConfigurations(page.items)
+                    .withNextToken(page.nextToken);
+        });
+    }
+
+    @Override
+    public CreateAutoScalingGroupResult createAutoScalingGroup(final CreateAutoScalingGroupRequest request) {
+        return aws.call(() -> {
+            if (aws.groups.containsKey(request.getAutoScalingGroupName())) {
+                throw SimulatedAws.error(SERVICE, "AlreadyExists",
+                        "AutoScalingGroup by this name already exists");
+            }
+            if (!aws.launchConfigurations.containsKey(request.getLaunchConfigurationName())) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "Launch configuration name not found - " + request.getLaunchConfigurationName());
+            }
+            SimulatedAws.GroupRecord group = new SimulatedAws.GroupRecord();
+            group.name = request.getAutoScalingGroupName();
+            group.launchConfigurationName = request.getLaunchConfigurationName();
+            group.minSize = request.getMinSize();
+            group.maxSize = request.getMaxSize();
+            group.desiredCapacity = request.getDesiredCapacity() != null
+                    ? request.getDesiredCapacity() : request.getMinSize();
+            if (request.getDefaultCooldown() != null) {
+                group.defaultCooldown = request.getDefaultCooldown();
+            }
+            if (request.getHealthCheckGracePeriod() != null) {
+                group.healthCheckGracePeriod = request.getHealthCheckGracePeriod();
+            }
+            group.targetGroupArns.addAll(request.getTargetGroupARNs());
+            group.availabilityZones.addAll(request.getAvailabilityZones());
+            group.tags.addAll(request.getTags());
+            group.visibleAt = aws.now() + aws.getSettings().getVisibilityDelayMillis();
+            aws.groups.put(group.name, group);
+            return new CreateAutoScalingGroupResult();
+        });
+    }
+
+    @Override
+    public UpdateAutoScalingGroupResult updateAutoScalingGroup(final UpdateAutoScalingGroupRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            if (request.getMinSize() != null) {
+                group.minSize = request.getMinSize();
+            }
+            if (request.getMaxSize() != null) {
+                group.maxSize = request.getMaxSize();
+            }
+            if (request.getDefaultCooldown() != null) {
+                group.defaultCooldown = request.getDefaultCooldown();
+            }
+            if (request.getHealthCheckGracePeriod() != null) {
+                group.healthCheckGracePeriod = request.getHealthCheckGracePeriod();
+            }
+            if (!request.getAvailabilityZones().isEmpty()) {
+                // New instances go to the new zones, running ones stay
+                group.availabilityZones.clear();
+                group.availabilityZones.addAll(request.getAvailabilityZones());
+            }
+            if (request.getLaunchConfigurationName() != null) {
+                group.launchConfigurationName = request.getLaunchConfigurationName();
+            }
+            int desired = request.getDesiredCapacity() != null
+                    ? request.getDesiredCapacity() : group.desiredCapacity;
+            group.desiredCapacity = Math.max(group.minSize, Math.min(group.maxSize, desired));
+            return new UpdateAutoScalingGroupResult();
+        });
+    }
+
+    @Override
+    public SetDesiredCapacityResult setDesiredCapacity(final SetDesiredCapacityRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            long now = aws.now();
+            if (Boolean.TRUE.equals(request.getHonorCooldown())
+                    && now < group.lastScalingAt + group.defaultCooldown * 1000L) {
+                throw SimulatedAws.error(SERVICE, "ScalingActivityInProgress",
+                        "Scaling activity is in progress and blocks this action");
+            }
+            if (request.getDesiredCapacity() < group.minSize || request.getDesiredCapacity() > group.maxSize) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "New SetDesiredCapacity value " + request.getDesiredCapacity()
+                                + " is outside of the group bounds");
+            }
+            aws.setDesiredCapacity(group, request.getDesiredCapacity(), now);
+            return new SetDesiredCapacityResult();
+        });
+    }
+
+    @Override
+    public DescribeAutoScalingGroupsResult describeAutoScalingGroups() {
+        return describeAutoScalingGroups(new DescribeAutoScalingGroupsRequest());
+    }
+
+    @Override
+    public DescribeAutoScalingGroupsResult describeAutoScalingGroups(
+            final DescribeAutoScalingGroupsRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            List<AutoScalingGroup> matches = new ArrayList<>();
+            for (SimulatedAws.GroupRecord group : aws.groups.values()) {
+                if (now >= group.visibleAt
+                        && (request.getAutoScalingGroupNames().isEmpty()
+                            || request.getAutoScalingGroupNames().contains(group.name))) {
+                    matches.add(toGroup(group, now));
+                }
+            }
+            Page<AutoScalingGroup> page = Page.of(matches, request.getNextToken(),
+                    request.getMaxRecords(), Math.min(100, aws.getSettings().getPageSize()));
+            return new DescribeAutoScalingGroupsResult()
+                    .withAutoScalingGroups(page.items)
+                    .withNextToken(page.nextToken);
+        });
+    }
+
+    @Override
+    public DeleteAutoScalingGroupResult deleteAutoScalingGroup(final DeleteAutoScalingGroupRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            long now = aws.now();
+            if (Boolean.TRUE.equals(request.getForceDelete())) {
+                for (String id : group.instanceIds) {
+                    aws.terminate(aws.instances.get(id), now);
+                }
+                for (String id : group.warmPoolIds) {
+                    aws.terminate(aws.instances.get(id), now);
+                }
+                group.hasWarmPool = false;
+            } else if (group.hasWarmPool || !group.warmPoolIds.isEmpty()) {
+                throw SimulatedAws.error(SERVICE, "ResourceInUse",
+                        "You cannot delete an AutoScalingGroup while there is a warm pool.");
+            } else if (!group.instanceIds.isEmpty()) {
+                throw SimulatedAws.error(SERVICE, "ResourceInUse",
+                        "You cannot delete an AutoScalingGroup while there are instances or pending Spot instance request(s) still in the group.");
+            }
+            group.deleting = true;
+            return new DeleteAutoScalingGroupResult();
+        });
+    }
+
+    @Override
+    public PutWarmPoolResult putWarmPool(final PutWarmPoolRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            if (request.getPoolState() != null && !"Stopped".equals(request.getPoolState())) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "Only Stopped warm pools are simulated");
+            }
+            group.hasWarmPool = true;
+            group.warmPoolMinSize = request.getMinSize() != null ? request.getMinSize() : 0;
+            group.warmPoolMaxPreparedCapacity = request.getMaxGroupPreparedCapacity() != null
+                    ? request.getMaxGroupPreparedCapacity() : -1;
+            return new PutWarmPoolResult();
+        });
+    }
+
+    @Override
+    public DescribeWarmPoolResult describeWarmPool(final DescribeWarmPoolRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            long now = aws.now();
+            DescribeWarmPoolResult result = new DescribeWarmPoolResult();
+            if (group.hasWarmPool) {
+                result.setWarmPoolConfiguration(new WarmPoolConfiguration()
+                        .withMinSize(group.warmPoolMinSize)
+                        .withMaxGroupPreparedCapacity(group.warmPoolMaxPreparedCapacity)
+                        .withPoolState("Stopped"));
+            }
+            for (String id : group.warmPoolIds) {
+                SimulatedAws.InstanceRecord instance = aws.instances.get(id);
+                String state = aws.stateOf(instance, now);
+                String lifecycle = instance.terminatedAt >= 0 ? "Warmed:Terminating"
+                        : "stopped".equals(state) ? "Warmed:Stopped" : "Warmed:Pending";
+                result.getInstances().add(new Instance()
+                        .withInstanceId(id)
+                        .withInstanceType(instance.instanceType)
+                        .withAvailabilityZone(instance.availabilityZone)
+                        .withLaunchConfigurationName(group.launchConfigurationName)
+                        .withLifecycleState(lifecycle)
+                        .withHealthStatus("Healthy")
+                        .withProtectedFromScaleIn(false));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public DeleteWarmPoolResult deleteWarmPool(final DeleteWarmPoolRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            if (!group.hasWarmPool) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "No warm pool found for AutoScalingGroup " + group.name);
+            }
+            long now = aws.now();
+            for (String id : group.warmPoolIds) {
+                aws.terminate(aws.instances.get(id), now);
+            }
+            group.hasWarmPool = false;
+            return new DeleteWarmPoolResult();
+        });
+    }
+
+    @Override
+    public PutScalingPolicyResult putScalingPolicy(final PutScalingPolicyRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            SimulatedAws.PolicyRecord policy = null;
+            for (SimulatedAws.PolicyRecord existing : aws.policies.values()) {
+                if (existing.groupName.equals(group.name) && existing.name.equals(request.getPolicyName())) {
+                    policy = existing;
+                }
+            }
+            if (policy == null) {
+                policy = new SimulatedAws.PolicyRecord();
+                policy.arn = "arn:aws:autoscaling:" + aws.getRegion() + ":" + SimulatedAws.ACCOUNT_ID
+                        + ":scalingPolicy:" + aws.nextId() + ":autoScalingGroupName/" + group.name
+                        + ":policyName/" + request.getPolicyName();
+                policy.name = request.getPolicyName();
+                policy.groupName = group.name;
+                aws.policies.put(policy.arn, policy);
+            }
+            policy.policyType = request.getPolicyType() != null ? request.getPolicyType() : "SimpleScaling";
+            policy.adjustmentType = request.getAdjustmentType();
+            policy.scalingAdjustment = request.getScalingAdjustment();
+            policy.cooldown = request.getCooldown();
+            policy.stepAdjustments = new ArrayList<>(request.getStepAdjustments());
+            policy.estimatedInstanceWarmup = request.getEstimatedInstanceWarmup();
+            if (!"TargetTrackingScaling".equals(policy.policyType)) {
+                return new PutScalingPolicyResult().withPolicyARN(policy.arn);
+            }
+            TargetTrackingConfiguration configuration = request.getTargetTrackingConfiguration();
+            if (configuration == null || configuration.getTargetValue() == null
+                    || configuration.getPredefinedMetricSpecification() == null
+                    || !"ASGAverageCPUUtilization".equals(configuration.getPredefinedMetricSpecification()
+                            .getPredefinedMetricType())) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "Only ASGAverageCPUUtilization target tracking is simulated");
+            }
+            policy.targetValue = configuration.getTargetValue();
+            // AWS owns the alarms of a target tracking policy and names them after the group
+            String prefix = SimulatedAws.targetTrackingAlarmPrefix(group.name);
+            removeTargetTrackingAlarms(policy);
+            com.amazonaws.services.cloudwatch.model.Dimension dimension
+                    = new com.amazonaws.services.cloudwatch.model.Dimension()
+                    .withName("AutoScalingGroupName").withValue(group.name);
+            List<Alarm> alarms = new ArrayList<>();
+            alarms.add(targetTrackingAlarm(prefix + "AlarmHigh-" + aws.nextId(), "GreaterThanThreshold",
+                    policy.targetValue, 3, dimension, policy.arn));
+            alarms.add(targetTrackingAlarm(prefix + "AlarmLow-" + aws.nextId(), "LessThanThreshold",
+                    policy.targetValue * 0.9, 15, dimension, policy.arn));
+            return new PutScalingPolicyResult().withPolicyARN(policy.arn).withAlarms(alarms);
+        });
+    }
+
+    @Override
+    public DescribePoliciesResult describePolicies(final DescribePoliciesRequest request) {
+        return aws.call(() -> {
+            List<ScalingPolicy> matches = new ArrayList<>();
+            for (SimulatedAws.PolicyRecord policy : aws.policies.values()) {
+                if ((request.getAutoScalingGroupName() == null
+                            || request.getAutoScalingGroupName().equals(policy.groupName))
+                        && (request.getPolicyNames().isEmpty() || request.getPolicyNames().contains(policy.name)
+                            || request.getPolicyNames().contains(policy.arn))) {
+                    matches.add(toPolicy(policy));
+                }
+            }
+            Page<ScalingPolicy> page = Page.of(matches, request.getNextToken(),
+                    request.getMaxRecords(), Math.min(50, aws.getSettings().getPageSize()));
+            return new DescribePoliciesResult()
+                    .withScalingPolicies(page.items)
+                    .withNextToken(page.nextToken);
+        });
+    }
+
+    @Override
+    public DeletePolicyResult deletePolicy(final DeletePolicyRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.PolicyRecord policy = aws.policies.get(request.getPolicyName());
+            if (policy == null) {
+                for (SimulatedAws.PolicyRecord existing : aws.policies.values()) {
+                    if (existing.name.equals(request.getPolicyName())
+                            && existing.groupName.equals(request.getAutoScalingGroupName())) {
+                        policy = existing;
+                    }
+                }
+            }
+            if (policy == null) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "Policy " + request.getPolicyName() + " not found");
+            }
+            removeTargetTrackingAlarms(policy);
+            aws.policies.remove(policy.arn);
+            return new DeletePolicyResult();
+        });
+    }
+
+    /**
+     * Only the launching transition holds instances; the terminating one
+     * is accepted but not simulated.
+     */
+    @Override
+    public PutLifecycleHookResult putLifecycleHook(final PutLifecycleHookRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            SimulatedAws.LifecycleHookRecord hook = group.lifecycleHooks.get(request.getLifecycleHookName());
+            if (hook == null) {
+                if (request.getLifecycleTransition() == null) {
+                    throw SimulatedAws.error(SERVICE, "ValidationError",
+                            "A lifecycle transition is required for a new lifecycle hook");
+                }
+                hook = new SimulatedAws.LifecycleHookRecord();
+                hook.name = request.getLifecycleHookName();
+                hook.heartbeatTimeout = 3600;
+                hook.defaultResult = "ABANDON";
+                group.lifecycleHooks.put(hook.name, hook);
+            }
+            if (request.getLifecycleTransition() != null) {
+                hook.transition = request.getLifecycleTransition();
+            }
+            if (request.getHeartbeatTimeout() != null) {
+                hook.heartbeatTimeout = request.getHeartbeatTimeout();
+            }
+            if (request.getDefaultResult() != null) {
+                hook.defaultResult = request.getDefaultResult();
+            }
+            return new PutLifecycleHookResult();
+        });
+    }
+
+    @Override
+    public DescribeLifecycleHooksResult describeLifecycleHooks(final DescribeLifecycleHooksRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            List<LifecycleHook> hooks = new ArrayList<>();
+            for (SimulatedAws.LifecycleHookRecord hook : group.lifecycleHooks.values()) {
+                if (request.getLifecycleHookNames().isEmpty()
+                        || request.getLifecycleHookNames().contains(hook.name)) {
+                    hooks.add(new LifecycleHook()
+                            .withLifecycleHookName(hook.name)
+                            .withAutoScalingGroupName(group.name)
+                            .withLifecycleTransition(hook.transition)
+                            .withHeartbeatTimeout(hook.heartbeatTimeout)
+                            .withDefaultResult(hook.defaultResult));
+                }
+            }
+            return new DescribeLifecycleHooksResult().withLifecycleHooks(hooks);
+        });
+    }
+
+    @Override
+    public DeleteLifecycleHookResult deleteLifecycleHook(final DeleteLifecycleHookRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            SimulatedAws.LifecycleHookRecord hook = group.lifecycleHooks.remove(request.getLifecycleHookName());
+            if (hook == null) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "No Lifecycle Hook found with name " + request.getLifecycleHookName());
+            }
+            if (SimulatedAws.LAUNCHING.equals(hook.transition)) {
+                // Outstanding launches of a deleted hook are abandoned
+                long now = aws.now();
+                for (String id : group.instanceIds) {
+                    SimulatedAws.InstanceRecord instance = aws.instances.get(id);
+                    if (now < instance.hookedUntil) {
+                        instance.hookedUntil = now;
+                        aws.terminate(instance, now);
+                    }
+                }
+            }
+            return new DeleteLifecycleHookResult();
+        });
+    }
+
+    @Override
+    public CompleteLifecycleActionResult completeLifecycleAction(final CompleteLifecycleActionRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.GroupRecord group = group(request.getAutoScalingGroupName());
+            long now = aws.now();
+            SimulatedAws.InstanceRecord instance = group.instanceIds.contains(request.getInstanceId())
+                    ? aws.instances.get(request.getInstanceId()) : null;
+            if (instance == null || !group.lifecycleHooks.containsKey(request.getLifecycleHookName())
+                    || instance.terminatedAt >= 0 || now >= instance.hookedUntil) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "No active Lifecycle Action found with instance ID " + request.getInstanceId());
+            }
+            instance.hookedUntil = now;
+            if ("ABANDON".equals(request.getLifecycleActionResult())) {
+                aws.terminate(instance, now);
+            }
+            return new CompleteLifecycleActionResult();
+        });
+    }
+
+    /**
+     * Delete the alarms AWS created for a target tracking policy.
+     * @param policy policy
+     */
+    private void removeTargetTrackingAlarms(final SimulatedAws.PolicyRecord policy) {
+        String prefix = SimulatedAws.targetTrackingAlarmPrefix(policy.groupName);
+        aws.alarms.values().removeIf(alarm -> alarm.name.startsWith(prefix)
+                && alarm.alarmActions.contains(policy.arn));
+    }
+
+    /**
+     * Build the model of a policy.
+     * @param policy policy
+     * @return SDK model
+     */
+    private static ScalingPolicy toPolicy(final SimulatedAws.PolicyRecord policy) {
+        ScalingPolicy model = new ScalingPolicy()
+                .withPolicyARN(policy.arn)
+                .withPolicyName(policy.name)
+                .withAutoScalingGroupName(policy.groupName)
+                .withPolicyType(policy.policyType)
+                .withAdjustmentType(policy.adjustmentType)
+                .withScalingAdjustment(policy.scalingAdjustment)
+                .withCooldown(policy.cooldown)
+                .withStepAdjustments(policy.stepAdjustments)
+                .withEstimatedInstanceWarmup(policy.estimatedInstanceWarmup);
+        if (policy.targetValue != null) {
+            model.setTargetTrackingConfiguration(new TargetTrackingConfiguration()
+                    .withPredefinedMetricSpecification(new PredefinedMetricSpecification()
+                            .withPredefinedMetricType("ASGAverageCPUUtilization"))
+                    .withTargetValue(policy.targetValue));
+        }
+        return model;
+    }
+
+    /**
+     * Create one of the one minute alarms of a target tracking policy.
+     * @param name alarm name
+     * @param comparisonOperator comparison with the threshold
+     * @param threshold CPU percent
+     * @param evaluationPeriods breaching minutes before the alarm fires
+     * @param dimension group dimension
+     * @param policyArn policy ARN
+     * @return alarm reference
+     */
+    private Alarm targetTrackingAlarm(final String name, final String comparisonOperator,
+                                      final double threshold, final int evaluationPeriods,
+                                      final com.amazonaws.services.cloudwatch.model.Dimension dimension,
+                                      final String policyArn) {
+        SimulatedAws.AlarmRecord alarm = new SimulatedAws.AlarmRecord();
+        alarm.name = name;
+        alarm.namespace = "AWS/EC2";
+        alarm.metricName = "CPUUtilization";
+        alarm.statistic = "Average";
+        alarm.period = 60;
+        alarm.evaluationPeriods = evaluationPeriods;
+        alarm.threshold = threshold;
+        alarm.comparisonOperator = comparisonOperator;
+        alarm.dimensions.add(dimension);
+        alarm.alarmActions.add(policyArn);
+        alarm.nextEvaluationAt = aws.now() + alarm.period * 1000L;
+        aws.alarms.put(name, alarm);
+        return new Alarm().withAlarmName(name).withAlarmARN("arn:aws:cloudwatch:" + aws.getRegion()
+                + ":" + SimulatedAws.ACCOUNT_ID + ":alarm:" + name);
+    }
+
+    /**
+     * Look up a group that is not being deleted.
+     * @param name group name
+     * @return group
+     */
+    private SimulatedAws.GroupRecord group(final String name) {
+        SimulatedAws.GroupRecord group = aws.groups.get(name);
+        if (group == null || group.deleting) {
+            throw SimulatedAws.error(SERVICE, "ValidationError",
+                    "AutoScalingGroup name not found - " + name);
+        }
+        return group;
+    }
+
+    /**
+     * Build the model of a group.
+     * @param group group
+     * @param now simulated time
+     * @return SDK model
+     */
+    private AutoScalingGroup toGroup(final SimulatedAws.GroupRecord group, final long now) {
+        AutoScalingGroup model = new AutoScalingGroup()
+                .withAutoScalingGroupName(group.name)
+                .withAutoScalingGroupARN("arn:aws:autoscaling:" + aws.getRegion() + ":"
+                        + SimulatedAws.ACCOUNT_ID + ":autoScalingGroup:" + group.name)
+                .withLaunchConfigurationName(group.launchConfigurationName)
+                .withMinSize(group.minSize)
+                .withMaxSize(group.maxSize)
+                .withDesiredCapacity(group.desiredCapacity)
+                .withDefaultCooldown(group.defaultCooldown)
+                .withHealthCheckGracePeriod(group.healthCheckGracePeriod)
+                .withTargetGroupARNs(group.targetGroupArns)
+                .withAvailabilityZones(group.availabilityZones)
+                .withStatus(group.deleting ? "Delete in progress" : null);
+        for (Tag tag : group.tags) {
+            model.getTags().add(new TagDescription()
+                    .withKey(tag.getKey())
+                    .withValue(tag.getValue())
+                    .withPropagateAtLaunch(tag.getPropagateAtLaunch())
+                    .withResourceId(group.name)
+                    .withResourceType("auto-scaling-group"));
+        }
+        for (String id : group.instanceIds) {
+            SimulatedAws.InstanceRecord instance = aws.instances.get(id);
+            String state = aws.stateOf(instance, now);
+            String lifecycle = instance.terminatedAt >= 0 ? "Terminating"
+                    : now < instance.hookedUntil ? "Pending:Wait"
+                    : "running".equals(state) ? "InService" : "Pending";
+            model.getInstances().add(new Instance()
+                    .withInstanceId(id)
+                    .withInstanceType(instance.instanceType)
+                    .withAvailabilityZone(instance.availabilityZone)
+                    .withLaunchConfigurationName(group.launchConfigurationName)
+                    .withLifecycleState(lifecycle)
+                    .withHealthStatus("Healthy")
+                    .withProtectedFromScaleIn(false));
+        }
+        return model;
+    }
+}
@@ -0,0 +1,912 @@
+package simulator;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.autoscaling.AmazonAutoScaling;
+import com.amazonaws.services.cloudwatch.AmazonCloudWatch;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Shared state of an in-process AWS account.
+ * The EC2, ELB, AutoScaling and CloudWatch clients of one instance see
+ * the same resources. Resource state machines advance with a
+ * {@link SimClock}; created resources become visible to describe calls
+ * after a delay, and every call can be slowed down by a latency model.
+ */
+public final class SimulatedAws {
+
+    /**
+     * Account ID used in ARNs.
+     */
+    static final String ACCOUNT_ID = "123456789012";
+
+    /**
+     * Default VPC.
+     */
+    static final String DEFAULT_VPC_ID = "vpc-00000001";
+
+    /**
+     * Lifecycle transition of a launching instance.
+     */
+    static final String LAUNCHING = "autoscaling:EC2_INSTANCE_LAUNCHING";
+
+    /**
+     * Upper bound of alarm periods caught up in one call.
+     */
+    private static final int MAX_EVALUATIONS_PER_CALL = 100000;
+
+    /**
+     * Instance state.
+     */
+    static final class InstanceRecord {
+        String id;
+        String imageId;
+        String instanceType;
+        String keyName;
+        List<String> securityGroups = new ArrayList<>();
+        boolean monitoring;
+        String availabilityZone;
+        String groupName;
+        List<com.amazonaws.services.ec2.model.Tag> tags = new ArrayList<>();
+        int number;
+        long launchedAt;
+        long visibleAt;
+        long runningAt;
+        long terminatedAt = -1;
+        boolean warmPool;
+        long hookedUntil = -1;
+
+        /**
+         * State name at a time.
+         * @param now simulated time
+         * @param shutdownMillis time from shutting-down to terminated
+         * @return EC2 state name
+         */
+        String state(final long now, final long shutdownMillis) {
+            if (terminatedAt >= 0) {
+                return now >= terminatedAt + shutdownMillis ? "terminated" : "shutting-down";
+            }
+            if (now < runningAt) {
+                return "pending";
+            }
+            // warm pool instances stop once initialized
+            return warmPool ? "stopped" : "running";
+        }
+
+        /**
+         * Whether it takes traffic at a time: booted, not held by a launch
+         * lifecycle hook and not terminating. A wait that times out
+         * continues, whatever the default result of the hook.
+         * @param at simulated time
+         * @return true when serving
+         */
+        boolean serving(final long at) {
+            return terminatedAt < 0 && at >= runningAt && at >= hookedUntil;
+        }
+    }
+
+    /**
+     * Security group state.
+     */
+    static final class SecurityGroupRecord {
+        String id;
+        String name;
+        String description;
+        String vpcId;
+        long visibleAt;
+        List<com.amazonaws.services.ec2.model.IpPermission> ingress = new ArrayList<>();
+    }
+
+    /**
+     * Target group state.
+     */
+    static final class TargetGroupRecord {
+        String arn;
+        String name;
+        String vpcId;
+        Integer port;
+        String protocol;
+        String healthCheckPath;
+        Integer healthCheckIntervalSeconds;
+        Integer healthyThresholdCount;
+        Map<String, String> attributes = new LinkedHashMap<>();
+        long visibleAt;
+    }
+
+    /**
+     * Load balancer state.
+     */
+    static final class LoadBalancerRecord {
+        String arn;
+        String name;
+        String dnsName;
+        String type;
+        List<String> securityGroupIds = new ArrayList<>();
+        List<String> subnets = new ArrayList<>();
+        List<String> listenerTargetGroupArns = new ArrayList<>();
+        List<com.amazonaws.services.elasticloadbalancingv2.model.Tag> tags = new ArrayList<>();
+        long visibleAt;
+        long activeAt;
+        long deletedAt = -1;
+    }
+
+    /**
+     * Launch configuration state.
+     */
+    static final class LaunchConfigurationRecord {
+        String name;
+        String imageId;
+        String instanceType;
+        String keyName;
+        List<String> securityGroups = new ArrayList<>();
+        long visibleAt;
+    }
+
+    /**
+     * Auto scaling group state.
+     */
+    static final class GroupRecord {
+        String name;
+        String launchConfigurationName;
+        int minSize;
+        int maxSize;
+        int desiredCapacity;
+        int defaultCooldown = 300;
+        int healthCheckGracePeriod;
+        List<String> targetGroupArns = new ArrayList<>();
+        List<String> availabilityZones = new ArrayList<>();
+        List<com.amazonaws.services.autoscaling.model.Tag> tags = new ArrayList<>();
+        List<String> instanceIds = new ArrayList<>();
+        boolean deleting;
+        long visibleAt;
+        long lastScalingAt = Long.MIN_VALUE / 2;
+        int warming;
+        long warmupEnd;
+        boolean hasWarmPool;
+        int warmPoolMinSize;
+        int warmPoolMaxPreparedCapacity = -1;
+        List<String> warmPoolIds = new ArrayList<>();
+        Map<String, LifecycleHookRecord> lifecycleHooks = new LinkedHashMap<>();
+    }
+
+    /**
+     * Lifecycle hook state.
+     */
+    static final class LifecycleHookRecord {
+        String name;
+        String transition;
+        int heartbeatTimeout;
+        String defaultResult;
+    }
+
+    /**
+     * Scaling policy state.
+     */
+    static final class PolicyRecord {
+        String arn;
+        String name;
+        String groupName;
+        String policyType;
+        String adjustmentType;
+        Integer scalingAdjustment;
+        Integer cooldown;
+        List<com.amazonaws.services.autoscaling.model.StepAdjustment> stepAdjustments = new ArrayList<>();
+        Integer estimatedInstanceWarmup;
+        Double targetValue;
+    }
+
+    /**
+     * Metric alarm state.
+     */
+    static final class AlarmRecord {
+        String name;
+        String namespace;
+        String metricName;
+        String statistic;
+        int period;
+        int evaluationPeriods;
+        double threshold;
+        String comparisonOperator;
+        List<com.amazonaws.services.cloudwatch.model.Dimension> dimensions = new ArrayList<>();
+        List<String> alarmActions = new ArrayList<>();
+        boolean actionsEnabled = true;
+        long nextEvaluationAt;
+        int breachingPeriods;
+        String state = "INSUFFICIENT_DATA";
+    }
+
+    /**
+     * Response time of an idle target in seconds.
+     */
+    private static final double SERVICE_TIME_SECONDS = 0.05;
+
+    /**
+     * Utilization at which the modelled response time stops growing.
+     */
+    private static final double MAX_QUEUE_UTILIZATION = 0.95;
+
+    /**
+     * Settings.
+     */
+    private final SimulationSettings settings;
+
+    /**
+     * Simulated clock.
+     */
+    private final SimClock clock;
+
+    /**
+     * Instances keyed by ID.
+     */
+    final Map<String, InstanceRecord> instances = new LinkedHashMap<>();
+
+    /**
+     * Security groups keyed by ID.
+     */
+    final Map<String, SecurityGroupRecord> securityGroups = new LinkedHashMap<>();
+
+    /**
+     * Target groups keyed by ARN.
+     */
+    final Map<String, TargetGroupRecord> targetGroups = new LinkedHashMap<>();
+
+    /**
+     * Load balancers keyed by ARN.
+     */
+    final Map<String, LoadBalancerRecord> loadBalancers = new LinkedHashMap<>();
+
+    /**
+     * Launch configurations keyed by name.
+     */
+    final Map<String, LaunchConfigurationRecord> launchConfigurations = new LinkedHashMap<>();
+
+    /**
+     * Auto scaling groups keyed by name.
+     */
+    final Map<String, GroupRecord> groups = new LinkedHashMap<>();
+
+    /**
+     * Scaling policies keyed by ARN.
+     */
+    final Map<String, PolicyRecord> policies = new LinkedHashMap<>();
+
+    /**
+     * Alarms keyed by name.
+     */
+    final Map<String, AlarmRecord> alarms = new LinkedHashMap<>();
+
+    /**
+     * Availability zones of the default subnets, keyed by subnet ID.
+     */
+    final Map<String, String> subnets = new LinkedHashMap<>();
+
+    /**
+     * Counter for generated IDs.
+     */
+    private long nextId = 1;
+
+    /**
+     * EC2 client.
+     */
+    private final SimulatedEc2 ec2;
+
+    /**
+     * ELB client.
+     */
+    private final SimulatedElasticLoadBalancing elb;
+
+    /**
+     * AutoScaling client.
+     */
+    private final SimulatedAutoScaling autoScaling;
+
+    /**
+     * CloudWatch client.
+     */
+    private final SimulatedCloudWatch cloudWatch;
+
+    /**
+     * Create a simulated account.
+     * @param settings simulation settings
+     */
+    public SimulatedAws(final SimulationSettings settings) {
+        this.settings = settings;
+        this.clock = new SimClock(settings.getSpeedup());
+        for (int i = 0; i < settings.getZoneCount(); i++) {
+            subnets.put(String.format("subnet-%08x", i + 1), settings.getRegion() + (char) ('a' + i));
+        }
+        this.ec2 = new SimulatedEc2(this);
+        this.elb = new SimulatedElasticLoadBalancing(this);
+        this.autoScaling = new SimulatedAutoScaling(this);
+        this.cloudWatch = new SimulatedCloudWatch(this);
+    }
+
+    public AmazonEC2 getEc2() {
+        return ec2;
+    }
+
+    public AmazonElasticLoadBalancing getElb() {
+        return elb;
+    }
+
+    public AmazonAutoScaling getAutoScaling() {
+        return autoScaling;
+    }
+
+    public AmazonCloudWatch getCloudWatch() {
+        return cloudWatch;
+    }
+
+    public SimClock getClock() {
+        return clock;
+    }
+
+    public SimulationSettings getSettings() {
+        return settings;
+    }
+
+    public String getRegion() {
+        return settings.getRegion();
+    }
+
+    /**
+     * Run one API call: wait out the call latency, then bring the account
+     * up to the current simulated time and apply the call atomically.
+     * @param operation call body
+     * @param <T> result type
+     * @return call result
+     */
+    <T> T call(final Supplier<T> operation) {
+        long latency = (long) settings.getApiLatency().sampleMillis();
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new com.amazonaws.AbortedException(e);
+            }
+        }
+        synchronized (this) {
+            advance(clock.now());
+            return operation.get();
+        }
+    }
+
+    /**
+     * Current simulated time.
+     * @return simulated epoch milliseconds
+     */
+    long now() {
+        return clock.now();
+    }
+
+    /**
+     * Generate a unique hexadecimal suffix.
+     * @return ID suffix
+     */
+    String nextId() {
+        return String.format("%017x", nextId++);
+    }
+
+    /**
+     * Build an AWS error.
+     * @param service service name
+     * @param code error code
+     * @param message error message
+     * @return exception to throw
+     */
+    static AmazonServiceException error(final String service,
+                                        final String code,
+                                        final String message) {
+        AmazonServiceException e = new AmazonServiceException(message);
+        e.setServiceName(service);
+        e.setErrorCode(code);
+        e.setStatusCode(400);
+        e.setErrorType(AmazonServiceException.ErrorType.Client);
+        return e;
+    }
+
+    /**
+     * Launch an instance record.
+     * @param imageId AMI
+     * @param instanceType instance type
+     * @param keyName key pair
+     * @param groups security group names or IDs
+     * @param monitoring detailed monitoring
+     * @param availabilityZone availability zone
+     * @param now simulated time
+     * @return the new instance
+     */
+    InstanceRecord launch(final String imageId, final String instanceType,
+                          final String keyName, final List<String> groups,
+                          final boolean monitoring, final String availabilityZone,
+                          final long now) {
+        InstanceRecord instance = new InstanceRecord();
+        instance.id = "i-" + nextId();
+        instance.number = instances.size() + 1;
+        instance.imageId = imageId;
+        instance.instanceType = instanceType;
+        instance.keyName = keyName;
+        instance.securityGroups.addAll(groups);
+        instance.monitoring = monitoring;
+        instance.availabilityZone = availabilityZone;
+        instance.launchedAt = now;
+        instance.visibleAt = now + settings.getVisibilityDelayMillis();
+        instance.runningAt = now + settings.getInstanceBootMillis();
+        instances.put(instance.id, instance);
+        return instance;
+    }
+
+    /**
+     * Start terminating an instance.
+     * @param instance instance
+     * @param now simulated time
+     */
+    void terminate(final InstanceRecord instance, final long now) {
+        if (instance.terminatedAt < 0) {
+            instance.terminatedAt = now;
+        }
+    }
+
+    /**
+     * State name of an instance now.
+     * @param instance instance
+     * @param now simulated time
+     * @return EC2 state name
+     */
+    String stateOf(final InstanceRecord instance, final long now) {
+        return instance.state(now, settings.getInstanceShutdownMillis());
+    }
+
+    /**
+     * Bring every time driven state machine up to a time.
+     * @param now simulated time
+     */
+    private void advance(final long now) {
+        for (Iterator<LoadBalancerRecord> it = loadBalancers.values().iterator(); it.hasNext();) {
+            LoadBalancerRecord loadBalancer = it.next();
+            if (loadBalancer.deletedAt >= 0
+                    && now >= loadBalancer.deletedAt + settings.getLoadBalancerReleaseMillis()) {
+                it.remove();
+            }
+        }
+        // alarm periods in time order, each one seeing the groups as they were then
+        for (int i = 0; i < MAX_EVALUATIONS_PER_CALL; i++) {
+            AlarmRecord next = null;
+            for (AlarmRecord alarm : alarms.values()) {
+                if (alarm.nextEvaluationAt <= now
+                        && (next == null || alarm.nextEvaluationAt < next.nextEvaluationAt)) {
+                    next = alarm;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            reconcileGroups(next.nextEvaluationAt);
+            evaluate(next);
+        }
+        reconcileGroups(now);
+    }
+
+    /**
+     * Launch or terminate group instances to match the desired capacities.
+     * @param now simulated time
+     */
+    private void reconcileGroups(final long now) {
+        for (Iterator<GroupRecord> it = groups.values().iterator(); it.hasNext();) {
+            GroupRecord group = it.next();
+            List<String> live = new ArrayList<>();
+            for (Iterator<String> ids = group.instanceIds.iterator(); ids.hasNext();) {
+                InstanceRecord instance = instances.get(ids.next());
+                if ("terminated".equals(stateOf(instance, now))) {
+                    ids.remove();
+                } else if (instance.terminatedAt < 0) {
+                    live.add(instance.id);
+                }
+            }
+            List<String> warm = new ArrayList<>();
+            for (Iterator<String> ids = group.warmPoolIds.iterator(); ids.hasNext();) {
+                InstanceRecord instance = instances.get(ids.next());
+                if ("terminated".equals(stateOf(instance, now))) {
+                    ids.remove();
+                } else if (instance.terminatedAt < 0) {
+                    warm.add(instance.id);
+                }
+            }
+            if (group.deleting) {
+                if (group.instanceIds.isEmpty() && group.warmPoolIds.isEmpty()) {
+                    policies.values().removeIf(policy -> policy.groupName.equals(group.name));
+                    alarms.keySet().removeIf(name -> name.startsWith(targetTrackingAlarmPrefix(group.name)));
+                    it.remove();
+                }
+                continue;
+            }
+            LaunchConfigurationRecord launchConfiguration
+                    = launchConfigurations.get(group.launchConfigurationName);
+            for (int i = live.size(); i < group.desiredCapacity && launchConfiguration != null; i++) {
+                InstanceRecord instance = takeWarm(group, warm, now);
+                if (instance == null) {
+                    String zone = group.availabilityZones.isEmpty() ? getRegion() + "a"
+                            : group.availabilityZones.get(i % group.availabilityZones.size());
+                    instance = launch(launchConfiguration.imageId,
+                            launchConfiguration.instanceType, launchConfiguration.keyName,
+                            launchConfiguration.securityGroups, true, zone, now);
+                }
+                instance.groupName = group.name;
+                group.instanceIds.add(instance.id);
+                for (LifecycleHookRecord hook : group.lifecycleHooks.values()) {
+                    if (LAUNCHING.equals(hook.transition)) {
+                        instance.hookedUntil = now + hook.heartbeatTimeout * 1000L;
+                    }
+                }
+            }
+            for (int i = live.size(); i > group.desiredCapacity; i--) {
+                terminate(instances.get(live.get(i - 1)), now);
+            }
+            if (group.hasWarmPool && launchConfiguration != null) {
+                int prepared = group.warmPoolMaxPreparedCapacity >= 0
+                        ? group.warmPoolMaxPreparedCapacity : group.maxSize;
+                int target = Math.max(group.warmPoolMinSize, prepared - group.desiredCapacity);
+                for (int i = warm.size(); i < target; i++) {
+                    String zone = group.availabilityZones.isEmpty() ? getRegion() + "a"
+                            : group.availabilityZones.get(i % group.availabilityZones.size());
+                    InstanceRecord instance = launch(launchConfiguration.imageId,
+                            launchConfiguration.instanceType, launchConfiguration.keyName,
+                            launchConfiguration.securityGroups, true, zone, now);
+                    instance.warmPool = true;
+                    group.warmPoolIds.add(instance.id);
+                }
+                for (int i = warm.size(); i > target; i--) {
+                    terminate(instances.get(warm.get(i - 1)), now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a stopped warm pool instance into its group and start it.
+     * @param group group
+     * @param warm live warm pool instance IDs, the taken one is removed
+     * @param now simulated time
+     * @return the started instance, null when none is stopped
+     */
+    private InstanceRecord takeWarm(final GroupRecord group, final List<String> warm, final long now) {
+        for (Iterator<String> ids = warm.iterator(); ids.hasNext();) {
+            InstanceRecord instance = instances.get(ids.next());
+            if ("stopped".equals(stateOf(instance, now))) {
+                ids.remove();
+                group.warmPoolIds.remove(instance.id);
+                instance.warmPool = false;
+                instance.runningAt = now + settings.getWarmStartMillis();
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate the period of an alarm that ends next.
+     * @param alarm alarm
+     */
+    private void evaluate(final AlarmRecord alarm) {
+        long at = alarm.nextEvaluationAt;
+        alarm.nextEvaluationAt += alarm.period * 1000L;
+        Double value = metricValue(alarm.namespace, alarm.metricName, alarm.dimensions, at);
+        if (value == null) {
+            alarm.state = "INSUFFICIENT_DATA";
+            alarm.breachingPeriods = 0;
+            return;
+        }
+        alarm.breachingPeriods = breaches(alarm, value) ? alarm.breachingPeriods + 1 : 0;
+        alarm.state = alarm.breachingPeriods >= alarm.evaluationPeriods ? "ALARM" : "OK";
+        if ("ALARM".equals(alarm.state) && alarm.actionsEnabled) {
+            // Auto Scaling actions repeat every period while in ALARM
+            for (String action : alarm.alarmActions) {
+                executePolicy(action, at, alarm, value);
+            }
+        }
+    }
+
+    /**
+     * Whether a value breaches the alarm threshold.
+     * @param alarm alarm
+     * @param value metric value
+     * @return true when breaching
+     */
+    private static boolean breaches(final AlarmRecord alarm, final double value) {
+        switch (alarm.comparisonOperator) {
+            case "GreaterThanThreshold":
+                return value > alarm.threshold;
+            case "GreaterThanOrEqualToThreshold":
+                return value >= alarm.threshold;
+            case "LessThanThreshold":
+                return value < alarm.threshold;
+            case "LessThanOrEqualToThreshold":
+                return value <= alarm.threshold;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Value of a metric at a time.
+     * The modelled metrics follow the request rate of the load model:
+     * the group average CPUUtilization spreads it over the running
+     * instances of the group; the load balancer RequestCount is the rate
+     * in requests per second, TargetResponseTime grows with the
+     * utilization of the instances behind it and HealthyHostCount counts
+     * the running instances of a target group.
+     * @param namespace metric namespace
+     * @param metricName metric name
+     * @param dimensions metric dimensions
+     * @param at simulated time
+     * @return metric value or null when there is no data
+     */
+    Double metricValue(final String namespace, final String metricName,
+                       final List<com.amazonaws.services.cloudwatch.model.Dimension> dimensions,
+                       final long at) {
+        if ("AWS/ApplicationELB".equals(namespace)) {
+            switch (metricName) {
+                case "RequestCount":
+                    return requestRate(dimensions, at);
+                case "TargetResponseTime":
+                    return responseTime(dimensions, at);
+                case "HealthyHostCount":
+                    return healthyHosts(dimensions, at);
+                default:
+                    return null;
+            }
+        }
+        if (!"AWS/EC2".equals(namespace) || !"CPUUtilization".equals(metricName)) {
+            return null;
+        }
+        GroupRecord group = null;
+        for (com.amazonaws.services.cloudwatch.model.Dimension dimension : dimensions) {
+            if ("AutoScalingGroupName".equals(dimension.getName())) {
+                group = groups.get(dimension.getValue());
+            }
+        }
+        if (group == null) {
+            return null;
+        }
+        int running = running(group, at);
+        double load = loadAt(at);
+        if (running == 0) {
+            return load > 0 ? 100.0 : null;
+        }
+        return Math.min(100.0, load / (running * settings.getInstanceCapacity()) * 100.0);
+    }
+
+    /**
+     * Request rate of the load model.
+     * @param at simulated time
+     * @return requests per second
+     */
+    private double loadAt(final long at) {
+        return settings.getLoad().applyAsDouble((at - clock.getStartMillis()) / 1000.0);
+    }
+
+    /**
+     * Running instances of a group.
+     * @param group group
+     * @param at simulated time
+     * @return instances serving traffic
+     */
+    private int running(final GroupRecord group, final long at) {
+        int running = 0;
+        for (String id : group.instanceIds) {
+            InstanceRecord instance = instances.get(id);
+            if (instance.serving(at)) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Load balancer named by a LoadBalancer dimension.
+     * @param dimensions metric dimensions, LoadBalancer is "app/name/id"
+     * @param at simulated time
+     * @return active load balancer or null
+     */
+    private LoadBalancerRecord loadBalancer(final List<com.amazonaws.services.cloudwatch.model.Dimension> dimensions,
+                                            final long at) {
+        for (com.amazonaws.services.cloudwatch.model.Dimension dimension : dimensions) {
+            if (!"LoadBalancer".equals(dimension.getName())) {
+                continue;
+            }
+            for (LoadBalancerRecord loadBalancer : loadBalancers.values()) {
+                if (loadBalancer.arn.endsWith("loadbalancer/" + dimension.getValue())
+                        && loadBalancer.deletedAt < 0 && at >= loadBalancer.activeAt) {
+                    return loadBalancer;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Request rate of the load model through a load balancer.
+     * @param dimensions metric dimensions
+     * @param at simulated time
+     * @return requests per second or null when there is no such load balancer
+     */
+    private Double requestRate(final List<com.amazonaws.services.cloudwatch.model.Dimension> dimensions,
+                               final long at) {
+        return loadBalancer(dimensions, at) != null ? loadAt(at) : null;
+    }
+
+    /**
+     * Response time of the targets behind a load balancer, a fixed service
+     * time stretched like a single queue as the targets fill up.
+     * @param dimensions metric dimensions
+     * @param at simulated time
+     * @return seconds or null when nothing serves
+     */
+    private Double responseTime(final List<com.amazonaws.services.cloudwatch.model.Dimension> dimensions,
+                                final long at) {
+        LoadBalancerRecord loadBalancer = loadBalancer(dimensions, at);
+        if (loadBalancer == null) {
+            return null;
+        }
+        int running = 0;
+        for (GroupRecord group : groups.values()) {
+            for (String targetGroupArn : group.targetGroupArns) {
+                if (loadBalancer.listenerTargetGroupArns.contains(targetGroupArn)) {
+                    running += running(group, at);
+                    break;
+                }
+            }
+        }
+        if (running == 0) {
+            return null;
+        }
+        double utilization = loadAt(at) / (running * settings.getInstanceCapacity());
+        return SERVICE_TIME_SECONDS / (1 - Math.min(utilization, MAX_QUEUE_UTILIZATION));
+    }
+
+    /**
+     * Running instances registered with a target group.
+     * @param dimensions metric dimensions, TargetGroup is "targetgroup/name/id"
+     * @param at simulated time
+     * @return instance count or null when there is no such target group
+     */
+    private Double healthyHosts(final List<com.amazonaws.services.cloudwatch.model.Dimension> dimensions,
+                                final long at) {
+        for (com.amazonaws.services.cloudwatch.model.Dimension dimension : dimensions) {
+            if (!"TargetGroup".equals(dimension.getName())) {
+                continue;
+            }
+            for (TargetGroupRecord targetGroup : targetGroups.values()) {
+                if (!targetGroup.arn.endsWith(":" + dimension.getValue())) {
+                    continue;
+                }
+                int running = 0;
+                for (GroupRecord group : groups.values()) {
+                    if (group.targetGroupArns.contains(targetGroup.arn)) {
+                        running += running(group, at);
+                    }
+                }
+                return (double) running;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Name prefix of the alarms a target tracking policy creates.
+     * @param groupName group name
+     * @return alarm name prefix
+     */
+    static String targetTrackingAlarmPrefix(final String groupName) {
+        return "TargetTracking-" + groupName + "-";
+    }
+
+    /**
+     * Apply a scaling policy for an alarm.
+     * Simple policies wait for the cooldown. Step and target tracking
+     * policies act every period; during the warm-up of their last scale
+     * out, a step adjustment starts from the capacity without the warming
+     * instances and scale in waits.
+     * @param policyArn policy ARN
+     * @param at simulated time
+     * @param alarm alarm in ALARM
+     * @param value metric value of the period
+     */
+    void executePolicy(final String policyArn, final long at, final AlarmRecord alarm, final double value) {
+        PolicyRecord policy = policies.get(policyArn);
+        if (policy == null) {
+            return;
+        }
+        GroupRecord group = groups.get(policy.groupName);
+        if (group == null || group.deleting) {
+            return;
+        }
+        if ("SimpleScaling".equals(policy.policyType)) {
+            if (policy.scalingAdjustment == null) {
+                return;
+            }
+            int cooldown = policy.cooldown != null ? policy.cooldown : group.defaultCooldown;
+            if (at < group.lastScalingAt + cooldown * 1000L) {
+                return;
+            }
+            setDesiredCapacity(group, adjust(policy.adjustmentType, group.desiredCapacity,
+                    policy.scalingAdjustment), at);
+            return;
+        }
+        boolean warmingUp = at < group.warmupEnd;
+        if (!warmingUp) {
+            group.warming = 0;
+        }
+        int desired;
+        if ("TargetTrackingScaling".equals(policy.policyType)) {
+            int running = 0;
+            for (String id : group.instanceIds) {
+                InstanceRecord instance = instances.get(id);
+                if (instance.serving(at)) {
+                    running++;
+                }
+            }
+            desired = (int) Math.ceil(Math.max(1, running) * value / policy.targetValue);
+        } else {
+            int adjustment = 0;
+            for (com.amazonaws.services.autoscaling.model.StepAdjustment step : policy.stepAdjustments) {
+                double excess = value - alarm.threshold;
+                if ((step.getMetricIntervalLowerBound() == null || excess >= step.getMetricIntervalLowerBound())
+                        && (step.getMetricIntervalUpperBound() == null || excess < step.getMetricIntervalUpperBound())) {
+                    adjustment = step.getScalingAdjustment();
+                    break;
+                }
+            }
+            desired = adjust(policy.adjustmentType, group.desiredCapacity - group.warming, adjustment);
+        }
+        int before = group.desiredCapacity;
+        if (desired > before) {
+            setDesiredCapacity(group, desired, at);
+            int warmup = policy.estimatedInstanceWarmup != null
+                    ? policy.estimatedInstanceWarmup : group.defaultCooldown;
+            group.warming += group.desiredCapacity - before;
+            group.warmupEnd = at + warmup * 1000L;
+        } else if (desired < before && !warmingUp) {
+            setDesiredCapacity(group, desired, at);
+        }
+    }
+
+    /**
+     * Capacity after an adjustment.
+     * @param adjustmentType policy adjustment type
+     * @param from current capacity
+     * @param adjustment scaling adjustment
+     * @return new capacity, not bounded
+     */
+    private static int adjust(final String adjustmentType, final int from, final int adjustment) {
+        if ("ExactCapacity".equals(adjustmentType)) {
+            return adjustment;
+        } else if ("PercentChangeInCapacity".equals(adjustmentType)) {
+            int change = (int) Math.round(from * adjustment / 100.0);
+            return from + (change == 0 ? Integer.signum(adjustment) : change);
+        }
+        return from + adjustment;
+    }
+
+    /**
+     * Change the desired capacity within the group bounds.
+     * @param group group
+     * @param desired requested capacity
+     * @param at simulated time
+     */
+    void setDesiredCapacity(final GroupRecord group, final int desired, final long at) {
+        int bounded = Math.max(group.minSize, Math.min(group.maxSize, desired));
+        if (bounded != group.desiredCapacity) {
+            group.desiredCapacity = bounded;
+            group.lastScalingAt = at;
+        }
+    }
+}
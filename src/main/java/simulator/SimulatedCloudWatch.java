@@ -0,0 +1,306 @@
+package simulator;
+
+import com.amazonaws.services.cloudwatch.AbstractAmazonCloudWatch;
+import com.amazonaws.services.cloudwatch.model.Datapoint;
+import com.amazonaws.services.cloudwatch.model.DeleteAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DeleteAlarmsResult;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsResult;
+import com.amazonaws.services.cloudwatch.model.DisableAlarmActionsRequest;
+import com.amazonaws.services.cloudwatch.model.DisableAlarmActionsResult;
+import com.amazonaws.services.cloudwatch.model.EnableAlarmActionsRequest;
+import com.amazonaws.services.cloudwatch.model.EnableAlarmActionsResult;
+import com.amazonaws.services.cloudwatch.model.GetMetricDataRequest;
+import com.amazonaws.services.cloudwatch.model.GetMetricDataResult;
+import com.amazonaws.services.cloudwatch.model.GetMetricStatisticsRequest;
+import com.amazonaws.services.cloudwatch.model.GetMetricStatisticsResult;
+import com.amazonaws.services.cloudwatch.model.Metric;
+import com.amazonaws.services.cloudwatch.model.MetricAlarm;
+import com.amazonaws.services.cloudwatch.model.MetricDataQuery;
+import com.amazonaws.services.cloudwatch.model.MetricDataResult;
+import com.amazonaws.services.cloudwatch.model.MetricStat;
+import com.amazonaws.services.cloudwatch.model.PutMetricAlarmRequest;
+import com.amazonaws.services.cloudwatch.model.PutMetricAlarmResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * CloudWatch client of a {@link SimulatedAws} account.
+ * Alarms are evaluated at the end of every period against the modelled
+ * CPU utilization of their auto scaling group, which is also what
+ * metric statistics return.
+ */
+final class SimulatedCloudWatch extends AbstractAmazonCloudWatch {
+
+    /**
+     * Most queries in one GetMetricData call.
+     */
+    private static final int MAX_QUERIES = 500;
+
+    /**
+     * Most datapoints one statistics call returns.
+     */
+    private static final int MAX_DATAPOINTS = 1440;
+
+    /**
+     * Service name used in errors.
+     */
+    private static final String SERVICE = "AmazonCloudWatch";
+
+    /**
+     * Account.
+     */
+    private final SimulatedAws aws;
+
+    SimulatedCloudWatch(final SimulatedAws aws) {
+        this.aws = aws;
+    }
+
+    @Override
+    public PutMetricAlarmResult putMetricAlarm(final PutMetricAlarmRequest request) {
+        return aws.call(() -> {
+            if (request.getPeriod() == null || request.getPeriod() <= 0
+                    || request.getEvaluationPeriods() == null || request.getThreshold() == null
+                    || request.getComparisonOperator() == null) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "Period, EvaluationPeriods, Threshold and ComparisonOperator are required");
+            }
+            SimulatedAws.AlarmRecord alarm = aws.alarms.get(request.getAlarmName());
+            if (alarm == null) {
+                alarm = new SimulatedAws.AlarmRecord();
+                alarm.name = request.getAlarmName();
+                aws.alarms.put(alarm.name, alarm);
+            }
+            alarm.namespace = request.getNamespace();
+            alarm.metricName = request.getMetricName();
+            alarm.statistic = request.getStatistic();
+            alarm.period = request.getPeriod();
+            alarm.evaluationPeriods = request.getEvaluationPeriods();
+            alarm.threshold = request.getThreshold();
+            alarm.comparisonOperator = request.getComparisonOperator();
+            alarm.dimensions = new ArrayList<>(request.getDimensions());
+            alarm.alarmActions = new ArrayList<>(request.getAlarmActions());
+            // As on AWS, a put enables the actions unless the request says otherwise
+            alarm.actionsEnabled = request.getActionsEnabled() == null || request.getActionsEnabled();
+            alarm.breachingPeriods = 0;
+            alarm.state = "INSUFFICIENT_DATA";
+            alarm.nextEvaluationAt = aws.now() + alarm.period * 1000L;
+            return new PutMetricAlarmResult();
+        });
+    }
+
+    @Override
+    public DeleteAlarmsResult deleteAlarms(final DeleteAlarmsRequest request) {
+        return aws.call(() -> {
+            for (String name : request.getAlarmNames()) {
+                if (!aws.alarms.containsKey(name)) {
+                    throw SimulatedAws.error(SERVICE, "ResourceNotFound",
+                            "Alarm " + name + " does not exist");
+                }
+            }
+            aws.alarms.keySet().removeAll(request.getAlarmNames());
+            return new DeleteAlarmsResult();
+        });
+    }
+
+    @Override
+    public DisableAlarmActionsResult disableAlarmActions(final DisableAlarmActionsRequest request) {
+        return aws.call(() -> {
+            setActionsEnabled(request.getAlarmNames(), false);
+            return new DisableAlarmActionsResult();
+        });
+    }
+
+    @Override
+    public EnableAlarmActionsResult enableAlarmActions(final EnableAlarmActionsRequest request) {
+        return aws.call(() -> {
+            setActionsEnabled(request.getAlarmNames(), true);
+            return new EnableAlarmActionsResult();
+        });
+    }
+
+    /**
+     * Switch the actions of existing alarms; unknown names are ignored.
+     * @param names alarm names
+     * @param enabled whether actions run
+     */
+    private void setActionsEnabled(final List<String> names, final boolean enabled) {
+        for (String name : names) {
+            SimulatedAws.AlarmRecord alarm = aws.alarms.get(name);
+            if (alarm != null) {
+                alarm.actionsEnabled = enabled;
+            }
+        }
+    }
+
+    @Override
+    public DescribeAlarmsResult describeAlarms() {
+        return describeAlarms(new DescribeAlarmsRequest());
+    }
+
+    @Override
+    public DescribeAlarmsResult describeAlarms(final DescribeAlarmsRequest request) {
+        return aws.call(() -> {
+            List<MetricAlarm> matches = new ArrayList<>();
+            for (SimulatedAws.AlarmRecord alarm : aws.alarms.values()) {
+                if ((request.getAlarmNames().isEmpty() || request.getAlarmNames().contains(alarm.name))
+                        && (request.getStateValue() == null || request.getStateValue().equals(alarm.state))) {
+                    matches.add(new MetricAlarm()
+                            .withAlarmName(alarm.name)
+                            .withNamespace(alarm.namespace)
+                            .withMetricName(alarm.metricName)
+                            .withStatistic(alarm.statistic)
+                            .withPeriod(alarm.period)
+                            .withEvaluationPeriods(alarm.evaluationPeriods)
+                            .withThreshold(alarm.threshold)
+                            .withComparisonOperator(alarm.comparisonOperator)
+                            .withDimensions(alarm.dimensions)
+                            .withAlarmActions(alarm.alarmActions)
+                            .withActionsEnabled(alarm.actionsEnabled)
+                            .withStateValue(alarm.state));
+                }
+            }
+            Page<MetricAlarm> page = Page.of(matches, request.getNextToken(),
+                    request.getMaxRecords(), Math.min(100, aws.getSettings().getPageSize()));
+            return new DescribeAlarmsResult()
+                    .withMetricAlarms(page.items)
+                    .withNextToken(page.nextToken);
+        });
+    }
+
+    /**
+     * Every complete period in the range gets one datapoint, the modelled
+     * value at its end reported for every requested statistic; the sum of
+     * RequestCount is its rate times the period. Periods are aligned on
+     * the epoch like CloudWatch does.
+     */
+    @Override
+    public GetMetricStatisticsResult getMetricStatistics(final GetMetricStatisticsRequest request) {
+        return aws.call(() -> {
+            if (request.getPeriod() == null || request.getPeriod() <= 0
+                    || request.getStartTime() == null || request.getEndTime() == null) {
+                throw SimulatedAws.error(SERVICE, "InvalidParameterCombination",
+                        "Period, StartTime and EndTime are required");
+            }
+            long period = request.getPeriod() * 1000L;
+            long end = Math.min(request.getEndTime().getTime(), aws.now());
+            long first = (request.getStartTime().getTime() + period - 1) / period * period;
+            if ((end - first) / period > MAX_DATAPOINTS) {
+                throw SimulatedAws.error(SERVICE, "InvalidParameterCombination",
+                        "You have requested up to " + (end - first) / period
+                        + " datapoints, which exceeds the limit of " + MAX_DATAPOINTS);
+            }
+            List<Datapoint> datapoints = new ArrayList<>();
+            for (long start = first; start + period <= end; start += period) {
+                Double value = aws.metricValue(request.getNamespace(), request.getMetricName(),
+                        request.getDimensions(), start + period);
+                if (value == null) {
+                    continue;
+                }
+                Datapoint datapoint = new Datapoint()
+                        .withTimestamp(new Date(start));
+                for (String statistic : request.getStatistics()) {
+                    switch (statistic) {
+                        case "Average":
+                            datapoint.setAverage(value);
+                            break;
+                        case "Minimum":
+                            datapoint.setMinimum(value);
+                            break;
+                        case "Maximum":
+                            datapoint.setMaximum(value);
+                            break;
+                        case "SampleCount":
+                            datapoint.setSampleCount(statistic(request.getMetricName(), statistic,
+                                    value, request.getPeriod()));
+                            break;
+                        case "Sum":
+                            datapoint.setSum(statistic(request.getMetricName(), statistic,
+                                    value, request.getPeriod()));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                datapoints.add(datapoint);
+            }
+            return new GetMetricStatisticsResult()
+                    .withLabel(request.getMetricName())
+                    .withDatapoints(datapoints);
+        });
+    }
+
+    /**
+     * Answers every MetricStat query like {@link #getMetricStatistics};
+     * math expressions are not simulated and results come in one page.
+     */
+    @Override
+    public GetMetricDataResult getMetricData(final GetMetricDataRequest request) {
+        return aws.call(() -> {
+            if (request.getMetricDataQueries().size() > MAX_QUERIES) {
+                throw SimulatedAws.error(SERVICE, "ValidationError",
+                        "The collection MetricDataQueries must not have a size greater than " + MAX_QUERIES);
+            }
+            if (request.getStartTime() == null || request.getEndTime() == null) {
+                throw SimulatedAws.error(SERVICE, "ValidationError", "StartTime and EndTime are required");
+            }
+            boolean ascending = "TimestampAscending".equals(request.getScanBy());
+            List<MetricDataResult> results = new ArrayList<>();
+            for (MetricDataQuery query : request.getMetricDataQueries()) {
+                MetricStat stat = query.getMetricStat();
+                if (stat == null) {
+                    throw SimulatedAws.error(SERVICE, "ValidationError",
+                            "Only MetricStat queries are simulated: " + query.getId());
+                }
+                Metric metric = stat.getMetric();
+                long period = stat.getPeriod() * 1000L;
+                long end = Math.min(request.getEndTime().getTime(), aws.now());
+                long first = (request.getStartTime().getTime() + period - 1) / period * period;
+                List<Date> timestamps = new ArrayList<>();
+                List<Double> values = new ArrayList<>();
+                for (long start = first; start + period <= end; start += period) {
+                    Double value = aws.metricValue(metric.getNamespace(), metric.getMetricName(),
+                            metric.getDimensions(), start + period);
+                    if (value != null) {
+                        timestamps.add(new Date(start));
+                        values.add(statistic(metric.getMetricName(), stat.getStat(), value, stat.getPeriod()));
+                    }
+                }
+                if (!ascending) {
+                    Collections.reverse(timestamps);
+                    Collections.reverse(values);
+                }
+                results.add(new MetricDataResult()
+                        .withId(query.getId())
+                        .withLabel(query.getLabel() != null ? query.getLabel() : metric.getMetricName())
+                        .withTimestamps(timestamps)
+                        .withValues(values)
+                        .withStatusCode("Complete"));
+            }
+            return new GetMetricDataResult().withMetricDataResults(results);
+        });
+    }
+
+    /**
+     * A statistic of one period from the modelled value.
+     * Counts add up over the period, everything else is the value itself.
+     * @param metricName metric name
+     * @param statistic statistic name
+     * @param value modelled value, per second for counts
+     * @param periodSeconds period
+     * @return statistic
+     */
+    private static double statistic(final String metricName, final String statistic,
+                                    final double value, final int periodSeconds) {
+        if ("SampleCount".equals(statistic)) {
+            return 1.0;
+        }
+        if ("Sum".equals(statistic) && "RequestCount".equals(metricName)) {
+            return value * periodSeconds;
+        }
+        return value;
+    }
+}
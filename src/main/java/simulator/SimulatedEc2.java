@@ -0,0 +1,446 @@
+package simulator;
+
+import com.amazonaws.services.ec2.AbstractAmazonEC2;
+import com.amazonaws.services.ec2.model.AuthorizeSecurityGroupIngressRequest;
+import com.amazonaws.services.ec2.model.AuthorizeSecurityGroupIngressResult;
+import com.amazonaws.services.ec2.model.CreateSecurityGroupRequest;
+import com.amazonaws.services.ec2.model.CreateSecurityGroupResult;
+import com.amazonaws.services.ec2.model.CreateTagsRequest;
+import com.amazonaws.services.ec2.model.CreateTagsResult;
+import com.amazonaws.services.ec2.model.DeleteSecurityGroupRequest;
+import com.amazonaws.services.ec2.model.DeleteSecurityGroupResult;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsRequest;
+import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
+import com.amazonaws.services.ec2.model.DescribeSubnetsRequest;
+import com.amazonaws.services.ec2.model.DescribeSubnetsResult;
+import com.amazonaws.services.ec2.model.DescribeVpcsRequest;
+import com.amazonaws.services.ec2.model.DescribeVpcsResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.GroupIdentifier;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.InstanceStateChange;
+import com.amazonaws.services.ec2.model.Monitoring;
+import com.amazonaws.services.ec2.model.Placement;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.RunInstancesRequest;
+import com.amazonaws.services.ec2.model.RunInstancesResult;
+import com.amazonaws.services.ec2.model.SecurityGroup;
+import com.amazonaws.services.ec2.model.Subnet;
+import com.amazonaws.services.ec2.model.Tag;
+import com.amazonaws.services.ec2.model.TagSpecification;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.amazonaws.services.ec2.model.TerminateInstancesResult;
+import com.amazonaws.services.ec2.model.Vpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EC2 client of a {@link SimulatedAws} account.
+ * Instances go pending, running, shutting-down and terminated; security
+ * groups cannot be deleted while an instance or a recently deleted load
+ * balancer still uses them.
+ */
+final class SimulatedEc2 extends AbstractAmazonEC2 {
+
+    /**
+     * Service name used in errors.
+     */
+    private static final String SERVICE = "AmazonEC2";
+
+    /**
+     * Instance state codes by name.
+     */
+    private static final String[] STATE_NAMES = {"pending", "running", "shutting-down", "terminated", "stopped"};
+
+    /**
+     * Instance state codes, in the order of {@link #STATE_NAMES}.
+     */
+    private static final int[] STATE_CODES = {0, 16, 32, 48, 80};
+
+    /**
+     * Account.
+     */
+    private final SimulatedAws aws;
+
+    SimulatedEc2(final SimulatedAws aws) {
+        this.aws = aws;
+    }
+
+    @Override
+    public RunInstancesResult runInstances(final RunInstancesRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            List<String> groups = new ArrayList<>(request.getSecurityGroups());
+            groups.addAll(request.getSecurityGroupIds());
+            for (String group : groups) {
+                if (findGroup(group, Long.MAX_VALUE) == null) {
+                    throw SimulatedAws.error(SERVICE, "InvalidGroup.NotFound",
+                            "The security group '" + group + "' does not exist");
+                }
+            }
+            List<Tag> tags = new ArrayList<>();
+            for (TagSpecification specification : request.getTagSpecifications()) {
+                if ("instance".equals(specification.getResourceType())) {
+                    tags.addAll(specification.getTags());
+                }
+            }
+            boolean monitoring = request.getMonitoring() != null && request.getMonitoring();
+            Reservation reservation = new Reservation().withReservationId("r-" + aws.nextId());
+            int count = request.getMaxCount() != null ? request.getMaxCount() : 1;
+            for (int i = 0; i < count; i++) {
+                SimulatedAws.InstanceRecord instance = aws.launch(request.getImageId(),
+                        request.getInstanceType(), request.getKeyName(), groups,
+                        monitoring, aws.getRegion() + "a", now);
+                instance.tags.addAll(tags);
+                reservation.getInstances().add(toInstance(instance, now));
+            }
+            return new RunInstancesResult().withReservation(reservation);
+        });
+    }
+
+    @Override
+    public DescribeInstancesResult describeInstances() {
+        return describeInstances(new DescribeInstancesRequest());
+    }
+
+    @Override
+    public DescribeInstancesResult describeInstances(final DescribeInstancesRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            for (String id : request.getInstanceIds()) {
+                SimulatedAws.InstanceRecord instance = aws.instances.get(id);
+                if (instance == null || now < instance.visibleAt) {
+                    throw SimulatedAws.error(SERVICE, "InvalidInstanceID.NotFound",
+                            "The instance ID '" + id + "' does not exist");
+                }
+            }
+            List<Instance> matches = new ArrayList<>();
+            for (SimulatedAws.InstanceRecord instance : aws.instances.values()) {
+                if (now >= instance.visibleAt
+                        && (request.getInstanceIds().isEmpty()
+                            || request.getInstanceIds().contains(instance.id))
+                        && matches(instance, request.getFilters(), now)) {
+                    matches.add(toInstance(instance, now));
+                }
+            }
+            Page<Instance> page = Page.of(matches, request.getNextToken(),
+                    request.getMaxResults(), aws.getSettings().getPageSize());
+            DescribeInstancesResult result = new DescribeInstancesResult().withNextToken(page.nextToken);
+            for (Instance instance : page.items) {
+                result.getReservations().add(new Reservation()
+                        .withReservationId("r-" + instance.getInstanceId().substring(2))
+                        .withInstances(instance));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public TerminateInstancesResult terminateInstances(final TerminateInstancesRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            TerminateInstancesResult result = new TerminateInstancesResult();
+            for (String id : request.getInstanceIds()) {
+                SimulatedAws.InstanceRecord instance = aws.instances.get(id);
+                if (instance == null) {
+                    throw SimulatedAws.error(SERVICE, "InvalidInstanceID.NotFound",
+                            "The instance ID '" + id + "' does not exist");
+                }
+                InstanceState previous = state(aws.stateOf(instance, now));
+                aws.terminate(instance, now);
+                result.getTerminatingInstances().add(new InstanceStateChange()
+                        .withInstanceId(id)
+                        .withPreviousState(previous)
+                        .withCurrentState(state(aws.stateOf(instance, now))));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public CreateSecurityGroupResult createSecurityGroup(final CreateSecurityGroupRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            for (SimulatedAws.SecurityGroupRecord group : aws.securityGroups.values()) {
+                if (group.name.equals(request.getGroupName())) {
+                    throw SimulatedAws.error(SERVICE, "InvalidGroup.Duplicate",
+                            "The security group '" + group.name + "' already exists");
+                }
+            }
+            SimulatedAws.SecurityGroupRecord group = new SimulatedAws.SecurityGroupRecord();
+            group.id = "sg-" + aws.nextId();
+            group.name = request.getGroupName();
+            group.description = request.getDescription();
+            group.vpcId = request.getVpcId() != null ? request.getVpcId() : SimulatedAws.DEFAULT_VPC_ID;
+            group.visibleAt = now + aws.getSettings().getVisibilityDelayMillis();
+            aws.securityGroups.put(group.id, group);
+            return new CreateSecurityGroupResult().withGroupId(group.id);
+        });
+    }
+
+    @Override
+    public AuthorizeSecurityGroupIngressResult authorizeSecurityGroupIngress(
+            final AuthorizeSecurityGroupIngressRequest request) {
+        return aws.call(() -> {
+            // the caller knows the group it just created, no visibility delay
+            SimulatedAws.SecurityGroupRecord group = findGroup(
+                    request.getGroupId() != null ? request.getGroupId() : request.getGroupName(),
+                    Long.MAX_VALUE);
+            if (group == null) {
+                throw SimulatedAws.error(SERVICE, "InvalidGroup.NotFound",
+                        "The security group does not exist");
+            }
+            group.ingress.addAll(request.getIpPermissions());
+            return new AuthorizeSecurityGroupIngressResult().withReturn(true);
+        });
+    }
+
+    @Override
+    public DescribeSecurityGroupsResult describeSecurityGroups() {
+        return describeSecurityGroups(new DescribeSecurityGroupsRequest());
+    }
+
+    @Override
+    public DescribeSecurityGroupsResult describeSecurityGroups(final DescribeSecurityGroupsRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            List<SecurityGroup> matches = new ArrayList<>();
+            for (SimulatedAws.SecurityGroupRecord group : aws.securityGroups.values()) {
+                if (now < group.visibleAt
+                        || !request.getGroupIds().isEmpty() && !request.getGroupIds().contains(group.id)
+                        || !request.getGroupNames().isEmpty() && !request.getGroupNames().contains(group.name)) {
+                    continue;
+                }
+                boolean match = true;
+                for (Filter filter : request.getFilters()) {
+                    if ("group-name".equals(filter.getName())) {
+                        match &= filter.getValues().contains(group.name);
+                    } else if ("group-id".equals(filter.getName())) {
+                        match &= filter.getValues().contains(group.id);
+                    } else if ("vpc-id".equals(filter.getName())) {
+                        match &= filter.getValues().contains(group.vpcId);
+                    }
+                }
+                if (match) {
+                    matches.add(new SecurityGroup()
+                            .withGroupId(group.id)
+                            .withGroupName(group.name)
+                            .withDescription(group.description)
+                            .withVpcId(group.vpcId)
+                            .withIpPermissions(group.ingress));
+                }
+            }
+            Page<SecurityGroup> page = Page.of(matches, request.getNextToken(),
+                    request.getMaxResults(), aws.getSettings().getPageSize());
+            return new DescribeSecurityGroupsResult()
+                    .withSecurityGroups(page.items)
+                    .withNextToken(page.nextToken);
+        });
+    }
+
+    @Override
+    public DeleteSecurityGroupResult deleteSecurityGroup(final DeleteSecurityGroupRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            SimulatedAws.SecurityGroupRecord group = findGroup(
+                    request.getGroupId() != null ? request.getGroupId() : request.getGroupName(),
+                    Long.MAX_VALUE);
+            if (group == null) {
+                throw SimulatedAws.error(SERVICE, "InvalidGroup.NotFound",
+                        "The security group does not exist");
+            }
+            for (SimulatedAws.InstanceRecord instance : aws.instances.values()) {
+                if (!"terminated".equals(aws.stateOf(instance, now))
+                        && (instance.securityGroups.contains(group.name)
+                            || instance.securityGroups.contains(group.id))) {
+                    throw SimulatedAws.error(SERVICE, "DependencyViolation",
+                            "resource " + group.id + " has a dependent object");
+                }
+            }
+            for (SimulatedAws.LoadBalancerRecord loadBalancer : aws.loadBalancers.values()) {
+                if (loadBalancer.securityGroupIds.contains(group.id)) {
+                    throw SimulatedAws.error(SERVICE, "DependencyViolation",
+                            "resource " + group.id + " has a dependent object");
+                }
+            }
+            aws.securityGroups.remove(group.id);
+            return new DeleteSecurityGroupResult();
+        });
+    }
+
+    @Override
+    public DescribeVpcsResult describeVpcs() {
+        return describeVpcs(new DescribeVpcsRequest());
+    }
+
+    @Override
+    public DescribeVpcsResult describeVpcs(final DescribeVpcsRequest request) {
+        return aws.call(() -> new DescribeVpcsResult().withVpcs(new Vpc()
+                .withVpcId(SimulatedAws.DEFAULT_VPC_ID)
+                .withCidrBlock("172.31.0.0/16")
+                .withIsDefault(true)
+                .withState("available")));
+    }
+
+    @Override
+    public DescribeSubnetsResult describeSubnets(final DescribeSubnetsRequest request) {
+        return aws.call(() -> {
+            List<Subnet> matches = new ArrayList<>();
+            for (Map.Entry<String, String> subnet : aws.subnets.entrySet()) {
+                if (!request.getSubnetIds().isEmpty() && !request.getSubnetIds().contains(subnet.getKey())) {
+                    continue;
+                }
+                boolean match = true;
+                for (Filter filter : request.getFilters()) {
+                    if ("vpc-id".equals(filter.getName())) {
+                        match &= filter.getValues().contains(SimulatedAws.DEFAULT_VPC_ID);
+                    } else if ("availability-zone".equals(filter.getName())) {
+                        match &= filter.getValues().contains(subnet.getValue());
+                    } else if ("default-for-az".equals(filter.getName())) {
+                        match &= filter.getValues().contains("true");
+                    }
+                }
+                if (match) {
+                    matches.add(new Subnet()
+                            .withSubnetId(subnet.getKey())
+                            .withAvailabilityZone(subnet.getValue())
+                            .withVpcId(SimulatedAws.DEFAULT_VPC_ID)
+                            .withDefaultForAz(true)
+                            .withState("available"));
+                }
+            }
+            Page<Subnet> page = Page.of(matches, request.getNextToken(),
+                    request.getMaxResults(), aws.getSettings().getPageSize());
+            return new DescribeSubnetsResult().withSubnets(page.items).withNextToken(page.nextToken);
+        });
+    }
+
+    @Override
+    public CreateTagsResult createTags(final CreateTagsRequest request) {
+        return aws.call(() -> {
+            for (String id : request.getResources()) {
+                SimulatedAws.InstanceRecord instance = aws.instances.get(id);
+                if (instance != null) {
+                    instance.tags.addAll(request.getTags());
+                }
+            }
+            return new CreateTagsResult();
+        });
+    }
+
+    /**
+     * Find a security group by ID or name.
+     * @param idOrName group ID or name
+     * @param now simulated time, groups not visible yet are ignored
+     * @return group or null
+     */
+    private SimulatedAws.SecurityGroupRecord findGroup(final String idOrName, final long now) {
+        for (SimulatedAws.SecurityGroupRecord group : aws.securityGroups.values()) {
+            if (now >= group.visibleAt && (group.id.equals(idOrName) || group.name.equals(idOrName))) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether an instance matches all filters.
+     * @param instance instance
+     * @param filters filters
+     * @param now simulated time
+     * @return true on match
+     */
+    private boolean matches(final SimulatedAws.InstanceRecord instance,
+                            final List<Filter> filters, final long now) {
+        for (Filter filter : filters) {
+            String name = filter.getName();
+            if ("instance-id".equals(name)) {
+                if (!filter.getValues().contains(instance.id)) {
+                    return false;
+                }
+            } else if ("image-id".equals(name)) {
+                if (!filter.getValues().contains(instance.imageId)) {
+                    return false;
+                }
+            } else if ("instance-state-name".equals(name)) {
+                if (!filter.getValues().contains(aws.stateOf(instance, now))) {
+                    return false;
+                }
+            } else if (name.startsWith("tag:")) {
+                boolean tagged = false;
+                for (Tag tag : instance.tags) {
+                    tagged |= tag.getKey().equals(name.substring(4))
+                            && filter.getValues().contains(tag.getValue());
+                }
+                if (!tagged) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the model of an instance.
+     * @param instance instance
+     * @param now simulated time
+     * @return SDK model
+     */
+    private Instance toInstance(final SimulatedAws.InstanceRecord instance, final long now) {
+        String stateName = aws.stateOf(instance, now);
+        Instance model = new Instance()
+                .withInstanceId(instance.id)
+                .withImageId(instance.imageId)
+                .withInstanceType(instance.instanceType)
+                .withKeyName(instance.keyName)
+                .withState(state(stateName))
+                .withMonitoring(new Monitoring().withState(instance.monitoring ? "enabled" : "disabled"))
+                .withPlacement(new Placement().withAvailabilityZone(instance.availabilityZone))
+                .withPrivateIpAddress(address("172.31", instance.number))
+                .withVpcId(SimulatedAws.DEFAULT_VPC_ID)
+                .withTags(instance.tags);
+        for (String group : instance.securityGroups) {
+            SimulatedAws.SecurityGroupRecord record = findGroup(group, Long.MAX_VALUE);
+            model.getSecurityGroups().add(new GroupIdentifier()
+                    .withGroupId(record != null ? record.id : group)
+                    .withGroupName(record != null ? record.name : group));
+        }
+        if ("running".equals(stateName)) {
+            String publicIp = address("54.80", instance.number);
+            model.withPublicIpAddress(publicIp)
+                    .withPublicDnsName("ec2-" + publicIp.replace('.', '-') + ".compute-1.amazonaws.com");
+        } else {
+            model.withPublicDnsName("");
+        }
+        return model;
+    }
+
+    /**
+     * Build an instance state.
+     * @param name state name
+     * @return SDK model
+     */
+    private static InstanceState state(final String name) {
+        for (int i = 0; i < STATE_NAMES.length; i++) {
+            if (STATE_NAMES[i].equals(name)) {
+                return new InstanceState().withName(name).withCode(STATE_CODES[i]);
+            }
+        }
+        return new InstanceState().withName(name);
+    }
+
+    /**
+     * Derive an address from an instance number.
+     * @param prefix first two octets
+     * @param number instance number
+     * @return dotted address
+     */
+    private static String address(final String prefix, final int number) {
+        return prefix + "." + (number / 250) + "." + (number % 250 + 4);
+    }
+}
@@ -0,0 +1,424 @@
+package simulator;
+
+import com.amazonaws.services.elasticloadbalancingv2.AbstractAmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.model.Action;
+import com.amazonaws.services.elasticloadbalancingv2.model.AvailabilityZone;
+import com.amazonaws.services.elasticloadbalancingv2.model.CreateListenerRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.CreateListenerResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.CreateLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.CreateLoadBalancerResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.CreateTargetGroupRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.CreateTargetGroupResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.DeleteLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DeleteLoadBalancerResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.DeleteTargetGroupRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DeleteTargetGroupResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeListenersRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeListenersResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeLoadBalancersRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeLoadBalancersResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTagsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTagsResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTargetGroupsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.DescribeTargetGroupsResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.Listener;
+import com.amazonaws.services.elasticloadbalancingv2.model.LoadBalancer;
+import com.amazonaws.services.elasticloadbalancingv2.model.LoadBalancerState;
+import com.amazonaws.services.elasticloadbalancingv2.model.ModifyTargetGroupAttributesRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.ModifyTargetGroupAttributesResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.ModifyTargetGroupRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.ModifyTargetGroupResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.SetSecurityGroupsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.SetSecurityGroupsResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.SetSubnetsRequest;
+import com.amazonaws.services.elasticloadbalancingv2.model.SetSubnetsResult;
+import com.amazonaws.services.elasticloadbalancingv2.model.TargetGroup;
+import com.amazonaws.services.elasticloadbalancingv2.model.TagDescription;
+import com.amazonaws.services.elasticloadbalancingv2.model.TargetGroupAttribute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Elastic Load Balancing (v2) client of a {@link SimulatedAws} account.
+ * Load balancers go from provisioning to active; target groups cannot be
+ * deleted while a listener forwards to them.
+ */
+final class SimulatedElasticLoadBalancing extends AbstractAmazonElasticLoadBalancing {
+
+    /**
+     * Service name used in errors.
+     */
+    private static final String SERVICE = "AmazonElasticLoadBalancing";
+
+    /**
+     * ARN prefix of the account.
+     */
+    private final String arnPrefix;
+
+    /**
+     * Account.
+     */
+    private final SimulatedAws aws;
+
+    SimulatedElasticLoadBalancing(final SimulatedAws aws) {
+        this.aws = aws;
+        this.arnPrefix = "arn:aws:elasticloadbalancing:" + aws.getRegion() + ":" + SimulatedAws.ACCOUNT_ID + ":";
+    }
+
+    @Override
+    public CreateTargetGroupResult createTargetGroup(final CreateTargetGroupRequest request) {
+        return aws.call(() -> {
+            for (SimulatedAws.TargetGroupRecord targetGroup : aws.targetGroups.values()) {
+                if (targetGroup.name.equals(request.getName())) {
+                    throw SimulatedAws.error(SERVICE, "DuplicateTargetGroupName",
+                            "A target group with the same name '" + targetGroup.name + "' exists");
+                }
+            }
+            SimulatedAws.TargetGroupRecord targetGroup = new SimulatedAws.TargetGroupRecord();
+            targetGroup.arn = arnPrefix + "targetgroup/" + request.getName() + "/" + aws.nextId();
+            targetGroup.name = request.getName();
+            targetGroup.vpcId = request.getVpcId();
+            targetGroup.port = request.getPort();
+            targetGroup.protocol = request.getProtocol();
+            targetGroup.healthCheckPath = request.getHealthCheckPath();
+            targetGroup.healthCheckIntervalSeconds = request.getHealthCheckIntervalSeconds();
+            targetGroup.healthyThresholdCount = request.getHealthyThresholdCount();
+            targetGroup.visibleAt = aws.now() + aws.getSettings().getVisibilityDelayMillis();
+            aws.targetGroups.put(targetGroup.arn, targetGroup);
+            return new CreateTargetGroupResult().withTargetGroups(toTargetGroup(targetGroup));
+        });
+    }
+
+    @Override
+    public ModifyTargetGroupAttributesResult modifyTargetGroupAttributes(
+            final ModifyTargetGroupAttributesRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.TargetGroupRecord targetGroup = targetGroup(request.getTargetGroupArn());
+            List<TargetGroupAttribute> attributes = new ArrayList<>();
+            for (TargetGroupAttribute attribute : list(request.getAttributes())) {
+                targetGroup.attributes.put(attribute.getKey(), attribute.getValue());
+            }
+            targetGroup.attributes.forEach((key, value) ->
+                    attributes.add(new TargetGroupAttribute().withKey(key).withValue(value)));
+            return new ModifyTargetGroupAttributesResult().withAttributes(attributes);
+        });
+    }
+
+    @Override
+    public ModifyTargetGroupResult modifyTargetGroup(final ModifyTargetGroupRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.TargetGroupRecord targetGroup = targetGroup(request.getTargetGroupArn());
+            if (request.getHealthCheckPath() != null) {
+                targetGroup.healthCheckPath = request.getHealthCheckPath();
+            }
+            if (request.getHealthCheckIntervalSeconds() != null) {
+                targetGroup.healthCheckIntervalSeconds = request.getHealthCheckIntervalSeconds();
+            }
+            if (request.getHealthyThresholdCount() != null) {
+                targetGroup.healthyThresholdCount = request.getHealthyThresholdCount();
+            }
+            return new ModifyTargetGroupResult().withTargetGroups(toTargetGroup(targetGroup));
+        });
+    }
+
+    @Override
+    public DescribeTargetGroupsResult describeTargetGroups(final DescribeTargetGroupsRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            List<TargetGroup> matches = new ArrayList<>();
+            for (SimulatedAws.TargetGroupRecord targetGroup : aws.targetGroups.values()) {
+                if (now >= targetGroup.visibleAt
+                        && (list(request.getTargetGroupArns()).isEmpty()
+                            || list(request.getTargetGroupArns()).contains(targetGroup.arn))
+                        && (list(request.getNames()).isEmpty() || list(request.getNames()).contains(targetGroup.name))) {
+                    matches.add(toTargetGroup(targetGroup));
+                }
+            }
+            Page<TargetGroup> page = Page.of(matches, request.getMarker(),
+                    request.getPageSize(), aws.getSettings().getPageSize());
+            return new DescribeTargetGroupsResult()
+                    .withTargetGroups(page.items)
+                    .withNextMarker(page.nextToken);
+        });
+    }
+
+    @Override
+    public CreateLoadBalancerResult createLoadBalancer(final CreateLoadBalancerRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            for (SimulatedAws.LoadBalancerRecord loadBalancer : aws.loadBalancers.values()) {
+                if (loadBalancer.deletedAt < 0 && loadBalancer.name.equals(request.getName())) {
+                    throw SimulatedAws.error(SERVICE, "DuplicateLoadBalancerName",
+                            "A load balancer with the same name '" + loadBalancer.name + "' exists");
+                }
+            }
+            checkSubnets(list(request.getSubnets()));
+            String id = aws.nextId();
+            SimulatedAws.LoadBalancerRecord loadBalancer = new SimulatedAws.LoadBalancerRecord();
+            loadBalancer.arn = arnPrefix + "loadbalancer/app/" + request.getName() + "/" + id;
+            loadBalancer.name = request.getName();
+            loadBalancer.dnsName = request.getName() + "-" + id.substring(7) + "."
+                    + aws.getRegion() + ".elb.amazonaws.com";
+            loadBalancer.type = request.getType() != null ? request.getType() : "application";
+            loadBalancer.securityGroupIds.addAll(list(request.getSecurityGroups()));
+            loadBalancer.subnets.addAll(list(request.getSubnets()));
+            loadBalancer.tags.addAll(list(request.getTags()));
+            loadBalancer.visibleAt = now + aws.getSettings().getVisibilityDelayMillis();
+            loadBalancer.activeAt = now + aws.getSettings().getLoadBalancerActivationMillis();
+            aws.loadBalancers.put(loadBalancer.arn, loadBalancer);
+            return new CreateLoadBalancerResult().withLoadBalancers(toLoadBalancer(loadBalancer, now));
+        });
+    }
+
+    @Override
+    public DescribeLoadBalancersResult describeLoadBalancers(final DescribeLoadBalancersRequest request) {
+        return aws.call(() -> {
+            long now = aws.now();
+            List<LoadBalancer> matches = new ArrayList<>();
+            for (SimulatedAws.LoadBalancerRecord loadBalancer : aws.loadBalancers.values()) {
+                if (loadBalancer.deletedAt < 0 && now >= loadBalancer.visibleAt
+                        && (list(request.getLoadBalancerArns()).isEmpty()
+                            || list(request.getLoadBalancerArns()).contains(loadBalancer.arn))
+                        && (list(request.getNames()).isEmpty() || list(request.getNames()).contains(loadBalancer.name))) {
+                    matches.add(toLoadBalancer(loadBalancer, now));
+                }
+            }
+            if (!list(request.getLoadBalancerArns()).isEmpty() && matches.size() < list(request.getLoadBalancerArns()).size()
+                    || !list(request.getNames()).isEmpty() && matches.size() < list(request.getNames()).size()) {
+                throw SimulatedAws.error(SERVICE, "LoadBalancerNotFound",
+                        "One or more load balancers not found");
+            }
+            Page<LoadBalancer> page = Page.of(matches, request.getMarker(),
+                    request.getPageSize(), aws.getSettings().getPageSize());
+            return new DescribeLoadBalancersResult()
+                    .withLoadBalancers(page.items)
+                    .withNextMarker(page.nextToken);
+        });
+    }
+
+    @Override
+    public CreateListenerResult createListener(final CreateListenerRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.LoadBalancerRecord loadBalancer = aws.loadBalancers.get(request.getLoadBalancerArn());
+            if (loadBalancer == null || loadBalancer.deletedAt >= 0) {
+                throw SimulatedAws.error(SERVICE, "LoadBalancerNotFound",
+                        "Load balancer '" + request.getLoadBalancerArn() + "' not found");
+            }
+            for (Action action : list(request.getDefaultActions())) {
+                if (action.getTargetGroupArn() != null) {
+                    targetGroup(action.getTargetGroupArn());
+                    loadBalancer.listenerTargetGroupArns.add(action.getTargetGroupArn());
+                }
+            }
+            return new CreateListenerResult().withListeners(new Listener()
+                    .withListenerArn(arnPrefix + "listener/app/" + loadBalancer.name + "/" + aws.nextId())
+                    .withLoadBalancerArn(loadBalancer.arn)
+                    .withPort(request.getPort())
+                    .withProtocol(request.getProtocol())
+                    .withDefaultActions(list(request.getDefaultActions())));
+        });
+    }
+
+    /**
+     * Listeners are not kept, one HTTP listener per forwarded target group
+     * stands in for them.
+     */
+    @Override
+    public DescribeListenersResult describeListeners(final DescribeListenersRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.LoadBalancerRecord loadBalancer = aws.loadBalancers.get(request.getLoadBalancerArn());
+            if (loadBalancer == null || loadBalancer.deletedAt >= 0) {
+                throw SimulatedAws.error(SERVICE, "LoadBalancerNotFound",
+                        "Load balancer '" + request.getLoadBalancerArn() + "' not found");
+            }
+            List<Listener> listeners = new ArrayList<>();
+            for (int i = 0; i < loadBalancer.listenerTargetGroupArns.size(); i++) {
+                listeners.add(new Listener()
+                        .withListenerArn(arnPrefix + "listener/app/" + loadBalancer.name + "/" + i)
+                        .withLoadBalancerArn(loadBalancer.arn)
+                        .withPort(80)
+                        .withProtocol("HTTP")
+                        .withDefaultActions(new Action().withType("forward")
+                                .withTargetGroupArn(loadBalancer.listenerTargetGroupArns.get(i))));
+            }
+            return new DescribeListenersResult().withListeners(listeners);
+        });
+    }
+
+    @Override
+    public DescribeTagsResult describeTags(final DescribeTagsRequest request) {
+        return aws.call(() -> {
+            List<TagDescription> descriptions = new ArrayList<>();
+            for (String arn : list(request.getResourceArns())) {
+                SimulatedAws.LoadBalancerRecord loadBalancer = aws.loadBalancers.get(arn);
+                if (loadBalancer != null && loadBalancer.deletedAt < 0) {
+                    descriptions.add(new TagDescription().withResourceArn(arn).withTags(loadBalancer.tags));
+                } else if (aws.targetGroups.containsKey(arn)) {
+                    descriptions.add(new TagDescription().withResourceArn(arn));
+                } else {
+                    throw SimulatedAws.error(SERVICE, "LoadBalancerNotFound",
+                            "Load balancer '" + arn + "' not found");
+                }
+            }
+            return new DescribeTagsResult().withTagDescriptions(descriptions);
+        });
+    }
+
+    @Override
+    public DeleteLoadBalancerResult deleteLoadBalancer(final DeleteLoadBalancerRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.LoadBalancerRecord loadBalancer = aws.loadBalancers.get(request.getLoadBalancerArn());
+            if (loadBalancer != null && loadBalancer.deletedAt < 0) {
+                // listeners go at once, the network interfaces linger
+                loadBalancer.deletedAt = aws.now();
+                loadBalancer.listenerTargetGroupArns.clear();
+            }
+            return new DeleteLoadBalancerResult();
+        });
+    }
+
+    @Override
+    public DeleteTargetGroupResult deleteTargetGroup(final DeleteTargetGroupRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.TargetGroupRecord targetGroup = aws.targetGroups.get(request.getTargetGroupArn());
+            if (targetGroup == null) {
+                return new DeleteTargetGroupResult();
+            }
+            for (SimulatedAws.LoadBalancerRecord loadBalancer : aws.loadBalancers.values()) {
+                if (loadBalancer.listenerTargetGroupArns.contains(targetGroup.arn)) {
+                    throw SimulatedAws.error(SERVICE, "ResourceInUse",
+                            "Target group '" + targetGroup.arn + "' is currently in use by a listener or a rule");
+                }
+            }
+            aws.targetGroups.remove(targetGroup.arn);
+            return new DeleteTargetGroupResult();
+        });
+    }
+
+    /**
+     * Look up a target group.
+     * @param arn target group ARN
+     * @return target group
+     */
+    private SimulatedAws.TargetGroupRecord targetGroup(final String arn) {
+        SimulatedAws.TargetGroupRecord targetGroup = aws.targetGroups.get(arn);
+        if (targetGroup == null) {
+            throw SimulatedAws.error(SERVICE, "TargetGroupNotFound",
+                    "Target group '" + arn + "' not found");
+        }
+        return targetGroup;
+    }
+
+    /**
+     * Build the model of a target group.
+     * @param targetGroup target group
+     * @return SDK model
+     */
+    private static TargetGroup toTargetGroup(final SimulatedAws.TargetGroupRecord targetGroup) {
+        return new TargetGroup()
+                .withTargetGroupArn(targetGroup.arn)
+                .withTargetGroupName(targetGroup.name)
+                .withVpcId(targetGroup.vpcId)
+                .withPort(targetGroup.port)
+                .withProtocol(targetGroup.protocol)
+                .withHealthCheckPath(targetGroup.healthCheckPath)
+                .withHealthCheckIntervalSeconds(targetGroup.healthCheckIntervalSeconds)
+                .withHealthyThresholdCount(targetGroup.healthyThresholdCount);
+    }
+
+    /**
+     * Build the model of a load balancer.
+     * @param loadBalancer load balancer
+     * @param now simulated time
+     * @return SDK model
+     */
+    private LoadBalancer toLoadBalancer(final SimulatedAws.LoadBalancerRecord loadBalancer,
+                                        final long now) {
+        LoadBalancer model = new LoadBalancer()
+                .withLoadBalancerArn(loadBalancer.arn)
+                .withLoadBalancerName(loadBalancer.name)
+                .withDNSName(loadBalancer.dnsName)
+                .withType(loadBalancer.type)
+                .withScheme("internet-facing")
+                .withVpcId(SimulatedAws.DEFAULT_VPC_ID)
+                .withSecurityGroups(loadBalancer.securityGroupIds)
+                .withState(new LoadBalancerState().withCode(now >= loadBalancer.activeAt ? "active" : "provisioning"));
+        List<AvailabilityZone> zones = new ArrayList<>();
+        for (String subnet : loadBalancer.subnets) {
+            zones.add(new AvailabilityZone().withSubnetId(subnet).withZoneName(aws.subnets.get(subnet)));
+        }
+        return model.withAvailabilityZones(zones);
+    }
+
+    /**
+     * Check that subnets exist and cover two zones, one subnet per zone.
+     * @param subnets subnet IDs
+     */
+    private void checkSubnets(final List<String> subnets) {
+        Set<String> zones = new HashSet<>();
+        for (String subnet : subnets) {
+            String zone = aws.subnets.get(subnet);
+            if (zone == null) {
+                throw SimulatedAws.error(SERVICE, "SubnetNotFound", "The subnet ID '" + subnet + "' is not valid");
+            }
+            if (!zones.add(zone)) {
+                throw SimulatedAws.error(SERVICE, "InvalidConfigurationRequest",
+                        "You cannot specify multiple subnets in the same Availability Zone");
+            }
+        }
+        if (zones.size() < 2) {
+            throw SimulatedAws.error(SERVICE, "ValidationError",
+                    "At least two subnets in two different Availability Zones must be specified");
+        }
+    }
+
+    @Override
+    public SetSubnetsResult setSubnets(final SetSubnetsRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.LoadBalancerRecord loadBalancer = aws.loadBalancers.get(request.getLoadBalancerArn());
+            if (loadBalancer == null || loadBalancer.deletedAt >= 0) {
+                throw SimulatedAws.error(SERVICE, "LoadBalancerNotFound",
+                        "Load balancer '" + request.getLoadBalancerArn() + "' not found");
+            }
+            checkSubnets(list(request.getSubnets()));
+            loadBalancer.subnets.clear();
+            loadBalancer.subnets.addAll(list(request.getSubnets()));
+            return new SetSubnetsResult().withAvailabilityZones(
+                    toLoadBalancer(loadBalancer, aws.now()).getAvailabilityZones());
+        });
+    }
+
+    @Override
+    public SetSecurityGroupsResult setSecurityGroups(final SetSecurityGroupsRequest request) {
+        return aws.call(() -> {
+            SimulatedAws.LoadBalancerRecord loadBalancer = aws.loadBalancers.get(request.getLoadBalancerArn());
+            if (loadBalancer == null || loadBalancer.deletedAt >= 0) {
+                throw SimulatedAws.error(SERVICE, "LoadBalancerNotFound",
+                        "Load balancer '" + request.getLoadBalancerArn() + "' not found");
+            }
+            for (String groupId : list(request.getSecurityGroups())) {
+                if (!aws.securityGroups.containsKey(groupId)) {
+                    throw SimulatedAws.error(SERVICE, "InvalidSecurityGroup",
+                            "Security group '" + groupId + "' does not exist");
+                }
+            }
+            loadBalancer.securityGroupIds.clear();
+            loadBalancer.securityGroupIds.addAll(list(request.getSecurityGroups()));
+            return new SetSecurityGroupsResult().withSecurityGroupIds(loadBalancer.securityGroupIds);
+        });
+    }
+
+    /**
+     * Null safe view of a request list, ELB models leave unset lists null.
+     * @param values list or null
+     * @param <T> item type
+     * @return the list or an empty list
+     */
+    private static <T> List<T> list(final List<T> values) {
+        return values != null ? values : Collections.<T>emptyList();
+    }
+}
@@ -0,0 +1,192 @@
+package simulator;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Timings and load model of a simulation.
+ * Durations are in simulated milliseconds unless noted otherwise.
+ */
+public final class SimulationSettings {
+
+    /**
+     * Region of the simulated account.
+     */
+    private String region = "us-east-1";
+
+    /**
+     * Availability zones of the region, each with a default subnet.
+     */
+    private int zoneCount = 3;
+
+    /**
+     * Simulated milliseconds per real millisecond.
+     */
+    private double speedup = 1.0;
+
+    /**
+     * Latency added to every API call, in real milliseconds.
+     */
+    private LatencyModel apiLatency = LatencyModel.none();
+
+    /**
+     * Delay before a created resource shows up in describe calls.
+     */
+    private long visibilityDelayMillis = 1000;
+
+    /**
+     * Time from pending to running.
+     */
+    private long instanceBootMillis = 40000;
+
+    /**
+     * Time from starting a stopped warm pool instance to running.
+     */
+    private long warmStartMillis = 10000;
+
+    /**
+     * Time from shutting-down to terminated.
+     */
+    private long instanceShutdownMillis = 30000;
+
+    /**
+     * Time from provisioning to active.
+     */
+    private long loadBalancerActivationMillis = 120000;
+
+    /**
+     * Time a deleted load balancer keeps its network interfaces.
+     */
+    private long loadBalancerReleaseMillis = 30000;
+
+    /**
+     * Requests per second one instance serves at 100% CPU.
+     */
+    private double instanceCapacity = 1000;
+
+    /**
+     * Request rate by simulated seconds since the start.
+     */
+    private DoubleUnaryOperator load = seconds -> 0;
+
+    /**
+     * Maximum results per describe page.
+     */
+    private int pageSize = 1000;
+
+    public String getRegion() {
+        return region;
+    }
+
+    public SimulationSettings withRegion(final String region) {
+        this.region = region;
+        return this;
+    }
+
+    public int getZoneCount() {
+        return zoneCount;
+    }
+
+    public SimulationSettings withZoneCount(final int zoneCount) {
+        this.zoneCount = zoneCount;
+        return this;
+    }
+
+    public double getSpeedup() {
+        return speedup;
+    }
+
+    public SimulationSettings withSpeedup(final double speedup) {
+        this.speedup = speedup;
+        return this;
+    }
+
+    public LatencyModel getApiLatency() {
+        return apiLatency;
+    }
+
+    public SimulationSettings withApiLatency(final LatencyModel apiLatency) {
+        this.apiLatency = apiLatency;
+        return this;
+    }
+
+    public long getVisibilityDelayMillis() {
+        return visibilityDelayMillis;
+    }
+
+    public SimulationSettings withVisibilityDelayMillis(final long visibilityDelayMillis) {
+        this.visibilityDelayMillis = visibilityDelayMillis;
+        return this;
+    }
+
+    public long getInstanceBootMillis() {
+        return instanceBootMillis;
+    }
+
+    public SimulationSettings withInstanceBootMillis(final long instanceBootMillis) {
+        this.instanceBootMillis = instanceBootMillis;
+        return this;
+    }
+
+    public long getWarmStartMillis() {
+        return warmStartMillis;
+    }
+
+    public SimulationSettings withWarmStartMillis(final long warmStartMillis) {
+        this.warmStartMillis = warmStartMillis;
+        return this;
+    }
+
+    public long getInstanceShutdownMillis() {
+        return instanceShutdownMillis;
+    }
+
+    public SimulationSettings withInstanceShutdownMillis(final long instanceShutdownMillis) {
+        this.instanceShutdownMillis = instanceShutdownMillis;
+        return this;
+    }
+
+    public long getLoadBalancerActivationMillis() {
+        return loadBalancerActivationMillis;
+    }
+
+    public SimulationSettings withLoadBalancerActivationMillis(final long loadBalancerActivationMillis) {
+        this.loadBalancerActivationMillis = loadBalancerActivationMillis;
+        return this;
+    }
+
+    public long getLoadBalancerReleaseMillis() {
+        return loadBalancerReleaseMillis;
+    }
+
+    public SimulationSettings withLoadBalancerReleaseMillis(final long loadBalancerReleaseMillis) {
+        this.loadBalancerReleaseMillis = loadBalancerReleaseMillis;
+        return this;
+    }
+
+    public double getInstanceCapacity() {
+        return instanceCapacity;
+    }
+
+    public SimulationSettings withInstanceCapacity(final double instanceCapacity) {
+        this.instanceCapacity = instanceCapacity;
+        return this;
+    }
+
+    public DoubleUnaryOperator getLoad() {
+        return load;
+    }
+
+    public SimulationSettings withLoad(final DoubleUnaryOperator load) {
+        this.load = load;
+        return this;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public SimulationSettings withPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * In-process AWS simulator.
+ * {@link simulator.SimulatedAws} implements the EC2, ELB, Auto Scaling
+ * and CloudWatch client interfaces used by the provisioning code, so the
+ * orchestration can run without an AWS account.
+ */
+package simulator;
@@ -1,25 +1,69 @@
 package utilities;
 
-import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-public class Configuration {
-    private JSONObject config;
+/**
+ * Immutable view of a JSON configuration. Arrays are handed out as
+ * copies so that no caller can change the values another one reads.
+ */
+public final class Configuration {
+    private final JSONObject config;
 
+    /**
+     * Load a configuration from the classpath, from a jar as well as from
+     * a directory.
+     * @param fileName resource name
+     */
     public Configuration(String fileName) {
-        File configFile = new File(this.getClass().getClassLoader().getResource(fileName).getFile());
-        try {
-            config = new JSONObject(FileUtils.readFileToString(configFile,
-                    Charset.defaultCharset()));
+        try (InputStream in = Configuration.class.getClassLoader().getResourceAsStream(fileName)) {
+            if (in == null) {
+                throw new IllegalStateException("Configuration " + fileName + " is not on the classpath");
+            }
+            config = parse(in, fileName);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("Cannot read configuration " + fileName, e);
         }
     }
 
+    private Configuration(JSONObject config) {
+        this.config = config;
+    }
+
+    /**
+     * Load a configuration from a file.
+     * @param path configuration file
+     * @return configuration
+     */
+    public static Configuration fromFile(Path path) {
+        try (InputStream in = Files.newInputStream(path)) {
+            return new Configuration(parse(in, path.toString()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read configuration " + path, e);
+        }
+    }
+
+    private static JSONObject parse(InputStream in, String name) {
+        try {
+            return new JSONObject(new JSONTokener(in));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Configuration " + name + " is not valid JSON: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    public boolean has(String key) {
+        return config.has(key);
+    }
+
     public String getString(String key) {
         return config.getString(key);
     }
@@ -31,4 +75,12 @@ public class Configuration {
     public Double getDouble(String key) {
         return config.getDouble(key);
     }
+
+    public Boolean getBoolean(String key) {
+        return config.getBoolean(key);
+    }
+
+    public JSONArray getJSONArray(String key) {
+        return new JSONArray(config.getJSONArray(key).toString());
+    }
 }
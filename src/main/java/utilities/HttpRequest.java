@@ -1,51 +1,56 @@
 package utilities;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Map;
 
 /**
  * HTTP Request Utility Class.
+ * Requests share one {@link PooledHttpClient}, so repeated calls to the
+ * same host reuse keep-alive connections.
  */
 public final class HttpRequest {
 
+    /**
+     * First HTTP status treated as an error.
+     */
+    private static final int FIRST_ERROR_STATUS = 400;
+
+    /**
+     * Shared client.
+     */
+    private static final PooledHttpClient CLIENT = new PooledHttpClient();
+
     /**
      * Private Constructor.
      */
     private HttpRequest() {
     }
+
     /**
      * Make a HTTP GET request to a URL.
      * @param url Input URL
      * @return response of the request
-     * @throws IOException when network failure occurs
+     * @throws IOException when network failure occurs or the status is an error
      */
-
     public static String sendGet(final String url) throws IOException {
-
-        URL obj = new URL(url);
-        HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-        // optional default is GET
-        con.setRequestMethod("GET");
-        con.getResponseCode();
-
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(con.getInputStream()));
-
-        String inputLine;
-        StringBuilder response = new StringBuilder();
-
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
-            response.append("\n");
+        HttpResponse response = CLIENT.get(url);
+        if (response.getStatus() >= FIRST_ERROR_STATUS) {
+            throw new IOException("HTTP " + response.getStatus() + " for " + url);
         }
-        in.close();
-
-        //return result
-        return response.toString();
+        return response.getBodyAsString();
+    }
 
+    /**
+     * Make a HTTP GET request with extra headers, e.g. Range.
+     * Error statuses are returned instead of thrown.
+     * @param url Input URL
+     * @param headers request headers
+     * @return response of the request
+     * @throws IOException when network failure occurs
+     */
+    public static HttpResponse sendGet(final String url,
+                                       final Map<String, String> headers)
+            throws IOException {
+        return CLIENT.get(url, headers);
     }
 }
@@ -0,0 +1,70 @@
+package utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP response with its status, headers and raw body.
+ */
+public final class HttpResponse {
+
+    /**
+     * Status code.
+     */
+    private final int status;
+
+    /**
+     * Response headers.
+     */
+    private final Map<String, List<String>> headers;
+
+    /**
+     * Raw body.
+     */
+    private final byte[] body;
+
+    /**
+     * Create a response.
+     * @param status status code
+     * @param headers response headers
+     * @param body raw body
+     */
+    public HttpResponse(final int status,
+                        final Map<String, List<String>> headers,
+                        final byte[] body) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Get the body as text.
+     * @return body decoded as UTF-8
+     */
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the first value of a header.
+     * @param name header name, case insensitive
+     * @return header value or null
+     */
+    public String getHeader(final String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,139 @@
+package utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP GET client with persistent keep-alive connections, on top of
+ * {@link HttpClient}. The JDK client pools connections per host and only
+ * sends a request again when a pooled connection turned out to be closed
+ * before any response came back; a timeout is never retried, since the
+ * Load Generator endpoints start tests and must not be called twice.
+ * Every request has a read timeout, and gzip bodies are inflated.
+ */
+public final class PooledHttpClient {
+
+    /**
+     * Default connect timeout in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Default read timeout in milliseconds.
+     */
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Size of the buffer bodies are inflated with.
+     */
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+
+    /**
+     * Underlying client.
+     */
+    private final HttpClient client;
+
+    /**
+     * Read timeout.
+     */
+    private final Duration readTimeout;
+
+    /**
+     * Create a client with default timeouts.
+     */
+    public PooledHttpClient() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Create a client.
+     * @param connectTimeoutMillis connect timeout
+     * @param readTimeoutMillis read timeout
+     */
+    public PooledHttpClient(final int connectTimeoutMillis,
+                            final int readTimeoutMillis) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .build();
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+    }
+
+    /**
+     * Make a HTTP GET request.
+     * @param url http URL
+     * @return response of the request
+     * @throws IOException when network failure occurs
+     */
+    public HttpResponse get(final String url) throws IOException {
+        return get(url, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Make a HTTP GET request with extra headers.
+     * @param url http URL
+     * @param headers request headers
+     * @return response of the request
+     * @throws IOException when network failure occurs
+     */
+    public HttpResponse get(final String url,
+                            final Map<String, String> headers) throws IOException {
+        java.net.http.HttpRequest.Builder request;
+        try {
+            request = java.net.http.HttpRequest.newBuilder(URI.create(url))
+                    .timeout(readTimeout)
+                    .GET();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL " + url, e);
+        }
+        boolean range = false;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+            range |= header.getKey().equalsIgnoreCase("Range");
+        }
+        if (!range) {
+            // A gzip encoded part of a body cannot be inflated on its own
+            request.header("Accept-Encoding", "gzip");
+        }
+        java.net.http.HttpResponse<byte[]> response;
+        try {
+            response = client.send(request.build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + url);
+        }
+        byte[] body = response.body();
+        if (response.headers().firstValue("Content-Encoding")
+                .filter(encoding -> encoding.equalsIgnoreCase("gzip")).isPresent()) {
+            body = gunzip(body);
+        }
+        return new HttpResponse(response.statusCode(), response.headers().map(), body);
+    }
+
+    /**
+     * Inflate a gzip body.
+     * @param body compressed body
+     * @return inflated bytes
+     * @throws IOException on invalid data
+     */
+    private static byte[] gunzip(final byte[] body) throws IOException {
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream(body.length * 4);
+        byte[] chunk = new byte[INFLATE_BUFFER_SIZE];
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                inflated.write(chunk, 0, count);
+            }
+        }
+        return inflated.toByteArray();
+    }
+}